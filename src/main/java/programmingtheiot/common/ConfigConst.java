@@ -69,6 +69,242 @@ public class ConfigConst {
 
     public static final String DEFAULT_CLOUD_CLIENT_ID = "CloudClient01";
 
+    // ========================================
+    // MQTT CONNECTION POOL KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String CONNECTION_POOL_SIZE_KEY = "connectionPoolSize";
+    public static final String MAX_INFLIGHT_KEY = "maxInflight";
+
+    public static final int DEFAULT_CONNECTION_POOL_SIZE = 1;
+    public static final int MAX_CONNECTION_POOL_SIZE = 16;
+    public static final int DEFAULT_MAX_INFLIGHT = 10;
+
+    // shared subscription group name; if set, subscriptions use '$share/<group>/'
+    public static final String SHARED_SUBSCRIPTION_GROUP_KEY = "sharedSubscriptionGroup";
+
+    // ========================================
+    // MQTT 5 KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String MQTT_PROTOCOL_VERSION_KEY = "mqttProtocolVersion";
+    public static final String TOPIC_ALIAS_MAXIMUM_KEY = "topicAliasMaximum";
+    public static final String RECEIVE_MAXIMUM_KEY = "receiveMaximum";
+    public static final String MESSAGE_EXPIRY_SECS_KEY = "messageExpirySecs";
+
+    public static final int MQTT_PROTOCOL_VERSION_3 = 3;
+    public static final int MQTT_PROTOCOL_VERSION_5 = 5;
+    public static final int DEFAULT_MQTT_PROTOCOL_VERSION = MQTT_PROTOCOL_VERSION_3;
+    public static final int DEFAULT_TOPIC_ALIAS_MAXIMUM = 16;
+    public static final int DEFAULT_RECEIVE_MAXIMUM = 10;
+    public static final int DEFAULT_MESSAGE_EXPIRY_SECS = 0;
+
+    // ========================================
+    // PAYLOAD COMPRESSION KEYS AND DEFAULTS
+    // ========================================
+
+    // comma separated list of <ResourceNameEnum>[:fast|dict]
+    public static final String COMPRESSED_RESOURCES_KEY = "compressedResources";
+    public static final String COMPRESSION_MIN_BYTES_KEY = "compressionMinBytes";
+    // largest payload a received compressed message may inflate to
+    public static final String MAX_MESSAGE_SIZE_KEY = "maxMessageSize";
+
+    public static final int DEFAULT_COMPRESSION_MIN_BYTES = 64;
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 256 * 1024;
+
+    // ========================================
+    // PAYLOAD FORMAT KEYS
+    // ========================================
+
+    // comma separated list of <ResourceNameEnum> published as CBOR
+    public static final String CBOR_RESOURCES_KEY = "cborResources";
+
+    // ========================================
+    // MQTT LAST VALUE CACHE KEYS AND DEFAULTS
+    // ========================================
+
+    // 0 disables the cache
+    public static final String LAST_VALUE_CACHE_MAX_BYTES_KEY = "lastValueCacheMaxBytes";
+    public static final String PUBLISH_RETAINED_KEY = "publishRetained";
+
+    public static final int DEFAULT_LAST_VALUE_CACHE_MAX_BYTES = 1024 * 1024;
+
+    // ========================================
+    // CLOUD UPLINK BATCHING KEYS AND DEFAULTS
+    // ========================================
+
+    // a batch size of 1 or less disables batching
+    public static final String BATCH_MAX_SIZE_KEY = "batchMaxSize";
+    public static final String BATCH_FLUSH_MILLIS_KEY = "batchFlushMillis";
+    public static final String BATCH_FORMAT_KEY = "batchFormat";
+
+    public static final String BATCH_FORMAT_JSON = "json";
+    public static final String BATCH_FORMAT_COLUMNAR = "columnar";
+    public static final String BATCH_FORMAT_GORILLA = "gorilla";
+    public static final String BATCH_FORMAT_TIMEVALUE = "timevalue";
+    public static final String BATCH_FORMAT_TIMEVALUE_BINARY = "timevalue_binary";
+    public static final String BATCH_TOPIC_SUFFIX = "/batch";
+
+    public static final int DEFAULT_BATCH_MAX_SIZE = 1;
+    public static final int DEFAULT_BATCH_FLUSH_MILLIS = 1000;
+    public static final String DEFAULT_BATCH_FORMAT = BATCH_FORMAT_JSON;
+
+    // ========================================
+    // CLOUD ASYNC PUBLISH KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String ASYNC_PUBLISH_KEY = "asyncPublish";
+    public static final String MAX_PENDING_PUBLISHES_KEY = "maxPendingPublishes";
+    public static final String PUBLISH_TIMEOUT_MILLIS_KEY = "publishTimeoutMillis";
+
+    public static final int DEFAULT_MAX_PENDING_PUBLISHES = 1000;
+    public static final int DEFAULT_PUBLISH_TIMEOUT_MILLIS = 10000;
+
+    // ========================================
+    // CLOUD ADAPTIVE RATE KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String ADAPTIVE_RATE_KEY = "adaptiveRate";
+    public static final String MIN_PUBLISH_RATE_KEY = "minPublishRate";
+    public static final String MAX_PUBLISH_RATE_KEY = "maxPublishRate";
+    public static final String PUBLISH_RATE_INCREASE_STEP_KEY = "publishRateIncreaseStep";
+    public static final String TARGET_ACK_LATENCY_MILLIS_KEY = "targetAckLatencyMillis";
+
+    public static final int DEFAULT_MIN_PUBLISH_RATE = 1;
+    public static final int DEFAULT_MAX_PUBLISH_RATE = 1000;
+    public static final int DEFAULT_PUBLISH_RATE_INCREASE_STEP = 10;
+    public static final int DEFAULT_TARGET_ACK_LATENCY_MILLIS = 500;
+
+    // ========================================
+    // CLOUD MULTI-TARGET KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String CLOUD_SERVICE_NAMES_KEY = "cloudServiceNames";
+    public static final String TARGET_QUEUE_SIZE_KEY = "targetQueueSize";
+    public static final String MAX_RETRIES_KEY = "maxRetries";
+    public static final String RETRY_BACKOFF_MILLIS_KEY = "retryBackoffMillis";
+    public static final String METRICS_REPORT_SECS_KEY = "metricsReportSecs";
+
+    public static final int DEFAULT_TARGET_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final int DEFAULT_RETRY_BACKOFF_MILLIS = 500;
+    public static final int DEFAULT_METRICS_REPORT_SECS = 60;
+
+    // ========================================
+    // CLOUD CLIENT SHARING KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String IDLE_EVICTION_SECS_KEY = "idleEvictionSecs";
+
+    public static final int DEFAULT_IDLE_EVICTION_SECS = 60;
+
+    // ========================================
+    // CLOUD COMMAND HANDLING KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String COMMAND_CACHE_SIZE_KEY = "commandCacheSize";
+    public static final String COMMAND_CACHE_TTL_SECS_KEY = "commandCacheTtlSecs";
+    public static final String COMMAND_QUEUE_SIZE_KEY = "commandQueueSize";
+
+    public static final int DEFAULT_COMMAND_CACHE_SIZE = 1000;
+    public static final int DEFAULT_COMMAND_CACHE_TTL_SECS = 300;
+    public static final int DEFAULT_COMMAND_QUEUE_SIZE = 1000;
+
+    // ========================================
+    // DATA PERSISTENCE KEYS AND DEFAULTS
+    // ========================================
+
+    // 'json' (one key per reading) or 'gorilla' (compressed blocks per time bucket)
+    public static final String STORAGE_FORMAT_KEY = "storageFormat";
+    public static final String STORAGE_BLOCK_SECS_KEY = "storageBlockSecs";
+
+    public static final String STORAGE_FORMAT_JSON = "json";
+    public static final String STORAGE_FORMAT_GORILLA = "gorilla";
+
+    public static final String DEFAULT_STORAGE_FORMAT = STORAGE_FORMAT_JSON;
+    public static final int DEFAULT_STORAGE_BLOCK_SECS = 3600;
+
+    // ========================================
+    // CLOUD UPLINK SCHEDULER KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String UPLINK_SCHEDULER_KEY = "uplinkScheduler";
+    public static final String UPLINK_WEIGHTS_KEY = "uplinkWeights";
+    public static final String UPLINK_QUEUE_SIZE_KEY = "uplinkQueueSize";
+    public static final String STARVATION_MILLIS_KEY = "starvationMillis";
+
+    public static final String DEFAULT_UPLINK_WEIGHTS = "alert:8, actuator:4, telemetry:2, backfill:1";
+    public static final int DEFAULT_UPLINK_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_STARVATION_MILLIS = 5000;
+
+    // ========================================
+    // COAP SERVER DISPATCH KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String DISPATCH_MODE_KEY = "dispatchMode";
+    public static final String DISPATCH_THREADS_KEY = "dispatchThreads";
+    public static final String DISPATCH_QUEUE_SIZE_KEY = "dispatchQueueSize";
+    public static final String RETRY_AFTER_SECS_KEY = "retryAfterSecs";
+
+    public static final String DISPATCH_MODE_INLINE = "inline";
+    public static final String DISPATCH_MODE_ACK = "ack";
+    public static final String DISPATCH_MODE_SEPARATE = "separate";
+
+    public static final String DEFAULT_DISPATCH_MODE = DISPATCH_MODE_INLINE;
+    public static final int DEFAULT_DISPATCH_THREADS = 1;
+    public static final int DEFAULT_DISPATCH_QUEUE_SIZE = 1000;
+    public static final int DEFAULT_RETRY_AFTER_SECS = 1;
+
+    // ========================================
+    // COAP SERVER OBSERVE KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String OBSERVE_INTERVAL_MILLIS_KEY = "observeIntervalMillis";
+
+    public static final int DEFAULT_OBSERVE_INTERVAL_MILLIS = 100;
+
+    // ========================================
+    // COAP BLOCK-WISE TRANSFER KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String BLOCK_SIZE_KEY = "blockSize";
+    public static final String MAX_BODY_SIZE_KEY = "maxBodySize";
+    public static final String BLOCKWISE_LIFETIME_SECS_KEY = "blockwiseLifetimeSecs";
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    public static final int DEFAULT_MAX_BODY_SIZE = 262144;
+    public static final int DEFAULT_BLOCKWISE_LIFETIME_SECS = 30;
+
+    // ========================================
+    // COAP CLIENT KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String NSTART_KEY = "nstart";
+    public static final String MAX_OUTSTANDING_REQUESTS_KEY = "maxOutstandingRequests";
+
+    public static final String DEFAULT_COAP_HOST = "localhost";
+    public static final int DEFAULT_NSTART = 1;
+    public static final int DEFAULT_MAX_OUTSTANDING_REQUESTS = 256;
+    public static final int DEFAULT_COAP_TIMEOUT_SECS = 5;
+
+    // ========================================
+    // COAP OBSERVE MANAGER KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String OBSERVE_REGISTRATIONS_PER_SEC_KEY = "observeRegistrationsPerSec";
+    public static final String OBSERVE_JITTER_PCT_KEY = "observeJitterPct";
+
+    public static final int DEFAULT_OBSERVE_REGISTRATIONS_PER_SEC = 50;
+    public static final int DEFAULT_OBSERVE_JITTER_PCT = 20;
+
+    // ========================================
+    // COAP METRICS KEYS AND DEFAULTS
+    // ========================================
+
+    public static final String TRACE_SAMPLE_RATE_KEY = "traceSampleRate";
+
+    public static final int DEFAULT_TRACE_SAMPLE_RATE = 0;
+
     // ========================================
     // SYSTEM CONFIGURATION KEYS
     // ========================================
@@ -126,6 +362,7 @@ public class ConfigConst {
     public static final String MGMT_STATUS_CMD = "MgmtStatusCmd";
     public static final String RESOURCE_REGISTRATION_REQUEST = "ResourceReg";
     public static final String SYSTEM_PERF_MSG = "SystemPerfMsg";
+    public static final String SYSTEM_STATE_MSG = "SystemStateMsg";
 
     // ========================================
     // DATA TYPE IDENTIFIERS
@@ -8,9 +8,12 @@
 
 package programmingtheiot.common;
 
+import java.nio.charset.StandardCharsets;
+
 import programmingtheiot.data.ActuatorData;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.data.SystemStateData;
 
 /**
  * A simple callback interface for handling data messages
@@ -49,6 +52,27 @@ public interface IDataMessageListener
 	 */
 	public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg);
 	
+	/**
+	 * Callback signature for data message passing using the given parameters.
+	 * 
+	 * The default implementation decodes the payload as UTF-8 and delegates to
+	 * {@link #handleIncomingMessage(ResourceNameEnum, String)}. Implementations
+	 * can override it to decode the payload bytes directly.
+	 * 
+	 * @param resourceName The enum representing the String resource name.
+	 * @param payload The raw UTF-8 encoded payload from a connection using
+	 * either MQTT or CoAP.
+	 * @return True on success; false otherwise.
+	 */
+	public default boolean handleIncomingMessage(ResourceNameEnum resourceName, byte[] payload)
+	{
+		if (payload == null) {
+			return false;
+		}
+		
+		return handleIncomingMessage(resourceName, new String(payload, StandardCharsets.UTF_8));
+	}
+	
 	/**
 	 * Callback signature for data message passing using the given parameters.
 	 * 
@@ -69,6 +93,41 @@ public interface IDataMessageListener
 	 */
 	public boolean handleSystemPerformanceMessage(ResourceNameEnum resourceName, SystemPerformanceData data);
 	
+	/**
+	 * Callback signature for data message passing using the given parameters.
+	 * 
+	 * The default implementation passes each SensorData and
+	 * SystemPerformanceData entry to {@link #handleSensorMessage(ResourceNameEnum, SensorData)}
+	 * and {@link #handleSystemPerformanceMessage(ResourceNameEnum, SystemPerformanceData)}.
+	 * 
+	 * @param resourceName The enum representing the String resource name.
+	 * @param data The SystemStateData data - this will usually be the decoded payload
+	 * of a bulk upload from a connection using either MQTT or CoAP.
+	 * @return True if every entry was handled; false otherwise.
+	 */
+	public default boolean handleSystemStateMessage(ResourceNameEnum resourceName, SystemStateData data)
+	{
+		if (data == null) {
+			return false;
+		}
+		
+		boolean success = true;
+		
+		if (data.getSensorDataList() != null) {
+			for (SensorData sensorData : data.getSensorDataList()) {
+				success &= handleSensorMessage(resourceName, sensorData);
+			}
+		}
+		
+		if (data.getSystemPerformanceDataList() != null) {
+			for (SystemPerformanceData sysPerfData : data.getSystemPerformanceDataList()) {
+				success &= handleSystemPerformanceMessage(resourceName, sysPerfData);
+			}
+		}
+		
+		return success;
+	}
+	
 	/**
 	 * Sets the actuator data listener.
 	 * 
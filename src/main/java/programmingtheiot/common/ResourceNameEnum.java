@@ -1,5 +1,11 @@
 package programmingtheiot.common;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Enumeration of resource names used in the IoT system.
  * Provides mappings for different device types and message categories.
@@ -55,6 +61,11 @@ public enum ResourceNameEnum {
         ConfigConst.SYSTEM_PERF_MSG
     ),
 
+    CDA_SYSTEM_STATE_MSG_RESOURCE(
+        ConfigConst.CONSTRAINED_DEVICE,
+        ConfigConst.SYSTEM_STATE_MSG
+    ),
+
     // ========================================
     // GATEWAY DEVICE RESOURCES
     // ========================================
@@ -104,9 +115,18 @@ public enum ResourceNameEnum {
     // INSTANCE VARIABLES
     // ========================================
 
+    private static final Map<String, ResourceNameEnum> _ResourceNameIndex = new HashMap<>();
+
+    static {
+        for (ResourceNameEnum rne : ResourceNameEnum.values()) {
+            _ResourceNameIndex.put(rne.getResourceName(), rne);
+        }
+    }
+
     private String deviceName;
     private String resourceType;
     private String resourceName;
+    private List<String> resourceNameChain;
 
     // ========================================
     // CONSTRUCTOR
@@ -122,6 +142,8 @@ public enum ResourceNameEnum {
         this.deviceName = deviceName;
         this.resourceType = resourceType;
         this.resourceName = createResourceName(deviceName, resourceType);
+        this.resourceNameChain = Collections.unmodifiableList(
+            Arrays.asList(ConfigConst.PRODUCT_NAME, deviceName, resourceType));
     }
 
     // ========================================
@@ -140,19 +162,40 @@ public enum ResourceNameEnum {
         return this.resourceName;
     }
 
+    /**
+     * Returns the path segments, e.g. [PIOT, ConstrainedDevice, SensorMsg].
+     */
+    public List<String> getResourceNameChain() {
+        return this.resourceNameChain;
+    }
+
+    /**
+     * Returns true if the resource carries state or telemetry (sensor,
+     * system performance, system state, management status and actuator
+     * response messages), whose latest value stays valid. Commands and
+     * one-off requests return false: replaying them (e.g. as a retained
+     * MQTT message) would trigger them again.
+     */
+    public boolean isStateOrTelemetry() {
+        switch (this.resourceType) {
+            case ConfigConst.SENSOR_MSG:
+            case ConfigConst.SYSTEM_PERF_MSG:
+            case ConfigConst.SYSTEM_STATE_MSG:
+            case ConfigConst.MGMT_STATUS_MSG:
+            case ConfigConst.ACTUATOR_RESPONSE:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
     private String createResourceName(String deviceName, String resourceType) {
         return ConfigConst.PRODUCT_NAME + "/" + deviceName + "/" + resourceType;
     }
 
     public static ResourceNameEnum getEnumFromValue(String resourceName) {
-        if (resourceName != null && !resourceName.isEmpty()) {
-            for (ResourceNameEnum rne : ResourceNameEnum.values()) {
-                if (rne.getResourceName().equals(resourceName)) {
-                    return rne;
-                }
-            }
-        }
-        return null;
+        return (resourceName != null ? _ResourceNameIndex.get(resourceName) : null);
     }
 
     @Override
@@ -18,6 +18,7 @@ public class ActuatorData extends BaseIotData implements Serializable {
     private float   value      = ConfigConst.DEFAULT_VAL;
     private boolean isResponse = false;
     private String  stateData  = "";
+    private String  commandID  = "";
     
     // constructors
     
@@ -34,6 +35,16 @@ public class ActuatorData extends BaseIotData implements Serializable {
         return this.command;
     }
     
+    /**
+     * Returns the command's correlation ID, used to recognize repeated
+     * deliveries of the same command. Empty if not set.
+     * 
+     * @return String
+     */
+    public String getCommandID() {
+        return this.commandID;
+    }
+    
     public String getStateData() {
         return this.stateData;
     }
@@ -56,6 +67,10 @@ public class ActuatorData extends BaseIotData implements Serializable {
         this.command = command;
     }
     
+    public void setCommandID(String commandID) {
+        this.commandID = (commandID != null ? commandID : "");
+    }
+    
     public void setStateData(String stateData) {
         updateTimeStamp();
         
@@ -78,6 +93,7 @@ public class ActuatorData extends BaseIotData implements Serializable {
             this.setCommand(aData.getCommand());
             this.setValue(aData.getValue());
             this.setStateData(aData.getStateData());
+            this.setCommandID(aData.getCommandID());
             
             if (aData.isResponseFlagEnabled()) {
                 this.isResponse = true;
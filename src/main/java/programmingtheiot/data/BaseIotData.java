@@ -121,6 +121,16 @@ public abstract class BaseIotData implements Serializable {
         return timeStamp;
     }
 
+    /**
+     * Sets the timestamp in milliseconds, e.g. when restoring stored or
+     * batched readings.
+     * 
+     * @param timeStampMillis The timestamp in milliseconds
+     */
+    public void setTimeStampMillis(long timeStampMillis) {
+        this.timeStamp = timeStampMillis;
+    }
+
     /**
      * Updates the timestamp to the current system time.
      */
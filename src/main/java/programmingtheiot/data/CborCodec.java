@@ -0,0 +1,920 @@
+package programmingtheiot.data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * CBOR (RFC 8949) codec for SensorData, ActuatorData,
+ * SystemPerformanceData and SystemStateData.
+ *
+ * Each object is a CBOR map with the same text keys and values as its
+ * Gson JSON document (null fields are omitted, as Gson does), so a peer
+ * decoding with a generic CBOR library gets the same structure it would
+ * get from the JSON. Integers use the shortest CBOR form, and floats the
+ * shortest of half or single precision that holds the value exactly.
+ * Lists of objects are CBOR arrays.
+ *
+ * Decoding accepts any valid encoding of these documents (definite or
+ * indefinite length maps and arrays, integer or float numbers of any
+ * width) and skips unknown keys and tags. Items nested deeper than
+ * MAX_DEPTH are rejected, so hostile input can't exhaust the stack.
+ *
+ * Thread-safe (stateless).
+ */
+public class CborCodec
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CborCodec.class.getName());
+
+	private static final int MAJOR_UINT   = 0;
+	private static final int MAJOR_NINT   = 1;
+	private static final int MAJOR_BYTES  = 2;
+	private static final int MAJOR_TEXT   = 3;
+	private static final int MAJOR_ARRAY  = 4;
+	private static final int MAJOR_MAP    = 5;
+	private static final int MAJOR_TAG    = 6;
+	private static final int MAJOR_SIMPLE = 7;
+
+	private static final int FALSE = 0xF4;
+	private static final int TRUE  = 0xF5;
+	private static final int NULL  = 0xF6;
+	private static final int HALF  = 0xF9;
+	private static final int FLOAT = 0xFA;
+	private static final int DOUBLE = 0xFB;
+	private static final int BREAK = 0xFF;
+
+	private static final int INDEFINITE = 31;
+
+	// maximum nesting of maps, arrays and tags when decoding
+	static final int MAX_DEPTH = 32;
+
+	// keys, indexed by the K_ constants
+	private static final String[] KEYS = {
+		"name", "typeID", "locationID", "timeStamp", "statusCode", "hasError",
+		"value", "command", "isResponse", "stateData", "commandID",
+		"cpuUtil", "diskUtil", "memUtil", "sensorDataList", "sysPerfDataList"
+	};
+
+	private static final int K_NAME        = 0;
+	private static final int K_TYPE_ID     = 1;
+	private static final int K_LOCATION_ID = 2;
+	private static final int K_TIMESTAMP   = 3;
+	private static final int K_STATUS_CODE = 4;
+	private static final int K_HAS_ERROR   = 5;
+	private static final int K_VALUE       = 6;
+	private static final int K_COMMAND     = 7;
+	private static final int K_IS_RESPONSE = 8;
+	private static final int K_STATE_DATA  = 9;
+	private static final int K_COMMAND_ID  = 10;
+	private static final int K_CPU_UTIL    = 11;
+	private static final int K_DISK_UTIL   = 12;
+	private static final int K_MEM_UTIL    = 13;
+	private static final int K_SENSOR_LIST = 14;
+	private static final int K_SYSPERF_LIST = 15;
+
+	private static final byte[][] KEY_BYTES = new byte[KEYS.length][];
+
+	static {
+		for (int i = 0; i < KEYS.length; i++) {
+			KEY_BYTES[i] = KEYS[i].getBytes(StandardCharsets.UTF_8);
+		}
+	}
+
+
+	// constructors
+
+	private CborCodec()
+	{
+		super();
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if the payload starts with a CBOR map or array header,
+	 * which a JSON document (or a PayloadCompressor / TimeSeriesCodec
+	 * header) never does.
+	 *
+	 * @param payload The payload.
+	 * @return boolean
+	 */
+	public static boolean isEncoded(byte[] payload)
+	{
+		if (payload == null || payload.length == 0) {
+			return false;
+		}
+
+		int major = (payload[0] & 0xFF) >>> 5;
+
+		return (major == MAJOR_MAP || major == MAJOR_ARRAY);
+	}
+
+	/**
+	 * Encodes the data as a CBOR map.
+	 *
+	 * @param data A SensorData, ActuatorData, SystemPerformanceData or
+	 * SystemStateData instance.
+	 * @return byte[] The encoded payload, or null if data is null or of
+	 * an unsupported type.
+	 */
+	public static byte[] encode(BaseIotData data)
+	{
+		if (data == null) {
+			return null;
+		}
+
+		Writer out = new Writer(128);
+
+		return (writeData(out, data) ? out.toByteArray() : null);
+	}
+
+	/**
+	 * Encodes the data as a CBOR array of maps.
+	 *
+	 * @param dataList The data (all of a supported type).
+	 * @return byte[] The encoded payload, or null if dataList is null or
+	 * holds an unsupported type.
+	 */
+	public static byte[] encodeList(List<? extends BaseIotData> dataList)
+	{
+		if (dataList == null) {
+			return null;
+		}
+
+		Writer out = new Writer(dataList.size() * 96 + 8);
+		out.writeHeader(MAJOR_ARRAY, dataList.size());
+
+		for (BaseIotData data : dataList) {
+			if (! writeData(out, data)) {
+				return null;
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a CBOR map.
+	 *
+	 * @param payload The encoded payload.
+	 * @param type SensorData, ActuatorData, SystemPerformanceData or
+	 * SystemStateData.
+	 * @return T The data, or null if the payload is invalid.
+	 */
+	public static <T extends BaseIotData> T decode(byte[] payload, Class<T> type)
+	{
+		if (payload == null || payload.length == 0) {
+			return null;
+		}
+
+		try {
+			Reader in = new Reader(payload);
+			T data = type.cast(readData(in, type));
+
+			in.checkEnd();
+
+			return data;
+		} catch (RuntimeException e) {
+			_Logger.log(Level.WARNING, "Failed to decode CBOR " + type.getSimpleName(), e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Decodes a CBOR array of maps.
+	 *
+	 * @param payload The encoded payload.
+	 * @param type The element type.
+	 * @return List The data, or null if the payload is invalid.
+	 */
+	public static <T extends BaseIotData> List<T> decodeList(byte[] payload, Class<T> type)
+	{
+		if (payload == null || payload.length == 0) {
+			return null;
+		}
+
+		try {
+			Reader in = new Reader(payload);
+			List<T> dataList = readList(in, type);
+
+			in.checkEnd();
+
+			return dataList;
+		} catch (RuntimeException e) {
+			_Logger.log(Level.WARNING, "Failed to decode CBOR " + type.getSimpleName() + " list", e);
+		}
+
+		return null;
+	}
+
+
+	// private methods - encoding
+
+	private static boolean writeData(Writer out, BaseIotData data)
+	{
+		if (data instanceof SensorData) {
+			writeBase(out, data, 1);
+			out.writeKey(K_VALUE).writeFloat(((SensorData) data).getValue());
+		} else if (data instanceof ActuatorData) {
+			ActuatorData ad = (ActuatorData) data;
+			int count = 3 + (ad.getStateData() != null ? 1 : 0) + (ad.getCommandID() != null ? 1 : 0);
+
+			writeBase(out, data, count);
+			out.writeKey(K_COMMAND).writeLong(ad.getCommand());
+			out.writeKey(K_VALUE).writeFloat(ad.getValue());
+			out.writeKey(K_IS_RESPONSE).writeBoolean(ad.isResponseFlagEnabled());
+
+			if (ad.getStateData() != null) {
+				out.writeKey(K_STATE_DATA).writeText(ad.getStateData());
+			}
+
+			if (ad.getCommandID() != null) {
+				out.writeKey(K_COMMAND_ID).writeText(ad.getCommandID());
+			}
+		} else if (data instanceof SystemPerformanceData) {
+			SystemPerformanceData spd = (SystemPerformanceData) data;
+
+			writeBase(out, data, 3);
+			out.writeKey(K_CPU_UTIL).writeFloat(spd.getCpuUtilization());
+			out.writeKey(K_DISK_UTIL).writeFloat(spd.getDiskUtilization());
+			out.writeKey(K_MEM_UTIL).writeFloat(spd.getMemoryUtilization());
+		} else if (data instanceof SystemStateData) {
+			SystemStateData ssd = (SystemStateData) data;
+			List<SensorData> sensorDataList = ssd.getSensorDataList();
+			List<SystemPerformanceData> sysPerfDataList = ssd.getSystemPerformanceDataList();
+
+			writeBase(out, data, 2 + (sensorDataList != null ? 1 : 0) + (sysPerfDataList != null ? 1 : 0));
+			out.writeKey(K_COMMAND).writeLong(ssd.getCommand());
+			out.writeKey(K_STATE_DATA).writeLong(ssd.getStateData());
+
+			if (sensorDataList != null) {
+				out.writeKey(K_SENSOR_LIST).writeHeader(MAJOR_ARRAY, sensorDataList.size());
+
+				for (SensorData sd : sensorDataList) {
+					writeData(out, sd);
+				}
+			}
+
+			if (sysPerfDataList != null) {
+				out.writeKey(K_SYSPERF_LIST).writeHeader(MAJOR_ARRAY, sysPerfDataList.size());
+
+				for (SystemPerformanceData spd : sysPerfDataList) {
+					writeData(out, spd);
+				}
+			}
+		} else {
+			_Logger.warning("Unsupported CBOR type: " + (data != null ? data.getClass().getName() : null));
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes the map header (base fields plus extraCount) and base fields.
+	 */
+	private static void writeBase(Writer out, BaseIotData data, int extraCount)
+	{
+		String name = data.getName();
+		String locationID = data.getLocationID();
+
+		out.writeHeader(MAJOR_MAP, 4 + (name != null ? 1 : 0) + (locationID != null ? 1 : 0) + extraCount);
+
+		if (name != null) {
+			out.writeKey(K_NAME).writeText(name);
+		}
+
+		out.writeKey(K_TYPE_ID).writeLong(data.getTypeID());
+
+		if (locationID != null) {
+			out.writeKey(K_LOCATION_ID).writeText(locationID);
+		}
+
+		out.writeKey(K_TIMESTAMP).writeLong(data.getTimeStampMillis());
+		out.writeKey(K_STATUS_CODE).writeLong(data.getStatusCode());
+		out.writeKey(K_HAS_ERROR).writeBoolean(data.hasError());
+	}
+
+
+	// private methods - decoding
+
+	private static <T extends BaseIotData> List<T> readList(Reader in, Class<T> type)
+	{
+		in.enter();
+
+		int count = in.readContainerHeader(MAJOR_ARRAY);
+		List<T> dataList = new ArrayList<>(count > 0 ? count : 16);
+
+		for (int i = 0; (count < 0 ? ! in.readBreak() : i < count); i++) {
+			dataList.add(type.cast(readData(in, type)));
+		}
+
+		in.leave();
+
+		return dataList;
+	}
+
+	private static BaseIotData readData(Reader in, Class<?> type)
+	{
+		BaseIotData data;
+
+		if (type == SensorData.class) {
+			data = new SensorData();
+		} else if (type == ActuatorData.class) {
+			data = new ActuatorData();
+		} else if (type == SystemPerformanceData.class) {
+			data = new SystemPerformanceData();
+		} else if (type == SystemStateData.class) {
+			data = new SystemStateData();
+		} else {
+			throw new IllegalArgumentException("Unsupported CBOR type: " + type.getName());
+		}
+
+		// applied last, as setters update the timestamp
+		long timeStamp = data.getTimeStampMillis();
+		int statusCode = data.getStatusCode();
+		boolean hasError = data.hasError();
+
+		in.enter();
+
+		int count = in.readContainerHeader(MAJOR_MAP);
+
+		for (int i = 0; (count < 0 ? ! in.readBreak() : i < count); i++) {
+			int key = in.readKey();
+
+			switch (key) {
+				case K_NAME:
+					data.setName(in.readText());
+					break;
+
+				case K_TYPE_ID:
+					data.setTypeID((int) in.readLong());
+					break;
+
+				case K_LOCATION_ID:
+					data.setLocationID(in.readText());
+					break;
+
+				case K_TIMESTAMP:
+					timeStamp = in.readLong();
+					break;
+
+				case K_STATUS_CODE:
+					statusCode = (int) in.readLong();
+					break;
+
+				case K_HAS_ERROR:
+					hasError = in.readBoolean();
+					break;
+
+				default:
+					if (! readField(in, data, key)) {
+						in.skip();
+					}
+			}
+		}
+
+		in.leave();
+
+		data.setStatusData(statusCode, hasError);
+		data.setTimeStampMillis(timeStamp);
+
+		return data;
+	}
+
+	/**
+	 * Reads a type-specific field; returns false if the key doesn't apply
+	 * to the type (the value is then skipped).
+	 */
+	private static boolean readField(Reader in, BaseIotData data, int key)
+	{
+		if (data instanceof SensorData) {
+			if (key == K_VALUE) {
+				((SensorData) data).setValue(in.readFloat());
+				return true;
+			}
+		} else if (data instanceof ActuatorData) {
+			ActuatorData ad = (ActuatorData) data;
+
+			switch (key) {
+				case K_COMMAND:     ad.setCommand((int) in.readLong()); return true;
+				case K_VALUE:       ad.setValue(in.readFloat()); return true;
+				case K_STATE_DATA:  ad.setStateData(in.readText()); return true;
+				case K_COMMAND_ID:  ad.setCommandID(in.readText()); return true;
+
+				case K_IS_RESPONSE:
+					if (in.readBoolean()) {
+						ad.setAsResponse();
+					}
+
+					return true;
+			}
+		} else if (data instanceof SystemPerformanceData) {
+			SystemPerformanceData spd = (SystemPerformanceData) data;
+
+			switch (key) {
+				case K_CPU_UTIL:  spd.setCpuUtilization(in.readFloat()); return true;
+				case K_DISK_UTIL: spd.setDiskUtilization(in.readFloat()); return true;
+				case K_MEM_UTIL:  spd.setMemoryUtilization(in.readFloat()); return true;
+			}
+		} else if (data instanceof SystemStateData) {
+			SystemStateData ssd = (SystemStateData) data;
+
+			switch (key) {
+				case K_COMMAND:       ssd.setCommand((int) in.readLong()); return true;
+				case K_STATE_DATA:    ssd.setStateData((int) in.readLong()); return true;
+				case K_SENSOR_LIST:   ssd.setSensorDataList(readList(in, SensorData.class)); return true;
+				case K_SYSPERF_LIST:  ssd.setSystemPerformanceDataList(readList(in, SystemPerformanceData.class)); return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the half precision bits for the float, or -1 if it can't be
+	 * held exactly in half precision.
+	 */
+	static int toHalfBits(float value)
+	{
+		int bits = Float.floatToRawIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exp = (bits >>> 23) & 0xFF;
+		int mant = bits & 0x7FFFFF;
+
+		if (exp == 0xFF) {
+			// infinity, or canonical NaN
+			return sign | 0x7C00 | (mant != 0 ? 0x0200 : 0);
+		}
+
+		if (exp == 0 && mant == 0) {
+			return sign;
+		}
+
+		int halfExp = exp - 127 + 15;
+
+		if (halfExp >= 1 && halfExp <= 30) {
+			return ((mant & 0x1FFF) == 0 ? sign | (halfExp << 10) | (mant >>> 13) : -1);
+		}
+
+		if (halfExp >= -9 && halfExp <= 0 && exp != 0) {
+			// half precision subnormal
+			int full = 0x800000 | mant;
+			int shift = 14 - halfExp;
+
+			return ((full & ((1 << shift) - 1)) == 0 ? sign | (full >>> shift) : -1);
+		}
+
+		return -1;
+	}
+
+	static float fromHalfBits(int half)
+	{
+		int sign = (half & 0x8000) << 16;
+		int exp = (half >>> 10) & 0x1F;
+		int mant = half & 0x3FF;
+
+		if (exp == 0) {
+			float value = mant * 0x1p-24f;
+			return (sign != 0 ? -value : value);
+		}
+
+		if (exp == 0x1F) {
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mant << 13));
+		}
+
+		return Float.intBitsToFloat(sign | ((exp - 15 + 127) << 23) | (mant << 13));
+	}
+
+
+	// inner classes
+
+	/**
+	 * Growable output buffer.
+	 */
+	private static final class Writer
+	{
+		private byte[] buf;
+		private int size = 0;
+
+		Writer(int capacity)
+		{
+			this.buf = new byte[Math.max(16, capacity)];
+		}
+
+		Writer writeHeader(int major, long arg)
+		{
+			ensure(9);
+
+			int type = major << 5;
+
+			if (arg < 24) {
+				this.buf[this.size++] = (byte) (type | arg);
+			} else if (arg < 0x100) {
+				this.buf[this.size++] = (byte) (type | 24);
+				this.buf[this.size++] = (byte) arg;
+			} else if (arg < 0x10000) {
+				this.buf[this.size++] = (byte) (type | 25);
+				putBE(arg, 2);
+			} else if (arg < 0x100000000L) {
+				this.buf[this.size++] = (byte) (type | 26);
+				putBE(arg, 4);
+			} else {
+				this.buf[this.size++] = (byte) (type | 27);
+				putBE(arg, 8);
+			}
+
+			return this;
+		}
+
+		Writer writeKey(int key)
+		{
+			byte[] bytes = KEY_BYTES[key];
+
+			writeHeader(MAJOR_TEXT, bytes.length);
+			ensure(bytes.length);
+			System.arraycopy(bytes, 0, this.buf, this.size, bytes.length);
+			this.size += bytes.length;
+
+			return this;
+		}
+
+		Writer writeLong(long value)
+		{
+			// negative n is encoded as -1 - n
+			return (value >= 0 ? writeHeader(MAJOR_UINT, value) : writeHeader(MAJOR_NINT, -1L - value));
+		}
+
+		Writer writeFloat(float value)
+		{
+			int half = toHalfBits(value);
+
+			ensure(5);
+
+			if (half >= 0) {
+				this.buf[this.size++] = (byte) HALF;
+				putBE(half, 2);
+			} else {
+				this.buf[this.size++] = (byte) FLOAT;
+				putBE(Float.floatToRawIntBits(value) & 0xFFFFFFFFL, 4);
+			}
+
+			return this;
+		}
+
+		Writer writeBoolean(boolean value)
+		{
+			ensure(1);
+			this.buf[this.size++] = (byte) (value ? TRUE : FALSE);
+
+			return this;
+		}
+
+		Writer writeText(String value)
+		{
+			int len = value.length();
+			boolean isAscii = true;
+
+			for (int i = 0; i < len && isAscii; i++) {
+				isAscii = (value.charAt(i) < 0x80);
+			}
+
+			if (isAscii) {
+				writeHeader(MAJOR_TEXT, len);
+				ensure(len);
+
+				for (int i = 0; i < len; i++) {
+					this.buf[this.size++] = (byte) value.charAt(i);
+				}
+			} else {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+				writeHeader(MAJOR_TEXT, bytes.length);
+				ensure(bytes.length);
+				System.arraycopy(bytes, 0, this.buf, this.size, bytes.length);
+				this.size += bytes.length;
+			}
+
+			return this;
+		}
+
+		byte[] toByteArray()
+		{
+			return Arrays.copyOf(this.buf, this.size);
+		}
+
+		private void putBE(long value, int byteCount)
+		{
+			for (int shift = (byteCount - 1) * 8; shift >= 0; shift -= 8) {
+				this.buf[this.size++] = (byte) (value >>> shift);
+			}
+		}
+
+		private void ensure(int extra)
+		{
+			if (this.size + extra > this.buf.length) {
+				this.buf = Arrays.copyOf(this.buf, Math.max(this.buf.length * 2, this.size + extra));
+			}
+		}
+	}
+
+	/**
+	 * Input cursor. Throws IllegalArgumentException on malformed or
+	 * truncated input.
+	 */
+	private static final class Reader
+	{
+		private final byte[] buf;
+		private int pos = 0;
+		private int depth = 0;
+
+		Reader(byte[] buf)
+		{
+			this.buf = buf;
+		}
+
+		/**
+		 * Reads a map or array header; returns the item count, or -1 for
+		 * indefinite length.
+		 */
+		int readContainerHeader(int major)
+		{
+			int initial = peek();
+
+			if ((initial >>> 5) != major) {
+				throw new IllegalArgumentException("Expected major type " + major + " at " + this.pos);
+			}
+
+			if ((initial & 0x1F) == INDEFINITE) {
+				this.pos++;
+				return -1;
+			}
+
+			return toCount(readArgument(major));
+		}
+
+		/**
+		 * Consumes a break (end of an indefinite length item) if next.
+		 */
+		boolean readBreak()
+		{
+			if (peek() == BREAK) {
+				this.pos++;
+				return true;
+			}
+
+			return false;
+		}
+
+		/**
+		 * Reads a text key; returns its K_ index, or -1 if unknown.
+		 */
+		int readKey()
+		{
+			int len = toCount(readArgument(MAJOR_TEXT));
+
+			require(len);
+
+			int start = this.pos;
+			this.pos += len;
+
+			for (int k = 0; k < KEY_BYTES.length; k++) {
+				byte[] key = KEY_BYTES[k];
+
+				if (key.length == len && Arrays.equals(key, 0, len, this.buf, start, start + len)) {
+					return k;
+				}
+			}
+
+			return -1;
+		}
+
+		String readText()
+		{
+			if (peek() == NULL) {
+				this.pos++;
+				return null;
+			}
+
+			int len = toCount(readArgument(MAJOR_TEXT));
+
+			require(len);
+
+			String value = new String(this.buf, this.pos, len, StandardCharsets.UTF_8);
+			this.pos += len;
+
+			return value;
+		}
+
+		long readLong()
+		{
+			int major = peek() >>> 5;
+
+			if (major == MAJOR_UINT) {
+				return readArgument(MAJOR_UINT);
+			}
+
+			if (major == MAJOR_NINT) {
+				return -1L - readArgument(MAJOR_NINT);
+			}
+
+			return (long) readFloat();
+		}
+
+		float readFloat()
+		{
+			int initial = peek();
+
+			switch (initial) {
+				case HALF:
+					this.pos++;
+					return fromHalfBits((int) readBE(2));
+
+				case FLOAT:
+					this.pos++;
+					return Float.intBitsToFloat((int) readBE(4));
+
+				case DOUBLE:
+					this.pos++;
+					return (float) Double.longBitsToDouble(readBE(8));
+
+				default:
+					int major = initial >>> 5;
+
+					if (major == MAJOR_UINT || major == MAJOR_NINT) {
+						return readLong();
+					}
+
+					throw new IllegalArgumentException("Expected a number at " + this.pos);
+			}
+		}
+
+		boolean readBoolean()
+		{
+			int initial = peek();
+
+			if (initial != TRUE && initial != FALSE) {
+				throw new IllegalArgumentException("Expected a boolean at " + this.pos);
+			}
+
+			this.pos++;
+
+			return (initial == TRUE);
+		}
+
+		/**
+		 * Enters a nested map, array or tag.
+		 */
+		void enter()
+		{
+			if (++this.depth > MAX_DEPTH) {
+				throw new IllegalArgumentException("Nesting deeper than " + MAX_DEPTH + " at " + this.pos);
+			}
+		}
+
+		void leave()
+		{
+			this.depth--;
+		}
+
+		/**
+		 * Skips one data item (including nested items).
+		 */
+		void skip()
+		{
+			enter();
+			skipItem();
+			leave();
+		}
+
+		private void skipItem()
+		{
+			int initial = peek();
+			int major = initial >>> 5;
+
+			if ((initial & 0x1F) == INDEFINITE && major != MAJOR_SIMPLE) {
+				this.pos++;
+
+				while (! readBreak()) {
+					skip();
+
+					if (major == MAJOR_MAP) {
+						skip();
+					}
+				}
+
+				return;
+			}
+
+			switch (major) {
+				case MAJOR_UINT:
+				case MAJOR_NINT:
+					readArgument(major);
+					break;
+
+				case MAJOR_BYTES:
+				case MAJOR_TEXT:
+					int len = toCount(readArgument(major));
+					require(len);
+					this.pos += len;
+					break;
+
+				case MAJOR_ARRAY:
+				case MAJOR_MAP:
+					long count = readArgument(major) * (major == MAJOR_MAP ? 2 : 1);
+
+					for (long i = 0; i < count; i++) {
+						skip();
+					}
+
+					break;
+
+				case MAJOR_TAG:
+					readArgument(major);
+					skip();
+					break;
+
+				default:
+					readArgument(major);
+			}
+		}
+
+		void checkEnd()
+		{
+			if (this.pos != this.buf.length) {
+				throw new IllegalArgumentException("Trailing bytes at " + this.pos);
+			}
+		}
+
+		private long readArgument(int major)
+		{
+			int initial = peek();
+
+			if ((initial >>> 5) != major) {
+				throw new IllegalArgumentException("Expected major type " + major + " at " + this.pos);
+			}
+
+			this.pos++;
+
+			int info = initial & 0x1F;
+
+			if (info < 24) {
+				return info;
+			}
+
+			switch (info) {
+				case 24: return readBE(1);
+				case 25: return readBE(2);
+				case 26: return readBE(4);
+				case 27: return readBE(8);
+
+				default:
+					throw new IllegalArgumentException("Invalid additional info " + info + " at " + (this.pos - 1));
+			}
+		}
+
+		private long readBE(int byteCount)
+		{
+			require(byteCount);
+
+			long value = 0L;
+
+			for (int i = 0; i < byteCount; i++) {
+				value = (value << 8) | (this.buf[this.pos++] & 0xFF);
+			}
+
+			return value;
+		}
+
+		private int peek()
+		{
+			require(1);
+
+			return this.buf[this.pos] & 0xFF;
+		}
+
+		private void require(int byteCount)
+		{
+			if (byteCount < 0 || this.pos + byteCount > this.buf.length) {
+				throw new IllegalArgumentException("Truncated CBOR payload at " + this.pos);
+			}
+		}
+
+		private int toCount(long arg)
+		{
+			if (arg < 0 || arg > this.buf.length) {
+				throw new IllegalArgumentException("Invalid length " + arg + " at " + this.pos);
+			}
+
+			return (int) arg;
+		}
+	}
+}
@@ -1,7 +1,24 @@
 package programmingtheiot.data;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Utility class for converting data objects to/from JSON format.
@@ -137,4 +154,348 @@ public class DataUtil {
 
 		return data;
 	}
+
+	// Batches are written by TimeAndValuePayloadBatch.toJsonBytes().
+
+	public List<TimeAndValuePayloadBatch> jsonBytesToTimeAndValuePayloadBatchList(byte[] jsonData) {
+		TimeAndValuePayloadBatch[] batchArray = fromJsonBytes(
+			jsonData, 0, (jsonData != null ? jsonData.length : 0), TimeAndValuePayloadBatch[].class);
+
+		return (batchArray != null ? Arrays.asList(batchArray) : null);
+	}
+
+	// ---------------- UTF-8 JSON bytes ----------------
+	//
+	// These write and read UTF-8 encoded JSON directly via Gson's streaming
+	// API, so no intermediate String is created for the payload.
+
+	public byte[] actuatorDataToJsonBytes(ActuatorData data) {
+		return toJsonBytes(data);
+	}
+
+	public ActuatorData jsonBytesToActuatorData(byte[] jsonData) {
+		return fromJsonBytes(jsonData, 0, (jsonData != null ? jsonData.length : 0), ActuatorData.class);
+	}
+
+	public ActuatorData jsonBytesToActuatorData(ByteBuffer jsonData) {
+		return fromJsonBytes(jsonData, ActuatorData.class);
+	}
+
+	public byte[] sensorDataToJsonBytes(SensorData data) {
+		return toJsonBytes(data);
+	}
+
+	public SensorData jsonBytesToSensorData(byte[] jsonData) {
+		return fromJsonBytes(jsonData, 0, (jsonData != null ? jsonData.length : 0), SensorData.class);
+	}
+
+	public SensorData jsonBytesToSensorData(ByteBuffer jsonData) {
+		return fromJsonBytes(jsonData, SensorData.class);
+	}
+
+	public byte[] systemPerformanceDataToJsonBytes(SystemPerformanceData data) {
+		return toJsonBytes(data);
+	}
+
+	public SystemPerformanceData jsonBytesToSystemPerformanceData(byte[] jsonData) {
+		return fromJsonBytes(jsonData, 0, (jsonData != null ? jsonData.length : 0), SystemPerformanceData.class);
+	}
+
+	public SystemPerformanceData jsonBytesToSystemPerformanceData(ByteBuffer jsonData) {
+		return fromJsonBytes(jsonData, SystemPerformanceData.class);
+	}
+
+	/**
+	 * Returns the remaining bytes of the buffer as an array, without
+	 * changing its position. A heap buffer whose remaining bytes span its
+	 * whole backing array is returned as that array (no copy); any other
+	 * buffer is copied once.
+	 * 
+	 * @param buffer The buffer.
+	 * @return byte[] The bytes, or null if buffer is null.
+	 */
+	public byte[] toByteArray(ByteBuffer buffer) {
+		if (buffer == null) {
+			return null;
+		}
+
+		if (buffer.hasArray() && buffer.arrayOffset() + buffer.position() == 0 &&
+			buffer.remaining() == buffer.array().length) {
+			return buffer.array();
+		}
+
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+
+		return bytes;
+	}
+
+	public byte[] systemStateDataToJsonBytes(SystemStateData data) {
+		return toJsonBytes(data);
+	}
+
+	public SystemStateData jsonBytesToSystemStateData(byte[] jsonData) {
+		return fromJsonBytes(jsonData, 0, (jsonData != null ? jsonData.length : 0), SystemStateData.class);
+	}
+
+	// ---------------- CBOR ----------------
+	//
+	// CBOR (content-format 60) documents with the same keys and values as
+	// the JSON documents above; see CborCodec.
+
+	public byte[] actuatorDataToCborBytes(ActuatorData data) {
+		return CborCodec.encode(data);
+	}
+
+	public ActuatorData cborBytesToActuatorData(byte[] cborData) {
+		return CborCodec.decode(cborData, ActuatorData.class);
+	}
+
+	public byte[] sensorDataToCborBytes(SensorData data) {
+		return CborCodec.encode(data);
+	}
+
+	public SensorData cborBytesToSensorData(byte[] cborData) {
+		return CborCodec.decode(cborData, SensorData.class);
+	}
+
+	public byte[] systemPerformanceDataToCborBytes(SystemPerformanceData data) {
+		return CborCodec.encode(data);
+	}
+
+	public SystemPerformanceData cborBytesToSystemPerformanceData(byte[] cborData) {
+		return CborCodec.decode(cborData, SystemPerformanceData.class);
+	}
+
+	public byte[] systemStateDataToCborBytes(SystemStateData data) {
+		return CborCodec.encode(data);
+	}
+
+	public SystemStateData cborBytesToSystemStateData(byte[] cborData) {
+		return CborCodec.decode(cborData, SystemStateData.class);
+	}
+
+	// ---------------- format-neutral ----------------
+	//
+	// For links that negotiate the payload format (CoAP Content-Format,
+	// per-topic MQTT settings).
+
+	public byte[] dataToBytes(BaseIotData data, PayloadFormat format) {
+		return (format == PayloadFormat.CBOR ? CborCodec.encode(data) : toJsonBytes(data));
+	}
+
+	public <T extends BaseIotData> T bytesToData(byte[] payload, PayloadFormat format, Class<T> type) {
+		if (format == PayloadFormat.CBOR) {
+			return CborCodec.decode(payload, type);
+		}
+
+		return fromJsonBytes(payload, 0, (payload != null ? payload.length : 0), type);
+	}
+
+	public byte[] dataListToBytes(List<? extends BaseIotData> dataList, PayloadFormat format) {
+		return (format == PayloadFormat.CBOR ? CborCodec.encodeList(dataList) : toJsonBytes(dataList));
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends BaseIotData> List<T> bytesToDataList(byte[] payload, PayloadFormat format, Class<T> type) {
+		if (format == PayloadFormat.CBOR) {
+			return CborCodec.decodeList(payload, type);
+		}
+
+		if (payload == null || payload.length == 0) {
+			return null;
+		}
+
+		Reader reader = new InputStreamReader(new ByteArrayInputStream(payload), StandardCharsets.UTF_8);
+
+		return (List<T>) this.gson.fromJson(reader, TypeToken.getParameterized(List.class, type).getType());
+	}
+
+	/**
+	 * Re-encodes a document (or a list of documents) of the given type in
+	 * another format.
+	 *
+	 * @return byte[] The re-encoded payload, or null if it can't be decoded.
+	 */
+	public byte[] transcode(byte[] payload, PayloadFormat from, PayloadFormat to, Class<? extends BaseIotData> type) {
+		if (from == to) {
+			return payload;
+		}
+
+		if (isList(payload, from)) {
+			List<? extends BaseIotData> dataList = bytesToDataList(payload, from, type);
+
+			return (dataList != null ? dataListToBytes(dataList, to) : null);
+		}
+
+		BaseIotData data = bytesToData(payload, from, type);
+
+		return (data != null ? dataToBytes(data, to) : null);
+	}
+
+	/**
+	 * Returns true if the payload is a list (JSON or CBOR array) rather
+	 * than a single document.
+	 */
+	public boolean isList(byte[] payload, PayloadFormat format) {
+		if (payload == null || payload.length == 0) {
+			return false;
+		}
+
+		if (format == PayloadFormat.CBOR) {
+			return ((payload[0] & 0xFF) >>> 5) == 4;
+		}
+
+		for (byte b : payload) {
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				return (b == '[');
+			}
+		}
+
+		return false;
+	}
+
+	// ---------------- SensorData batches ----------------
+	//
+	// Batch envelopes for the cloud uplink. Both are written in a single
+	// streaming pass.
+	//
+	// JSON: an array of SensorData objects, as sensorDataToJsonBytes().
+	//
+	// Columnar: readings grouped into series by (name, typeID, locationID),
+	// with parallel timestamp and value arrays, e.g.
+	// {"count":3,"series":[{"name":"TempSensor","typeID":1,"locationID":"gatewaydevice001",
+	//   "timeStamps":[...],"values":[...]}]}
+
+	public byte[] sensorDataListToJsonBytes(List<SensorData> dataList) {
+		if (dataList == null) {
+			return null;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(dataList.size() * 160 + 2);
+
+		try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+			writer.beginArray();
+
+			for (SensorData data : dataList) {
+				this.gson.toJson(data, SensorData.class, writer);
+			}
+
+			writer.endArray();
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to encode SensorData batch", e);
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	public List<SensorData> jsonBytesToSensorDataList(byte[] jsonData) {
+		SensorData[] dataArray = fromJsonBytes(
+			jsonData, 0, (jsonData != null ? jsonData.length : 0), SensorData[].class);
+
+		return (dataArray != null ? Arrays.asList(dataArray) : null);
+	}
+
+	public byte[] sensorDataListToColumnarJsonBytes(List<SensorData> dataList) {
+		if (dataList == null) {
+			return null;
+		}
+
+		// group by series, keeping first-seen order
+		Map<String, List<SensorData>> seriesMap = new LinkedHashMap<>();
+
+		for (SensorData data : dataList) {
+			String seriesKey = data.getName() + '\u0000' + data.getTypeID() + '\u0000' + data.getLocationID();
+			seriesMap.computeIfAbsent(seriesKey, k -> new ArrayList<>()).add(data);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(dataList.size() * 24 + 128);
+
+		try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+			writer.beginObject();
+			writer.name("count").value(dataList.size());
+			writer.name("series").beginArray();
+
+			for (List<SensorData> series : seriesMap.values()) {
+				SensorData first = series.get(0);
+
+				writer.beginObject();
+				writer.name("name").value(first.getName());
+				writer.name("typeID").value(first.getTypeID());
+				writer.name("locationID").value(first.getLocationID());
+
+				writer.name("timeStamps").beginArray();
+
+				for (SensorData data : series) {
+					writer.value(data.getTimeStampMillis());
+				}
+
+				writer.endArray();
+				writer.name("values").beginArray();
+
+				for (SensorData data : series) {
+					writer.value(data.getValue());
+				}
+
+				writer.endArray();
+				writer.endObject();
+			}
+
+			writer.endArray();
+			writer.endObject();
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to encode columnar SensorData batch", e);
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	// ---------------- private methods ----------------
+
+	private byte[] toJsonBytes(Object data) {
+		if (data == null) {
+			return null;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+		try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+			this.gson.toJson(data, writer);
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to encode JSON bytes: " + data.getClass().getSimpleName(), e);
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	private <T> T fromJsonBytes(ByteBuffer jsonData, Class<T> type) {
+		if (jsonData == null || ! jsonData.hasRemaining()) {
+			return null;
+		}
+
+		if (jsonData.hasArray()) {
+			return fromJsonBytes(
+				jsonData.array(), jsonData.arrayOffset() + jsonData.position(), jsonData.remaining(), type);
+		}
+
+		// direct or read-only buffer - copy once
+		byte[] bytes = new byte[jsonData.remaining()];
+		jsonData.duplicate().get(bytes);
+
+		return fromJsonBytes(bytes, 0, bytes.length, type);
+	}
+
+	private <T> T fromJsonBytes(byte[] jsonData, int offset, int length, Class<T> type) {
+		if (jsonData == null || length <= 0) {
+			return null;
+		}
+
+		Reader reader = new InputStreamReader(
+			new ByteArrayInputStream(jsonData, offset, length), StandardCharsets.UTF_8);
+
+		return this.gson.fromJson(reader, type);
+	}
 }
@@ -0,0 +1,363 @@
+package programmingtheiot.data;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.ResourceNameEnum;
+
+/**
+ * Optional per-resource payload compression for MQTT links.
+ *
+ * Compression is signalled in the payload itself: a compressed payload
+ * starts with a one byte codec header (0x01 or 0x02), which can never be
+ * the first byte of a UTF-8 JSON document. Uncompressed payloads are sent
+ * unchanged, so peers that don't compress (e.g. the CDA) interoperate as
+ * before, and {@link #decode(byte[])} accepts either form regardless of
+ * local configuration.
+ *
+ * Codecs:
+ * <ul>
+ * <li>FAST - deflate at BEST_SPEED (LZ77 with minimal match search);</li>
+ * <li>DICT - deflate with a preset dictionary built from the PIOT JSON
+ *   schemas, which matters most for small messages where a plain LZ
+ *   codec has no history to reference.</li>
+ * </ul>
+ *
+ * Configured per resource in the connector's config section, e.g.
+ * 'compressedResources = CDA_SENSOR_MSG_RESOURCE:dict, GDA_SYSTEM_PERF_MSG_RESOURCE:fast'.
+ * Decoding stops at 'maxMessageSize' inflated bytes, so a small
+ * compressed payload can't expand without bound (a decompression bomb).
+ *
+ * Instances are thread-safe; (de)compressor state is cached per thread.
+ */
+public class PayloadCompressor
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(PayloadCompressor.class.getName());
+
+	public static final byte HEADER_FAST = 0x01;
+	public static final byte HEADER_DICT = 0x02;
+
+	/**
+	 * Preset dictionary (version 1). Both ends must use identical bytes, so
+	 * changes require a new header ID. Deflate finds matches near the end of
+	 * the dictionary most cheaply, so the most frequent message type is last.
+	 */
+	private static final byte[] DICTIONARY = (
+		"{\"command\":1,\"value\":0.0,\"isResponse\":true,\"stateData\":\"\",\"name\":\"HvacActuator\"," +
+		"\"typeID\":1,\"locationID\":\"constraineddevice001\",\"timeStamp\":1700000000000,\"statusCode\":0,\"hasError\":false}" +
+		"{\"sensorDataList\":[],\"sysPerfDataList\":[],\"name\":\"SystemStateData\"}" +
+		"{\"cpuUtil\":0.0,\"diskUtil\":0.0,\"memUtil\":0.0,\"name\":\"SystemPerformanceData\",\"typeID\":0," +
+		"\"locationID\":\"gatewaydevice001\",\"timeStamp\":1700000000000,\"statusCode\":0,\"hasError\":false}" +
+		"\"name\":\"CpuUtil\"\"name\":\"MemUtil\"\"name\":\"HumiditySensor\"\"name\":\"PressureSensor\"" +
+		"{\"value\":0.0,\"name\":\"TempSensor\",\"typeID\":1,\"locationID\":\"constraineddevice001\"," +
+		"\"timeStamp\":1700000000000,\"statusCode\":0,\"hasError\":false}"
+		).getBytes(StandardCharsets.UTF_8);
+
+	// deflate state is expensive to create, so it is reused per thread
+	private static final ThreadLocal<Deflater> _FastDeflater =
+		ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+	private static final ThreadLocal<Deflater> _DictDeflater =
+		ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+	private static final ThreadLocal<Inflater> _Inflater =
+		ThreadLocal.withInitial(() -> new Inflater(true));
+	private static final ThreadLocal<byte[]> _Buffer =
+		ThreadLocal.withInitial(() -> new byte[4096]);
+
+	/**
+	 * Supported codecs.
+	 */
+	public enum Codec
+	{
+		NONE, FAST, DICT;
+
+		public static Codec fromName(String name)
+		{
+			for (Codec codec : values()) {
+				if (codec.name().equalsIgnoreCase(name)) {
+					return codec;
+				}
+			}
+
+			return null;
+		}
+	}
+
+
+	// private var's
+
+	private Map<ResourceNameEnum, Codec> codecMap = new EnumMap<>(ResourceNameEnum.class);
+	private int minPayloadSize = ConfigConst.DEFAULT_COMPRESSION_MIN_BYTES;
+	private int maxMessageSize = ConfigConst.DEFAULT_MAX_MESSAGE_SIZE;
+
+
+	// constructors
+
+	/**
+	 * Constructor. Reads the 'compressedResources', 'compressionMinBytes'
+	 * and 'maxMessageSize' settings from the given section.
+	 *
+	 * @param configSectionName The connector's config section name.
+	 */
+	public PayloadCompressor(String configSectionName)
+	{
+		super();
+
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		this.minPayloadSize = configUtil.getInteger(
+			configSectionName, ConfigConst.COMPRESSION_MIN_BYTES_KEY, ConfigConst.DEFAULT_COMPRESSION_MIN_BYTES);
+		this.maxMessageSize = configUtil.getInteger(
+			configSectionName, ConfigConst.MAX_MESSAGE_SIZE_KEY, ConfigConst.DEFAULT_MAX_MESSAGE_SIZE);
+
+		parseResourceCodecs(configUtil.getProperty(configSectionName, ConfigConst.COMPRESSED_RESOURCES_KEY));
+	}
+
+	/**
+	 * Constructor for explicit configuration.
+	 *
+	 * @param codecMap The codec to use per resource.
+	 * @param minPayloadSize Payloads smaller than this are never compressed.
+	 */
+	public PayloadCompressor(Map<ResourceNameEnum, Codec> codecMap, int minPayloadSize)
+	{
+		super();
+
+		if (codecMap != null) {
+			this.codecMap.putAll(codecMap);
+		}
+
+		this.minPayloadSize = minPayloadSize;
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if compression is enabled for at least one resource.
+	 *
+	 * @return boolean
+	 */
+	public boolean isEnabled()
+	{
+		return ! this.codecMap.isEmpty();
+	}
+
+	/**
+	 * Returns the configured codec for the resource.
+	 *
+	 * @param resource The resource.
+	 * @return Codec The codec, or NONE.
+	 */
+	public Codec getCodec(ResourceNameEnum resource)
+	{
+		Codec codec = (resource != null ? this.codecMap.get(resource) : null);
+
+		return (codec != null ? codec : Codec.NONE);
+	}
+
+	/**
+	 * Compresses the payload using the resource's configured codec. The
+	 * payload is returned unchanged if compression is not enabled for the
+	 * resource, the payload is below the minimum size, or compression
+	 * would not make it smaller.
+	 *
+	 * @param resource The resource the payload is published to.
+	 * @param payload The payload.
+	 * @return byte[] The payload to send.
+	 */
+	public byte[] encode(ResourceNameEnum resource, byte[] payload)
+	{
+		if (payload == null || payload.length < this.minPayloadSize) {
+			return payload;
+		}
+
+		return encode(getCodec(resource), payload);
+	}
+
+	/**
+	 * Compresses the payload with the given codec.
+	 *
+	 * @param codec The codec.
+	 * @param payload The payload.
+	 * @return byte[] The payload to send.
+	 */
+	public static byte[] encode(Codec codec, byte[] payload)
+	{
+		if (payload == null || codec == null || codec == Codec.NONE) {
+			return payload;
+		}
+
+		Deflater deflater = (codec == Codec.DICT ? _DictDeflater.get() : _FastDeflater.get());
+		deflater.reset();
+
+		if (codec == Codec.DICT) {
+			deflater.setDictionary(DICTIONARY);
+		}
+
+		deflater.setInput(payload);
+		deflater.finish();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 2 + 16);
+		out.write(codec == Codec.DICT ? HEADER_DICT : HEADER_FAST);
+
+		byte[] buf = _Buffer.get();
+
+		while (! deflater.finished()) {
+			int len = deflater.deflate(buf);
+			out.write(buf, 0, len);
+
+			if (out.size() >= payload.length) {
+				// not worth it
+				return payload;
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the largest size a received payload may inflate to.
+	 *
+	 * @return int
+	 */
+	public int getMaxMessageSize()
+	{
+		return this.maxMessageSize;
+	}
+
+	/**
+	 * Decompresses the payload, limited to the configured max message size.
+	 *
+	 * @param payload The received payload.
+	 * @return byte[] The decoded payload, or null if it is corrupt.
+	 * @throws IllegalArgumentException If it inflates beyond the max message size.
+	 * @see #decode(byte[], int)
+	 */
+	public byte[] decodePayload(byte[] payload)
+	{
+		return decode(payload, this.maxMessageSize);
+	}
+
+	/**
+	 * Decompresses the payload, limited to the default max message size.
+	 *
+	 * @param payload The received payload.
+	 * @return byte[] The decoded payload, or null if it is corrupt.
+	 * @throws IllegalArgumentException If it inflates beyond the default max message size.
+	 * @see #decode(byte[], int)
+	 */
+	public static byte[] decode(byte[] payload)
+	{
+		return decode(payload, ConfigConst.DEFAULT_MAX_MESSAGE_SIZE);
+	}
+
+	/**
+	 * Decompresses the payload if it carries a compression header;
+	 * otherwise returns it unchanged.
+	 *
+	 * @param payload The received payload.
+	 * @param maxSize The largest decoded size accepted.
+	 * @return byte[] The decoded payload, or null if it is corrupt.
+	 * @throws IllegalArgumentException If it inflates beyond maxSize bytes.
+	 */
+	public static byte[] decode(byte[] payload, int maxSize)
+	{
+		if (! isCompressed(payload)) {
+			return payload;
+		}
+
+		Inflater inflater = _Inflater.get();
+		inflater.reset();
+
+		if (payload[0] == HEADER_DICT) {
+			inflater.setDictionary(DICTIONARY);
+		}
+
+		inflater.setInput(payload, 1, payload.length - 1);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(payload.length * 4, Math.max(0, maxSize)));
+		byte[] buf = _Buffer.get();
+
+		try {
+			while (! inflater.finished()) {
+				int len = inflater.inflate(buf);
+
+				if (len == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new DataFormatException("Truncated compressed payload");
+				}
+
+				if (out.size() + len > maxSize) {
+					throw new IllegalArgumentException(
+						"Compressed payload of " + payload.length + " bytes inflates beyond " + maxSize + " bytes");
+				}
+
+				out.write(buf, 0, len);
+			}
+		} catch (DataFormatException e) {
+			_Logger.log(Level.WARNING, "Failed to decompress payload", e);
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns true if the payload carries a compression header.
+	 *
+	 * @param payload The payload.
+	 * @return boolean
+	 */
+	public static boolean isCompressed(byte[] payload)
+	{
+		return (payload != null && payload.length > 1 &&
+			(payload[0] == HEADER_FAST || payload[0] == HEADER_DICT));
+	}
+
+
+	// private methods
+
+	private void parseResourceCodecs(String value)
+	{
+		if (value == null || value.trim().isEmpty()) {
+			return;
+		}
+
+		for (String entry : value.split(",")) {
+			String[] parts = entry.trim().split(":");
+
+			if (parts[0].isEmpty()) {
+				continue;
+			}
+
+			try {
+				ResourceNameEnum resource = ResourceNameEnum.valueOf(parts[0].trim());
+				Codec codec = (parts.length > 1 ? Codec.fromName(parts[1].trim()) : Codec.DICT);
+
+				if (codec == null) {
+					_Logger.warning("Unknown compression codec: " + entry + ". Using DICT.");
+					codec = Codec.DICT;
+				}
+
+				if (codec != Codec.NONE) {
+					this.codecMap.put(resource, codec);
+				}
+			} catch (IllegalArgumentException e) {
+				_Logger.warning("Unknown resource in compression config: " + entry);
+			}
+		}
+
+		_Logger.info("Payload compression enabled: " + this.codecMap);
+	}
+}
@@ -0,0 +1,76 @@
+package programmingtheiot.data;
+
+/**
+ * Payload encodings for PIOT data messages, with their CoAP
+ * Content-Format numbers.
+ */
+public enum PayloadFormat
+{
+	JSON(50), CBOR(60);
+
+	private final int contentFormat;
+
+	private PayloadFormat(int contentFormat)
+	{
+		this.contentFormat = contentFormat;
+	}
+
+	/**
+	 * Returns the CoAP Content-Format number (application/json = 50,
+	 * application/cbor = 60).
+	 *
+	 * @return int
+	 */
+	public int getContentFormat()
+	{
+		return this.contentFormat;
+	}
+
+	/**
+	 * Returns the format for the CoAP Content-Format number.
+	 *
+	 * @param contentFormat The Content-Format number.
+	 * @return PayloadFormat The format, or null if it isn't supported.
+	 */
+	public static PayloadFormat fromContentFormat(int contentFormat)
+	{
+		for (PayloadFormat format : values()) {
+			if (format.contentFormat == contentFormat) {
+				return format;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the format with the given name (case-insensitive).
+	 *
+	 * @param name The name, e.g. 'cbor'.
+	 * @return PayloadFormat The format, or null if unknown.
+	 */
+	public static PayloadFormat fromName(String name)
+	{
+		for (PayloadFormat format : values()) {
+			if (format.name().equalsIgnoreCase(name)) {
+				return format;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the format of a payload from its first byte, for links
+	 * without a Content-Format (e.g. MQTT). A CBOR map or array header can
+	 * never start a JSON document.
+	 *
+	 * @param payload The payload.
+	 * @return PayloadFormat CBOR if the payload starts with a CBOR map or
+	 * array header; JSON otherwise.
+	 */
+	public static PayloadFormat detect(byte[] payload)
+	{
+		return (CborCodec.isEncoded(payload) ? CBOR : JSON);
+	}
+}
@@ -0,0 +1,664 @@
+package programmingtheiot.data;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Columnar batch of TimeAndValuePayloadData points for one series, backed
+ * by parallel timestamp and value arrays, for bulk cloud ingestion.
+ *
+ * Points are added without creating a per-point object, and the encoders
+ * write straight into a ByteBuffer without creating a per-point String.
+ *
+ * JSON: an array of series objects, e.g.
+ * [{"name":"TempSensor","typeID":1,"locationID":"gatewaydevice001","count":2,
+ *   "timeStamps":[1700000000000,1700000001000],"values":[22.5,22.75]}].
+ * Values are written as the shortest decimal (up to 6 places) that reads
+ * back as the same float, falling back to Float.toString(). NaN and
+ * infinite values can't be written as JSON. Read with
+ * DataUtil.jsonBytesToTimeAndValuePayloadBatchList().
+ *
+ * Binary: {@link #HEADER}, a version byte, the series count and, per
+ * series, its name, typeID, locationID, point count, first timestamp,
+ * zig-zag varint timestamp deltas and the raw IEEE 754 float values.
+ *
+ * NOTE: Not thread-safe.
+ */
+public class TimeAndValuePayloadBatch
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(TimeAndValuePayloadBatch.class.getName());
+
+	public static final byte HEADER = 0x54;
+	public static final byte VERSION = 0x01;
+
+	public static final int DEFAULT_CAPACITY = 16;
+
+	// longest long is 20 chars; longest value is 1 + 15 digits + '.' + '0'
+	private static final int MAX_JSON_POINT_SIZE = 20 + 1 + 18 + 1;
+	private static final int MAX_BINARY_POINT_SIZE = 10 + 4;
+	private static final int MAX_DECIMALS = 6;
+	private static final double MAX_SCALED_VALUE = 1.0e15;
+	private static final double[] POW10 = { 1.0, 10.0, 100.0, 1000.0, 10000.0, 100000.0, 1000000.0 };
+
+
+	// private var's
+
+	private String name = "";
+	private int typeID = 0;
+	private String locationID = "";
+
+	private int count = 0;
+	private long[] timeStamps;
+	private float[] values;
+
+
+	// constructors
+
+	/**
+	 * Default.
+	 *
+	 */
+	public TimeAndValuePayloadBatch()
+	{
+		this(null, 0, null, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name The series name.
+	 * @param typeID The series type ID.
+	 * @param locationID The series location ID.
+	 * @param capacity The initial number of points the arrays can hold.
+	 */
+	public TimeAndValuePayloadBatch(String name, int typeID, String locationID, int capacity)
+	{
+		super();
+
+		setName(name);
+		setTypeID(typeID);
+		setLocationID(locationID);
+
+		this.timeStamps = new long[Math.max(1, capacity)];
+		this.values = new float[this.timeStamps.length];
+	}
+
+
+	// public static methods
+
+	/**
+	 * Groups the readings into batches by (name, typeID, locationID), in
+	 * first-seen series order.
+	 *
+	 * @param dataList The readings.
+	 * @return List The batches.
+	 */
+	public static List<TimeAndValuePayloadBatch> fromSensorData(List<SensorData> dataList)
+	{
+		Map<String, TimeAndValuePayloadBatch> seriesMap = new LinkedHashMap<>();
+
+		if (dataList != null) {
+			for (SensorData data : dataList) {
+				String seriesKey = data.getName() + '\u0000' + data.getTypeID() + '\u0000' + data.getLocationID();
+
+				seriesMap.computeIfAbsent(seriesKey, k -> new TimeAndValuePayloadBatch(
+					data.getName(), data.getTypeID(), data.getLocationID(), DEFAULT_CAPACITY)).add(data);
+			}
+		}
+
+		return new ArrayList<>(seriesMap.values());
+	}
+
+	/**
+	 * Encodes the batches as a JSON array.
+	 *
+	 * @param batchList The batches.
+	 * @return byte[] The UTF-8 JSON, or null on failure.
+	 */
+	public static byte[] toJsonBytes(List<TimeAndValuePayloadBatch> batchList)
+	{
+		if (batchList == null) {
+			return null;
+		}
+
+		int maxSize = 2;
+
+		for (TimeAndValuePayloadBatch batch : batchList) {
+			maxSize += batch.getMaxJsonSize() + 1;
+		}
+
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(maxSize);
+			buf.put((byte) '[');
+
+			for (int i = 0; i < batchList.size(); i++) {
+				if (i > 0) {
+					buf.put((byte) ',');
+				}
+
+				batchList.get(i).writeJson(buf);
+			}
+
+			buf.put((byte) ']');
+
+			return Arrays.copyOf(buf.array(), buf.position());
+		} catch (IllegalArgumentException | BufferOverflowException e) {
+			_Logger.log(Level.WARNING, "Failed to encode TimeAndValuePayloadBatch as JSON", e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Encodes the batches in the binary format.
+	 *
+	 * @param batchList The batches.
+	 * @return byte[] The payload, or null on failure.
+	 */
+	public static byte[] toBinaryBytes(List<TimeAndValuePayloadBatch> batchList)
+	{
+		if (batchList == null) {
+			return null;
+		}
+
+		int maxSize = 2 + 5;
+
+		for (TimeAndValuePayloadBatch batch : batchList) {
+			maxSize += batch.getMaxBinarySize();
+		}
+
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(maxSize);
+			buf.put(HEADER).put(VERSION);
+			putVarLong(buf, batchList.size());
+
+			for (TimeAndValuePayloadBatch batch : batchList) {
+				batch.writeBinary(buf);
+			}
+
+			return Arrays.copyOf(buf.array(), buf.position());
+		} catch (BufferOverflowException e) {
+			_Logger.log(Level.WARNING, "Failed to encode TimeAndValuePayloadBatch as binary", e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Decodes a binary payload.
+	 *
+	 * @param payload The payload.
+	 * @return List The batches, or null if the payload isn't valid.
+	 */
+	public static List<TimeAndValuePayloadBatch> fromBinaryBytes(byte[] payload)
+	{
+		if (! isBinaryEncoded(payload)) {
+			return null;
+		}
+
+		try {
+			ByteBuffer buf = ByteBuffer.wrap(payload, 2, payload.length - 2);
+			int seriesCount = getCount(buf, payload.length);
+			List<TimeAndValuePayloadBatch> batchList = new ArrayList<>(seriesCount);
+
+			for (int i = 0; i < seriesCount; i++) {
+				String name = getString(buf);
+				int typeID = (int) zigZagDecode(getVarLong(buf));
+				String locationID = getString(buf);
+				int count = getCount(buf, payload.length);
+
+				TimeAndValuePayloadBatch batch = new TimeAndValuePayloadBatch(name, typeID, locationID, count);
+
+				if (count > 0) {
+					long timeStamp = buf.getLong();
+
+					for (int j = 0; j < count; j++) {
+						if (j > 0) {
+							timeStamp += zigZagDecode(getVarLong(buf));
+						}
+
+						batch.timeStamps[j] = timeStamp;
+					}
+
+					for (int j = 0; j < count; j++) {
+						batch.values[j] = buf.getFloat();
+					}
+
+					batch.count = count;
+				}
+
+				batchList.add(batch);
+			}
+
+			return batchList;
+		} catch (BufferUnderflowException | IllegalArgumentException e) {
+			_Logger.log(Level.WARNING, "Failed to decode TimeAndValuePayloadBatch", e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns true if the payload starts with the binary format header.
+	 *
+	 * @param payload The payload.
+	 * @return boolean
+	 */
+	public static boolean isBinaryEncoded(byte[] payload)
+	{
+		return (payload != null && payload.length >= 3 && payload[0] == HEADER && payload[1] == VERSION);
+	}
+
+
+	// public methods
+
+	/**
+	 * Adds a point, growing the arrays if needed.
+	 *
+	 * @param timeStampMillis The timestamp, in milliseconds.
+	 * @param value The value.
+	 */
+	public void add(long timeStampMillis, float value)
+	{
+		if (this.count == this.timeStamps.length) {
+			int capacity = this.count + (this.count >> 1) + 1;
+
+			this.timeStamps = Arrays.copyOf(this.timeStamps, capacity);
+			this.values = Arrays.copyOf(this.values, capacity);
+		}
+
+		this.timeStamps[this.count] = timeStampMillis;
+		this.values[this.count] = value;
+		++this.count;
+	}
+
+	public void add(SensorData data)
+	{
+		if (data != null) {
+			add(data.getTimeStampMillis(), data.getValue());
+		}
+	}
+
+	public void add(TimeAndValuePayloadData data)
+	{
+		if (data != null) {
+			add(data.getTimeStampMillis(), data.getValue());
+		}
+	}
+
+	/**
+	 * Removes all points, keeping the arrays for reuse.
+	 */
+	public void clear()
+	{
+		this.count = 0;
+	}
+
+	/**
+	 * Returns the point as a new TimeAndValuePayloadData.
+	 *
+	 * @param index The point index.
+	 * @return TimeAndValuePayloadData
+	 */
+	public TimeAndValuePayloadData get(int index)
+	{
+		TimeAndValuePayloadData data = new TimeAndValuePayloadData();
+		data.setTimeStampMillis(getTimeStampMillis(index));
+		data.setValue(getValue(index));
+
+		return data;
+	}
+
+	public int size()
+	{
+		return this.count;
+	}
+
+	public long getTimeStampMillis(int index)
+	{
+		checkIndex(index);
+
+		return this.timeStamps[index];
+	}
+
+	public float getValue(int index)
+	{
+		checkIndex(index);
+
+		return this.values[index];
+	}
+
+	public String getName()
+	{
+		return this.name;
+	}
+
+	public int getTypeID()
+	{
+		return this.typeID;
+	}
+
+	public String getLocationID()
+	{
+		return this.locationID;
+	}
+
+	public void setName(String name)
+	{
+		this.name = (name != null ? name : "");
+	}
+
+	public void setTypeID(int typeID)
+	{
+		this.typeID = typeID;
+	}
+
+	public void setLocationID(String locationID)
+	{
+		this.locationID = (locationID != null ? locationID : "");
+	}
+
+	/**
+	 * Returns an upper bound on the size of {@link #writeJson(ByteBuffer)}'s output.
+	 *
+	 * @return int
+	 */
+	public int getMaxJsonSize()
+	{
+		return 96 + (this.name.length() + this.locationID.length()) * 6 + this.count * MAX_JSON_POINT_SIZE;
+	}
+
+	/**
+	 * Returns an upper bound on the size of {@link #writeBinary(ByteBuffer)}'s output.
+	 *
+	 * @return int
+	 */
+	public int getMaxBinarySize()
+	{
+		return 5 * 4 + 8 + (this.name.length() + this.locationID.length()) * 3 + this.count * MAX_BINARY_POINT_SIZE;
+	}
+
+	/**
+	 * Writes this series as a JSON object.
+	 *
+	 * @param buf The buffer, with at least getMaxJsonSize() bytes remaining.
+	 * @throws IllegalArgumentException If a value is NaN or infinite.
+	 * @throws BufferOverflowException If the buffer is too small.
+	 */
+	public void writeJson(ByteBuffer buf)
+	{
+		putAscii(buf, "{\"name\":");
+		putJsonString(buf, this.name);
+		putAscii(buf, ",\"typeID\":");
+		putLong(buf, this.typeID);
+		putAscii(buf, ",\"locationID\":");
+		putJsonString(buf, this.locationID);
+		putAscii(buf, ",\"count\":");
+		putLong(buf, this.count);
+		putAscii(buf, ",\"timeStamps\":[");
+
+		for (int i = 0; i < this.count; i++) {
+			if (i > 0) {
+				buf.put((byte) ',');
+			}
+
+			putLong(buf, this.timeStamps[i]);
+		}
+
+		putAscii(buf, "],\"values\":[");
+
+		for (int i = 0; i < this.count; i++) {
+			if (i > 0) {
+				buf.put((byte) ',');
+			}
+
+			putFloat(buf, this.values[i]);
+		}
+
+		putAscii(buf, "]}");
+	}
+
+	/**
+	 * Writes this series in the binary format (without the payload header).
+	 *
+	 * @param buf The buffer, with at least getMaxBinarySize() bytes remaining.
+	 * @throws BufferOverflowException If the buffer is too small.
+	 */
+	public void writeBinary(ByteBuffer buf)
+	{
+		putString(buf, this.name);
+		putVarLong(buf, zigZagEncode(this.typeID));
+		putString(buf, this.locationID);
+		putVarLong(buf, this.count);
+
+		if (this.count > 0) {
+			buf.putLong(this.timeStamps[0]);
+
+			for (int i = 1; i < this.count; i++) {
+				putVarLong(buf, zigZagEncode(this.timeStamps[i] - this.timeStamps[i - 1]));
+			}
+
+			for (int i = 0; i < this.count; i++) {
+				buf.putFloat(this.values[i]);
+			}
+		}
+	}
+
+	/**
+	 * Returns a string representation of this instance.
+	 *
+	 * @return String The string representing this instance, returned in CSV 'key=value' format.
+	 */
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(super.toString());
+
+		sb.append(",name=").append(this.name);
+		sb.append(",typeID=").append(this.typeID);
+		sb.append(",locationID=").append(this.locationID);
+		sb.append(",count=").append(this.count);
+
+		return sb.toString();
+	}
+
+
+	// private methods
+
+	private void checkIndex(int index)
+	{
+		if (index < 0 || index >= this.count) {
+			throw new IndexOutOfBoundsException("Index " + index + ", size " + this.count);
+		}
+	}
+
+	private static void putAscii(ByteBuffer buf, String str)
+	{
+		for (int i = 0; i < str.length(); i++) {
+			buf.put((byte) str.charAt(i));
+		}
+	}
+
+	private static void putJsonString(ByteBuffer buf, String str)
+	{
+		buf.put((byte) '"');
+
+		for (int i = 0; i < str.length(); i++) {
+			char c = str.charAt(i);
+
+			if (c == '"' || c == '\\') {
+				buf.put((byte) '\\').put((byte) c);
+			} else if (c < 0x20) {
+				putAscii(buf, String.format("\\u%04x", (int) c));
+			} else if (c < 0x80) {
+				buf.put((byte) c);
+			} else {
+				// rare - series names are normally ASCII
+				int end = (Character.isHighSurrogate(c) && i + 1 < str.length() ? i + 2 : i + 1);
+				buf.put(str.substring(i, end).getBytes(StandardCharsets.UTF_8));
+				i = end - 1;
+			}
+		}
+
+		buf.put((byte) '"');
+	}
+
+	/**
+	 * Writes the decimal digits of the value, without creating a String.
+	 */
+	private static void putLong(ByteBuffer buf, long value)
+	{
+		if (value == Long.MIN_VALUE) {
+			putAscii(buf, Long.toString(value));
+			return;
+		}
+
+		if (value < 0) {
+			buf.put((byte) '-');
+			value = -value;
+		}
+
+		putDigits(buf, value, 1);
+	}
+
+	/**
+	 * Writes at least minDigits digits of the (non-negative) value, zero-padded.
+	 */
+	private static void putDigits(ByteBuffer buf, long value, int minDigits)
+	{
+		int digits = 1;
+
+		for (long v = value / 10; v > 0; v /= 10) {
+			++digits;
+		}
+
+		digits = Math.max(digits, minDigits);
+
+		int end = buf.position() + digits;
+
+		for (int pos = end - 1; pos >= end - digits; pos--) {
+			buf.put(pos, (byte) ('0' + (value % 10)));
+			value /= 10;
+		}
+
+		buf.position(end);
+	}
+
+	/**
+	 * Writes the shortest decimal with up to MAX_DECIMALS places that reads
+	 * back as the same float; Float.toString() otherwise.
+	 */
+	private static void putFloat(ByteBuffer buf, float value)
+	{
+		if (Float.isNaN(value) || Float.isInfinite(value)) {
+			throw new IllegalArgumentException("JSON can't represent value: " + value);
+		}
+
+		for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+			double scaled = Math.abs((double) value) * POW10[decimals];
+
+			if (scaled >= MAX_SCALED_VALUE) {
+				break;
+			}
+
+			long mantissa = Math.round(scaled);
+
+			if ((float) (mantissa / POW10[decimals]) == Math.abs(value)) {
+				if (value < 0.0f && mantissa != 0L) {
+					buf.put((byte) '-');
+				}
+
+				if (decimals == 0) {
+					putDigits(buf, mantissa, 1);
+				} else {
+					putDigits(buf, mantissa / (long) POW10[decimals], 1);
+					buf.put((byte) '.');
+					putDigits(buf, mantissa % (long) POW10[decimals], decimals);
+				}
+
+				return;
+			}
+		}
+
+		putAscii(buf, Float.toString(value));
+	}
+
+	private static void putString(ByteBuffer buf, String str)
+	{
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+
+		putVarLong(buf, bytes.length);
+		buf.put(bytes);
+	}
+
+	private static String getString(ByteBuffer buf)
+	{
+		int length = getCount(buf, buf.remaining());
+		String str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, StandardCharsets.UTF_8);
+
+		buf.position(buf.position() + length);
+
+		return str;
+	}
+
+	private static void putVarLong(ByteBuffer buf, long value)
+	{
+		while ((value & ~0x7FL) != 0L) {
+			buf.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		buf.put((byte) value);
+	}
+
+	private static long getVarLong(ByteBuffer buf)
+	{
+		long value = 0L;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = buf.get();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IllegalArgumentException("Malformed varint");
+	}
+
+	/**
+	 * Reads a count, rejecting values that can't fit in the payload.
+	 */
+	private static int getCount(ByteBuffer buf, int limit)
+	{
+		long count = getVarLong(buf);
+
+		if (count < 0L || count > limit) {
+			throw new IllegalArgumentException("Invalid count: " + count);
+		}
+
+		return (int) count;
+	}
+
+	private static long zigZagEncode(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long zigZagDecode(long value)
+	{
+		return (value >>> 1) ^ -(value & 1L);
+	}
+}
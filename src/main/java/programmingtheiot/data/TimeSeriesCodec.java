@@ -0,0 +1,508 @@
+package programmingtheiot.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gorilla-style time-series codec for (timestamp, float value) series.
+ *
+ * Timestamps (milliseconds) are stored as delta-of-deltas, so a series
+ * with a regular sample interval costs one bit per timestamp. Values are
+ * XORed with their predecessor; an unchanged value costs one bit, and a
+ * small change stores only the meaningful (non-zero) XOR bits.
+ *
+ * Timestamp delta-of-delta encoding:
+ * <ul>
+ * <li>'0' - 0;</li>
+ * <li>'10' + 7 bits - [-63, 64];</li>
+ * <li>'110' + 9 bits - [-255, 256];</li>
+ * <li>'1110' + 12 bits - [-2047, 2048];</li>
+ * <li>'1111' + 64 bits - anything else.</li>
+ * </ul>
+ *
+ * Value encoding (XOR with the previous value's float bits):
+ * <ul>
+ * <li>'0' - same value;</li>
+ * <li>'10' + meaningful bits - the XOR fits the previous leading / trailing
+ *   zero window;</li>
+ * <li>'11' + 5 bits leading zeros + 5 bits (length - 1) + meaningful bits.</li>
+ * </ul>
+ *
+ * A payload starts with {@link #HEADER} (which is neither a
+ * PayloadCompressor header nor the first byte of a JSON document) and a
+ * version byte, followed by the series count and, per series, its name,
+ * typeID, locationID and bit-packed block. SensorData readings are grouped
+ * by (name, typeID, locationID); decoding returns them grouped by series,
+ * in first-seen series order.
+ */
+public class TimeSeriesCodec
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(TimeSeriesCodec.class.getName());
+
+	public static final byte HEADER = 0x47;
+	public static final byte VERSION = 0x01;
+
+
+	// constructors
+
+	private TimeSeriesCodec()
+	{
+		super();
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if the payload was produced by this codec.
+	 *
+	 * @param payload The payload.
+	 * @return boolean
+	 */
+	public static boolean isEncoded(byte[] payload)
+	{
+		return (payload != null && payload.length >= 2 && payload[0] == HEADER);
+	}
+
+	/**
+	 * Encodes SensorData readings, grouped by series.
+	 *
+	 * @param dataList The readings.
+	 * @return byte[] The encoded payload, or null if dataList is null.
+	 */
+	public static byte[] encodeSensorData(List<SensorData> dataList)
+	{
+		if (dataList == null) {
+			return null;
+		}
+
+		// group by series, keeping first-seen order
+		Map<String, List<SensorData>> seriesMap = new LinkedHashMap<>();
+
+		for (SensorData data : dataList) {
+			String seriesKey = data.getName() + '\u0000' + data.getTypeID() + '\u0000' + data.getLocationID();
+			seriesMap.computeIfAbsent(seriesKey, k -> new ArrayList<>()).add(data);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(dataList.size() * 2 + 64);
+
+		try (DataOutputStream dataOut = new DataOutputStream(out)) {
+			dataOut.writeByte(HEADER);
+			dataOut.writeByte(VERSION);
+			dataOut.writeInt(seriesMap.size());
+
+			for (List<SensorData> series : seriesMap.values()) {
+				SensorData first = series.get(0);
+				long[] timeStamps = new long[series.size()];
+				float[] values = new float[series.size()];
+
+				for (int i = 0; i < timeStamps.length; i++) {
+					timeStamps[i] = series.get(i).getTimeStampMillis();
+					values[i] = series.get(i).getValue();
+				}
+
+				writeSeries(dataOut, first.getName(), first.getTypeID(), first.getLocationID(),
+					encodeBlock(timeStamps, values, timeStamps.length));
+			}
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to encode SensorData series", e);
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes SensorData readings.
+	 *
+	 * @param payload The encoded payload.
+	 * @return List The readings, or null if the payload is invalid.
+	 */
+	public static List<SensorData> decodeSensorData(byte[] payload)
+	{
+		List<SensorData> dataList = new ArrayList<>();
+
+		boolean isDecoded = decode(payload, (name, typeID, locationID, timeStamps, values, count) -> {
+			for (int i = 0; i < count; i++) {
+				SensorData data = new SensorData();
+				data.setName(name);
+				data.setTypeID(typeID);
+
+				if (locationID != null) {
+					data.setLocationID(locationID);
+				}
+
+				data.setValue(values[i]);
+
+				// last, as the setters above update the timestamp
+				data.setTimeStampMillis(timeStamps[i]);
+
+				dataList.add(data);
+			}
+		});
+
+		return (isDecoded ? dataList : null);
+	}
+
+	/**
+	 * Encodes time and value points as a single series.
+	 *
+	 * @param dataList The points.
+	 * @return byte[] The encoded payload, or null if dataList is null.
+	 */
+	public static byte[] encodeTimeAndValueData(List<TimeAndValuePayloadData> dataList)
+	{
+		if (dataList == null) {
+			return null;
+		}
+
+		long[] timeStamps = new long[dataList.size()];
+		float[] values = new float[dataList.size()];
+
+		for (int i = 0; i < timeStamps.length; i++) {
+			timeStamps[i] = dataList.get(i).getTimeStampMillis();
+			values[i] = dataList.get(i).getValue();
+		}
+
+		return encodeSeries(timeStamps, values, timeStamps.length);
+	}
+
+	/**
+	 * Decodes time and value points (of all series in the payload).
+	 *
+	 * @param payload The encoded payload.
+	 * @return List The points, or null if the payload is invalid.
+	 */
+	public static List<TimeAndValuePayloadData> decodeTimeAndValueData(byte[] payload)
+	{
+		List<TimeAndValuePayloadData> dataList = new ArrayList<>();
+
+		boolean isDecoded = decode(payload, (name, typeID, locationID, timeStamps, values, count) -> {
+			for (int i = 0; i < count; i++) {
+				TimeAndValuePayloadData data = new TimeAndValuePayloadData();
+				data.setTimeStampMillis(timeStamps[i]);
+				data.setValue(values[i]);
+
+				dataList.add(data);
+			}
+		});
+
+		return (isDecoded ? dataList : null);
+	}
+
+	/**
+	 * Encodes one unnamed series from parallel arrays.
+	 *
+	 * @param timeStamps The timestamps (milliseconds).
+	 * @param values The values.
+	 * @param count The number of points to encode.
+	 * @return byte[] The encoded payload.
+	 */
+	public static byte[] encodeSeries(long[] timeStamps, float[] values, int count)
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream(count * 2 + 32);
+
+		try (DataOutputStream dataOut = new DataOutputStream(out)) {
+			dataOut.writeByte(HEADER);
+			dataOut.writeByte(VERSION);
+			dataOut.writeInt(1);
+
+			writeSeries(dataOut, "", 0, "", encodeBlock(timeStamps, values, count));
+		} catch (IOException e) {
+			_Logger.log(Level.WARNING, "Failed to encode series", e);
+			return null;
+		}
+
+		return out.toByteArray();
+	}
+
+
+	// private methods
+
+	private static void writeSeries(
+		DataOutputStream dataOut, String name, int typeID, String locationID, byte[] block) throws IOException
+	{
+		dataOut.writeUTF(name != null ? name : "");
+		dataOut.writeInt(typeID);
+		dataOut.writeUTF(locationID != null ? locationID : "");
+		dataOut.writeInt(block.length);
+		dataOut.write(block);
+	}
+
+	private static boolean decode(byte[] payload, ISeriesHandler handler)
+	{
+		if (! isEncoded(payload) || payload[1] != VERSION) {
+			_Logger.warning("Not a time-series payload (or unsupported version).");
+			return false;
+		}
+
+		try (DataInputStream dataIn = new DataInputStream(new ByteArrayInputStream(payload, 2, payload.length - 2))) {
+			int seriesCount = dataIn.readInt();
+
+			for (int s = 0; s < seriesCount; s++) {
+				String name = dataIn.readUTF();
+				int typeID = dataIn.readInt();
+				String locationID = dataIn.readUTF();
+				byte[] block = new byte[dataIn.readInt()];
+
+				dataIn.readFully(block);
+
+				BitReader reader = new BitReader(block);
+				int count = (int) reader.readBits(32);
+				long[] timeStamps = new long[count];
+				float[] values = new float[count];
+
+				decodeBlock(reader, timeStamps, values, count);
+
+				handler.handleSeries(
+					name, typeID, (locationID.isEmpty() ? null : locationID), timeStamps, values, count);
+			}
+
+			return true;
+		} catch (IOException | RuntimeException e) {
+			_Logger.log(Level.WARNING, "Failed to decode time-series payload", e);
+			return false;
+		}
+	}
+
+	private static byte[] encodeBlock(long[] timeStamps, float[] values, int count)
+	{
+		// ~2 bits per regular point, plus headroom for irregular ones
+		BitWriter writer = new BitWriter(count * 2 + 16);
+		writer.writeBits(count, 32);
+
+		if (count == 0) {
+			return writer.toByteArray();
+		}
+
+		long prevTimeStamp = timeStamps[0];
+		long prevDelta = 0L;
+		int prevBits = Float.floatToRawIntBits(values[0]);
+		int prevLeading = -1;
+		int prevTrailing = 0;
+
+		writer.writeBits(prevTimeStamp, 64);
+		writer.writeBits(prevBits, 32);
+
+		for (int i = 1; i < count; i++) {
+			// timestamp
+			long delta = timeStamps[i] - prevTimeStamp;
+			long dod = delta - prevDelta;
+
+			if (dod == 0L) {
+				writer.writeBit(0);
+			} else if (dod >= -63L && dod <= 64L) {
+				writer.writeBits(0b10, 2);
+				writer.writeBits(dod + 63L, 7);
+			} else if (dod >= -255L && dod <= 256L) {
+				writer.writeBits(0b110, 3);
+				writer.writeBits(dod + 255L, 9);
+			} else if (dod >= -2047L && dod <= 2048L) {
+				writer.writeBits(0b1110, 4);
+				writer.writeBits(dod + 2047L, 12);
+			} else {
+				writer.writeBits(0b1111, 4);
+				writer.writeBits(dod, 64);
+			}
+
+			prevTimeStamp = timeStamps[i];
+			prevDelta = delta;
+
+			// value
+			int bits = Float.floatToRawIntBits(values[i]);
+			int xor = bits ^ prevBits;
+
+			if (xor == 0) {
+				writer.writeBit(0);
+			} else {
+				int leading = Integer.numberOfLeadingZeros(xor);
+				int trailing = Integer.numberOfTrailingZeros(xor);
+
+				if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+					writer.writeBits(0b10, 2);
+					writer.writeBits(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+				} else {
+					int length = 32 - leading - trailing;
+
+					writer.writeBits(0b11, 2);
+					writer.writeBits(leading, 5);
+					writer.writeBits(length - 1, 5);
+					writer.writeBits(xor >>> trailing, length);
+
+					prevLeading = leading;
+					prevTrailing = trailing;
+				}
+			}
+
+			prevBits = bits;
+		}
+
+		return writer.toByteArray();
+	}
+
+	private static void decodeBlock(BitReader reader, long[] timeStamps, float[] values, int count)
+	{
+		if (count == 0) {
+			return;
+		}
+
+		long prevTimeStamp = reader.readBits(64);
+		long prevDelta = 0L;
+		int prevBits = (int) reader.readBits(32);
+		int prevLeading = 0;
+		int prevTrailing = 0;
+
+		timeStamps[0] = prevTimeStamp;
+		values[0] = Float.intBitsToFloat(prevBits);
+
+		for (int i = 1; i < count; i++) {
+			// timestamp
+			long dod;
+
+			if (reader.readBit() == 0) {
+				dod = 0L;
+			} else if (reader.readBit() == 0) {
+				dod = reader.readBits(7) - 63L;
+			} else if (reader.readBit() == 0) {
+				dod = reader.readBits(9) - 255L;
+			} else if (reader.readBit() == 0) {
+				dod = reader.readBits(12) - 2047L;
+			} else {
+				dod = reader.readBits(64);
+			}
+
+			prevDelta += dod;
+			prevTimeStamp += prevDelta;
+			timeStamps[i] = prevTimeStamp;
+
+			// value
+			if (reader.readBit() == 1) {
+				if (reader.readBit() == 1) {
+					prevLeading = (int) reader.readBits(5);
+					prevTrailing = 32 - prevLeading - ((int) reader.readBits(5) + 1);
+				}
+
+				int length = 32 - prevLeading - prevTrailing;
+				int xor = (int) reader.readBits(length) << prevTrailing;
+
+				prevBits ^= xor;
+			}
+
+			values[i] = Float.intBitsToFloat(prevBits);
+		}
+	}
+
+
+	// inner types
+
+	private interface ISeriesHandler
+	{
+		void handleSeries(String name, int typeID, String locationID, long[] timeStamps, float[] values, int count);
+	}
+
+	/**
+	 * Appends bits, most significant first.
+	 */
+	private static class BitWriter
+	{
+		private byte[] buffer;
+		private int bitCount = 0;
+
+		BitWriter(int initialBytes)
+		{
+			this.buffer = new byte[Math.max(16, initialBytes)];
+		}
+
+		void writeBit(int bit)
+		{
+			ensureCapacity(1);
+
+			if (bit != 0) {
+				this.buffer[this.bitCount >>> 3] |= (byte) (0x80 >>> (this.bitCount & 7));
+			}
+
+			++this.bitCount;
+		}
+
+		void writeBits(long value, int numBits)
+		{
+			ensureCapacity(numBits);
+
+			while (numBits > 0) {
+				int bitOffset = this.bitCount & 7;
+				int chunk = Math.min(8 - bitOffset, numBits);
+				int bits = (int) (value >>> (numBits - chunk)) & ((1 << chunk) - 1);
+
+				this.buffer[this.bitCount >>> 3] |= (byte) (bits << (8 - bitOffset - chunk));
+				this.bitCount += chunk;
+				numBits -= chunk;
+			}
+		}
+
+		byte[] toByteArray()
+		{
+			return Arrays.copyOf(this.buffer, (this.bitCount + 7) >>> 3);
+		}
+
+		private void ensureCapacity(int numBits)
+		{
+			int requiredBytes = (this.bitCount + numBits + 7) >>> 3;
+
+			if (requiredBytes > this.buffer.length) {
+				this.buffer = Arrays.copyOf(this.buffer, Math.max(requiredBytes, this.buffer.length * 2));
+			}
+		}
+	}
+
+	/**
+	 * Reads bits, most significant first.
+	 */
+	private static class BitReader
+	{
+		private final byte[] buffer;
+		private int bitPos = 0;
+
+		BitReader(byte[] buffer)
+		{
+			this.buffer = buffer;
+		}
+
+		int readBit()
+		{
+			int bit = (this.buffer[this.bitPos >>> 3] >>> (7 - (this.bitPos & 7))) & 1;
+			++this.bitPos;
+
+			return bit;
+		}
+
+		long readBits(int numBits)
+		{
+			long value = 0L;
+
+			while (numBits > 0) {
+				int bitOffset = this.bitPos & 7;
+				int chunk = Math.min(8 - bitOffset, numBits);
+				int bits = (this.buffer[this.bitPos >>> 3] >>> (8 - bitOffset - chunk)) & ((1 << chunk) - 1);
+
+				value = (value << chunk) | bits;
+				this.bitPos += chunk;
+				numBits -= chunk;
+			}
+
+			return value;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package programmingtheiot.gda.app;
 
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -11,14 +12,18 @@ import programmingtheiot.common.ResourceNameEnum;
 
 import programmingtheiot.data.ActuatorData;
 import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.data.SystemStateData;
 
 import programmingtheiot.gda.connection.CloudClientConnector;
 import programmingtheiot.gda.connection.CloudClientFactory;
 import programmingtheiot.gda.connection.ICloudClient;
 import programmingtheiot.gda.connection.IPersistenceClient;
+import programmingtheiot.gda.connection.IPubSubClient;
 import programmingtheiot.gda.connection.MqttClientConnector;
+import programmingtheiot.gda.connection.Mqttv5ClientConnector;
 // import programmingtheiot.gda.connection.RedisPersistenceAdapter;  // Comment out if not available
 
 import programmingtheiot.gda.system.SystemPerformanceManager;
@@ -44,7 +49,7 @@ public class DeviceDataManager implements IDataMessageListener
     
     // Manager and client references
     private SystemPerformanceManager sysPerfManager = null;
-    private MqttClientConnector mqttClient = null;
+    private IPubSubClient mqttClient = null;
     private IPersistenceClient persistenceClient = null;
     private ICloudClient cloudClient = null;
     
@@ -80,7 +85,7 @@ public class DeviceDataManager implements IDataMessageListener
             ConfigConst.GATEWAY_DEVICE, ConfigConst.ENABLE_MQTT_CLIENT_KEY);
         
         if (this.enableMqttClient) {
-            this.mqttClient = new MqttClientConnector();
+            this.mqttClient = createMqttClient();
             this.mqttClient.setDataMessageListener(this);
             _Logger.info("MQTT client enabled and initialized.");
         } else {
@@ -139,7 +144,7 @@ public class DeviceDataManager implements IDataMessageListener
         
         // Initialize MQTT client if enabled
         if (this.enableMqttClient) {
-            this.mqttClient = new MqttClientConnector();
+            this.mqttClient = createMqttClient();
             this.mqttClient.setDataMessageListener(this);
         }
         
@@ -261,6 +266,9 @@ public class DeviceDataManager implements IDataMessageListener
                 } else {
                     _Logger.warning("Failed to disconnect from cloud service.");
                 }
+                
+                // Close the shared connections now rather than after the idle eviction delay
+                CloudClientFactory.getInstance().getCloudClientRegistry().shutdown();
             }
             
             // Unsubscribe and disconnect from CDA
@@ -362,8 +370,10 @@ public class DeviceDataManager implements IDataMessageListener
                             _Logger.info("Valid actuator command received. Forwarding to CDA: " + 
                                 actuatorData.getName() + " = " + actuatorData.getCommand());
                             
-                            // Convert back to JSON for transmission to CDA
-                            String jsonData = DataUtil.getInstance().actuatorDataToJson(actuatorData);
+                            // Re-encode for transmission to CDA, in the topic's format
+                            byte[] payload = DataUtil.getInstance().dataToBytes(
+                                actuatorData, (this.mqttClient != null ?
+                                    this.mqttClient.getPayloadFormat(resourceName) : PayloadFormat.JSON));
                             
                             // Send to CDA via MQTT
                             if (this.enableMqttClient && this.mqttClient != null && 
@@ -374,8 +384,8 @@ public class DeviceDataManager implements IDataMessageListener
                                     ConfigConst.DEFAULT_QOS_KEY, 
                                     ConfigConst.DEFAULT_QOS);
                                 
-                                _Logger.fine("Publishing actuator command to CDA via MQTT: " + jsonData);
-                                return this.mqttClient.publishMessage(resourceName, jsonData, qos);
+                                _Logger.fine("Publishing actuator command to CDA via MQTT: " + actuatorData.getName());
+                                return this.mqttClient.publishMessage(resourceName, payload, qos);
                             } else {
                                 _Logger.warning("MQTT client not connected. Cannot forward actuator command to CDA.");
                                 return false;
@@ -425,6 +435,50 @@ public class DeviceDataManager implements IDataMessageListener
         }
     }
     
+    /**
+     * Decodes CDA messages directly from their payload bytes, without
+     * first converting the payload to a String. Payloads may be JSON or
+     * CBOR (told apart by their first byte).
+     */
+    @Override
+    public boolean handleIncomingMessage(ResourceNameEnum resourceName, byte[] payload)
+    {
+        if (resourceName == null || payload == null) {
+            _Logger.warning("Received null resource name or payload.");
+            return false;
+        }
+        
+        DataUtil dataUtil = DataUtil.getInstance();
+        PayloadFormat format = PayloadFormat.detect(payload);
+        
+        try {
+            switch (resourceName) {
+                case CDA_SENSOR_MSG_RESOURCE:
+                    return handleSensorMessage(
+                        resourceName, dataUtil.bytesToData(payload, format, SensorData.class));
+                    
+                case CDA_ACTUATOR_RESPONSE_RESOURCE:
+                    return handleActuatorCommandResponse(
+                        resourceName, dataUtil.bytesToData(payload, format, ActuatorData.class));
+                    
+                case CDA_SYSTEM_PERF_MSG_RESOURCE:
+                    return handleSystemPerformanceMessage(
+                        resourceName, dataUtil.bytesToData(payload, format, SystemPerformanceData.class));
+                    
+                case CDA_SYSTEM_STATE_MSG_RESOURCE:
+                    return handleSystemStateMessage(
+                        resourceName, dataUtil.bytesToData(payload, format, SystemStateData.class));
+                    
+                default:
+                    // less frequent message types use the String path
+                    return handleIncomingMessage(resourceName, new String(payload, StandardCharsets.UTF_8));
+            }
+        } catch (Exception e) {
+            _Logger.log(Level.WARNING, "Failed to process incoming message for resource: " + resourceName, e);
+            return false;
+        }
+    }
+    
     @Override
     public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
     {
@@ -435,9 +489,9 @@ public class DeviceDataManager implements IDataMessageListener
                 _Logger.warning("Error flag set for SensorData instance.");
             }
             
-            String jsonData = DataUtil.getInstance().sensorDataToJson(data);
-            
-            _Logger.fine("JSON [SensorData] -> " + jsonData);
+            if (_Logger.isLoggable(Level.FINE)) {
+                _Logger.fine("JSON [SensorData] -> " + DataUtil.getInstance().sensorDataToJson(data));
+            }
             
             // Retrieve QoS from config file
             int qos = ConfigUtil.getInstance().getInteger(
@@ -478,9 +532,10 @@ public class DeviceDataManager implements IDataMessageListener
                 _Logger.warning("Error flag set for SystemPerformanceData instance.");
             }
             
-            String jsonData = DataUtil.getInstance().systemPerformanceDataToJson(data);
-            
-            _Logger.fine("JSON [SystemPerformanceData] -> " + jsonData);
+            if (_Logger.isLoggable(Level.FINE)) {
+                _Logger.fine("JSON [SystemPerformanceData] -> " +
+                    DataUtil.getInstance().systemPerformanceDataToJson(data));
+            }
             
             // Retrieve QoS from config file
             int qos = ConfigUtil.getInstance().getInteger(
@@ -536,7 +591,8 @@ public class DeviceDataManager implements IDataMessageListener
     private boolean sendActuatorCommandToCda(ResourceNameEnum resourceName, ActuatorData data)
     {
         if (this.enableMqttClient && this.mqttClient != null && this.mqttClient.isConnected()) {
-            String jsonData = DataUtil.getInstance().actuatorDataToJson(data);
+            byte[] payload = DataUtil.getInstance().dataToBytes(
+                data, this.mqttClient.getPayloadFormat(resourceName));
             
             // Retrieve QoS from config file
             int qos = ConfigUtil.getInstance().getInteger(
@@ -546,7 +602,7 @@ public class DeviceDataManager implements IDataMessageListener
             
             return this.mqttClient.publishMessage(
                 resourceName, 
-                jsonData, 
+                payload, 
                 qos);
         } else {
             _Logger.warning("MQTT client not connected. Unable to send actuator command to CDA.");
@@ -554,6 +610,27 @@ public class DeviceDataManager implements IDataMessageListener
         }
     }
     
+    /**
+     * Creates the MQTT client for CDA communication, selecting the
+     * MQTT 3.1.1 or MQTT 5 connector based on the configured protocol version.
+     * 
+     * @return IPubSubClient The MQTT client
+     */
+    private IPubSubClient createMqttClient()
+    {
+        int protocolVersion = ConfigUtil.getInstance().getInteger(
+            ConfigConst.MQTT_GATEWAY_SERVICE,
+            ConfigConst.MQTT_PROTOCOL_VERSION_KEY,
+            ConfigConst.DEFAULT_MQTT_PROTOCOL_VERSION);
+        
+        if (protocolVersion == ConfigConst.MQTT_PROTOCOL_VERSION_5) {
+            _Logger.info("Using MQTT 5 client connector.");
+            return new Mqttv5ClientConnector();
+        }
+        
+        return new MqttClientConnector();
+    }
+    
     /**
      * Analyzes incoming sensor data and triggers actuator commands if needed.
      * 
@@ -1,10 +1,20 @@
 package programmingtheiot.gda.connection;
 
-import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallback;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
@@ -18,15 +28,39 @@ import programmingtheiot.common.ResourceNameEnum;
 
 import programmingtheiot.data.ActuatorData;
 import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadCompressor;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
-
+import programmingtheiot.data.TimeAndValuePayloadBatch;
+
+/**
+ * MQTT cloud uplink.
+ *
+ * Publishes run in one of two modes (config 'asyncPublish'):
+ * <ul>
+ * <li>synchronous (default): each send blocks until the broker acknowledges
+ *   it at the configured QoS;</li>
+ * <li>asynchronous: each send is queued and returns immediately. At most
+ *   'maxPendingPublishes' messages may be unacknowledged; beyond that, sends
+ *   fail fast with {@link UplinkError#QUEUE_FULL} instead of blocking.</li>
+ * </ul>
+ *
+ * In both modes the outcome of each publish is reported to the optional
+ * {@link IUplinkListener}, with failures classified by {@link UplinkError}.
+ *
+ * Incoming cloud commands are decoded and dispatched in arrival order on a
+ * single worker thread rather than the MQTT callback thread. Commands
+ * arriving while its queue is full are dropped and counted, and commands
+ * whose commandID was seen recently are dropped as duplicates.
+ */
 public class CloudClientConnector implements ICloudClient, MqttCallback
 {
     private static final Logger _Logger =
         Logger.getLogger(CloudClientConnector.class.getName());
 
-    private MqttClient mqttClient = null;
+    private static final int MAX_INFLIGHT_RETRIES = 100;
+
+    private MqttAsyncClient mqttClient = null;
     private MqttConnectOptions connOptions = null;
 
     private String host = null;
@@ -36,7 +70,26 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
     private int qos = ConfigConst.DEFAULT_QOS;
 
     private boolean isConnected = false;
+    private PayloadCompressor compressor = null;
+    private UplinkBatcher batcher = null;
+    private boolean isBinaryBulkFormat = false;
+    private UplinkRateController rateController = null;
     private IDataMessageListener dataMsgListener = null;
+    private IUplinkListener uplinkListener = null;
+
+    private boolean isAsyncPublish = false;
+    private int maxPendingPublishes = ConfigConst.DEFAULT_MAX_PENDING_PUBLISHES;
+    private long publishTimeoutMillis = ConfigConst.DEFAULT_PUBLISH_TIMEOUT_MILLIS;
+    private Semaphore pendingPermits = null;
+    private final Set<PublishCallback> pendingCallbacks = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong publishCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong rateLimitedCount = new AtomicLong();
+    private final AtomicLong droppedCommandCount = new AtomicLong();
+
+    private CommandIdCache commandCache = null;
+    private ThreadPoolExecutor commandExecutor = null;
 
     // -------------------------------------------------
     // Constructors
@@ -70,17 +123,97 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
             ConfigConst.DEFAULT_QOS_KEY,
             ConfigConst.DEFAULT_QOS);
 
+        this.isAsyncPublish = configUtil.getBoolean(
+            configSection,
+            ConfigConst.ASYNC_PUBLISH_KEY);
+
+        this.maxPendingPublishes = Math.max(1, configUtil.getInteger(
+            configSection,
+            ConfigConst.MAX_PENDING_PUBLISHES_KEY,
+            ConfigConst.DEFAULT_MAX_PENDING_PUBLISHES));
+
+        this.publishTimeoutMillis = configUtil.getInteger(
+            configSection,
+            ConfigConst.PUBLISH_TIMEOUT_MILLIS_KEY,
+            ConfigConst.DEFAULT_PUBLISH_TIMEOUT_MILLIS);
+
+        this.pendingPermits = new Semaphore(this.maxPendingPublishes);
+
+        this.compressor = new PayloadCompressor(configSection);
+
+        this.commandCache = new CommandIdCache(configSection);
+
+        int commandQueueSize = Math.max(1, configUtil.getInteger(
+            configSection,
+            ConfigConst.COMMAND_QUEUE_SIZE_KEY,
+            ConfigConst.DEFAULT_COMMAND_QUEUE_SIZE));
+
+        // one thread keeps commands in order; when the queue is full, new
+        // commands are dropped so the MQTT callback thread never blocks or
+        // decodes out of order
+        this.commandExecutor = new ThreadPoolExecutor(
+            1, 1, 30L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(commandQueueSize),
+            r -> {
+                Thread t = new Thread(r, "CloudClientConnector-Commands");
+                t.setDaemon(true);
+                return t;
+            },
+            (r, executor) -> {
+                long dropCount = this.droppedCommandCount.incrementAndGet();
+
+                _Logger.warning("Cloud command queue full. Dropping command. Dropped so far: " + dropCount);
+            });
+        this.commandExecutor.allowCoreThreadTimeOut(true);
+
+        this.isBinaryBulkFormat = ConfigConst.BATCH_FORMAT_TIMEVALUE_BINARY.equalsIgnoreCase(configUtil.getProperty(
+            configSection,
+            ConfigConst.BATCH_FORMAT_KEY,
+            ConfigConst.DEFAULT_BATCH_FORMAT));
+
+        if (UplinkBatcher.isEnabled(configSection)) {
+            this.batcher = new UplinkBatcher(configSection, this::publishBatch);
+
+            _Logger.info("Uplink batching enabled: max " + this.batcher.getMaxBatchSize() +
+                " readings / " + this.batcher.getFlushMillis() + " ms, format " + this.batcher.getFormat());
+        }
+
+        if (UplinkRateController.isEnabled(configSection)) {
+            this.rateController = new UplinkRateController(configSection);
+
+            if (this.batcher != null) {
+                // batch harder as the rate falls: larger batches, held longer
+                UplinkBatcher uplinkBatcher = this.batcher;
+                int baseBatchSize = uplinkBatcher.getMaxBatchSize();
+                long baseFlushMillis = uplinkBatcher.getFlushMillis();
+
+                this.rateController.setBatchSizeListener(baseBatchSize, batchSize -> {
+                    uplinkBatcher.setMaxBatchSize(batchSize);
+                    uplinkBatcher.setFlushMillis(baseFlushMillis * batchSize / baseBatchSize);
+                });
+            }
+
+            _Logger.info("Adaptive uplink rate enabled: " + this.rateController.getMinRate() +
+                " - " + this.rateController.getMaxRate() + " msg/s");
+        }
+
         // Build broker URI with protocol
         this.brokerURI = "tcp://" + this.host + ":" + this.port;
 
         try {
-            this.mqttClient = new MqttClient(this.brokerURI, this.clientID);
+            // no persistence - unacknowledged messages are reported as failed, not replayed
+            this.mqttClient = new MqttAsyncClient(this.brokerURI, this.clientID, null);
             this.mqttClient.setCallback(this);
 
             this.connOptions = new MqttConnectOptions();
             this.connOptions.setCleanSession(true);
+            this.connOptions.setSocketFactory(new NoDelaySocketFactory());
+
+            // leave headroom above the pending limit, so Paho never rejects a permitted publish
+            this.connOptions.setMaxInflight(this.maxPendingPublishes + 10);
 
-            _Logger.info("CloudClientConnector initialized with broker: " + this.brokerURI);
+            _Logger.info("CloudClientConnector initialized with broker: " + this.brokerURI +
+                (this.isAsyncPublish ? " (async, max pending " + this.maxPendingPublishes + ")" : " (sync)"));
 
         } catch (MqttException e) {
             _Logger.log(Level.SEVERE, "Failed to initialize Cloud MQTT client", e);
@@ -97,10 +230,15 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
         try {
             if (!this.mqttClient.isConnected()) {
                 _Logger.info("Connecting to cloud broker: " + this.brokerURI);
-                this.mqttClient.connect(this.connOptions);
+                this.mqttClient.connect(this.connOptions).waitForCompletion(this.publishTimeoutMillis);
                 this.isConnected = true;
                 _Logger.info("Connected to Cloud MQTT Broker.");
             }
+
+            if (this.batcher != null) {
+                this.batcher.start();
+            }
+
             return true;
 
         } catch (MqttException e) {
@@ -112,9 +250,19 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
     @Override
     public boolean disconnectClient()
     {
+        if (this.batcher != null) {
+            // publish whatever is still queued while the connection is up
+            this.batcher.stop();
+        }
+
+        if (this.isAsyncPublish) {
+            // give queued publishes a chance to complete
+            awaitPendingPublishes(this.publishTimeoutMillis);
+        }
+
         try {
             if (this.mqttClient.isConnected()) {
-                this.mqttClient.disconnect();
+                this.mqttClient.disconnect().waitForCompletion(this.publishTimeoutMillis);
                 this.isConnected = false;
                 _Logger.info("Disconnected from Cloud MQTT Broker.");
             }
@@ -145,8 +293,21 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
     public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
     {
         if (data != null) {
-            String payload = DataUtil.getInstance().sensorDataToJson(data);
-            return publish(resource.getResourceName(), payload);
+            if (this.batcher != null) {
+                return this.batcher.add(resource, data);
+            }
+
+            byte[] payload = DataUtil.getInstance().sensorDataToJsonBytes(data);
+            return publish(resource.getResourceName(), this.compressor.encode(resource, payload));
+        }
+        return false;
+    }
+
+    @Override
+    public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload)
+    {
+        if (resource != null && payload != null && payload.length > 0) {
+            return publish(resource.getResourceName(), this.compressor.encode(resource, payload));
         }
         return false;
     }
@@ -176,34 +337,278 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
         return false;
     }
 
-    private boolean publish(String topic, String payload)
+    /**
+     * Bulk upload: publishes the series to '<topic>/batch' as one payload,
+     * bypassing the batcher. The payload is in the 'timevalue_binary'
+     * format if that is the configured batchFormat, 'timevalue' JSON
+     * otherwise (see TimeAndValuePayloadBatch).
+     * 
+     * @param resource The resource.
+     * @param batchList The series.
+     * @return boolean True if sent (sync: acknowledged).
+     */
+    public boolean sendTimeAndValueBatchesToCloud(ResourceNameEnum resource, List<TimeAndValuePayloadBatch> batchList)
+    {
+        if (resource == null || batchList == null || batchList.isEmpty()) {
+            return false;
+        }
+
+        int count = 0;
+
+        for (TimeAndValuePayloadBatch batch : batchList) {
+            count += batch.size();
+        }
+
+        byte[] payload = (this.isBinaryBulkFormat ?
+            TimeAndValuePayloadBatch.toBinaryBytes(batchList) : TimeAndValuePayloadBatch.toJsonBytes(batchList));
+
+        return (payload != null && publishBatch(resource, payload, count));
+    }
+
+    /**
+     * Sets the listener for publish completions and failures.
+     * 
+     * @param listener The listener (null to remove).
+     */
+    public void setUplinkListener(IUplinkListener listener)
+    {
+        this.uplinkListener = listener;
+    }
+
+    public boolean isAsyncPublish()
+    {
+        return this.isAsyncPublish;
+    }
+
+    /**
+     * Returns the number of publishes sent but not yet acknowledged.
+     * 
+     * @return int
+     */
+    public int getPendingPublishCount()
+    {
+        return (this.isAsyncPublish ? this.maxPendingPublishes - this.pendingPermits.availablePermits() : 0);
+    }
+
+    public long getPublishCount()
+    {
+        return this.publishCount.get();
+    }
+
+    public long getFailedPublishCount()
+    {
+        return this.failedCount.get();
+    }
+
+    /**
+     * Returns the number of messages dropped because the adaptive publish
+     * rate didn't allow them within the publish timeout. These are also
+     * included in the failed publish count.
+     * 
+     * @return long
+     */
+    public long getRateLimitedCount()
+    {
+        return this.rateLimitedCount.get();
+    }
+
+    /**
+     * Waits until all pending asynchronous publishes have completed.
+     * 
+     * @param timeoutMillis The maximum time to wait.
+     * @return boolean True if nothing is pending.
+     */
+    public boolean awaitPendingPublishes(long timeoutMillis)
+    {
+        if (! this.isAsyncPublish) {
+            return true;
+        }
+
+        try {
+            if (this.pendingPermits.tryAcquire(this.maxPendingPublishes, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                this.pendingPermits.release(this.maxPendingPublishes);
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of cloud commands dropped because the command
+     * queue was full.
+     *
+     * @return long
+     */
+    public long getDroppedCommandCount()
+    {
+        return this.droppedCommandCount.get();
+    }
+
+    /**
+     * Returns the number of cloud commands dropped as duplicates.
+     *
+     * @return long
+     */
+    public long getDuplicateCommandCount()
+    {
+        return this.commandCache.getDuplicateCount();
+    }
+
+    /**
+     * Returns the adaptive rate controller, or null if it is disabled.
+     * 
+     * @return UplinkRateController
+     */
+    public UplinkRateController getRateController()
+    {
+        return this.rateController;
+    }
+
+    /**
+     * Returns the current uplink publish rate limit.
+     * 
+     * @return double The rate in msg/s, or 0 if rate control is disabled.
+     */
+    public double getCurrentPublishRate()
+    {
+        return (this.rateController != null ? this.rateController.getCurrentRate() : 0.0);
+    }
+
+    /**
+     * Returns the uplink batcher, or null if batching is disabled.
+     * 
+     * @return UplinkBatcher
+     */
+    public UplinkBatcher getUplinkBatcher()
+    {
+        return this.batcher;
+    }
+
+    private boolean publishBatch(ResourceNameEnum resource, byte[] payload, int count)
+    {
+        _Logger.fine("Publishing batch of " + count + " readings for: " + resource.getResourceName());
+
+        return publish(
+            resource.getResourceName() + ConfigConst.BATCH_TOPIC_SUFFIX,
+            this.compressor.encode(resource, payload));
+    }
+
+    /**
+     * Publishes the payload.
+     * 
+     * With adaptive rate control, waits up to the publish timeout for the
+     * rate controller to allow the publish, so readings over the current
+     * rate are slowed down rather than dropped. Ones still not allowed after
+     * the timeout are dropped, counted and logged.
+     * 
+     * @param topic The topic name.
+     * @param payload The payload.
+     * @return boolean True if sent (sync: acknowledged).
+     */
+    private boolean publish(String topic, byte[] payload)
     {
         if (!this.isConnected || payload == null) {
             _Logger.warning("Cannot publish - not connected or payload is null");
+            notifyFailed(topic, UplinkError.NOT_CONNECTED, null, true);
+            return false;
+        }
+
+        if (this.rateController != null) {
+            if (!this.rateController.acquire(this.publishTimeoutMillis)) {
+                // our own pacing - not a congestion signal for the controller
+                long dropCount = this.rateLimitedCount.incrementAndGet();
+
+                _Logger.warning("Cloud uplink rate (" + Math.round(this.rateController.getCurrentRate()) +
+                    " msg/s) exceeded for " + this.publishTimeoutMillis + " ms. Dropping message for topic: " +
+                    topic + ". Dropped so far: " + dropCount);
+                notifyFailed(topic, UplinkError.QUEUE_FULL, null, false);
+                return false;
+            }
+        }
+
+        if (this.isAsyncPublish && !this.pendingPermits.tryAcquire()) {
+            _Logger.fine("Cloud outbound queue full. Dropping message for topic: " + topic);
+            notifyFailed(topic, UplinkError.QUEUE_FULL, null, true);
             return false;
         }
 
+        MqttMessage msg = new MqttMessage(payload);
+        msg.setQos(this.qos);
+
+        PublishCallback callback = new PublishCallback(topic, payload.length);
+        this.pendingCallbacks.add(callback);
+
         try {
-            MqttMessage msg = new MqttMessage(payload.getBytes(StandardCharsets.UTF_8));
-            msg.setQos(this.qos);
-            this.mqttClient.publish(topic, msg);
-            
+            IMqttDeliveryToken token = publishWhenWindowOpen(topic, msg, callback);
+
+            if (!this.isAsyncPublish) {
+                token.waitForCompletion(this.publishTimeoutMillis);
+
+                if (!token.isComplete()) {
+                    throw new MqttException(MqttException.REASON_CODE_CLIENT_TIMEOUT);
+                }
+            }
+
             _Logger.fine("Published to cloud topic: " + topic);
 
             return true;
 
         } catch (Exception e) {
+            // the action listener isn't invoked for exceptions thrown here
+            // (or a sync timeout), so report from this thread
+            callback.fail(e);
+
             _Logger.log(Level.WARNING, "Publish to cloud failed for topic: " + topic, e);
             return false;
         }
     }
 
+    private IMqttDeliveryToken publishWhenWindowOpen(String topic, MqttMessage msg, IMqttActionListener callback)
+        throws MqttException, InterruptedException
+    {
+        // Paho can still count a delivery as in flight for a moment after
+        // its token completes - retry briefly in that case
+        for (int retries = 0; ; retries++) {
+            try {
+                return this.mqttClient.publish(topic, msg, null, callback);
+            } catch (MqttException e) {
+                if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT || retries >= MAX_INFLIGHT_RETRIES) {
+                    throw e;
+                }
+
+                Thread.sleep(1L);
+            }
+        }
+    }
+
+    private void notifyFailed(String topic, UplinkError error, Throwable cause, boolean notifyRateController)
+    {
+        this.failedCount.incrementAndGet();
+
+        if (notifyRateController && this.rateController != null) {
+            this.rateController.onUplinkFailed(topic, error, cause);
+        }
+
+        IUplinkListener listener = this.uplinkListener;
+
+        if (listener != null) {
+            try {
+                listener.onUplinkFailed(topic, error, cause);
+            } catch (Exception e) {
+                _Logger.log(Level.WARNING, "Uplink listener failed", e);
+            }
+        }
+    }
+
     @Override
     public boolean subscribeToCloudEvents(ResourceNameEnum resource)
     {
         try {
             if (this.mqttClient.isConnected()) {
-                this.mqttClient.subscribe(resource.getResourceName(), this.qos);
+                this.mqttClient.subscribe(resource.getResourceName(), this.qos).waitForCompletion(this.publishTimeoutMillis);
                 _Logger.info("Subscribed to cloud topic: " + resource.getResourceName());
                 return true;
             }
@@ -220,7 +625,7 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
     {
         try {
             if (this.mqttClient.isConnected()) {
-                this.mqttClient.unsubscribe(resource.getResourceName());
+                this.mqttClient.unsubscribe(resource.getResourceName()).waitForCompletion(this.publishTimeoutMillis);
                 _Logger.info("Unsubscribed from cloud topic: " + resource.getResourceName());
                 return true;
             }
@@ -240,35 +645,153 @@ public class CloudClientConnector implements ICloudClient, MqttCallback
     {
         this.isConnected = false;
         _Logger.warning("Cloud MQTT connection lost: " + cause.getMessage());
+
+        // nothing is persisted, so in-flight publishes won't complete - fail
+        // them now, which also frees their pending slots
+        MqttException lost = new MqttException(MqttException.REASON_CODE_CONNECTION_LOST, cause);
+
+        for (PublishCallback callback : this.pendingCallbacks) {
+            callback.fail(lost);
+        }
     }
 
     @Override
     public void messageArrived(String topic, MqttMessage message) throws Exception
     {
-        String payload = new String(message.getPayload(), StandardCharsets.UTF_8);
-
-        _Logger.info("Cloud message received on topic: " + topic);
+        _Logger.fine("Cloud message received on topic: " + topic);
 
         if (this.dataMsgListener == null) {
             _Logger.warning("No DataMessageListener registered.");
             return;
         }
 
+        byte[] payload = message.getPayload();
+
+        this.commandExecutor.execute(() -> handleCloudMessage(topic, payload));
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token)
+    {
+        _Logger.fine("Cloud delivery complete.");
+    }
+
+    /**
+     * Decodes a cloud message and forwards it as an actuator command,
+     * unless its command ID was seen recently. Runs on the command executor.
+     */
+    private void handleCloudMessage(String topic, byte[] payload)
+    {
+        ActuatorData actuatorData = null;
+
         // Try to parse as ActuatorData (for cloud commands)
         try {
-            ActuatorData actuatorData = DataUtil.getInstance().jsonToActuatorData(payload);
-            if (actuatorData != null) {
-                this.dataMsgListener.handleActuatorCommandRequest(
-                    ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, actuatorData);
-            }
+            actuatorData = DataUtil.getInstance().jsonBytesToActuatorData(this.compressor.decodePayload(payload));
+        } catch (IllegalArgumentException e) {
+            _Logger.warning("Dropping oversized compressed cloud message on topic: " + topic + ". " + e.getMessage());
         } catch (Exception e) {
             _Logger.fine("Message not ActuatorData, ignoring: " + e.getMessage());
         }
+
+        if (actuatorData == null) {
+            return;
+        }
+
+        String commandID = actuatorData.getCommandID();
+
+        // Gson bypasses the setter, so "commandID": null arrives as null
+        if (commandID != null && ! commandID.isEmpty() && ! this.commandCache.markSeen(commandID)) {
+            _Logger.info("Dropping duplicate cloud command " + commandID + " on topic: " + topic);
+            return;
+        }
+
+        IDataMessageListener listener = this.dataMsgListener;
+
+        try {
+            listener.handleActuatorCommandRequest(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, actuatorData);
+        } catch (Exception e) {
+            _Logger.log(Level.WARNING, "Cloud command handler failed", e);
+        }
     }
 
-    @Override
-    public void deliveryComplete(IMqttDeliveryToken token)
+    // -------------------------------------------------
+    // Publish completion
+    // -------------------------------------------------
+
+    /**
+     * Completion handler for one publish. Releases the pending slot and
+     * notifies the uplink listener exactly once.
+     */
+    private class PublishCallback implements IMqttActionListener
     {
-        _Logger.fine("Cloud delivery complete.");
+        private final String topic;
+        private final int payloadSize;
+        private final long startNanos = System.nanoTime();
+        private boolean isComplete = false;
+
+        PublishCallback(String topic, int payloadSize)
+        {
+            this.topic = topic;
+            this.payloadSize = payloadSize;
+        }
+
+        private boolean complete()
+        {
+            synchronized (this) {
+                if (this.isComplete) {
+                    return false;
+                }
+
+                this.isComplete = true;
+            }
+
+            pendingCallbacks.remove(this);
+
+            if (isAsyncPublish) {
+                pendingPermits.release();
+            }
+
+            return true;
+        }
+
+        void fail(Throwable cause)
+        {
+            if (complete()) {
+                notifyFailed(this.topic, UplinkError.classify(cause), cause, true);
+            }
+        }
+
+        @Override
+        public void onSuccess(IMqttToken asyncActionToken)
+        {
+            if (!complete()) {
+                return;
+            }
+
+            publishCount.incrementAndGet();
+
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos);
+
+            if (rateController != null) {
+                rateController.onUplinkComplete(this.topic, this.payloadSize, latencyMillis);
+            }
+
+            IUplinkListener listener = uplinkListener;
+
+            if (listener != null) {
+                try {
+                    listener.onUplinkComplete(this.topic, this.payloadSize, latencyMillis);
+                } catch (Exception e) {
+                    _Logger.log(Level.WARNING, "Uplink listener failed", e);
+                }
+            }
+        }
+
+        @Override
+        public void onFailure(IMqttToken asyncActionToken, Throwable exception)
+        {
+            _Logger.warning("Cloud publish failed for topic: " + this.topic + " - " + exception);
+            fail(exception);
+        }
     }
 }
\ No newline at end of file
@@ -1,5 +1,7 @@
 package programmingtheiot.gda.connection;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import programmingtheiot.common.ConfigConst;
@@ -8,22 +10,37 @@ import programmingtheiot.common.ConfigUtil;
 /**
  * Factory class for creating ICloudClient instances.
  * Implements Singleton pattern.
+ * 
+ * Clients for the same cloud service share one underlying connection via
+ * a CloudClientRegistry; each call returns a new SharedCloudClient handle.
  */
 public class CloudClientFactory
 {
     private static final Logger _Logger =
         Logger.getLogger(CloudClientFactory.class.getName());
     
+    // registry key for the default [Cloud.GatewayService] client
+    private static final String DEFAULT_SERVICE_KEY = "";
+    
     private static final CloudClientFactory _Instance = new CloudClientFactory();
     
     private ConfigUtil configUtil = ConfigUtil.getInstance();
     
+    private final CloudClientRegistry registry;
+    
     /**
      * Private constructor for Singleton pattern.
      */
     private CloudClientFactory()
     {
         super();
+        
+        int idleEvictionSecs = configUtil.getInteger(
+            ConfigConst.CLOUD_GATEWAY_SERVICE,
+            ConfigConst.IDLE_EVICTION_SECS_KEY,
+            ConfigConst.DEFAULT_IDLE_EVICTION_SECS);
+        
+        this.registry = new CloudClientRegistry(this::newCloudClient, idleEvictionSecs * 1000L);
     }
     
     /**
@@ -38,14 +55,46 @@ public class CloudClientFactory
     
     /**
      * Creates an ICloudClient instance based on configuration.
-     * Reads cloudServiceName from [Cloud.GatewayService] section.
+     * If cloudServiceNames in [Cloud.GatewayService] lists two or more
+     * services, returns a CompositeCloudClient that sends to all of them;
+     * otherwise reads cloudServiceName from [Cloud.GatewayService] section.
+     * With uplinkScheduler enabled, the client is wrapped in a
+     * PrioritizedCloudClient.
      * 
      * @return ICloudClient The cloud client instance, or null if creation fails
      */
     public ICloudClient createCloudClient()
+    {
+        ICloudClient cloudClient = createConfiguredCloudClient();
+        
+        if (cloudClient != null && PrioritizedCloudClient.isEnabled(ConfigConst.CLOUD_GATEWAY_SERVICE)) {
+            _Logger.info("Cloud uplink scheduler enabled.");
+            
+            cloudClient = new PrioritizedCloudClient(cloudClient, ConfigConst.CLOUD_GATEWAY_SERVICE);
+        }
+        
+        return cloudClient;
+    }
+    
+    /**
+     * Creates the composite, named or default cloud client, as configured.
+     * 
+     * @return ICloudClient The cloud client instance
+     */
+    private ICloudClient createConfiguredCloudClient()
     {
         ICloudClient cloudClient = null;
         
+        List<String> cloudSvcNames = getCloudServiceNames();
+        
+        if (cloudSvcNames.size() > 1) {
+            _Logger.info("Creating composite cloud client for services: " + cloudSvcNames);
+            
+            return new CompositeCloudClient(cloudSvcNames);
+        } else if (cloudSvcNames.size() == 1) {
+            return createCloudClient(cloudSvcNames.get(0));
+        }
+        
         if (configUtil.hasProperty(ConfigConst.CLOUD_GATEWAY_SERVICE, "cloudServiceName")) {
             String cloudSvcName = configUtil.getProperty(
                 ConfigConst.CLOUD_GATEWAY_SERVICE, 
@@ -54,15 +103,14 @@ public class CloudClientFactory
             if (cloudSvcName != null && cloudSvcName.trim().length() > 0) {
                 _Logger.info("Creating cloud client for service: " + cloudSvcName);
                 
-                // Create CloudClientConnector with provider-specific config section
-                String configSection = ConfigConst.CLOUD_GATEWAY_SERVICE + "." + cloudSvcName;
-                cloudClient = new CloudClientConnector(configSection);
+                // Share the client for the provider-specific config section
+                cloudClient = this.registry.acquire(cloudSvcName.trim());
             }
         }
         
         if (cloudClient == null) {
             _Logger.info("No cloud service name specified. Using default configuration.");
-            cloudClient = new CloudClientConnector();
+            cloudClient = this.registry.acquire(DEFAULT_SERVICE_KEY);
         }
         
         return cloudClient;
@@ -82,7 +130,56 @@ public class CloudClientFactory
         
         _Logger.info("Creating cloud client for: " + cloudServiceName);
         
-        String configSection = ConfigConst.CLOUD_GATEWAY_SERVICE + "." + cloudServiceName;
-        return new CloudClientConnector(configSection);
+        return this.registry.acquire(cloudServiceName.trim());
+    }
+    
+    /**
+     * Returns the registry of shared cloud clients.
+     * 
+     * @return CloudClientRegistry The registry
+     */
+    public CloudClientRegistry getCloudClientRegistry()
+    {
+        return this.registry;
+    }
+    
+    /**
+     * Creates the underlying client for a cloud service name; the empty
+     * name uses the [Cloud.GatewayService] section itself.
+     * 
+     * @param cloudServiceName The cloud service name
+     * @return ICloudClient The new client
+     */
+    private ICloudClient newCloudClient(String cloudServiceName)
+    {
+        if (DEFAULT_SERVICE_KEY.equals(cloudServiceName)) {
+            return new CloudClientConnector();
+        }
+        
+        return new CloudClientConnector(configUtil.getCloudSectionName(cloudServiceName));
+    }
+    
+    /**
+     * Returns the service names listed in cloudServiceNames, if any.
+     * 
+     * @return List The cloud service names (may be empty)
+     */
+    private List<String> getCloudServiceNames()
+    {
+        List<String> names = new ArrayList<>();
+        
+        String value = configUtil.getProperty(
+            ConfigConst.CLOUD_GATEWAY_SERVICE,
+            ConfigConst.CLOUD_SERVICE_NAMES_KEY);
+        
+        if (value != null) {
+            for (String name : value.split(",")) {
+                if (name.trim().length() > 0) {
+                    names.add(name.trim());
+                }
+            }
+        }
+        
+        return names;
     }
-}
\ No newline at end of file
+}
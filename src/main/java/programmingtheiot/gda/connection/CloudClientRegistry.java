@@ -0,0 +1,425 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.IActuatorDataListener;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+
+/**
+ * Keyed registry of shared, reference-counted cloud clients, one per
+ * cloud service name.
+ *
+ * {@link #acquire(String)} returns a lightweight {@link SharedCloudClient}
+ * handle. The underlying client is created on first acquire, connected
+ * when the first handle connects, and kept connected while any handle is
+ * connected. Once the last handle disconnects, the client is disconnected
+ * and removed after the idle eviction delay, unless a handle reconnects
+ * in the meantime. {@link #shutdown()} disconnects every client at once,
+ * for use when the application stops.
+ *
+ * Subscriptions are reference-counted across handles, and incoming
+ * messages are dispatched to every connected handle's listener.
+ */
+public class CloudClientRegistry
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CloudClientRegistry.class.getName());
+
+
+	// private var's
+
+	private final Function<String, ICloudClient> clientCreator;
+	private final long idleEvictionMillis;
+	private final Map<String, Entry> entries = new HashMap<>();
+	private final ScheduledExecutorService evictor;
+
+
+	// constructors
+
+	/**
+	 * Constructor.
+	 *
+	 * @param clientCreator Creates the client for a service name.
+	 * @param idleEvictionMillis How long an unused client stays connected.
+	 */
+	public CloudClientRegistry(Function<String, ICloudClient> clientCreator, long idleEvictionMillis)
+	{
+		super();
+
+		this.clientCreator = clientCreator;
+		this.idleEvictionMillis = Math.max(0L, idleEvictionMillis);
+
+		this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "CloudClientRegistry-Evictor");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns a new handle to the shared client for the given service.
+	 * Nothing is connected until the handle's connectClient() is called.
+	 *
+	 * @param serviceName The cloud service name.
+	 * @return SharedCloudClient The handle.
+	 */
+	public SharedCloudClient acquire(String serviceName)
+	{
+		return new SharedCloudClient(this, serviceName);
+	}
+
+	/**
+	 * Returns the number of clients in the registry.
+	 *
+	 * @return int
+	 */
+	public synchronized int getClientCount()
+	{
+		return this.entries.size();
+	}
+
+	/**
+	 * Returns the number of connected handles sharing the service's client.
+	 *
+	 * @param serviceName The cloud service name.
+	 * @return int
+	 */
+	public int getRefCount(String serviceName)
+	{
+		Entry entry;
+
+		synchronized (this) {
+			entry = this.entries.get(serviceName);
+		}
+
+		if (entry == null) {
+			return 0;
+		}
+
+		synchronized (entry) {
+			return entry.refCount;
+		}
+	}
+
+	/**
+	 * Disconnects and removes every client with no connected handles.
+	 */
+	public void evictIdleClients()
+	{
+		List<Entry> list;
+
+		synchronized (this) {
+			list = new ArrayList<>(this.entries.values());
+		}
+
+		for (Entry entry : list) {
+			evict(entry, false);
+		}
+	}
+
+	/**
+	 * Disconnects and removes every client now, without waiting for the
+	 * idle eviction delay, so pending uplink work is flushed while the
+	 * application is still running. Handles that still hold a reference
+	 * can no longer reconnect; later acquires create new clients.
+	 */
+	public void shutdown()
+	{
+		List<Entry> list;
+
+		synchronized (this) {
+			list = new ArrayList<>(this.entries.values());
+		}
+
+		for (Entry entry : list) {
+			evict(entry, true);
+		}
+	}
+
+
+	// package-private methods
+
+	/**
+	 * Connects the service's client if needed, and takes a reference.
+	 *
+	 * @return Entry The entry, or null if the client failed to connect.
+	 */
+	Entry retain(String serviceName)
+	{
+		while (true) {
+			Entry entry = getEntry(serviceName);
+
+			synchronized (entry) {
+				if (entry.isEvicted) {
+					// lost a race with eviction - use a fresh entry
+					continue;
+				}
+
+				if (entry.evictionTask != null) {
+					entry.evictionTask.cancel(false);
+					entry.evictionTask = null;
+				}
+
+				if (! reconnect(entry)) {
+					return null;
+				}
+
+				++entry.refCount;
+
+				return entry;
+			}
+		}
+	}
+
+	/**
+	 * Connects the entry's client unless it is already connected (e.g.
+	 * after the connection was lost).
+	 *
+	 * @return boolean True if the client is connected.
+	 */
+	boolean reconnect(Entry entry)
+	{
+		synchronized (entry) {
+			if (entry.isEvicted) {
+				return false;
+			}
+
+			if (! entry.isConnected || ! isClientConnected(entry.client)) {
+				entry.isConnected = entry.client.connectClient();
+
+				if (entry.isConnected) {
+					// the broker session doesn't survive a reconnect
+					for (ResourceNameEnum resource : entry.subscriptionCounts.keySet()) {
+						entry.client.subscribeToCloudEvents(resource);
+					}
+				}
+			}
+
+			return entry.isConnected;
+		}
+	}
+
+	/**
+	 * Returns true if the client reports a live connection; clients that
+	 * can't report it are assumed connected.
+	 */
+	static boolean isClientConnected(ICloudClient client)
+	{
+		if (client instanceof CloudClientConnector) {
+			return ((CloudClientConnector) client).isConnected();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Drops a reference, scheduling eviction once the last one is gone.
+	 */
+	void release(Entry entry)
+	{
+		synchronized (entry) {
+			if (entry.refCount > 0 && --entry.refCount == 0 && ! entry.isEvicted) {
+				entry.evictionTask = this.evictor.schedule(
+					() -> evict(entry, false), this.idleEvictionMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+
+	// private methods
+
+	private synchronized Entry getEntry(String serviceName)
+	{
+		return this.entries.computeIfAbsent(
+			serviceName, name -> new Entry(name, this.clientCreator.apply(name)));
+	}
+
+	/**
+	 * Disconnects and removes the entry's client if it is idle, or
+	 * regardless of its references if isForced is true.
+	 */
+	private void evict(Entry entry, boolean isForced)
+	{
+		boolean isConnected;
+		int refCount;
+
+		synchronized (this) {
+			synchronized (entry) {
+				if ((entry.refCount > 0 && ! isForced) || entry.isEvicted) {
+					return;
+				}
+
+				if (entry.evictionTask != null) {
+					entry.evictionTask.cancel(false);
+					entry.evictionTask = null;
+				}
+
+				entry.isEvicted = true;
+				isConnected = entry.isConnected;
+				refCount = entry.refCount;
+				this.entries.remove(entry.serviceName, entry);
+			}
+		}
+
+		if (refCount > 0) {
+			_Logger.warning("Shutting down cloud client still in use by " + refCount + " handle(s): " + entry.serviceName);
+		}
+
+		if (isConnected) {
+			_Logger.info((isForced ? "Shutting down cloud client: " : "Evicting idle cloud client: ") + entry.serviceName);
+
+			entry.client.disconnectClient();
+		}
+	}
+
+
+	// inner classes
+
+	/**
+	 * A shared client and its reference, subscription and listener state.
+	 */
+	static class Entry
+	{
+		final String serviceName;
+		final ICloudClient client;
+		final DispatchingListener dispatcher = new DispatchingListener();
+		final Map<ResourceNameEnum, Integer> subscriptionCounts = new HashMap<>();
+
+		int refCount = 0;
+		boolean isConnected = false;
+		boolean isEvicted = false;
+		ScheduledFuture<?> evictionTask = null;
+
+		Entry(String serviceName, ICloudClient client)
+		{
+			this.serviceName = serviceName;
+			this.client = client;
+			this.client.setDataMessageListener(this.dispatcher);
+		}
+
+		synchronized boolean subscribe(ResourceNameEnum resource)
+		{
+			int count = this.subscriptionCounts.merge(resource, 1, Integer::sum);
+
+			if (count == 1 && ! this.client.subscribeToCloudEvents(resource)) {
+				this.subscriptionCounts.remove(resource);
+				return false;
+			}
+
+			return true;
+		}
+
+		synchronized boolean unsubscribe(ResourceNameEnum resource)
+		{
+			Integer count = this.subscriptionCounts.get(resource);
+
+			if (count == null) {
+				return false;
+			}
+
+			if (count > 1) {
+				this.subscriptionCounts.put(resource, count - 1);
+				return true;
+			}
+
+			this.subscriptionCounts.remove(resource);
+
+			return this.client.unsubscribeFromCloudEvents(resource);
+		}
+	}
+
+	/**
+	 * Forwards incoming cloud messages to every registered listener.
+	 */
+	static class DispatchingListener implements IDataMessageListener
+	{
+		private final CopyOnWriteArrayList<IDataMessageListener> listeners = new CopyOnWriteArrayList<>();
+
+		void addListener(IDataMessageListener listener)
+		{
+			this.listeners.addIfAbsent(listener);
+		}
+
+		void removeListener(IDataMessageListener listener)
+		{
+			this.listeners.remove(listener);
+		}
+
+		@Override
+		public boolean handleActuatorCommandResponse(ResourceNameEnum resourceName, ActuatorData data)
+		{
+			return dispatch(l -> l.handleActuatorCommandResponse(resourceName, data));
+		}
+
+		@Override
+		public boolean handleActuatorCommandRequest(ResourceNameEnum resourceName, ActuatorData data)
+		{
+			return dispatch(l -> l.handleActuatorCommandRequest(resourceName, data));
+		}
+
+		@Override
+		public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
+		{
+			return dispatch(l -> l.handleIncomingMessage(resourceName, msg));
+		}
+
+		@Override
+		public boolean handleIncomingMessage(ResourceNameEnum resourceName, byte[] payload)
+		{
+			return dispatch(l -> l.handleIncomingMessage(resourceName, payload));
+		}
+
+		@Override
+		public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+		{
+			return dispatch(l -> l.handleSensorMessage(resourceName, data));
+		}
+
+		@Override
+		public boolean handleSystemPerformanceMessage(ResourceNameEnum resourceName, SystemPerformanceData data)
+		{
+			return dispatch(l -> l.handleSystemPerformanceMessage(resourceName, data));
+		}
+
+		@Override
+		public boolean setActuatorDataListener(String name, IActuatorDataListener listener)
+		{
+			return dispatch(l -> l.setActuatorDataListener(name, listener));
+		}
+
+		private boolean dispatch(Function<IDataMessageListener, Boolean> call)
+		{
+			boolean isHandled = false;
+
+			for (IDataMessageListener listener : this.listeners) {
+				try {
+					isHandled |= call.apply(listener);
+				} catch (Exception e) {
+					_Logger.log(Level.WARNING, "Cloud message listener failed", e);
+				}
+			}
+
+			return isHandled;
+		}
+	}
+}
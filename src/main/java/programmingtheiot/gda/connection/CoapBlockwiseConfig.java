@@ -0,0 +1,116 @@
+package programmingtheiot.gda.connection;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.config.CoapConfig;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.elements.config.Configuration;
+import org.eclipse.californium.elements.config.UdpConfig;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+
+/**
+ * Builds the Californium configuration for block-wise (RFC 7959)
+ * transfers, shared by CoapServerGateway and CoAP clients.
+ *
+ * Bodies larger than one block are split into Block1 (request) or
+ * Block2 (response) transfers and reassembled by Californium's
+ * BlockwiseLayer before the handler sees them. Each transfer's buffer is
+ * capped at 'maxBodySize' (larger uploads are answered with
+ * REQUEST_ENTITY_TOO_LARGE), and incomplete transfers are dropped after
+ * 'blockwiseLifetimeSecs', so a peer can't hold more than one capped
+ * buffer per transfer for longer than that.
+ */
+public final class CoapBlockwiseConfig
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapBlockwiseConfig.class.getName());
+
+	static {
+		CoapConfig.register();
+		UdpConfig.register();
+	}
+
+	/**
+	 * Smallest and largest block sizes allowed by RFC 7959.
+	 */
+	public static final int MIN_BLOCK_SIZE = 16;
+	public static final int MAX_BLOCK_SIZE = 1024;
+
+
+	// constructors
+
+	private CoapBlockwiseConfig()
+	{
+		super();
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns a copy of the standard Californium configuration, with the
+	 * block-wise settings from the given section: 'blockSize',
+	 * 'maxBodySize' and 'blockwiseLifetimeSecs'.
+	 *
+	 * @param configSectionName The CoAP config section name.
+	 * @return Configuration
+	 */
+	public static Configuration createConfiguration(String configSectionName)
+	{
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		int blockSize = toBlockSize(configUtil.getInteger(
+			configSectionName, ConfigConst.BLOCK_SIZE_KEY, ConfigConst.DEFAULT_BLOCK_SIZE));
+		int maxBodySize = Math.max(blockSize, configUtil.getInteger(
+			configSectionName, ConfigConst.MAX_BODY_SIZE_KEY, ConfigConst.DEFAULT_MAX_BODY_SIZE));
+		int lifetimeSecs = Math.max(1, configUtil.getInteger(
+			configSectionName, ConfigConst.BLOCKWISE_LIFETIME_SECS_KEY, ConfigConst.DEFAULT_BLOCKWISE_LIFETIME_SECS));
+
+		Configuration config = new Configuration(Configuration.getStandard());
+
+		// anything larger than one block is sent block-wise
+		config.set(CoapConfig.PREFERRED_BLOCK_SIZE, blockSize);
+		config.set(CoapConfig.MAX_MESSAGE_SIZE, blockSize);
+		config.set(CoapConfig.MAX_RESOURCE_BODY_SIZE, maxBodySize);
+		config.set(CoapConfig.BLOCKWISE_STATUS_LIFETIME, lifetimeSecs, TimeUnit.SECONDS);
+
+		// retry with the server's smaller block size on 4.13
+		config.set(CoapConfig.BLOCKWISE_ENTITY_TOO_LARGE_AUTO_FAILOVER, true);
+
+		_Logger.fine("CoAP block-wise config: blockSize=" + blockSize + ", maxBodySize=" + maxBodySize +
+			", lifetimeSecs=" + lifetimeSecs);
+
+		return config;
+	}
+
+	/**
+	 * Returns a client endpoint (on an ephemeral port) using
+	 * {@link #createConfiguration(String)}, for CoapClient.setEndpoint().
+	 *
+	 * @param configSectionName The CoAP config section name.
+	 * @return CoapEndpoint
+	 */
+	public static CoapEndpoint createClientEndpoint(String configSectionName)
+	{
+		return CoapEndpoint.builder().setConfiguration(createConfiguration(configSectionName)).build();
+	}
+
+	/**
+	 * Rounds the size down to a valid block size (a power of two from 16
+	 * to 1024).
+	 *
+	 * @param size The requested size.
+	 * @return int
+	 */
+	public static int toBlockSize(int size)
+	{
+		int clamped = Math.max(MIN_BLOCK_SIZE, Math.min(MAX_BLOCK_SIZE, size));
+
+		return Integer.highestOneBit(clamped);
+	}
+}
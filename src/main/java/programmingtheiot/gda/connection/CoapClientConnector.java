@@ -0,0 +1,868 @@
+package programmingtheiot.gda.connection;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.WebLink;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.LinkFormat;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.config.CoapConfig;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.elements.AddressEndpointContext;
+import org.eclipse.californium.elements.EndpointContext;
+import org.eclipse.californium.elements.config.Configuration;
+import org.eclipse.californium.elements.config.UdpConfig;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+
+/**
+ * CoAP client for the Gateway Device Application (GDA), using the
+ * Eclipse Californium library.
+ *
+ * All requests and observations go through one CoapEndpoint (one UDP
+ * socket, with its message ID and token state), created by startClient()
+ * or passed in to share one endpoint between connectors. Requests are
+ * addressed to the server's address, resolved once, with the resource
+ * path as Uri-Path options.
+ *
+ * The sendXxxRequest() methods block until the response arrives or
+ * 'timeout' seconds pass, when the request is canceled. The
+ * sendXxxRequestAsync() methods return as soon as the request is sent;
+ * up to 'maxOutstandingRequests' may await responses at once (further
+ * ones are refused), and each is canceled after its own 'timeout'.
+ * Response payloads are passed to
+ * IDataMessageListener.handleIncomingMessage() either way.
+ *
+ * 'nstart' limits the async requests in flight to the server (RFC 7252
+ * NSTART); further ones wait in the connector's queue, in order, until a
+ * response (or timeout) frees a slot. 0 removes the limit, leaving only
+ * 'maxOutstandingRequests'.
+ *
+ * Observations are kept by a CoapObserveManager, which re-registers them
+ * as needed. Each connector creates its own, unless one is set to share
+ * it (and its registration rate limit) between connectors to many
+ * servers.
+ */
+public class CoapClientConnector implements IRequestResponseClient
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapClientConnector.class.getName());
+
+	static {
+		CoapConfig.register();
+		UdpConfig.register();
+	}
+
+
+	// private var's
+
+	private final String configSectionName;
+	private final String host;
+	private final int port;
+	private final int nstart;
+	private final int maxOutstandingRequests;
+	private final Semaphore outstandingPermits;
+	private final boolean isSharedEndpoint;
+	private boolean isSharedObserveManager = false;
+
+	private volatile Endpoint endpoint = null;
+	private volatile InetSocketAddress serverAddr = null;
+	private volatile EndpointContext serverContext = null;
+	private volatile String endpointPath = null;
+	private CoapClient clientConn = null;
+	// guarded by the start/stop lock (this)
+	private ScheduledThreadPoolExecutor timeoutScheduler = null;
+	private volatile IDataMessageListener dataMsgListener = null;
+	private volatile CoapObserveManager observeManager = null;
+
+	private final Queue<AsyncExchange> pendingExchanges = new ConcurrentLinkedQueue<>();
+	// async requests not yet complete (queued or in flight)
+	private final Set<AsyncExchange> outstandingExchanges = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger inFlightCount = new AtomicInteger();
+
+	private final AtomicLong responseCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong timeoutCount = new AtomicLong();
+	private final AtomicLong refusedCount = new AtomicLong();
+
+
+	// constructors
+
+	/**
+	 * Default constructor. Uses the 'Coap.GatewayService' section.
+	 */
+	public CoapClientConnector()
+	{
+		this(ConfigConst.COAP_GATEWAY_SERVICE);
+	}
+
+	/**
+	 * Constructor. Reads 'host', 'port', 'nstart' and
+	 * 'maxOutstandingRequests', and the block-wise settings, from the
+	 * given section.
+	 *
+	 * @param configSectionName The CoAP config section name.
+	 */
+	public CoapClientConnector(String configSectionName)
+	{
+		this(configSectionName, null);
+	}
+
+	/**
+	 * Constructor for a connector using an existing endpoint, e.g. one
+	 * shared by several connectors. The endpoint is started if needed,
+	 * but not destroyed by {@link #stopClient()}; its own configuration
+	 * applies, so the block-wise settings are ignored.
+	 *
+	 * @param configSectionName The CoAP config section name.
+	 * @param endpoint The endpoint to use (null to create one).
+	 */
+	public CoapClientConnector(String configSectionName, Endpoint endpoint)
+	{
+		super();
+
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		this.configSectionName = configSectionName;
+		this.host = configUtil.getProperty(
+			configSectionName, ConfigConst.HOST_KEY, ConfigConst.DEFAULT_COAP_HOST);
+		this.port = configUtil.getInteger(
+			configSectionName, ConfigConst.PORT_KEY, ConfigConst.DEFAULT_COAP_PORT);
+		this.nstart = Math.max(0, configUtil.getInteger(
+			configSectionName, ConfigConst.NSTART_KEY, ConfigConst.DEFAULT_NSTART));
+		this.maxOutstandingRequests = Math.max(1, configUtil.getInteger(
+			configSectionName, ConfigConst.MAX_OUTSTANDING_REQUESTS_KEY, ConfigConst.DEFAULT_MAX_OUTSTANDING_REQUESTS));
+		this.outstandingPermits = new Semaphore(this.maxOutstandingRequests);
+		this.endpoint = endpoint;
+		this.isSharedEndpoint = (endpoint != null);
+
+		_Logger.info("CoAP client created for " + getServerUri() + ": nstart=" + this.nstart +
+			", maxOutstandingRequests=" + this.maxOutstandingRequests);
+	}
+
+
+	// public methods
+
+	/**
+	 * Creates (unless shared) and starts the endpoint. Has no effect if
+	 * already started. Requests start the client if needed.
+	 *
+	 * @return boolean True on success; false otherwise.
+	 */
+	public synchronized boolean startClient()
+	{
+		if (this.clientConn != null) {
+			return true;
+		}
+
+		try {
+			InetSocketAddress serverAddr = new InetSocketAddress(this.host, this.port);
+
+			if (serverAddr.isUnresolved()) {
+				_Logger.warning("Failed to resolve CoAP server host: " + this.host);
+				return false;
+			}
+
+			if (this.endpoint == null) {
+				this.endpoint = createEndpoint();
+			}
+
+			if (! this.endpoint.isStarted()) {
+				this.endpoint.start();
+			}
+
+			this.serverAddr = serverAddr;
+			this.serverContext = new AddressEndpointContext(serverAddr);
+
+			if (this.observeManager == null) {
+				this.observeManager = new CoapObserveManager(this.endpoint, this.configSectionName);
+			}
+
+			this.timeoutScheduler = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "CoapClientTimeout");
+				t.setDaemon(true);
+				return t;
+			});
+			this.timeoutScheduler.setKeepAliveTime(30L, TimeUnit.SECONDS);
+			this.timeoutScheduler.allowCoreThreadTimeOut(true);
+			this.timeoutScheduler.setRemoveOnCancelPolicy(true);
+
+			this.clientConn = new CoapClient(getServerUri());
+			this.clientConn.setEndpoint(this.endpoint);
+
+			_Logger.info("CoAP client started: " + this.endpoint.getAddress());
+
+			return true;
+		} catch (Exception e) {
+			_Logger.log(Level.SEVERE, "Failed to start CoAP client.", e);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Cancels all observations and outstanding requests, and destroys the
+	 * endpoint unless it is shared.
+	 *
+	 * @return boolean True on success; false if not started.
+	 */
+	public synchronized boolean stopClient()
+	{
+		if (this.clientConn == null) {
+			return false;
+		}
+
+		if (this.isSharedObserveManager) {
+			this.observeManager.stopObservers(this.serverAddr);
+		} else {
+			this.observeManager.stop();
+			this.observeManager = null;
+		}
+
+		this.clientConn.shutdown();
+		this.clientConn = null;
+
+		// deadline tasks cancel themselves once the scheduler is shut down,
+		// so each outstanding async request is canceled here instead -
+		// queued ones first, so none is sent as others complete
+		this.timeoutScheduler.shutdownNow();
+		this.timeoutScheduler = null;
+
+		AsyncExchange pending;
+
+		while ((pending = this.pendingExchanges.poll()) != null) {
+			pending.onDeadline();
+		}
+
+		for (AsyncExchange exchange : this.outstandingExchanges) {
+			exchange.onDeadline();
+		}
+
+		if (! this.isSharedEndpoint) {
+			this.endpoint.destroy();
+			this.endpoint = null;
+		}
+
+		_Logger.info("CoAP client stopped: " + this);
+
+		return true;
+	}
+
+	@Override
+	public void clearEndpointPath()
+	{
+		this.endpointPath = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The path is used by requests with a null resource.
+	 */
+	@Override
+	public void setEndpointPath(ResourceNameEnum resource)
+	{
+		this.endpointPath = (resource != null ? resource.getResourceName() : null);
+	}
+
+	/**
+	 * Sets the observe manager to use instead of the connector's own, e.g.
+	 * one shared by connectors to many servers. Must be called before
+	 * {@link #startClient()}; the manager sends on its own endpoint, and
+	 * isn't stopped by {@link #stopClient()}, which only stops this
+	 * connector's observations.
+	 *
+	 * @param manager The observe manager.
+	 * @return boolean True if set; false if the client is started.
+	 */
+	public synchronized boolean setObserveManager(CoapObserveManager manager)
+	{
+		if (manager == null || this.clientConn != null) {
+			return false;
+		}
+
+		this.observeManager = manager;
+		this.isSharedObserveManager = true;
+
+		return true;
+	}
+
+	@Override
+	public boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		if (listener != null) {
+			this.dataMsgListener = listener;
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean sendDiscoveryRequest(int timeout)
+	{
+		Request request = Request.newGet();
+		request.getOptions().setAccept(MediaTypeRegistry.APPLICATION_LINK_FORMAT);
+
+		Response response = sendRequest(request, ".well-known/core", timeout);
+
+		if (response == null || ! response.isSuccess()) {
+			return false;
+		}
+
+		Set<WebLink> links = LinkFormat.parse(response.getPayloadString());
+
+		_Logger.info("CoAP discovery: " + links.size() + " resources.");
+
+		for (WebLink link : links) {
+			_Logger.info("--> URI: " + link.getURI() + ". Attributes: " + link.getAttributes());
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean sendDeleteRequest(ResourceNameEnum resource, String name, boolean enableCON, int timeout)
+	{
+		return handleResponse(resource,
+			sendRequest(createRequest(Request.newDelete(), enableCON, null), createPath(resource, name), timeout));
+	}
+
+	@Override
+	public boolean sendGetRequest(ResourceNameEnum resource, String name, boolean enableCON, int timeout)
+	{
+		return handleResponse(resource,
+			sendRequest(createRequest(Request.newGet(), enableCON, null), createPath(resource, name), timeout));
+	}
+
+	@Override
+	public boolean sendPostRequest(ResourceNameEnum resource, String name, boolean enableCON, String payload, int timeout)
+	{
+		return handleResponse(resource,
+			sendRequest(createRequest(Request.newPost(), enableCON, payload), createPath(resource, name), timeout));
+	}
+
+	@Override
+	public boolean sendPutRequest(ResourceNameEnum resource, String name, boolean enableCON, String payload, int timeout)
+	{
+		return handleResponse(resource,
+			sendRequest(createRequest(Request.newPut(), enableCON, payload), createPath(resource, name), timeout));
+	}
+
+	/**
+	 * As {@link #sendDeleteRequest(ResourceNameEnum, String, boolean, int)},
+	 * but returns once the request is sent.
+	 *
+	 * @return boolean True if sent; false if refused or the send failed.
+	 */
+	public boolean sendDeleteRequestAsync(ResourceNameEnum resource, String name, boolean enableCON, int timeout)
+	{
+		return sendRequestAsync(
+			createRequest(Request.newDelete(), enableCON, null), resource, createPath(resource, name), timeout);
+	}
+
+	/**
+	 * As {@link #sendGetRequest(ResourceNameEnum, String, boolean, int)},
+	 * but returns once the request is sent.
+	 *
+	 * @return boolean True if sent; false if refused or the send failed.
+	 */
+	public boolean sendGetRequestAsync(ResourceNameEnum resource, String name, boolean enableCON, int timeout)
+	{
+		return sendRequestAsync(
+			createRequest(Request.newGet(), enableCON, null), resource, createPath(resource, name), timeout);
+	}
+
+	/**
+	 * As {@link #sendPostRequest(ResourceNameEnum, String, boolean, String, int)},
+	 * but returns once the request is sent.
+	 *
+	 * @return boolean True if sent; false if refused or the send failed.
+	 */
+	public boolean sendPostRequestAsync(ResourceNameEnum resource, String name, boolean enableCON, String payload, int timeout)
+	{
+		return sendRequestAsync(
+			createRequest(Request.newPost(), enableCON, payload), resource, createPath(resource, name), timeout);
+	}
+
+	/**
+	 * As {@link #sendPutRequest(ResourceNameEnum, String, boolean, String, int)},
+	 * but returns once the request is sent.
+	 *
+	 * @return boolean True if sent; false if refused or the send failed.
+	 */
+	public boolean sendPutRequestAsync(ResourceNameEnum resource, String name, boolean enableCON, String payload, int timeout)
+	{
+		return sendRequestAsync(
+			createRequest(Request.newPut(), enableCON, payload), resource, createPath(resource, name), timeout);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The registration is queued in the observe manager, which keeps the
+	 * observation (re-registering it as needed) until stopped or 'ttl'
+	 * seconds pass.
+	 */
+	@Override
+	public boolean startObserver(ResourceNameEnum resource, String name, int ttl)
+	{
+		if (! startClient()) {
+			return false;
+		}
+
+		String path = createPath(resource, name);
+
+		if (path == null) {
+			_Logger.warning("No resource to observe.");
+			return false;
+		}
+
+		if (this.observeManager.isObserving(this.serverAddr, path)) {
+			_Logger.info("Already observing: " + path);
+			return true;
+		}
+
+		this.observeManager.startObserver(this.serverAddr, path, ttl, new CoapHandler() {
+			@Override
+			public void onLoad(CoapResponse response)
+			{
+				handleResponse(resource, response.advanced());
+			}
+
+			@Override
+			public void onError()
+			{
+				_Logger.warning("CoAP observation failed: " + path);
+			}
+		});
+
+		_Logger.info("Observing: " + path + (ttl > 0 ? " for " + ttl + " secs" : ""));
+
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The cancellation is sent without waiting for its response, so
+	 * 'timeout' isn't used.
+	 */
+	@Override
+	public boolean stopObserver(ResourceNameEnum resource, String name, int timeout)
+	{
+		String path = createPath(resource, name);
+		CoapObserveManager manager = this.observeManager;
+
+		if (path == null || manager == null || ! manager.stopObserver(this.serverAddr, path)) {
+			_Logger.warning("Not observing: " + path);
+			return false;
+		}
+
+		_Logger.info("Stopped observing: " + path);
+
+		return true;
+	}
+
+	/**
+	 * Returns the number of async requests awaiting a response.
+	 *
+	 * @return int
+	 */
+	public int getOutstandingRequestCount()
+	{
+		return this.maxOutstandingRequests - this.outstandingPermits.availablePermits();
+	}
+
+	public long getResponseCount()
+	{
+		return this.responseCount.get();
+	}
+
+	public long getFailedCount()
+	{
+		return this.failedCount.get();
+	}
+
+	public long getTimeoutCount()
+	{
+		return this.timeoutCount.get();
+	}
+
+	public long getRefusedCount()
+	{
+		return this.refusedCount.get();
+	}
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(super.toString());
+
+		sb.append(",server=").append(getServerUri());
+		sb.append(",responses=").append(getResponseCount());
+		sb.append(",failed=").append(getFailedCount());
+		sb.append(",timeouts=").append(getTimeoutCount());
+		sb.append(",refused=").append(getRefusedCount());
+		sb.append(",outstanding=").append(getOutstandingRequestCount());
+
+		return sb.toString();
+	}
+
+
+	// private methods
+
+	/**
+	 * Creates the endpoint, with the block-wise settings.
+	 */
+	private Endpoint createEndpoint()
+	{
+		Configuration config = CoapBlockwiseConfig.createConfiguration(this.configSectionName);
+
+		return CoapEndpoint.builder().setConfiguration(config).build();
+	}
+
+	private Request createRequest(Request request, boolean enableCON, String payload)
+	{
+		request.setType(enableCON ? Type.CON : Type.NON);
+
+		if (payload != null) {
+			request.setPayload(payload.getBytes(StandardCharsets.UTF_8));
+			request.getOptions().setContentFormat(MediaTypeRegistry.APPLICATION_JSON);
+		}
+
+		return request;
+	}
+
+	/**
+	 * Returns the Uri-Path for the resource and name, or the endpoint path
+	 * if the resource is null.
+	 */
+	private String createPath(ResourceNameEnum resource, String name)
+	{
+		String path = (resource != null ? resource.getResourceName() : this.endpointPath);
+
+		if (path != null && name != null && ! name.isEmpty()) {
+			path = path + "/" + name;
+		}
+
+		return path;
+	}
+
+	private String getServerUri()
+	{
+		String hostAddr = (this.host.indexOf(':') >= 0 ? "[" + this.host + "]" : this.host);
+
+		return ConfigConst.DEFAULT_COAP_PROTOCOL + "://" + hostAddr + ":" + this.port;
+	}
+
+	private long toTimeoutMillis(int timeout)
+	{
+		return (timeout > 0 ? timeout : ConfigConst.DEFAULT_COAP_TIMEOUT_SECS) * 1000L;
+	}
+
+	/**
+	 * Addresses the request to the server, for sending on the endpoint.
+	 */
+	private boolean prepareRequest(Request request, String path)
+	{
+		if (path == null) {
+			_Logger.warning("No resource for CoAP " + request.getCode() + " request.");
+			return false;
+		}
+
+		if (! startClient()) {
+			return false;
+		}
+
+		request.setDestinationContext(this.serverContext);
+		request.getOptions().setUriPath(path);
+
+		return true;
+	}
+
+	/**
+	 * Sends the request and waits for the response.
+	 *
+	 * @return Response The response, or null if none arrived in time.
+	 */
+	private Response sendRequest(Request request, String path, int timeout)
+	{
+		if (! prepareRequest(request, path)) {
+			return null;
+		}
+
+		// null if the client was stopped meanwhile
+		Endpoint endpoint = this.endpoint;
+
+		if (endpoint == null) {
+			this.failedCount.incrementAndGet();
+			return null;
+		}
+
+		try {
+			request.send(endpoint);
+
+			Response response = request.waitForResponse(toTimeoutMillis(timeout));
+
+			if (response == null) {
+				if (request.isRejected() || request.getSendError() != null) {
+					this.failedCount.incrementAndGet();
+				} else {
+					request.cancel();
+					this.timeoutCount.incrementAndGet();
+
+					_Logger.warning("CoAP " + request.getCode() + " to " + path + " timed out.");
+				}
+			}
+
+			return response;
+		} catch (InterruptedException e) {
+			request.cancel();
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			this.failedCount.incrementAndGet();
+			_Logger.log(Level.WARNING, "Failed to send CoAP " + request.getCode() + " to " + path, e);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Queues the request for sending, without waiting; the response is
+	 * passed to {@link #handleResponse(ResourceNameEnum, Response)}.
+	 */
+	private boolean sendRequestAsync(Request request, ResourceNameEnum resource, String path, int timeout)
+	{
+		if (! prepareRequest(request, path)) {
+			return false;
+		}
+
+		if (! this.outstandingPermits.tryAcquire()) {
+			this.refusedCount.incrementAndGet();
+			return false;
+		}
+
+		AsyncExchange exchange = new AsyncExchange(request, resource);
+		request.addMessageObserver(exchange);
+
+		boolean isScheduled = false;
+
+		// a concurrent stopClient() either runs this deadline (canceling the
+		// exchange) or has already stopped the scheduler
+		synchronized (this) {
+			if (this.timeoutScheduler != null) {
+				this.outstandingExchanges.add(exchange);
+				exchange.timeoutFuture = this.timeoutScheduler.schedule(
+					exchange::onDeadline, toTimeoutMillis(timeout), TimeUnit.MILLISECONDS);
+				isScheduled = true;
+			}
+		}
+
+		if (! isScheduled) {
+			// stopped
+			exchange.complete(true);
+			return false;
+		}
+
+		this.pendingExchanges.add(exchange);
+
+		sendPendingExchanges();
+
+		return true;
+	}
+
+	/**
+	 * Sends queued requests while fewer than 'nstart' are in flight.
+	 */
+	private void sendPendingExchanges()
+	{
+		while (! this.pendingExchanges.isEmpty()) {
+			int count = this.inFlightCount.get();
+
+			if (this.nstart > 0 && count >= this.nstart) {
+				// the next completion sends more
+				return;
+			}
+
+			if (! this.inFlightCount.compareAndSet(count, count + 1)) {
+				continue;
+			}
+
+			AsyncExchange exchange = this.pendingExchanges.poll();
+
+			if (exchange == null || ! exchange.send()) {
+				this.inFlightCount.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Passes a successful response's payload to the listener.
+	 *
+	 * @return boolean True if the response is a success (2.xx) response.
+	 */
+	private boolean handleResponse(ResourceNameEnum resource, Response response)
+	{
+		if (response == null) {
+			return false;
+		}
+
+		if (! response.isSuccess()) {
+			this.failedCount.incrementAndGet();
+			_Logger.fine("CoAP error response: " + response.getCode());
+
+			return false;
+		}
+
+		this.responseCount.incrementAndGet();
+
+		IDataMessageListener listener = this.dataMsgListener;
+
+		if (listener != null && response.getPayloadSize() > 0) {
+			listener.handleIncomingMessage(resource, response.getPayload());
+		}
+
+		return true;
+	}
+
+
+	// inner classes
+
+	/**
+	 * Completes an async request once: on its response, failure, or
+	 * deadline. Releases its outstanding permit and, if it was sent, its
+	 * in-flight slot.
+	 */
+	private class AsyncExchange extends MessageObserverAdapter
+	{
+		private final Request request;
+		private final ResourceNameEnum resource;
+		private boolean isComplete = false;
+		private boolean isSent = false;
+
+		private volatile ScheduledFuture<?> timeoutFuture = null;
+
+		AsyncExchange(Request request, ResourceNameEnum resource)
+		{
+			super();
+
+			this.request = request;
+			this.resource = resource;
+		}
+
+		@Override
+		public void onResponse(Response response)
+		{
+			if (complete(true)) {
+				handleResponse(this.resource, response);
+			}
+		}
+
+		@Override
+		protected void failed()
+		{
+			if (complete(true)) {
+				failedCount.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Sends the request, unless it has already timed out.
+		 *
+		 * @return boolean True if sent (and now holding an in-flight slot).
+		 */
+		boolean send()
+		{
+			synchronized (this) {
+				if (this.isComplete) {
+					return false;
+				}
+
+				this.isSent = true;
+			}
+
+			// null if the client was stopped meanwhile
+			Endpoint sendEndpoint = endpoint;
+
+			if (sendEndpoint == null) {
+				failed();
+				return true;
+			}
+
+			try {
+				this.request.send(sendEndpoint);
+			} catch (Exception e) {
+				_Logger.log(Level.WARNING, "Failed to send CoAP " + this.request.getCode() + " request.", e);
+				failed();
+			}
+
+			return true;
+		}
+
+		/**
+		 * Run by the timeout scheduler, or when the client stops.
+		 */
+		void onDeadline()
+		{
+			if (complete(false)) {
+				timeoutCount.incrementAndGet();
+				this.request.cancel();
+			}
+		}
+
+		boolean complete(boolean cancelTimeout)
+		{
+			boolean wasSent;
+
+			synchronized (this) {
+				if (this.isComplete) {
+					return false;
+				}
+
+				this.isComplete = true;
+				wasSent = this.isSent;
+			}
+
+			ScheduledFuture<?> future = this.timeoutFuture;
+
+			if (cancelTimeout && future != null) {
+				future.cancel(false);
+			}
+
+			outstandingExchanges.remove(this);
+			outstandingPermits.release();
+
+			if (wasSent) {
+				inFlightCount.decrementAndGet();
+				sendPendingExchanges();
+			}
+
+			return true;
+		}
+	}
+}
@@ -0,0 +1,358 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.EmptyMessage;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
+
+/**
+ * CoAP message metrics for one or more endpoints, kept in lock-free
+ * counters (LongAdder) so that recording costs a few increments and no
+ * formatting or logging.
+ *
+ * Added to an endpoint as a post-process interceptor (see
+ * Endpoint.addPostProcessInterceptor()), it sees each message after
+ * deduplication and after sending, and counts:
+ * <ul>
+ * <li>response codes sent and received;</li>
+ * <li>retransmissions sent (CON requests, responses and notifications);</li>
+ * <li>duplicates received (requests and responses);</li>
+ * <li>the round-trip time of each response received, as a histogram.</li>
+ * </ul>
+ *
+ * Per-resource request counts (by method) and handling latency are
+ * recorded by the resource handlers, through {@link #getResourceMetrics(String)}.
+ */
+public class CoapMetricsInterceptor implements MessageInterceptor
+{
+	// private var's
+
+	private final Map<String, ResourceMetrics> resourceMetrics = new ConcurrentHashMap<>();
+
+	private final LongAdder[] sentCodeCounts = createAdders(ResponseCode.values().length);
+	private final LongAdder[] receivedCodeCounts = createAdders(ResponseCode.values().length);
+	private final LongAdder requestsReceived = new LongAdder();
+	private final LongAdder requestsSent = new LongAdder();
+	private final LongAdder retransmissions = new LongAdder();
+	private final LongAdder duplicateRequests = new LongAdder();
+	private final LongAdder duplicateResponses = new LongAdder();
+	private final LongAdder sendErrors = new LongAdder();
+	private final LatencyHistogram responseRtt = new LatencyHistogram();
+
+
+	// constructors
+
+	public CoapMetricsInterceptor()
+	{
+		super();
+	}
+
+
+	// public methods
+
+	@Override
+	public void sendRequest(Request request)
+	{
+		if (request.getSendError() != null) {
+			this.sendErrors.increment();
+		} else if (request.isDuplicate()) {
+			this.retransmissions.increment();
+		} else {
+			this.requestsSent.increment();
+		}
+	}
+
+	@Override
+	public void sendResponse(Response response)
+	{
+		if (response.getSendError() != null) {
+			this.sendErrors.increment();
+		} else if (response.isDuplicate()) {
+			this.retransmissions.increment();
+		} else {
+			this.sentCodeCounts[response.getCode().ordinal()].increment();
+		}
+	}
+
+	@Override
+	public void sendEmptyMessage(EmptyMessage message)
+	{
+		if (message.getSendError() != null) {
+			this.sendErrors.increment();
+		}
+	}
+
+	@Override
+	public void receiveRequest(Request request)
+	{
+		if (request.isDuplicate()) {
+			this.duplicateRequests.increment();
+		} else {
+			this.requestsReceived.increment();
+		}
+	}
+
+	@Override
+	public void receiveResponse(Response response)
+	{
+		if (response.isDuplicate()) {
+			this.duplicateResponses.increment();
+			return;
+		}
+
+		this.receivedCodeCounts[response.getCode().ordinal()].increment();
+
+		Long rttNanos = response.getApplicationRttNanos();
+
+		if (rttNanos != null) {
+			this.responseRtt.record(rttNanos);
+		}
+	}
+
+	@Override
+	public void receiveEmptyMessage(EmptyMessage message)
+	{
+		// ACKs and RSTs aren't counted
+	}
+
+	/**
+	 * Returns the metrics for the resource, creating them on first use.
+	 * Handlers look them up once and keep them.
+	 *
+	 * @param uri The resource's URI, e.g. '/PIOT/ConstrainedDevice/SensorMsg'.
+	 * @return ResourceMetrics
+	 */
+	public ResourceMetrics getResourceMetrics(String uri)
+	{
+		return this.resourceMetrics.computeIfAbsent(uri, ResourceMetrics::new);
+	}
+
+	/**
+	 * Returns the metrics of each resource that has them, by URI.
+	 *
+	 * @return List
+	 */
+	public List<ResourceMetrics> getAllResourceMetrics()
+	{
+		List<ResourceMetrics> list = new ArrayList<>(this.resourceMetrics.values());
+
+		list.sort((a, b) -> a.getUri().compareTo(b.getUri()));
+
+		return Collections.unmodifiableList(list);
+	}
+
+	public long getSentCodeCount(ResponseCode code)     { return this.sentCodeCounts[code.ordinal()].sum(); }
+	public long getReceivedCodeCount(ResponseCode code) { return this.receivedCodeCounts[code.ordinal()].sum(); }
+	public long getRequestsReceived()                   { return this.requestsReceived.sum(); }
+	public long getRequestsSent()                       { return this.requestsSent.sum(); }
+	public long getRetransmissions()                    { return this.retransmissions.sum(); }
+	public long getDuplicateRequests()                  { return this.duplicateRequests.sum(); }
+	public long getDuplicateResponses()                 { return this.duplicateResponses.sum(); }
+	public long getSendErrors()                         { return this.sendErrors.sum(); }
+	public LatencyHistogram getResponseRtt()            { return this.responseRtt; }
+
+	@Override
+	public String toString()
+	{
+		return String.format(
+			"requests in=%d, out=%d, sent codes={%s}, received codes={%s}, retransmissions=%d, " +
+			"duplicates in=%d/%d (requests/responses), send errors=%d, rtt={%s}",
+			getRequestsReceived(), getRequestsSent(), formatCodes(this.sentCodeCounts),
+			formatCodes(this.receivedCodeCounts), getRetransmissions(), getDuplicateRequests(),
+			getDuplicateResponses(), getSendErrors(), this.responseRtt);
+	}
+
+
+	// private methods
+
+	private static LongAdder[] createAdders(int count)
+	{
+		LongAdder[] adders = new LongAdder[count];
+
+		for (int i = 0; i < count; i++) {
+			adders[i] = new LongAdder();
+		}
+
+		return adders;
+	}
+
+	private static String formatCodes(LongAdder[] counts)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for (ResponseCode code : ResponseCode.values()) {
+			long count = counts[code.ordinal()].sum();
+
+			if (count > 0) {
+				sb.append(sb.length() > 0 ? ", " : "").append(code.text).append('=').append(count);
+			}
+		}
+
+		return sb.toString();
+	}
+
+
+	// inner classes
+
+	/**
+	 * Request counts by method, and handling latency, for one resource.
+	 */
+	public static class ResourceMetrics
+	{
+		private final String uri;
+		private final LongAdder[] methodCounts = createAdders(Code.values().length);
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		ResourceMetrics(String uri)
+		{
+			this.uri = uri;
+		}
+
+		/**
+		 * Records a request handled by the resource.
+		 *
+		 * @param method The request method.
+		 * @param latencyNanos The time from receipt until handled.
+		 */
+		public void recordRequest(Code method, long latencyNanos)
+		{
+			this.methodCounts[method.ordinal()].increment();
+			this.latency.record(latencyNanos);
+		}
+
+		public String getUri()                    { return this.uri; }
+		public long getRequestCount(Code method)  { return this.methodCounts[method.ordinal()].sum(); }
+		public long getRequestCount()             { return this.latency.getCount(); }
+		public LatencyHistogram getLatency()      { return this.latency; }
+
+		@Override
+		public String toString()
+		{
+			StringBuilder sb = new StringBuilder(this.uri).append(": requests=").append(getRequestCount());
+
+			for (Code method : Code.values()) {
+				long count = getRequestCount(method);
+
+				if (count > 0) {
+					sb.append(", ").append(method).append('=').append(count);
+				}
+			}
+
+			return sb.append(", latency={").append(this.latency).append('}').toString();
+		}
+	}
+
+	/**
+	 * Latency histogram with power-of-two microsecond buckets: bucket 0
+	 * holds values under 1 us, bucket i values in [2^(i-1), 2^i) us, and
+	 * the last bucket everything from about 17 s up. Percentiles are
+	 * reported as their bucket's upper bound.
+	 */
+	public static class LatencyHistogram
+	{
+		public static final int BUCKET_COUNT = 26;
+
+		private final LongAdder[] buckets = createAdders(BUCKET_COUNT);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+		/**
+		 * Records one value.
+		 *
+		 * @param nanos The latency (negative values are recorded as 0).
+		 */
+		public void record(long nanos)
+		{
+			nanos = Math.max(0L, nanos);
+
+			this.buckets[getBucket(nanos)].increment();
+			this.count.increment();
+			this.totalNanos.add(nanos);
+			this.maxNanos.accumulate(nanos);
+		}
+
+		public long getCount()
+		{
+			return this.count.sum();
+		}
+
+		public long getBucketCount(int bucket)
+		{
+			return this.buckets[bucket].sum();
+		}
+
+		public double getMeanMillis()
+		{
+			long count = getCount();
+
+			return (count > 0 ? this.totalNanos.sum() / 1.0e6 / count : 0.0);
+		}
+
+		public double getMaxMillis()
+		{
+			return this.maxNanos.get() / 1.0e6;
+		}
+
+		/**
+		 * Returns the upper bound of the bucket holding the percentile.
+		 *
+		 * @param percentile The percentile, 0 - 100.
+		 * @return double The bound in milliseconds (the max for the last
+		 * bucket); 0 if there are no values.
+		 */
+		public double getPercentileMillis(double percentile)
+		{
+			long[] counts = new long[BUCKET_COUNT];
+			long total = 0L;
+
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				counts[i] = this.buckets[i].sum();
+				total += counts[i];
+			}
+
+			if (total == 0L) {
+				return 0.0;
+			}
+
+			long rank = Math.max(1L, (long) Math.ceil(total * Math.min(100.0, percentile) / 100.0));
+			long seen = 0L;
+
+			for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+				seen += counts[i];
+
+				if (seen >= rank) {
+					return (1L << i) / 1000.0;
+				}
+			}
+
+			return getMaxMillis();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+				"count=%d, mean=%.3f ms, p50<=%.3f ms, p99<=%.3f ms, max=%.3f ms",
+				getCount(), getMeanMillis(), getPercentileMillis(50.0), getPercentileMillis(99.0), getMaxMillis());
+		}
+
+		static int getBucket(long nanos)
+		{
+			long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+
+			return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+		}
+	}
+}
@@ -0,0 +1,747 @@
+package programmingtheiot.gda.connection;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.MessageObserverAdapter;
+import org.eclipse.californium.core.coap.OptionNumberRegistry;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.coap.Token;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.observe.NotificationListener;
+import org.eclipse.californium.core.observe.ObserveNotificationOrderer;
+import org.eclipse.californium.elements.AddressEndpointContext;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+
+/**
+ * Keeps CoAP observe relations (RFC 7641) to any number of servers (e.g.
+ * CDAs) alive through one endpoint.
+ *
+ * A relation is registered with a GET + Observe and kept while its
+ * notifications are fresh. When no notification arrives within the
+ * Max-Age of the last one (the server only notifies on change, or
+ * notifications were lost), the relation is re-registered with the same
+ * token, so the server replaces its relation rather than adding one.
+ * Re-registrations are due at a random point in the last
+ * 'observeJitterPct' percent of Max-Age, so relations registered together
+ * don't expire together. A relation whose registration fails (error
+ * response, timeout, or a server without observe support) is retried with
+ * exponential backoff plus jitter.
+ *
+ * All (re)registrations go through one queue, sent at up to
+ * 'observeRegistrationsPerSec'. Relation health metrics are available via
+ * {@link #getStatus()} and are logged every 'metricsReportSecs'.
+ *
+ * Notifications reach the manager through the endpoint's
+ * NotificationListener, by token, and are passed to each relation's
+ * CoapHandler, e.g. a SensorDataObserverHandler, on the endpoint's threads.
+ */
+public class CoapObserveManager
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapObserveManager.class.getName());
+
+	private static final long CHECK_INTERVAL_MILLIS = 100L;
+	private static final long MIN_RETRY_MILLIS = 1000L;
+	private static final long MAX_BACKOFF_MILLIS = 60000L;
+
+	/**
+	 * Relation state.
+	 */
+	public enum State
+	{
+		/** Queued for (re)registration. */
+		PENDING,
+
+		/** Registration sent, awaiting the first notification. */
+		REGISTERING,
+
+		/** Notifications are fresh. */
+		ACTIVE,
+
+		/** Registration failed; waiting to retry. */
+		RETRYING
+	}
+
+
+	// private var's
+
+	private final Endpoint endpoint;
+	private final int registrationsPerSec;
+	private final int jitterPct;
+	private final int metricsReportSecs;
+	private final long registrationTimeoutNanos;
+
+	private final Map<String, Relation> relations = new ConcurrentHashMap<>();
+	private final Map<Token, Relation> tokenRelations = new ConcurrentHashMap<>();
+	private final NotificationListener notificationListener = this::handleNotification;
+	private final Queue<Relation> registrationQueue = new ConcurrentLinkedQueue<>();
+	private ScheduledExecutorService scheduler = null;
+	private double registrationCredit = 0.0;
+
+	private final AtomicLong notificationCount = new AtomicLong();
+	private final AtomicLong registrationCount = new AtomicLong();
+	private final AtomicLong reregistrationCount = new AtomicLong();
+	private final AtomicLong expiredCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+
+	// constructors
+
+	/**
+	 * Constructor. Uses the 'Coap.GatewayService' section.
+	 *
+	 * @param endpoint The endpoint to send registrations on.
+	 */
+	public CoapObserveManager(Endpoint endpoint)
+	{
+		this(endpoint, ConfigConst.COAP_GATEWAY_SERVICE);
+	}
+
+	/**
+	 * Constructor. Reads 'observeRegistrationsPerSec', 'observeJitterPct'
+	 * and 'metricsReportSecs' from the given section.
+	 *
+	 * @param endpoint The endpoint to send registrations on.
+	 * @param configSectionName The CoAP config section name.
+	 */
+	public CoapObserveManager(Endpoint endpoint, String configSectionName)
+	{
+		super();
+
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		this.endpoint = endpoint;
+		this.registrationsPerSec = Math.max(1, configUtil.getInteger(
+			configSectionName, ConfigConst.OBSERVE_REGISTRATIONS_PER_SEC_KEY, ConfigConst.DEFAULT_OBSERVE_REGISTRATIONS_PER_SEC));
+		this.jitterPct = Math.min(100, Math.max(0, configUtil.getInteger(
+			configSectionName, ConfigConst.OBSERVE_JITTER_PCT_KEY, ConfigConst.DEFAULT_OBSERVE_JITTER_PCT)));
+		this.metricsReportSecs = configUtil.getInteger(
+			configSectionName, ConfigConst.METRICS_REPORT_SECS_KEY, ConfigConst.DEFAULT_METRICS_REPORT_SECS);
+		this.registrationTimeoutNanos = TimeUnit.SECONDS.toNanos(ConfigConst.DEFAULT_COAP_TIMEOUT_SECS);
+	}
+
+
+	// public methods
+
+	/**
+	 * Starts the relation checks and metrics reporting. Has no effect if
+	 * already started; startObserver() starts the manager if needed.
+	 *
+	 * @return boolean True once started.
+	 */
+	public synchronized boolean start()
+	{
+		if (this.scheduler != null) {
+			return true;
+		}
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "CoapObserveManager");
+			t.setDaemon(true);
+			return t;
+		});
+
+		this.endpoint.addNotificationListener(this.notificationListener);
+
+		this.scheduler.scheduleWithFixedDelay(
+			this::checkRelations, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+		if (this.metricsReportSecs > 0) {
+			this.scheduler.scheduleAtFixedRate(
+				this::logStatus, this.metricsReportSecs, this.metricsReportSecs, TimeUnit.SECONDS);
+		}
+
+		_Logger.info("CoAP observe manager started: registrationsPerSec=" + this.registrationsPerSec +
+			", jitterPct=" + this.jitterPct);
+
+		return true;
+	}
+
+	/**
+	 * Cancels all relations (notifying each server) and stops the checks.
+	 *
+	 * @return boolean True on success; false if not started.
+	 */
+	public synchronized boolean stop()
+	{
+		if (this.scheduler == null) {
+			return false;
+		}
+
+		this.scheduler.shutdownNow();
+		this.scheduler = null;
+		this.endpoint.removeNotificationListener(this.notificationListener);
+
+		for (Relation relation : this.relations.values()) {
+			relation.cancel();
+		}
+
+		this.relations.clear();
+		this.tokenRelations.clear();
+		this.registrationQueue.clear();
+
+		_Logger.info("CoAP observe manager stopped: " + getStatus());
+
+		return true;
+	}
+
+	/**
+	 * Starts observing the resource at 'path' on the server. Registration
+	 * is queued, not sent at once; notifications (and the response to each
+	 * registration) are passed to handler.onLoad(), and each failed
+	 * registration to handler.onError().
+	 *
+	 * @param server The server address.
+	 * @param path The resource's Uri-Path.
+	 * @param ttl Seconds to observe for (0 or less for no limit).
+	 * @param handler The notification handler.
+	 * @return boolean True if the relation was added; false if it exists.
+	 */
+	public boolean startObserver(InetSocketAddress server, String path, int ttl, CoapHandler handler)
+	{
+		if (server == null || path == null || handler == null) {
+			_Logger.warning("Invalid observe relation: " + server + "/" + path);
+			return false;
+		}
+
+		start();
+
+		String key = createKey(server, path);
+		long stopNanos = (ttl > 0 ? System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl) : 0L);
+		Relation relation = new Relation(key, server, path, stopNanos, handler);
+
+		if (this.relations.putIfAbsent(key, relation) != null) {
+			_Logger.fine("Already observing: " + key);
+			return false;
+		}
+
+		this.registrationQueue.add(relation);
+
+		_Logger.fine("Observing: " + key + (ttl > 0 ? " for " + ttl + " secs" : ""));
+
+		return true;
+	}
+
+	/**
+	 * Stops observing the resource at 'path' on the server, and tells the
+	 * server (without waiting for its response).
+	 *
+	 * @param server The server address.
+	 * @param path The resource's Uri-Path.
+	 * @return boolean True if the relation existed.
+	 */
+	public boolean stopObserver(InetSocketAddress server, String path)
+	{
+		Relation relation = (server != null ? this.relations.remove(createKey(server, path)) : null);
+
+		if (relation == null) {
+			return false;
+		}
+
+		relation.cancel();
+
+		_Logger.fine("Stopped observing: " + relation.key);
+
+		return true;
+	}
+
+	/**
+	 * Stops observing all resources on the server.
+	 *
+	 * @param server The server address.
+	 * @return int The number of relations stopped.
+	 */
+	public int stopObservers(InetSocketAddress server)
+	{
+		int count = 0;
+
+		for (Relation relation : this.relations.values()) {
+			if (relation.server.equals(server) && this.relations.remove(relation.key, relation)) {
+				relation.cancel();
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns true if the resource at 'path' on the server is observed.
+	 *
+	 * @param server The server address.
+	 * @param path The resource's Uri-Path.
+	 * @return boolean
+	 */
+	public boolean isObserving(InetSocketAddress server, String path)
+	{
+		return (server != null && this.relations.containsKey(createKey(server, path)));
+	}
+
+	/**
+	 * Returns the state of the relation to the resource at 'path' on the
+	 * server.
+	 *
+	 * @param server The server address.
+	 * @param path The resource's Uri-Path.
+	 * @return State The state, or null if not observed.
+	 */
+	public State getRelationState(InetSocketAddress server, String path)
+	{
+		Relation relation = (server != null ? this.relations.get(createKey(server, path)) : null);
+
+		return (relation != null ? relation.state : null);
+	}
+
+	/**
+	 * Returns a snapshot of the relation health metrics.
+	 *
+	 * @return ObserveStatus
+	 */
+	public ObserveStatus getStatus()
+	{
+		return new ObserveStatus(this);
+	}
+
+
+	// private methods
+
+	private static String createKey(InetSocketAddress server, String path)
+	{
+		return server.getAddress().getHostAddress() + ":" + server.getPort() + "/" + path;
+	}
+
+	/**
+	 * Runs every CHECK_INTERVAL_MILLIS: expires, retries and stops due
+	 * relations, then sends queued registrations within the rate limit.
+	 */
+	private void checkRelations()
+	{
+		try {
+			long now = System.nanoTime();
+
+			for (Relation relation : this.relations.values()) {
+				if (relation.stopNanos != 0L && now - relation.stopNanos >= 0L) {
+					if (this.relations.remove(relation.key, relation)) {
+						relation.cancel();
+					}
+				} else if (relation.check(now)) {
+					this.registrationQueue.add(relation);
+				}
+			}
+
+			// at most one interval's worth at once (or one registration)
+			double credit = (double) this.registrationsPerSec * CHECK_INTERVAL_MILLIS / 1000.0;
+
+			this.registrationCredit = Math.min(Math.max(1.0, credit), this.registrationCredit + credit);
+
+			while (this.registrationCredit >= 1.0) {
+				Relation relation = this.registrationQueue.poll();
+
+				if (relation == null) {
+					break;
+				}
+
+				if (relation.register(now)) {
+					this.registrationCredit -= 1.0;
+				}
+			}
+		} catch (Exception e) {
+			_Logger.log(Level.WARNING, "Failed to check CoAP observe relations.", e);
+		}
+	}
+
+	/**
+	 * Passes a notification (after the registration response) to the
+	 * relation with its token.
+	 */
+	private void handleNotification(Request request, Response response)
+	{
+		Relation relation = this.tokenRelations.get(response.getToken());
+
+		if (relation != null) {
+			relation.onResponse(null, response);
+		}
+	}
+
+	private void logStatus()
+	{
+		_Logger.info("CoAP observe relations: " + getStatus());
+	}
+
+	/**
+	 * Returns the time to wait for a notification after the last one: a
+	 * random point in the last 'jitterPct' percent of its Max-Age.
+	 */
+	private long getFreshnessMillis(Response response)
+	{
+		long maxAgeMillis = (response.getOptions().hasMaxAge() ?
+			response.getOptions().getMaxAge() : OptionNumberRegistry.Defaults.MAX_AGE) * 1000L;
+		long jitterMillis = maxAgeMillis * this.jitterPct / 100L;
+
+		if (jitterMillis > 0L) {
+			maxAgeMillis -= ThreadLocalRandom.current().nextLong(jitterMillis);
+		}
+
+		return Math.max(MIN_RETRY_MILLIS, maxAgeMillis);
+	}
+
+	/**
+	 * Returns the time to wait before retrying a failed registration:
+	 * exponential backoff, with half of it random.
+	 */
+	private static long getBackoffMillis(int failures)
+	{
+		long backoffMillis = Math.min(MAX_BACKOFF_MILLIS, MIN_RETRY_MILLIS << Math.min(failures - 1, 6));
+
+		return backoffMillis / 2 + ThreadLocalRandom.current().nextLong(backoffMillis / 2 + 1);
+	}
+
+
+	// inner classes
+
+	/**
+	 * Relation health metrics.
+	 */
+	public static class ObserveStatus
+	{
+		private final int relationCount;
+		private final int[] stateCounts = new int[State.values().length];
+		private final int queueDepth;
+		private final long notificationCount;
+		private final long registrationCount;
+		private final long reregistrationCount;
+		private final long expiredCount;
+		private final long failedCount;
+
+		ObserveStatus(CoapObserveManager manager)
+		{
+			for (Relation relation : manager.relations.values()) {
+				this.stateCounts[relation.state.ordinal()]++;
+			}
+
+			this.relationCount = manager.relations.size();
+			this.queueDepth = manager.registrationQueue.size();
+			this.notificationCount = manager.notificationCount.get();
+			this.registrationCount = manager.registrationCount.get();
+			this.reregistrationCount = manager.reregistrationCount.get();
+			this.expiredCount = manager.expiredCount.get();
+			this.failedCount = manager.failedCount.get();
+		}
+
+		public int getRelationCount()          { return this.relationCount; }
+		public int getStateCount(State state)  { return this.stateCounts[state.ordinal()]; }
+		public int getQueueDepth()             { return this.queueDepth; }
+		public long getNotificationCount()     { return this.notificationCount; }
+		public long getRegistrationCount()     { return this.registrationCount; }
+		public long getReregistrationCount()   { return this.reregistrationCount; }
+		public long getExpiredCount()          { return this.expiredCount; }
+		public long getFailedCount()           { return this.failedCount; }
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+				"relations=%d (active=%d, registering=%d, pending=%d, retrying=%d), queued=%d, " +
+				"notifications=%d, registrations=%d, reregistrations=%d, expired=%d, failed=%d",
+				this.relationCount, getStateCount(State.ACTIVE), getStateCount(State.REGISTERING),
+				getStateCount(State.PENDING), getStateCount(State.RETRYING), this.queueDepth,
+				this.notificationCount, this.registrationCount, this.reregistrationCount,
+				this.expiredCount, this.failedCount);
+		}
+	}
+
+	/**
+	 * One observe relation. The registration token is kept once the server
+	 * accepts it, and reused by re-registrations; after a failure, the next
+	 * registration gets a new token.
+	 */
+	private class Relation
+	{
+		final String key;
+		final InetSocketAddress server;
+		final String path;
+		final long stopNanos;
+		final CoapHandler handler;
+
+		volatile State state = State.PENDING;
+		private Request request = null;
+		private Token token = null;
+		private ObserveNotificationOrderer orderer = null;
+		private long dueNanos = 0L;
+		private int failures = 0;
+		private boolean isCanceled = false;
+
+		Relation(String key, InetSocketAddress server, String path, long stopNanos, CoapHandler handler)
+		{
+			this.key = key;
+			this.server = server;
+			this.path = path;
+			this.stopNanos = stopNanos;
+			this.handler = handler;
+		}
+
+		/**
+		 * Expires or retries the relation if due.
+		 *
+		 * @return boolean True if the relation is now PENDING and must be
+		 * queued.
+		 */
+		synchronized boolean check(long now)
+		{
+			if (this.isCanceled || this.state == State.PENDING || now - this.dueNanos < 0L) {
+				return false;
+			}
+
+			switch (this.state) {
+				case ACTIVE:
+					expiredCount.incrementAndGet();
+					_Logger.fine("No fresh notification, re-registering: " + this.key);
+					break;
+
+				case REGISTERING:
+					fail();
+					return false;
+
+				default:
+					break;
+			}
+
+			this.state = State.PENDING;
+
+			return true;
+		}
+
+		/**
+		 * Sends the (re)registration if still pending.
+		 *
+		 * @return boolean True if sent.
+		 */
+		boolean register(long now)
+		{
+			Request request = Request.newGet();
+
+			synchronized (this) {
+				if (this.isCanceled || this.state != State.PENDING) {
+					return false;
+				}
+
+				request.setDestinationContext(new AddressEndpointContext(this.server));
+				request.getOptions().setUriPath(this.path);
+				request.setObserve();
+
+				if (this.token != null) {
+					request.setToken(this.token);
+					reregistrationCount.incrementAndGet();
+				} else {
+					registrationCount.incrementAndGet();
+				}
+
+				request.addMessageObserver(new RegistrationObserver(this, request));
+
+				this.request = request;
+				this.orderer = new ObserveNotificationOrderer();
+				this.state = State.REGISTERING;
+				this.dueNanos = now + registrationTimeoutNanos;
+			}
+
+			endpoint.sendRequest(request);
+
+			return true;
+		}
+
+		/**
+		 * Handles the response to a registration request, or a
+		 * notification (with a null request).
+		 */
+		void onResponse(Request request, Response response)
+		{
+			boolean isFailed = false;
+
+			synchronized (this) {
+				if (this.isCanceled || this.request == null ||
+					(request != null ? request != this.request : ! response.getToken().equals(this.token))) {
+					return;
+				}
+
+				if (response.isSuccess() && response.getOptions().hasObserve()) {
+					if (! this.orderer.isNew(response)) {
+						return;
+					}
+
+					if (this.token == null) {
+						this.token = response.getToken();
+						tokenRelations.put(this.token, this);
+					}
+
+					this.failures = 0;
+					this.state = State.ACTIVE;
+					this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getFreshnessMillis(response));
+
+					notificationCount.incrementAndGet();
+				} else {
+					// error, or the server doesn't support observe
+					isFailed = (this.state == State.REGISTERING || this.state == State.ACTIVE);
+
+					if (isFailed) {
+						fail();
+					}
+				}
+			}
+
+			if (response.isSuccess()) {
+				this.handler.onLoad(new Notification(response));
+			}
+
+			if (isFailed) {
+				this.handler.onError();
+			}
+		}
+
+		void onFailed(Request request, String reason)
+		{
+			synchronized (this) {
+				if (this.isCanceled || request != this.request || this.state != State.REGISTERING) {
+					return;
+				}
+
+				_Logger.fine("CoAP observe registration " + reason + ": " + this.key);
+
+				fail();
+			}
+
+			this.handler.onError();
+		}
+
+		/**
+		 * Cancels the relation, telling the server if it is active.
+		 */
+		void cancel()
+		{
+			Request cancelRequest = null;
+
+			synchronized (this) {
+				if (this.isCanceled) {
+					return;
+				}
+
+				this.isCanceled = true;
+
+				if (this.request != null && this.state == State.ACTIVE) {
+					cancelRequest = Request.newGet();
+					cancelRequest.setDestinationContext(this.request.getDestinationContext());
+					cancelRequest.setToken(this.token);
+					cancelRequest.getOptions().setUriPath(this.path);
+					cancelRequest.setObserveCancel();
+				}
+
+				discardRequest();
+			}
+
+			if (cancelRequest != null) {
+				endpoint.sendRequest(cancelRequest);
+			}
+		}
+
+		/**
+		 * Drops the current registration and schedules a retry. Called with
+		 * the lock held.
+		 */
+		private void fail()
+		{
+			failedCount.incrementAndGet();
+			discardRequest();
+
+			this.failures++;
+			this.state = State.RETRYING;
+			this.dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(getBackoffMillis(this.failures));
+		}
+
+		/**
+		 * Cancels the current registration locally, and forgets its token.
+		 * Called with the lock held.
+		 */
+		private void discardRequest()
+		{
+			if (this.request != null) {
+				this.request.cancel();
+				this.request = null;
+			}
+
+			if (this.token != null) {
+				tokenRelations.remove(this.token, this);
+				endpoint.cancelObservation(this.token);
+				this.token = null;
+			}
+		}
+	}
+
+	/**
+	 * Routes the events of one registration request to its relation.
+	 */
+	private static class RegistrationObserver extends MessageObserverAdapter
+	{
+		private final Relation relation;
+		private final Request request;
+
+		RegistrationObserver(Relation relation, Request request)
+		{
+			this.relation = relation;
+			this.request = request;
+		}
+
+		@Override
+		public void onResponse(Response response)
+		{
+			this.relation.onResponse(this.request, response);
+		}
+
+		@Override
+		public void onReject()
+		{
+			this.relation.onFailed(this.request, "rejected");
+		}
+
+		@Override
+		public void onTimeout()
+		{
+			this.relation.onFailed(this.request, "timed out");
+		}
+
+		@Override
+		public void onSendError(Throwable error)
+		{
+			this.relation.onFailed(this.request, "failed to send");
+		}
+	}
+
+	/**
+	 * A notification, for the relation's CoapHandler.
+	 */
+	private static class Notification extends CoapResponse
+	{
+		Notification(Response response)
+		{
+			super(response);
+		}
+	}
+}
@@ -0,0 +1,337 @@
+package programmingtheiot.gda.connection;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+
+/**
+ * Moves CoAP payload decoding and routing off Californium's protocol
+ * threads, onto a bounded pool of dispatch threads.
+ *
+ * {@link #dispatch(Runnable)} never blocks: when the queue is full the
+ * task is rejected, and the caller answers with SERVICE_UNAVAILABLE
+ * (see {@link #getRetryAfterSecs()}).
+ *
+ * Also meters the time handlers spend on protocol threads.
+ * {@link #sampleProtocolThreadOccupancy()} returns the share of protocol
+ * thread time spent in handlers since the previous sample; values near
+ * 1.0 mean ACKs are being delayed.
+ *
+ * Thread-safe.
+ */
+public class CoapRequestDispatcher
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapRequestDispatcher.class.getName());
+
+	/**
+	 * Dispatch modes (config 'dispatchMode').
+	 */
+	public enum Mode
+	{
+		INLINE, ACK, SEPARATE;
+
+		public static Mode fromName(String name)
+		{
+			for (Mode mode : values()) {
+				if (mode.name().equalsIgnoreCase(name)) {
+					return mode;
+				}
+			}
+
+			return null;
+		}
+	}
+
+
+	// private var's
+
+	private final Mode mode;
+	private final int threadCount;
+	private final int queueSize;
+	private final int retryAfterSecs;
+
+	private ThreadPoolExecutor executor = null;
+	private volatile int protocolThreadCount = 1;
+
+	private final AtomicLong dispatchedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong protocolRequestCount = new AtomicLong();
+	private final AtomicLong protocolBusyNanos = new AtomicLong();
+
+	private long lastSampleNanos = System.nanoTime();
+	private long lastSampleBusyNanos = 0L;
+
+
+	// constructors
+
+	/**
+	 * Constructor. Reads 'dispatchMode', 'dispatchThreads',
+	 * 'dispatchQueueSize' and 'retryAfterSecs' from the given section.
+	 *
+	 * @param configSectionName The CoAP config section name.
+	 */
+	public CoapRequestDispatcher(String configSectionName)
+	{
+		this(
+			parseMode(ConfigUtil.getInstance().getProperty(
+				configSectionName, ConfigConst.DISPATCH_MODE_KEY, ConfigConst.DEFAULT_DISPATCH_MODE)),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.DISPATCH_THREADS_KEY, ConfigConst.DEFAULT_DISPATCH_THREADS),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.DISPATCH_QUEUE_SIZE_KEY, ConfigConst.DEFAULT_DISPATCH_QUEUE_SIZE),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.RETRY_AFTER_SECS_KEY, ConfigConst.DEFAULT_RETRY_AFTER_SECS));
+	}
+
+	/**
+	 * Constructor for explicit configuration.
+	 *
+	 * @param mode The dispatch mode.
+	 * @param threadCount The number of dispatch threads.
+	 * @param queueSize The maximum number of queued tasks.
+	 * @param retryAfterSecs The Max-Age sent with SERVICE_UNAVAILABLE.
+	 */
+	public CoapRequestDispatcher(Mode mode, int threadCount, int queueSize, int retryAfterSecs)
+	{
+		super();
+
+		this.mode = (mode != null ? mode : Mode.INLINE);
+		this.threadCount = Math.max(1, threadCount);
+		this.queueSize = Math.max(1, queueSize);
+		this.retryAfterSecs = Math.max(0, retryAfterSecs);
+	}
+
+
+	// public methods
+
+	/**
+	 * Starts the dispatch threads. Has no effect in INLINE mode.
+	 */
+	public synchronized void start()
+	{
+		if (this.mode == Mode.INLINE || this.executor != null) {
+			return;
+		}
+
+		AtomicInteger threadNum = new AtomicInteger();
+
+		this.executor = new ThreadPoolExecutor(
+			this.threadCount, this.threadCount, 30L, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(this.queueSize),
+			r -> {
+				Thread t = new Thread(r, "CoapRequestDispatcher-" + threadNum.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			},
+			new ThreadPoolExecutor.AbortPolicy());
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Stops the dispatch threads, after running the queued tasks.
+	 *
+	 * @param timeoutMillis How long to wait for queued tasks.
+	 */
+	public synchronized void stop(long timeoutMillis)
+	{
+		if (this.executor == null) {
+			return;
+		}
+
+		this.executor.shutdown();
+
+		try {
+			if (! this.executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+				_Logger.warning("Dropping " + this.executor.shutdownNow().size() + " queued CoAP tasks.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		this.executor = null;
+	}
+
+	/**
+	 * Queues the task, or runs it on the calling thread in INLINE mode.
+	 *
+	 * @param task The task.
+	 * @return boolean False if the queue is full or the dispatcher is stopped.
+	 */
+	public boolean dispatch(Runnable task)
+	{
+		if (this.mode == Mode.INLINE) {
+			run(task);
+			return true;
+		}
+
+		ThreadPoolExecutor executor = this.executor;
+
+		if (executor != null) {
+			try {
+				executor.execute(() -> run(task));
+				this.dispatchedCount.incrementAndGet();
+
+				return true;
+			} catch (RejectedExecutionException e) {
+				// full or shutting down
+			}
+		}
+
+		this.rejectedCount.incrementAndGet();
+
+		return false;
+	}
+
+	/**
+	 * Records time a handler spent on a protocol thread.
+	 *
+	 * @param nanos The elapsed time.
+	 */
+	public void recordProtocolThreadTime(long nanos)
+	{
+		this.protocolRequestCount.incrementAndGet();
+		this.protocolBusyNanos.addAndGet(nanos);
+	}
+
+	/**
+	 * Records an update that was accepted but then failed to decode or
+	 * was rejected by the listener (which the client doesn't see in ACK
+	 * mode).
+	 */
+	public void recordFailed()
+	{
+		this.failedCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns the share (0.0 - 1.0) of the protocol threads' time spent in
+	 * handlers since the previous call.
+	 *
+	 * @return double
+	 */
+	public synchronized double sampleProtocolThreadOccupancy()
+	{
+		long now = System.nanoTime();
+		long busy = this.protocolBusyNanos.get();
+		long elapsed = Math.max(1L, now - this.lastSampleNanos) * this.protocolThreadCount;
+
+		double occupancy = (double) (busy - this.lastSampleBusyNanos) / elapsed;
+
+		this.lastSampleNanos = now;
+		this.lastSampleBusyNanos = busy;
+
+		return Math.min(1.0, occupancy);
+	}
+
+	/**
+	 * Sets the number of protocol threads the occupancy is measured against.
+	 *
+	 * @param count The protocol stage thread count.
+	 */
+	public void setProtocolThreadCount(int count)
+	{
+		this.protocolThreadCount = Math.max(1, count);
+	}
+
+	/**
+	 * Returns the average time handlers spent on a protocol thread per
+	 * request, in microseconds.
+	 *
+	 * @return double
+	 */
+	public double getAvgProtocolThreadMicros()
+	{
+		long count = this.protocolRequestCount.get();
+
+		return (count > 0 ? this.protocolBusyNanos.get() / (count * 1000.0) : 0.0);
+	}
+
+	public Mode getMode()
+	{
+		return this.mode;
+	}
+
+	public int getRetryAfterSecs()
+	{
+		return this.retryAfterSecs;
+	}
+
+	public int getQueueDepth()
+	{
+		ThreadPoolExecutor executor = this.executor;
+
+		return (executor != null ? executor.getQueue().size() : 0);
+	}
+
+	public long getDispatchedCount()
+	{
+		return this.dispatchedCount.get();
+	}
+
+	public long getRejectedCount()
+	{
+		return this.rejectedCount.get();
+	}
+
+	public long getFailedCount()
+	{
+		return this.failedCount.get();
+	}
+
+	public long getProtocolRequestCount()
+	{
+		return this.protocolRequestCount.get();
+	}
+
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(super.toString());
+
+		sb.append(",mode=").append(this.mode);
+		sb.append(",dispatched=").append(getDispatchedCount());
+		sb.append(",rejected=").append(getRejectedCount());
+		sb.append(",failed=").append(getFailedCount());
+		sb.append(",queueDepth=").append(getQueueDepth());
+		sb.append(",protocolRequests=").append(getProtocolRequestCount());
+		sb.append(String.format(",avgProtocolMicros=%.1f", getAvgProtocolThreadMicros()));
+
+		return sb.toString();
+	}
+
+
+	// private methods
+
+	private static Mode parseMode(String name)
+	{
+		Mode mode = Mode.fromName(name);
+
+		if (mode == null) {
+			_Logger.warning("Unknown CoAP dispatch mode: " + name + ". Using inline.");
+			mode = Mode.INLINE;
+		}
+
+		return mode;
+	}
+
+	private void run(Runnable task)
+	{
+		try {
+			task.run();
+		} catch (Exception e) {
+			this.failedCount.incrementAndGet();
+			_Logger.log(Level.WARNING, "CoAP dispatch task failed.", e);
+		}
+	}
+}
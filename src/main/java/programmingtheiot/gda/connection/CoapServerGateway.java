@@ -8,30 +8,60 @@
 
 package programmingtheiot.gda.connection;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.CoapServer;
 import org.eclipse.californium.core.network.Endpoint;
-import org.eclipse.californium.core.network.interceptors.MessageTracer;
 import org.eclipse.californium.core.server.resources.Resource;
-import org.eclipse.californium.elements.config.Configuration;
 import org.eclipse.californium.elements.config.UdpConfig;
 import org.eclipse.californium.core.config.CoapConfig;
 
 import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.gda.connection.handlers.GenericCoapResourceHandler;
+import programmingtheiot.gda.connection.handlers.GetActuatorCommandResourceHandler;
+import programmingtheiot.gda.connection.handlers.UpdateActuatorResponseResourceHandler;
+import programmingtheiot.gda.connection.handlers.UpdateSystemPerformanceResourceHandler;
+import programmingtheiot.gda.connection.handlers.UpdateSystemStateResourceHandler;
+import programmingtheiot.gda.connection.handlers.UpdateTelemetryResourceHandler;
 
 /**
  * CoAP Server Gateway for the Gateway Device Application (GDA).
  * 
  * This class provides CoAP server functionality using the Eclipse Californium library,
  * hosting resources that can be accessed by external clients and the cloud.
+ * 
+ * The resource tree is built from ResourceNameEnum values: each becomes a
+ * leaf (e.g. /PIOT/ConstrainedDevice/SensorMsg) whose typed handler decodes
+ * the payload and routes it to the IDataMessageListener. Leaf paths are
+ * resolved through a precomputed index (see IndexedMessageDeliverer).
+ * 
+ * Depending on 'dispatchMode', handlers decode and route updates inline
+ * or on a CoapRequestDispatcher's bounded thread pool.
+ * 
+ * Bodies larger than one block (e.g. SystemStateData or SensorData batch
+ * uploads) are exchanged block-wise; see CoapBlockwiseConfig.
+ * 
+ * All resources are observable. Observers are notified from one shared
+ * notifier thread, at most once per 'observeIntervalMillis' per resource.
+ * 
+ * Each endpoint counts its messages in a CoapMetricsInterceptor (request
+ * counts and latency per resource, response codes, retransmissions,
+ * duplicates), logged every 'metricsReportSecs'. Full message tracing is
+ * off unless 'traceSampleRate' is set, and then logs one in that many
+ * messages.
  */
 public class CoapServerGateway
 {
@@ -45,9 +75,33 @@ public class CoapServerGateway
 		UdpConfig.register();
 	}
 	
+	/**
+	 * Resources hosted when none are requested.
+	 */
+	public static final ResourceNameEnum[] DEFAULT_RESOURCES = {
+		ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE,
+		ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE,
+		ResourceNameEnum.CDA_SYSTEM_STATE_MSG_RESOURCE,
+		ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE,
+		ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE,
+		ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE,
+		ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE,
+		ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE
+	};
+	
 	// Class-scoped variables
 	private CoapServer coapServer = null;
+	private IndexedMessageDeliverer messageDeliverer = null;
+	private CoapRequestDispatcher requestDispatcher = null;
+	private ScheduledThreadPoolExecutor observeNotifier = null;
+	private long observeIntervalMillis = ConfigConst.DEFAULT_OBSERVE_INTERVAL_MILLIS;
+	private CoapMetricsInterceptor metrics = null;
+	private int metricsReportSecs = 0;
+	private int traceSampleRate = 0;
+	private ScheduledExecutorService metricsReporter = null;
 	private IDataMessageListener dataMsgListener = null;
+	private final Map<ResourceNameEnum, GenericCoapResourceHandler> resourceHandlers =
+		new EnumMap<>(ResourceNameEnum.class);
 	
 	
 	// Constructors
@@ -55,7 +109,7 @@ public class CoapServerGateway
 	/**
 	 * Constructor with data message listener.
 	 * 
-	 * Creates a CoAP server instance and initializes with default configuration.
+	 * Creates a CoAP server instance and initializes it with DEFAULT_RESOURCES.
 	 * 
 	 * @param dataMsgListener The IDataMessageListener implementation (typically DeviceDataManager)
 	 */
@@ -95,17 +149,23 @@ public class CoapServerGateway
 	// Public Methods
 	
 	/**
-	 * Set or update the data message listener.
+	 * Set or update the data message listener, for this gateway and all
+	 * of its resource handlers.
 	 * 
 	 * NOTE: This is optional since the listener should be passed in the constructor.
 	 * This is provided as a convenience method.
 	 * 
 	 * @param listener The IDataMessageListener implementation
 	 */
-	public void setDataMessageListener(IDataMessageListener listener)
+	public synchronized void setDataMessageListener(IDataMessageListener listener)
 	{
 		if (listener != null) {
 			this.dataMsgListener = listener;
+			
+			for (Map.Entry<ResourceNameEnum, GenericCoapResourceHandler> entry : this.resourceHandlers.entrySet()) {
+				registerHandler(entry.getKey(), entry.getValue());
+			}
+			
 			_Logger.info("Data message listener updated.");
 		}
 	}
@@ -114,26 +174,125 @@ public class CoapServerGateway
 	 * Add a resource to the CoAP server.
 	 * 
 	 * This allows external registration of resource handlers after server initialization.
-	 * Resources are organized in a tree structure (e.g., /PIOT/GatewayDevice/SystemPerfMsg).
+	 * Resources are organized in a tree structure (e.g., /PIOT/GatewayDevice/SystemPerfMsg);
+	 * missing parent resources are created. A resource already at the same
+	 * path is replaced.
 	 * 
 	 * @param resourceType The resource type enumeration
-	 * @param endName Optional endpoint name (final segment of path)
+	 * @param endName Optional endpoint name (final segment of path); if null
+	 * or empty, the resource type's final segment is used
 	 * @param resource The CoapResource instance to register
 	 */
-	public void addResource(ResourceNameEnum resourceType, String endName, Resource resource)
+	public synchronized void addResource(ResourceNameEnum resourceType, String endName, Resource resource)
 	{
-		if (this.coapServer != null && resource != null) {
-			// TODO: Implement resource registration in PIOT-GDA-08-002
-			_Logger.info("Adding resource: " + resourceType.getResourceName());
-		} else {
-			_Logger.warning("CoAP server not initialized or resource is null.");
+		if (this.coapServer == null || resourceType == null || resource == null) {
+			_Logger.warning("CoAP server not initialized, or resource type or resource is null.");
+			return;
+		}
+		
+		List<String> path = new ArrayList<>(resourceType.getResourceNameChain());
+		
+		if (endName != null && ! endName.trim().isEmpty()) {
+			path.set(path.size() - 1, endName.trim());
 		}
+		
+		// build (or reuse) the parent chain under the server root
+		Resource parent = this.coapServer.getRoot();
+		
+		for (String name : path.subList(0, path.size() - 1)) {
+			Resource child = parent.getChild(name);
+			
+			if (child == null) {
+				child = new CoapResource(name);
+				parent.add(child);
+			}
+			
+			parent = child;
+		}
+		
+		String leafName = path.get(path.size() - 1);
+		Resource existing = parent.getChild(leafName);
+		
+		if (existing != null) {
+			parent.delete(existing);
+		}
+		
+		resource.setName(leafName);
+		parent.add(resource);
+		
+		this.messageDeliverer.indexResource(path, resource);
+		
+		if (resource instanceof GenericCoapResourceHandler) {
+			GenericCoapResourceHandler handler = (GenericCoapResourceHandler) resource;
+			
+			if (path.equals(resourceType.getResourceNameChain())) {
+				this.resourceHandlers.put(resourceType, handler);
+			}
+			
+			registerHandler(resourceType, handler);
+		}
+		
+		_Logger.info("Added resource: " + resource.getURI());
+	}
+	
+	/**
+	 * Returns the handler hosting the resource, or null if it isn't hosted.
+	 * 
+	 * @param resourceType The resource type enumeration
+	 * @return GenericCoapResourceHandler
+	 */
+	public synchronized GenericCoapResourceHandler getResourceHandler(ResourceNameEnum resourceType)
+	{
+		return this.resourceHandlers.get(resourceType);
+	}
+	
+	/**
+	 * Replaces the state of a hosted resource (e.g. GDA management status)
+	 * and notifies its observers.
+	 * 
+	 * @param resourceType The resource type enumeration
+	 * @param payload The serialized (JSON) state
+	 * @return boolean False if the resource isn't hosted
+	 */
+	public boolean updateResourceState(ResourceNameEnum resourceType, byte[] payload)
+	{
+		GenericCoapResourceHandler handler = getResourceHandler(resourceType);
+		
+		if (handler == null) {
+			_Logger.warning("Resource not hosted. Ignoring state update: " + resourceType);
+			return false;
+		}
+		
+		handler.updateState(payload);
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the request dispatcher, for its metrics.
+	 * 
+	 * @return CoapRequestDispatcher
+	 */
+	public CoapRequestDispatcher getRequestDispatcher()
+	{
+		return this.requestDispatcher;
+	}
+	
+	/**
+	 * Returns the message metrics of the server's endpoints.
+	 * 
+	 * @return CoapMetricsInterceptor
+	 */
+	public CoapMetricsInterceptor getMetrics()
+	{
+		return this.metrics;
 	}
 	
 	/**
 	 * Start the CoAP server.
 	 * 
-	 * Starts the server and adds message tracing interceptors for debugging.
+	 * Starts the server, with the metrics interceptor (and the sampled
+	 * message tracer, if enabled) on each endpoint.
 	 * Subsequent calls to start an already running server will have no effect.
 	 * 
 	 * @return boolean True if server started successfully, false otherwise
@@ -144,13 +303,23 @@ public class CoapServerGateway
 			if (this.coapServer != null) {
 				_Logger.info("Starting CoAP server...");
 				
+				this.requestDispatcher.start();
 				this.coapServer.start();
 				
-				// Add message tracer interceptor for debugging/logging
+				// Count messages (after deduplication and sending), and
+				// trace a sample of them if enabled
 				for (Endpoint ep : this.coapServer.getEndpoints()) {
-					ep.addInterceptor(new MessageTracer());
+					if (! ep.getPostProcessInterceptors().contains(this.metrics)) {
+						ep.addPostProcessInterceptor(this.metrics);
+						
+						if (this.traceSampleRate > 0) {
+							ep.addInterceptor(new SampledMessageTracer(this.traceSampleRate));
+						}
+					}
 				}
 				
+				startMetricsReporter();
+				
 				_Logger.info("\n\n***** CoAP server started. *****\n");
 				
 				return true;
@@ -179,8 +348,12 @@ public class CoapServerGateway
 				_Logger.info("Stopping CoAP server...");
 				
 				this.coapServer.stop();
+				this.requestDispatcher.stop(ConfigConst.DEFAULT_PUBLISH_TIMEOUT_MILLIS);
+				
+				stopMetricsReporter();
 				
-				_Logger.info("CoAP server stopped successfully.");
+				_Logger.info("CoAP server stopped successfully. Dispatch: " + this.requestDispatcher);
+				logMetrics();
 				
 				return true;
 			} else {
@@ -199,47 +372,147 @@ public class CoapServerGateway
 	/**
 	 * Initialize the CoAP server with default or specified resources.
 	 * 
-	 * Creates the CoapServer instance. Resource handlers will be added
-	 * in PIOT-GDA-08-002.
+	 * Creates the CoapServer instance on the configured port, with the
+	 * configured block-wise limits, and a typed resource handler for each
+	 * resource.
 	 * 
-	 * @param resources Optional variable length list of resources to register
+	 * @param resources Optional variable length list of resources to register;
+	 * DEFAULT_RESOURCES if empty
 	 */
 	private void initServer(ResourceNameEnum ...resources)
 	{
-	    try {
-	        _Logger.info("Initializing CoAP server...");
-	        
-	        // Create the CoAP server instance
-	        this.coapServer = new CoapServer();
-	        
-	        _Logger.info("Creating CoAP server resources...");
-	        
-	        // Create resource tree structure: PIOT/GatewayDevice/
-	        CoapResource piotResource = new CoapResource("PIOT");
-	        CoapResource gdResource = new CoapResource("GatewayDevice");
-	        
-	        // Create resource handlers - use only the final segment name
-	        GenericCoapResourceHandler mgmtStatusResource = 
-	            new GenericCoapResourceHandler("MgmtStatusMsg", this.dataMsgListener);  // Changed!
-	        
-	        GenericCoapResourceHandler mgmtStatusCmdResource = 
-	            new GenericCoapResourceHandler("MgmtStatusCmd", this.dataMsgListener);  // Changed!
-	        
-	        // Build resource tree
-	        piotResource.add(gdResource);
-	        gdResource.add(mgmtStatusResource);
-	        gdResource.add(mgmtStatusCmdResource);
-	        
-	        // Add root to server
-	        this.coapServer.add(piotResource);
-	        
-	        _Logger.info("CoAP server resources created successfully:");
-	        _Logger.info("  - /PIOT/GatewayDevice/MgmtStatusMsg");
-	        _Logger.info("  - /PIOT/GatewayDevice/MgmtStatusCmd");
-	        
-	    } catch (Exception e) {
-	        _Logger.log(Level.SEVERE, "Failed to initialize CoAP server.", e);
-	        e.printStackTrace();
-	    }
-	}
-}
\ No newline at end of file
+		try {
+			_Logger.info("Initializing CoAP server...");
+			
+			int port = ConfigUtil.getInstance().getInteger(
+				ConfigConst.COAP_GATEWAY_SERVICE, ConfigConst.PORT_KEY, ConfigConst.DEFAULT_COAP_PORT);
+			
+			this.coapServer = new CoapServer(
+				CoapBlockwiseConfig.createConfiguration(ConfigConst.COAP_GATEWAY_SERVICE), port);
+			this.messageDeliverer = new IndexedMessageDeliverer(this.coapServer.getRoot());
+			this.coapServer.setMessageDeliverer(this.messageDeliverer);
+			
+			this.requestDispatcher = new CoapRequestDispatcher(ConfigConst.COAP_GATEWAY_SERVICE);
+			this.requestDispatcher.setProtocolThreadCount(
+				this.coapServer.getConfig().get(CoapConfig.PROTOCOL_STAGE_THREAD_COUNT));
+			
+			_Logger.info("CoAP request dispatch mode: " + this.requestDispatcher.getMode());
+			
+			this.metrics = new CoapMetricsInterceptor();
+			this.metricsReportSecs = ConfigUtil.getInstance().getInteger(
+				ConfigConst.COAP_GATEWAY_SERVICE, ConfigConst.METRICS_REPORT_SECS_KEY,
+				ConfigConst.DEFAULT_METRICS_REPORT_SECS);
+			this.traceSampleRate = ConfigUtil.getInstance().getInteger(
+				ConfigConst.COAP_GATEWAY_SERVICE, ConfigConst.TRACE_SAMPLE_RATE_KEY,
+				ConfigConst.DEFAULT_TRACE_SAMPLE_RATE);
+			
+			if (this.traceSampleRate > 0) {
+				_Logger.info("CoAP message tracing: 1 in " + this.traceSampleRate + " messages.");
+			}
+			
+			this.observeIntervalMillis = ConfigUtil.getInstance().getInteger(
+				ConfigConst.COAP_GATEWAY_SERVICE, ConfigConst.OBSERVE_INTERVAL_MILLIS_KEY,
+				ConfigConst.DEFAULT_OBSERVE_INTERVAL_MILLIS);
+			
+			this.observeNotifier = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread t = new Thread(r, "CoapObserveNotifier");
+				t.setDaemon(true);
+				return t;
+			});
+			this.observeNotifier.setKeepAliveTime(30L, TimeUnit.SECONDS);
+			this.observeNotifier.allowCoreThreadTimeOut(true);
+			this.observeNotifier.setRemoveOnCancelPolicy(true);
+			
+			if (resources == null || resources.length == 0) {
+				resources = DEFAULT_RESOURCES;
+			}
+			
+			for (ResourceNameEnum resource : resources) {
+				if (resource != null) {
+					addResource(resource, null, createResourceHandler(resource));
+				}
+			}
+			
+			_Logger.info("CoAP server resources created: " + this.messageDeliverer.getIndexSize());
+		} catch (Exception e) {
+			_Logger.log(Level.SEVERE, "Failed to initialize CoAP server.", e);
+		}
+	}
+	
+	private synchronized void startMetricsReporter()
+	{
+		if (this.metricsReportSecs > 0 && this.metricsReporter == null) {
+			this.metricsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "CoapServerGateway-Metrics");
+				t.setDaemon(true);
+				return t;
+			});
+			
+			this.metricsReporter.scheduleAtFixedRate(
+				this::logMetrics, this.metricsReportSecs, this.metricsReportSecs, TimeUnit.SECONDS);
+		}
+	}
+	
+	private synchronized void stopMetricsReporter()
+	{
+		if (this.metricsReporter != null) {
+			this.metricsReporter.shutdownNow();
+			this.metricsReporter = null;
+		}
+	}
+	
+	private void logMetrics()
+	{
+		_Logger.info("CoAP server messages: " + this.metrics);
+		
+		for (CoapMetricsInterceptor.ResourceMetrics resourceMetrics : this.metrics.getAllResourceMetrics()) {
+			if (resourceMetrics.getRequestCount() > 0) {
+				_Logger.info("CoAP resource " + resourceMetrics);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the typed handler for the resource.
+	 */
+	private GenericCoapResourceHandler createResourceHandler(ResourceNameEnum resource)
+	{
+		switch (resource) {
+			case CDA_SENSOR_MSG_RESOURCE:
+				return new UpdateTelemetryResourceHandler(resource);
+				
+			case CDA_SYSTEM_PERF_MSG_RESOURCE:
+			case GDA_SYSTEM_PERF_MSG_RESOURCE:
+				return new UpdateSystemPerformanceResourceHandler(resource);
+				
+			case CDA_SYSTEM_STATE_MSG_RESOURCE:
+				return new UpdateSystemStateResourceHandler(resource);
+				
+			case CDA_ACTUATOR_CMD_RESOURCE:
+			case CLOUD_ACTUATOR_CMD_RESOURCE:
+				return new GetActuatorCommandResourceHandler(resource);
+				
+			case CDA_ACTUATOR_RESPONSE_RESOURCE:
+				return new UpdateActuatorResponseResourceHandler(resource);
+				
+			default:
+				return new GenericCoapResourceHandler(resource);
+		}
+	}
+	
+	/**
+	 * Connects the handler to the data message listener.
+	 */
+	private void registerHandler(ResourceNameEnum resourceType, GenericCoapResourceHandler handler)
+	{
+		handler.setDataMessageListener(this.dataMsgListener);
+		handler.setRequestDispatcher(this.requestDispatcher);
+		handler.setObserveNotifier(this.observeNotifier, this.observeIntervalMillis);
+		handler.setMetrics(this.metrics);
+		
+		if (this.dataMsgListener != null && handler instanceof GetActuatorCommandResourceHandler) {
+			this.dataMsgListener.setActuatorDataListener(
+				resourceType.getResourceName(), (GetActuatorCommandResourceHandler) handler);
+		}
+	}
+}
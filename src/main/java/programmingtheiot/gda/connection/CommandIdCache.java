@@ -0,0 +1,127 @@
+package programmingtheiot.gda.connection;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+
+/**
+ * Bounded, time-expiring set of recently seen command IDs, used to drop
+ * duplicate cloud commands (cloud-side retries and QoS 1 redeliveries).
+ *
+ * IDs are kept in arrival order, so expired IDs are always at the head
+ * and are purged as new IDs arrive; once the cache is full the oldest ID
+ * is evicted. Lookups and inserts are O(1) (amortized for purging).
+ *
+ * Thread-safe.
+ */
+public class CommandIdCache
+{
+	// private var's
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final LinkedHashMap<String, Long> seenIds;
+
+	private long duplicateCount = 0L;
+
+
+	// constructors
+
+	/**
+	 * Constructor. Reads 'commandCacheSize' and 'commandCacheTtlSecs' from
+	 * the given section.
+	 *
+	 * @param configSectionName The cloud connector's config section name.
+	 */
+	public CommandIdCache(String configSectionName)
+	{
+		this(
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.COMMAND_CACHE_SIZE_KEY, ConfigConst.DEFAULT_COMMAND_CACHE_SIZE),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.COMMAND_CACHE_TTL_SECS_KEY, ConfigConst.DEFAULT_COMMAND_CACHE_TTL_SECS) * 1000L);
+	}
+
+	/**
+	 * Constructor for explicit configuration.
+	 *
+	 * @param maxSize The maximum number of IDs remembered.
+	 * @param ttlMillis How long an ID is remembered.
+	 */
+	public CommandIdCache(int maxSize, long ttlMillis)
+	{
+		super();
+
+		this.maxSize = Math.max(1, maxSize);
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, ttlMillis));
+
+		this.seenIds = new LinkedHashMap<String, Long>(Math.min(this.maxSize, 1024) * 4 / 3 + 1)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+			{
+				return size() > CommandIdCache.this.maxSize;
+			}
+		};
+	}
+
+
+	// public methods
+
+	/**
+	 * Records the ID, unless it was already seen within the TTL.
+	 *
+	 * @param commandID The command ID.
+	 * @return boolean True if the ID is new (the command should be run);
+	 * false if it is a duplicate.
+	 */
+	public synchronized boolean markSeen(String commandID)
+	{
+		long now = System.nanoTime();
+
+		purgeExpired(now);
+
+		if (this.seenIds.containsKey(commandID)) {
+			++this.duplicateCount;
+			return false;
+		}
+
+		this.seenIds.put(commandID, now + this.ttlNanos);
+
+		return true;
+	}
+
+	public synchronized int size()
+	{
+		purgeExpired(System.nanoTime());
+
+		return this.seenIds.size();
+	}
+
+	public synchronized long getDuplicateCount()
+	{
+		return this.duplicateCount;
+	}
+
+
+	// private methods
+
+	private void purgeExpired(long now)
+	{
+		Iterator<Long> iter = this.seenIds.values().iterator();
+
+		while (iter.hasNext()) {
+			if (iter.next() - now > 0L) {
+				break;
+			}
+
+			iter.remove();
+		}
+	}
+}
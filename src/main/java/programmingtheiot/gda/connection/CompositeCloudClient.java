@@ -0,0 +1,513 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+
+/**
+ * Fans cloud uplink data out to several cloud targets.
+ *
+ * Each target has its own client, bounded queue, worker thread, retry
+ * policy and health state. Sends only enqueue, so a slow or unreachable
+ * target never delays the others (or the caller); if a target's queue
+ * is full, data for that target is dropped and counted.
+ *
+ * A target's worker connects lazily, reconnects with exponential backoff
+ * while the target is down, and re-applies cloud event subscriptions
+ * after each (re)connect. Per-target delivery metrics are available via
+ * {@link #getTargetStatus()} and are logged periodically.
+ */
+public class CompositeCloudClient implements ICloudClient
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CompositeCloudClient.class.getName());
+
+	private static final long MAX_BACKOFF_MILLIS = 30000L;
+
+	/**
+	 * Target health.
+	 */
+	public enum Health
+	{
+		/** Last send succeeded. */
+		HEALTHY,
+
+		/** Recent sends needed retries, or failed after retries. */
+		DEGRADED,
+
+		/** Not connected. */
+		DOWN
+	}
+
+
+	// private var's
+
+	private final List<Target> targets = new ArrayList<>();
+	private final Set<ResourceNameEnum> subscriptions = ConcurrentHashMap.newKeySet();
+	private ScheduledExecutorService metricsReporter = null;
+	private final int metricsReportSecs;
+
+
+	// constructors
+
+	/**
+	 * Constructor. Gets a shared client from CloudClientFactory per service
+	 * name, each configured from its 'Cloud.GatewayService.{name}' section.
+	 *
+	 * @param cloudServiceNames The cloud service names.
+	 */
+	public CompositeCloudClient(List<String> cloudServiceNames)
+	{
+		super();
+
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		for (String name : cloudServiceNames) {
+			String section = configUtil.getCloudSectionName(name);
+
+			this.targets.add(new Target(
+				name,
+				CloudClientFactory.getInstance().createCloudClient(name),
+				configUtil.getInteger(section, ConfigConst.TARGET_QUEUE_SIZE_KEY, ConfigConst.DEFAULT_TARGET_QUEUE_SIZE),
+				configUtil.getInteger(section, ConfigConst.MAX_RETRIES_KEY, ConfigConst.DEFAULT_MAX_RETRIES),
+				configUtil.getInteger(section, ConfigConst.RETRY_BACKOFF_MILLIS_KEY, ConfigConst.DEFAULT_RETRY_BACKOFF_MILLIS)));
+		}
+
+		this.metricsReportSecs = configUtil.getInteger(
+			ConfigConst.CLOUD_GATEWAY_SERVICE, ConfigConst.METRICS_REPORT_SECS_KEY, ConfigConst.DEFAULT_METRICS_REPORT_SECS);
+	}
+
+	/**
+	 * Constructor for explicit targets.
+	 *
+	 * @param names The target names.
+	 * @param clients The target clients (same order as names).
+	 * @param queueSize The per-target queue capacity.
+	 * @param maxRetries The number of retries per message.
+	 * @param retryBackoffMillis The initial retry / reconnect backoff.
+	 */
+	public CompositeCloudClient(
+		List<String> names, List<ICloudClient> clients, int queueSize, int maxRetries, long retryBackoffMillis)
+	{
+		super();
+
+		for (int i = 0; i < names.size(); i++) {
+			this.targets.add(new Target(names.get(i), clients.get(i), queueSize, maxRetries, retryBackoffMillis));
+		}
+
+		this.metricsReportSecs = 0;
+	}
+
+
+	// public methods
+
+	/**
+	 * Starts each target's worker, which connects in the background.
+	 *
+	 * @return boolean True once the workers are started.
+	 */
+	@Override
+	public synchronized boolean connectClient()
+	{
+		for (Target target : this.targets) {
+			target.start();
+		}
+
+		if (this.metricsReportSecs > 0 && this.metricsReporter == null) {
+			this.metricsReporter = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "CompositeCloudClient-Metrics");
+				t.setDaemon(true);
+				return t;
+			});
+
+			this.metricsReporter.scheduleAtFixedRate(
+				this::logTargetStatus, this.metricsReportSecs, this.metricsReportSecs, TimeUnit.SECONDS);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Stops the workers (after they drain what they can within the
+	 * target's retry budget) and disconnects each target.
+	 *
+	 * @return boolean True if all targets disconnected cleanly.
+	 */
+	@Override
+	public synchronized boolean disconnectClient()
+	{
+		if (this.metricsReporter != null) {
+			this.metricsReporter.shutdownNow();
+			this.metricsReporter = null;
+		}
+
+		boolean success = true;
+
+		for (Target target : this.targets) {
+			success &= target.stop();
+		}
+
+		logTargetStatus();
+
+		return success;
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+	{
+		return (data != null && enqueue(client -> client.sendEdgeDataToCloud(resource, data)));
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+	{
+		return (data != null && enqueue(client -> client.sendEdgeDataToCloud(resource, data)));
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload)
+	{
+		return (payload != null && enqueue(client -> client.sendEdgeDataToCloud(resource, payload)));
+	}
+
+	@Override
+	public boolean subscribeToCloudEvents(ResourceNameEnum resource)
+	{
+		if (resource == null) {
+			return false;
+		}
+
+		this.subscriptions.add(resource);
+
+		for (Target target : this.targets) {
+			if (target.health != Health.DOWN) {
+				target.client.subscribeToCloudEvents(resource);
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+	{
+		if (resource == null) {
+			return false;
+		}
+
+		this.subscriptions.remove(resource);
+
+		for (Target target : this.targets) {
+			if (target.health != Health.DOWN) {
+				target.client.unsubscribeFromCloudEvents(resource);
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		boolean success = (listener != null);
+
+		for (Target target : this.targets) {
+			success &= target.client.setDataMessageListener(listener);
+		}
+
+		return success;
+	}
+
+	/**
+	 * Returns a snapshot of each target's health and delivery metrics.
+	 *
+	 * @return List The status per target, in configuration order.
+	 */
+	public List<TargetStatus> getTargetStatus()
+	{
+		List<TargetStatus> list = new ArrayList<>(this.targets.size());
+
+		for (Target target : this.targets) {
+			list.add(target.getStatus());
+		}
+
+		return Collections.unmodifiableList(list);
+	}
+
+
+	// private methods
+
+	/**
+	 * Offers the send to every target's queue.
+	 *
+	 * @return boolean True if at least one target accepted it.
+	 */
+	private boolean enqueue(Predicate<ICloudClient> send)
+	{
+		boolean isAccepted = false;
+
+		for (Target target : this.targets) {
+			if (target.queue.offer(send)) {
+				isAccepted = true;
+			} else {
+				target.droppedCount.incrementAndGet();
+			}
+		}
+
+		return isAccepted;
+	}
+
+	private void logTargetStatus()
+	{
+		for (TargetStatus status : getTargetStatus()) {
+			_Logger.info("Cloud target " + status);
+		}
+	}
+
+	private static boolean isClientConnected(ICloudClient client)
+	{
+		if (client instanceof SharedCloudClient) {
+			return ((SharedCloudClient) client).isConnected();
+		}
+
+		return CloudClientRegistry.isClientConnected(client);
+	}
+
+
+	// inner classes
+
+	/**
+	 * Health and delivery metrics for one target.
+	 */
+	public static class TargetStatus
+	{
+		private final String name;
+		private final Health health;
+		private final int queueDepth;
+		private final long sentCount;
+		private final long failedCount;
+		private final long droppedCount;
+		private final long retryCount;
+		private final double avgSendMillis;
+
+		TargetStatus(Target target)
+		{
+			this.name = target.name;
+			this.health = target.health;
+			this.queueDepth = target.queue.size();
+			this.sentCount = target.sentCount.get();
+			this.failedCount = target.failedCount.get();
+			this.droppedCount = target.droppedCount.get();
+			this.retryCount = target.retryCount.get();
+			this.avgSendMillis = (this.sentCount > 0 ?
+				target.sendNanos.get() / 1.0e6 / this.sentCount : 0.0);
+		}
+
+		public String getName()          { return this.name; }
+		public Health getHealth()        { return this.health; }
+		public int getQueueDepth()       { return this.queueDepth; }
+		public long getSentCount()       { return this.sentCount; }
+		public long getFailedCount()     { return this.failedCount; }
+		public long getDroppedCount()    { return this.droppedCount; }
+		public long getRetryCount()      { return this.retryCount; }
+		public double getAvgSendMillis() { return this.avgSendMillis; }
+
+		@Override
+		public String toString()
+		{
+			return String.format(
+				"%s: %s, queued=%d, sent=%d, failed=%d, dropped=%d, retries=%d, avgSend=%.2f ms",
+				this.name, this.health, this.queueDepth, this.sentCount, this.failedCount,
+				this.droppedCount, this.retryCount, this.avgSendMillis);
+		}
+	}
+
+	/**
+	 * One cloud target and its worker.
+	 */
+	private class Target implements Runnable
+	{
+		final String name;
+		final ICloudClient client;
+		final BlockingQueue<Predicate<ICloudClient>> queue;
+		final int maxRetries;
+		final long retryBackoffMillis;
+
+		volatile Health health = Health.DOWN;
+		volatile boolean isRunning = false;
+		private boolean isConnected = false;
+		private Thread worker = null;
+
+		final AtomicLong sentCount = new AtomicLong();
+		final AtomicLong failedCount = new AtomicLong();
+		final AtomicLong droppedCount = new AtomicLong();
+		final AtomicLong retryCount = new AtomicLong();
+		final AtomicLong sendNanos = new AtomicLong();
+
+		Target(String name, ICloudClient client, int queueSize, int maxRetries, long retryBackoffMillis)
+		{
+			this.name = name;
+			this.client = client;
+			this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+			this.maxRetries = Math.max(0, maxRetries);
+			this.retryBackoffMillis = Math.max(1L, retryBackoffMillis);
+		}
+
+		synchronized void start()
+		{
+			if (this.isRunning) {
+				return;
+			}
+
+			this.isRunning = true;
+			this.worker = new Thread(this, "CompositeCloudClient-" + this.name);
+			this.worker.setDaemon(true);
+			this.worker.start();
+		}
+
+		synchronized boolean stop()
+		{
+			if (! this.isRunning) {
+				return true;
+			}
+
+			this.isRunning = false;
+			this.worker.interrupt();
+
+			try {
+				this.worker.join(this.retryBackoffMillis * (this.maxRetries + 1) + 5000L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.health = Health.DOWN;
+
+			return this.client.disconnectClient();
+		}
+
+		TargetStatus getStatus()
+		{
+			return new TargetStatus(this);
+		}
+
+		@Override
+		public void run()
+		{
+			long backoffMillis = this.retryBackoffMillis;
+
+			while (this.isRunning || ! this.queue.isEmpty()) {
+				try {
+					if (! this.isConnected) {
+						if (! this.isRunning) {
+							break;
+						}
+
+						if (! connect()) {
+							Thread.sleep(backoffMillis);
+							backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+							continue;
+						}
+
+						backoffMillis = this.retryBackoffMillis;
+					}
+
+					Predicate<ICloudClient> send = (this.isRunning ?
+						this.queue.poll(1, TimeUnit.SECONDS) : this.queue.poll());
+
+					if (send != null) {
+						deliver(send);
+					}
+				} catch (InterruptedException e) {
+					// stop() - loop again to drain what's queued
+				} catch (Exception e) {
+					_Logger.log(Level.WARNING, "Cloud target worker error: " + this.name, e);
+				}
+			}
+		}
+
+		private boolean connect()
+		{
+			if (! this.client.connectClient()) {
+				this.health = Health.DOWN;
+				return false;
+			}
+
+			this.isConnected = true;
+			this.health = Health.HEALTHY;
+
+			for (ResourceNameEnum resource : subscriptions) {
+				this.client.subscribeToCloudEvents(resource);
+			}
+
+			_Logger.info("Cloud target connected: " + this.name);
+
+			return true;
+		}
+
+		private void deliver(Predicate<ICloudClient> send)
+		{
+			long backoffMillis = this.retryBackoffMillis;
+
+			for (int attempt = 0; attempt <= this.maxRetries; attempt++) {
+				if (attempt > 0) {
+					this.retryCount.incrementAndGet();
+
+					try {
+						Thread.sleep(backoffMillis);
+					} catch (InterruptedException e) {
+						// stopping - use the remaining attempts without backoff
+						backoffMillis = 0L;
+					}
+
+					backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+				}
+
+				long startNanos = System.nanoTime();
+
+				if (send.test(this.client)) {
+					this.sendNanos.addAndGet(System.nanoTime() - startNanos);
+					this.sentCount.incrementAndGet();
+					this.health = (attempt == 0 ? Health.HEALTHY : Health.DEGRADED);
+
+					return;
+				}
+
+				if (! isClientConnected(this.client)) {
+					// connection lost - reconnect before retrying
+					this.isConnected = false;
+					this.health = Health.DOWN;
+
+					if (! this.isRunning || ! connect()) {
+						break;
+					}
+				}
+			}
+
+			this.failedCount.incrementAndGet();
+
+			if (this.health == Health.HEALTHY) {
+				this.health = Health.DEGRADED;
+			}
+		}
+	}
+}
@@ -1,7 +1,10 @@
 package programmingtheiot.gda.connection;
 
+import java.nio.ByteBuffer;
+
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
 
@@ -13,6 +16,20 @@ public interface ICloudClient
 	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data);
 	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data);
 
+	// pre-encoded (UTF-8 JSON) payload, sent as-is
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload);
+
+	// pre-encoded payload buffer (remaining bytes, position unchanged),
+	// copied only if it doesn't span its whole backing array
+	public default boolean sendEdgeDataToCloud(ResourceNameEnum resource, ByteBuffer payload)
+	{
+		if (payload == null) {
+			return false;
+		}
+
+		return sendEdgeDataToCloud(resource, DataUtil.getInstance().toByteArray(payload));
+	}
+
 	public boolean subscribeToCloudEvents(ResourceNameEnum resource);
 	public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource);
 
@@ -1,7 +1,11 @@
 package programmingtheiot.gda.connection;
 
+import java.nio.ByteBuffer;
+
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
 //import programmingtheiot.common.IConnectionListener;
 import programmingtheiot.gda.connection.IConnectionListener;
 
@@ -10,6 +14,28 @@ import programmingtheiot.gda.connection.IConnectionListener;
  */
 public interface IPubSubClient
 {
+    /**
+     * Topic filter prefix for MQTT shared subscriptions.
+     */
+    public static final String SHARED_SUBSCRIPTION_PREFIX = "$share/";
+    
+    /**
+     * Builds a shared subscription topic filter, e.g.
+     * '$share/gda/PIOT/ConstrainedDevice/SensorMsg'.
+     * 
+     * @param groupName The share group name
+     * @param topicName The topic name or filter
+     * @return String The shared topic filter, or the topic name if no group is given
+     */
+    public static String getSharedTopicFilter(String groupName, String topicName)
+    {
+        if (groupName == null || groupName.trim().isEmpty()) {
+            return topicName;
+        }
+        
+        return SHARED_SUBSCRIPTION_PREFIX + groupName.trim() + "/" + topicName;
+    }
+    
     /**
      * Connects the client to the broker/server.
      * 
@@ -24,6 +50,13 @@ public interface IPubSubClient
      */
     public boolean disconnectClient();
     
+    /**
+     * Checks if the client is currently connected to the broker.
+     * 
+     * @return boolean True if connected, false otherwise
+     */
+    public boolean isConnected();
+    
     /**
      * Publishes a message to the specified resource.
      * 
@@ -34,6 +67,39 @@ public interface IPubSubClient
      */
     public boolean publishMessage(ResourceNameEnum resource, String msg, int qos);
     
+    /**
+     * Publishes a pre-encoded payload to the specified resource. The byte
+     * array is handed to the client library as-is (it must not be modified
+     * by the caller afterwards).
+     * 
+     * @param resource The resource to publish to
+     * @param payload The encoded (e.g. UTF-8 JSON) payload
+     * @param qos The quality of service level
+     * @return boolean True if publish successful, false otherwise
+     */
+    public boolean publishMessage(ResourceNameEnum resource, byte[] payload, int qos);
+    
+    /**
+     * Publishes the remaining bytes of a pre-encoded payload buffer to the
+     * specified resource. The buffer's position is not changed. A heap
+     * buffer that spans its whole backing array is published without a
+     * copy; any other buffer is copied once, as the client libraries
+     * take a byte array.
+     * 
+     * @param resource The resource to publish to
+     * @param payload The encoded (e.g. UTF-8 JSON) payload
+     * @param qos The quality of service level
+     * @return boolean True if publish successful, false otherwise
+     */
+    public default boolean publishMessage(ResourceNameEnum resource, ByteBuffer payload, int qos)
+    {
+        if (payload == null) {
+            return false;
+        }
+        
+        return publishMessage(resource, DataUtil.getInstance().toByteArray(payload), qos);
+    }
+    
     /**
      * Subscribes to messages from the specified resource.
      * 
@@ -51,6 +117,56 @@ public interface IPubSubClient
      */
     public boolean unsubscribeFromTopic(ResourceNameEnum resource);
     
+    /**
+     * Subscribes to a topic filter, which may contain '+' and '#' wildcards
+     * (and may be a '$share/<group>/' filter). Messages matching the filter
+     * are delivered to the given listener instead of the data message
+     * listener. Several listeners may be registered for the same filter.
+     * 
+     * @param topicFilter The topic filter to subscribe to
+     * @param qos The quality of service level
+     * @param listener The listener for matching messages
+     * @return boolean True if subscription successful, false otherwise
+     */
+    public boolean subscribeToTopic(String topicFilter, int qos, ITopicMessageListener listener);
+    
+    /**
+     * Removes a listener registered via
+     * {@link #subscribeToTopic(String, int, ITopicMessageListener)}. The
+     * filter is unsubscribed from once no listeners remain for it.
+     * 
+     * @param topicFilter The topic filter
+     * @param listener The listener to remove
+     * @return boolean True if unsubscription successful, false otherwise
+     */
+    public boolean unsubscribeFromTopic(String topicFilter, ITopicMessageListener listener);
+    
+    /**
+     * Subscribes to a resource as a member of a shared subscription group.
+     * The broker delivers each message on the resource to only one member
+     * of the group, so several gateway instances using the same group name
+     * split the load between them instead of each receiving everything.
+     * 
+     * NOTE: Message order is only preserved per group member, not across
+     * the group, so handlers must not rely on seeing every message for a
+     * given resource or device.
+     * 
+     * @param resource The resource to subscribe to
+     * @param groupName The share group name
+     * @param qos The quality of service level
+     * @return boolean True if subscription successful, false otherwise
+     */
+    public boolean subscribeToSharedTopic(ResourceNameEnum resource, String groupName, int qos);
+    
+    /**
+     * Unsubscribes from a shared subscription.
+     * 
+     * @param resource The resource to unsubscribe from
+     * @param groupName The share group name
+     * @return boolean True if unsubscription successful, false otherwise
+     */
+    public boolean unsubscribeFromSharedTopic(ResourceNameEnum resource, String groupName);
+    
     /**
      * Sets the data message listener for incoming messages.
      * 
@@ -59,6 +175,18 @@ public interface IPubSubClient
      */
     public boolean setDataMessageListener(IDataMessageListener listener);
     
+    /**
+     * Returns the format data messages for the resource should be
+     * published in.
+     * 
+     * @param resource The resource
+     * @return PayloadFormat The format (JSON unless configured otherwise)
+     */
+    public default PayloadFormat getPayloadFormat(ResourceNameEnum resource)
+    {
+        return PayloadFormat.JSON;
+    }
+    
     /**
      * Sets the connection listener for connection events.
      * NOTE: This method is optional and may not be implemented by all clients.
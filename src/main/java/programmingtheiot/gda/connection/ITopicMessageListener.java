@@ -0,0 +1,17 @@
+package programmingtheiot.gda.connection;
+
+/**
+ * Callback for messages matching a specific topic filter, registered via
+ * {@link IPubSubClient#subscribeToTopic(String, int, ITopicMessageListener)}.
+ */
+public interface ITopicMessageListener
+{
+    /**
+     * Called for each message whose topic matches the listener's filter.
+     * 
+     * @param topicName The (concrete) topic name the message was published to
+     * @param payload The decoded payload
+     * @param qos The QoS the message was delivered with
+     */
+    public void onMessage(String topicName, byte[] payload, int qos);
+}
@@ -0,0 +1,29 @@
+package programmingtheiot.gda.connection;
+
+/**
+ * Receives completion notifications for cloud uplink publishes.
+ *
+ * Callbacks run on the MQTT client's callback thread (or, for failures
+ * detected before sending, the publishing thread) and must not block.
+ */
+public interface IUplinkListener
+{
+	/**
+	 * Called when the broker has acknowledged a publish at the configured QoS
+	 * (or, for QoS 0, when it has been written).
+	 *
+	 * @param topic The topic name.
+	 * @param payloadSize The payload size in bytes.
+	 * @param latencyMillis Time from send to acknowledgement.
+	 */
+	public void onUplinkComplete(String topic, int payloadSize, long latencyMillis);
+
+	/**
+	 * Called when a publish fails.
+	 *
+	 * @param topic The topic name.
+	 * @param error The failure classification.
+	 * @param cause The underlying exception (may be null).
+	 */
+	public void onUplinkFailed(String topic, UplinkError error, Throwable cause);
+}
@@ -0,0 +1,79 @@
+package programmingtheiot.gda.connection;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.californium.core.server.DelivererException;
+import org.eclipse.californium.core.server.ServerMessageDeliverer;
+import org.eclipse.californium.core.server.resources.Resource;
+
+/**
+ * Server message deliverer that resolves request paths to leaf resources
+ * with one hash lookup on a precomputed path index, instead of walking
+ * the resource tree segment by segment.
+ *
+ * Paths that aren't indexed (intermediate nodes, '.well-known/core')
+ * fall back to the tree walk.
+ */
+public class IndexedMessageDeliverer extends ServerMessageDeliverer
+{
+	// private var's
+
+	private final Map<List<String>, Resource> pathIndex = new ConcurrentHashMap<>();
+
+
+	// constructors
+
+	/**
+	 * Constructor.
+	 *
+	 * @param root The server's root resource.
+	 */
+	public IndexedMessageDeliverer(Resource root)
+	{
+		super(root);
+	}
+
+
+	// public methods
+
+	/**
+	 * Indexes the resource under the given path, replacing any resource
+	 * already indexed there.
+	 *
+	 * @param path The path segments, e.g. [PIOT, ConstrainedDevice, SensorMsg].
+	 * @param resource The resource (already added to the tree).
+	 */
+	public void indexResource(List<String> path, Resource resource)
+	{
+		this.pathIndex.put(List.copyOf(path), resource);
+	}
+
+	/**
+	 * Removes the path from the index.
+	 *
+	 * @param path The path segments.
+	 * @return boolean True if the path was indexed.
+	 */
+	public boolean unindexResource(List<String> path)
+	{
+		return (this.pathIndex.remove(path) != null);
+	}
+
+	public int getIndexSize()
+	{
+		return this.pathIndex.size();
+	}
+
+
+	// protected methods
+
+	@Override
+	protected Resource findResource(List<String> path) throws DelivererException
+	{
+		Resource resource = this.pathIndex.get(path);
+
+		return (resource != null ? resource : super.findResource(path));
+	}
+}
@@ -0,0 +1,196 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of the most recent payload per MQTT topic.
+ *
+ * Payloads are kept as the raw bytes sent or received on the wire (so
+ * compressed payloads stay compressed). Total memory use is capped; when
+ * the cap is exceeded, the least recently used topics are evicted first.
+ *
+ * All methods are thread-safe.
+ */
+public class LastValueCache
+{
+	// static
+
+	// rough per-entry overhead: map node, entry object, array header
+	private static final int ENTRY_OVERHEAD_BYTES = 96;
+
+	/**
+	 * A cached payload.
+	 */
+	public static class Entry
+	{
+		private final String topic;
+		private final byte[] payload;
+		private final int qos;
+		private final boolean isOutbound;
+		private final long timeStamp;
+
+		Entry(String topic, byte[] payload, int qos, boolean isOutbound)
+		{
+			this.topic = topic;
+			this.payload = payload;
+			this.qos = qos;
+			this.isOutbound = isOutbound;
+			this.timeStamp = System.currentTimeMillis();
+		}
+
+		public String getTopic()      { return this.topic; }
+		public byte[] getPayload()    { return this.payload; }
+		public int getQos()           { return this.qos; }
+		public boolean isOutbound()   { return this.isOutbound; }
+		public long getTimeStamp()    { return this.timeStamp; }
+
+		int getSizeInBytes()
+		{
+			return this.payload.length + this.topic.length() * 2 + ENTRY_OVERHEAD_BYTES;
+		}
+	}
+
+
+	// private var's
+
+	private final long maxBytes;
+	private long curBytes = 0L;
+	private long evictionCount = 0L;
+
+	// access-ordered, so iteration starts at the least recently used entry
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+
+	// constructors
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxBytes The approximate maximum memory to use for cached entries.
+	 */
+	public LastValueCache(long maxBytes)
+	{
+		super();
+
+		this.maxBytes = Math.max(0L, maxBytes);
+	}
+
+
+	// public methods
+
+	/**
+	 * Stores the payload as the latest value for the topic. The array is
+	 * stored as-is and must not be modified afterwards.
+	 *
+	 * @param topic The topic name.
+	 * @param payload The payload bytes.
+	 * @param qos The QoS the payload was sent or received with.
+	 * @param isOutbound True if published by this gateway.
+	 * @return boolean True if cached; false if the payload is larger than the cache.
+	 */
+	public synchronized boolean put(String topic, byte[] payload, int qos, boolean isOutbound)
+	{
+		if (topic == null || payload == null) {
+			return false;
+		}
+
+		Entry entry = new Entry(topic, payload, qos, isOutbound);
+		Entry prevEntry = this.entries.remove(topic);
+
+		if (prevEntry != null) {
+			this.curBytes -= prevEntry.getSizeInBytes();
+		}
+
+		if (entry.getSizeInBytes() > this.maxBytes) {
+			return false;
+		}
+
+		this.entries.put(topic, entry);
+		this.curBytes += entry.getSizeInBytes();
+
+		Iterator<Entry> iter = this.entries.values().iterator();
+
+		while (this.curBytes > this.maxBytes && iter.hasNext()) {
+			this.curBytes -= iter.next().getSizeInBytes();
+			iter.remove();
+			++this.evictionCount;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the latest entry for the topic.
+	 *
+	 * @param topic The topic name.
+	 * @return Entry The entry, or null if none is cached.
+	 */
+	public synchronized Entry get(String topic)
+	{
+		return (topic != null ? this.entries.get(topic) : null);
+	}
+
+	/**
+	 * Removes the entry for the topic.
+	 *
+	 * @param topic The topic name.
+	 */
+	public synchronized void remove(String topic)
+	{
+		Entry entry = this.entries.remove(topic);
+
+		if (entry != null) {
+			this.curBytes -= entry.getSizeInBytes();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the cached entries, optionally only those
+	 * published by this gateway.
+	 *
+	 * @param outboundOnly If true, only entries published by this gateway.
+	 * @return List The entries, least recently used first.
+	 */
+	public synchronized List<Entry> getEntries(boolean outboundOnly)
+	{
+		List<Entry> list = new ArrayList<>(this.entries.size());
+
+		for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+			if (! outboundOnly || mapEntry.getValue().isOutbound()) {
+				list.add(mapEntry.getValue());
+			}
+		}
+
+		return list;
+	}
+
+	public synchronized int size()
+	{
+		return this.entries.size();
+	}
+
+	public synchronized long getSizeInBytes()
+	{
+		return this.curBytes;
+	}
+
+	public long getMaxBytes()
+	{
+		return this.maxBytes;
+	}
+
+	public synchronized long getEvictionCount()
+	{
+		return this.evictionCount;
+	}
+
+	public synchronized void clear()
+	{
+		this.entries.clear();
+		this.curBytes = 0L;
+	}
+}
@@ -1,14 +1,18 @@
 package programmingtheiot.gda.connection;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.net.ssl.SSLSocketFactory;
 
 import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
-import org.eclipse.paho.client.mqttv3.IMqttMessageListener;
 import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
 import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
 import org.eclipse.paho.client.mqttv3.MqttClient;
@@ -21,6 +25,8 @@ import programmingtheiot.common.ConfigConst;
 import programmingtheiot.common.ConfigUtil;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.PayloadCompressor;
+import programmingtheiot.data.PayloadFormat;
 import programmingtheiot.gda.connection.IConnectionListener;
 
 public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
@@ -28,6 +34,9 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     private static final Logger _Logger =
         Logger.getLogger(MqttClientConnector.class.getName());
 
+    // longest single wait for a full in-flight window before retrying
+    private static final long MAX_WINDOW_WAIT_MILLIS = 100L;
+
     private String host = ConfigConst.DEFAULT_HOST;
     private int port = ConfigConst.DEFAULT_MQTT_PORT;
     private int brokerKeepAlive = ConfigConst.DEFAULT_KEEP_ALIVE;
@@ -38,6 +47,36 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     private MqttConnectOptions connOpts = null;
     private MemoryPersistence persistence = null;
 
+    // publish connection pool - index 0 is always 'mqttClient', which
+    // is also the designated connection for all subscriptions
+    private MqttAsyncClient[] pubClients = null;
+    private int connPoolSize = ConfigConst.DEFAULT_CONNECTION_POOL_SIZE;
+    private int maxInflight = ConfigConst.DEFAULT_MAX_INFLIGHT;
+
+    // signalled whenever a delivery completes (or a connection is lost) on
+    // any pooled connection, so a publisher waiting for a full in-flight
+    // window can retry; the count (guarded by the signal) avoids missed wakeups
+    private final Object deliverySignal = new Object();
+    private long deliveryCount = 0L;
+
+    // shared subscription group (null if not configured), and the active
+    // subscriptions (topic filter -> QoS), which are (re)established on
+    // every connect since clean sessions are used
+    private String sharedGroup = null;
+    private Map<String, Integer> subscriptions = new ConcurrentHashMap<>();
+
+    // per-filter listeners (wildcards allowed), matched against each inbound topic
+    private TopicTrie<ITopicMessageListener> topicListeners = new TopicTrie<>();
+
+    private PayloadCompressor compressor = null;
+
+    // resources published as CBOR (all others are JSON)
+    private Map<ResourceNameEnum, PayloadFormat> payloadFormats = new EnumMap<>(ResourceNameEnum.class);
+
+    // latest payload per topic (null if disabled)
+    private LastValueCache lastValueCache = null;
+    private boolean publishRetained = false;
+
     private IDataMessageListener dataMsgListener = null;
     private IConnectionListener connListener = null;
 
@@ -59,6 +98,19 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     }
 
     public MqttClientConnector(String cloudGatewayConfigSectionName)
+    {
+        this(cloudGatewayConfigSectionName, 0);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param cloudGatewayConfigSectionName The cloud config section name, or null
+     * to use the MQTT gateway section.
+     * @param connPoolSize The number of broker connections to shard publishes
+     * across. If less than 1, the configured value (or 1) is used.
+     */
+    public MqttClientConnector(String cloudGatewayConfigSectionName, int connPoolSize)
     {
         super();
 
@@ -73,7 +125,11 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
             initClientParameters(ConfigConst.MQTT_GATEWAY_SERVICE);
         }
 
-        _Logger.info("MQTT client created: " + this.brokerAddr);
+        if (connPoolSize > 0) {
+            this.connPoolSize = Math.min(connPoolSize, ConfigConst.MAX_CONNECTION_POOL_SIZE);
+        }
+
+        _Logger.info("MQTT client created: " + this.brokerAddr + ". Connection pool size: " + this.connPoolSize);
     }
 
     // -----------------------------------------------------------------
@@ -84,19 +140,20 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     public boolean connectClient()
     {
         try {
-            if (this.mqttClient == null) {
-                this.mqttClient = new MqttAsyncClient(
-                    this.brokerAddr,
-                    this.clientID,
-                    this.persistence);
-
-                this.mqttClient.setCallback(this);
+            if (this.pubClients == null) {
+                initClientPool();
             }
 
-            if (!this.mqttClient.isConnected()) {
-                this.mqttClient.connect(this.connOpts);
-                return true;
+            boolean success = false;
+
+            for (MqttAsyncClient client : this.pubClients) {
+                if (!client.isConnected()) {
+                    client.connect(this.connOpts);
+                    success = true;
+                }
             }
+
+            return success;
         } catch (MqttException e) {
             _Logger.log(Level.SEVERE, "MQTT connect failed", e);
         }
@@ -107,23 +164,28 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     @Override
     public boolean disconnectClient()
     {
-        try {
-            if (this.mqttClient != null &&
-                this.mqttClient.isConnected()) {
+        boolean success = false;
 
-                this.mqttClient.disconnect();
+        if (this.pubClients == null) {
+            return success;
+        }
 
-                if (this.connListener != null) {
-                    this.connListener.onDisconnect();
+        for (MqttAsyncClient client : this.pubClients) {
+            try {
+                if (client.isConnected()) {
+                    client.disconnect();
+                    success = true;
                 }
-
-                return true;
+            } catch (MqttException e) {
+                _Logger.log(Level.SEVERE, "Disconnect failed: " + client.getClientId(), e);
             }
-        } catch (MqttException e) {
-            _Logger.log(Level.SEVERE, "Disconnect failed", e);
         }
 
-        return false;
+        if (success && this.connListener != null) {
+            this.connListener.onDisconnect();
+        }
+
+        return success;
     }
 
     public boolean isConnected()
@@ -132,6 +194,126 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
                 this.mqttClient.isConnected());
     }
 
+    /**
+     * Returns the number of broker connections used for publishing.
+     * 
+     * @return int The connection pool size.
+     */
+    public int getConnectionPoolSize()
+    {
+        return this.connPoolSize;
+    }
+
+    /**
+     * Returns the total number of QoS 1 and 2 messages published across
+     * all pooled connections that have not yet been acknowledged.
+     * 
+     * @return int The number of pending deliveries.
+     */
+    public int getPendingDeliveryCount()
+    {
+        int count = 0;
+
+        if (this.pubClients != null) {
+            for (MqttAsyncClient client : this.pubClients) {
+                count += client.getPendingDeliveryTokens().length;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the latest payload sent or received on the given topic,
+     * without waiting for the next message from the broker.
+     * 
+     * @param topicName The topic name.
+     * @return byte[] A copy of the latest (decompressed) payload, or null if
+     * none is cached, the cache is disabled, or the payload can't be decompressed.
+     */
+    public byte[] getLatest(String topicName)
+    {
+        if (this.lastValueCache == null) {
+            return null;
+        }
+
+        LastValueCache.Entry entry = this.lastValueCache.get(topicName);
+
+        if (entry == null) {
+            return null;
+        }
+
+        try {
+            byte[] payload = this.compressor.decodePayload(entry.getPayload());
+
+            // uncompressed payloads are the cached array itself
+            return (payload == entry.getPayload() ? payload.clone() : payload);
+        } catch (IllegalArgumentException e) {
+            _Logger.warning("Cached payload exceeds max message size on topic: " + topicName);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the latest payload sent or received for the given resource.
+     * 
+     * @param resource The resource.
+     * @return byte[] The latest payload, or null.
+     */
+    public byte[] getLatest(ResourceNameEnum resource)
+    {
+        return (resource != null ? getLatest(resource.getResourceName()) : null);
+    }
+
+    /**
+     * Returns the last value cache, or null if disabled.
+     * 
+     * @return LastValueCache
+     */
+    public LastValueCache getLastValueCache()
+    {
+        return this.lastValueCache;
+    }
+
+    /**
+     * Republishes the latest payload of every state or telemetry topic this
+     * gateway has published to as a retained message, e.g. to restore
+     * retained state after a broker restart. Commands are never republished,
+     * so actuators don't fire again. Published on the designated connection.
+     * 
+     * @return int The number of snapshots republished.
+     */
+    public int republishRetainedSnapshots()
+    {
+        if (this.lastValueCache == null || !isConnected()) {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (LastValueCache.Entry entry : this.lastValueCache.getEntries(true)) {
+            if (!isRetainable(entry.getTopic())) {
+                continue;
+            }
+
+            try {
+                MqttMessage msg = new MqttMessage(entry.getPayload());
+                msg.setQos(entry.getQos());
+                msg.setRetained(true);
+
+                publishWhenWindowOpen(this.mqttClient, entry.getTopic(), msg);
+
+                ++count;
+            } catch (MqttException e) {
+                _Logger.log(Level.WARNING, "Failed to republish snapshot: " + entry.getTopic(), e);
+            }
+        }
+
+        _Logger.info("Republished retained snapshots: " + count);
+
+        return count;
+    }
+
     // -----------------------------------------------------------------
     // ------------------- REQUIRED PROTECTED API -----------------------
     // -----------------------------------------------------------------
@@ -146,10 +328,24 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
             qos = ConfigConst.DEFAULT_QOS;
         }
 
+        MqttAsyncClient client = getPublishClient(topicName);
+
+        if (client == null || !client.isConnected()) {
+            _Logger.warning("Publish failed - no connection for topic: " + topicName);
+            return false;
+        }
+
         try {
             MqttMessage msg = new MqttMessage(payload);
             msg.setQos(qos);
-            this.mqttClient.publish(topicName, msg);
+            msg.setRetained(this.publishRetained && isRetainable(topicName));
+
+            publishWhenWindowOpen(client, topicName, msg);
+
+            if (this.lastValueCache != null) {
+                this.lastValueCache.put(topicName, payload, qos, true);
+            }
+
             return true;
         } catch (Exception e) {
             _Logger.log(Level.SEVERE, "Publish failed", e);
@@ -158,13 +354,105 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
         return false;
     }
 
-    protected boolean subscribeToTopic(String topicName, int qos)
+    /**
+     * Publishes on the given connection, waiting for its in-flight window
+     * to open if it is full. The wait blocks until any delivery completes
+     * (see {@link #signalDelivery()}), then retries, until the keep alive
+     * interval has passed. Each wait is capped at MAX_WINDOW_WAIT_MILLIS,
+     * so a completion that isn't signalled only delays the retry.
+     * 
+     * @param client The connection to publish on.
+     * @param topicName The topic name.
+     * @param msg The message.
+     * @throws MqttException If the publish fails, or the window stays full.
+     */
+    private void publishWhenWindowOpen(MqttAsyncClient client, String topicName, MqttMessage msg)
+        throws MqttException
     {
-        return subscribeToTopic(topicName, qos, null);
+        long deadline = System.currentTimeMillis() + this.brokerKeepAlive * 1000L;
+
+        while (true) {
+            long seenCount;
+
+            synchronized (this.deliverySignal) {
+                seenCount = this.deliveryCount;
+            }
+
+            try {
+                client.publish(topicName, msg);
+                return;
+            } catch (MqttException e) {
+                if (e.getReasonCode() != MqttException.REASON_CODE_MAX_INFLIGHT ||
+                    System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+            }
+
+            // in-flight window for this connection is full - wait for a
+            // delivery to complete (on any connection), then retry
+            synchronized (this.deliverySignal) {
+                long waitMillis = Math.min(MAX_WINDOW_WAIT_MILLIS, deadline - System.currentTimeMillis());
+
+                if (this.deliveryCount == seenCount && waitMillis > 0L) {
+                    try {
+                        this.deliverySignal.wait(waitMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+
+                        throw new MqttException(MqttException.REASON_CODE_MAX_INFLIGHT, e);
+                    }
+                }
+            }
+        }
     }
 
-    protected boolean subscribeToTopic(
-        String topicName, int qos, IMqttMessageListener listener)
+    /**
+     * Wakes any publisher waiting for an in-flight window to open.
+     */
+    private void signalDelivery()
+    {
+        synchronized (this.deliverySignal) {
+            ++this.deliveryCount;
+            this.deliverySignal.notifyAll();
+        }
+    }
+
+    /**
+     * Returns true if publishes to the topic may be retained: only known
+     * state and telemetry resources, never commands.
+     * 
+     * @param topicName The topic name.
+     * @return boolean
+     */
+    private static boolean isRetainable(String topicName)
+    {
+        ResourceNameEnum resource = ResourceNameEnum.getEnumFromValue(topicName);
+
+        return (resource != null && resource.isStateOrTelemetry());
+    }
+
+    /**
+     * Returns the pooled connection responsible for the given topic.
+     * Topics are sharded by hash, so all messages for a given topic
+     * are always published on the same connection, in order.
+     * 
+     * @param topicName The topic name.
+     * @return MqttAsyncClient The connection to publish on, or null if not connected.
+     */
+    protected MqttAsyncClient getPublishClient(String topicName)
+    {
+        if (this.pubClients == null) {
+            return null;
+        }
+
+        if (this.pubClients.length == 1) {
+            return this.pubClients[0];
+        }
+
+        return this.pubClients[(topicName.hashCode() & 0x7fffffff) % this.pubClients.length];
+    }
+
+    protected boolean subscribeToTopic(String topicName, int qos)
     {
         if (topicName == null) return false;
 
@@ -172,12 +460,16 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
             qos = ConfigConst.DEFAULT_QOS;
         }
 
+        this.subscriptions.put(topicName, qos);
+
+        if (!isConnected()) {
+            // subscribed on connectComplete()
+            _Logger.fine("Not yet connected. Deferring subscription: " + topicName);
+            return true;
+        }
+
         try {
-            if (listener != null) {
-                this.mqttClient.subscribe(topicName, qos, listener);
-            } else {
-                this.mqttClient.subscribe(topicName, qos);
-            }
+            this.mqttClient.subscribe(topicName, qos);
             return true;
         } catch (Exception e) {
             _Logger.log(Level.SEVERE, "Subscribe failed", e);
@@ -190,6 +482,12 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     {
         if (topicName == null) return false;
 
+        this.subscriptions.remove(topicName);
+
+        if (!isConnected()) {
+            return true;
+        }
+
         try {
             this.mqttClient.unsubscribe(topicName);
             return true;
@@ -207,27 +505,89 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     @Override
     public boolean publishMessage(ResourceNameEnum topicName, String msg, int qos)
     {
+        if (topicName == null || msg == null) return false;
+
+        return publishMessage(
+            topicName,
+            msg.getBytes(StandardCharsets.UTF_8),
+            qos
+        );
+    }
+
+    @Override
+    public boolean publishMessage(ResourceNameEnum topicName, byte[] payload, int qos)
+    {
+        if (topicName == null || payload == null) return false;
+
         return publishMessage(
             topicName.getResourceName(),
-            msg.getBytes(),
+            this.compressor.encode(topicName, payload),
             qos
         );
     }
 
+    /**
+     * Subscribes to the given resource. If a shared subscription group is
+     * configured, the subscription is made as a member of that group.
+     */
     @Override
     public boolean subscribeToTopic(ResourceNameEnum topicName, int qos)
+    {
+        return subscribeToSharedTopic(topicName, this.sharedGroup, qos);
+    }
+
+    @Override
+    public boolean unsubscribeFromTopic(ResourceNameEnum topicName)
+    {
+        return unsubscribeFromSharedTopic(topicName, this.sharedGroup);
+    }
+
+    @Override
+    public boolean subscribeToTopic(String topicFilter, int qos, ITopicMessageListener listener)
+    {
+        if (topicFilter == null || listener == null) return false;
+
+        if (!this.topicListeners.add(topicFilter, listener)) {
+            _Logger.warning("Invalid topic filter or listener already registered: " + topicFilter);
+            return false;
+        }
+
+        return subscribeToTopic(topicFilter, qos);
+    }
+
+    @Override
+    public boolean unsubscribeFromTopic(String topicFilter, ITopicMessageListener listener)
+    {
+        if (topicFilter == null || listener == null) return false;
+
+        int remaining = this.topicListeners.remove(topicFilter, listener);
+
+        if (remaining < 0) {
+            return false;
+        }
+
+        // other listeners still use the subscription
+        if (remaining > 0) {
+            return true;
+        }
+
+        return unsubscribeFromTopic(topicFilter);
+    }
+
+    @Override
+    public boolean subscribeToSharedTopic(ResourceNameEnum topicName, String groupName, int qos)
     {
         return subscribeToTopic(
-            topicName.getResourceName(),
+            IPubSubClient.getSharedTopicFilter(groupName, topicName.getResourceName()),
             qos
         );
     }
 
     @Override
-    public boolean unsubscribeFromTopic(ResourceNameEnum topicName)
+    public boolean unsubscribeFromSharedTopic(ResourceNameEnum topicName, String groupName)
     {
         return unsubscribeFromTopic(
-            topicName.getResourceName()
+            IPubSubClient.getSharedTopicFilter(groupName, topicName.getResourceName())
         );
     }
 
@@ -241,6 +601,17 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
         return false;
     }
 
+    /**
+     * Returns the configured ('cborResources') format for the resource.
+     */
+    @Override
+    public PayloadFormat getPayloadFormat(ResourceNameEnum resource)
+    {
+        PayloadFormat format = (resource != null ? this.payloadFormats.get(resource) : null);
+
+        return (format != null ? format : PayloadFormat.JSON);
+    }
+
     // -----------------------------------------------------------------
     // ---------------- CONNECTION LISTENER -----------------------------
     // -----------------------------------------------------------------
@@ -266,17 +637,29 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     	_Logger.info("MQTT connection successful (reconnect = " + reconnect + ")");
 
     	if (!this.useCloudGatewayConfig) {
+    		this.subscriptions.putIfAbsent(
+    			IPubSubClient.getSharedTopicFilter(
+    				this.sharedGroup, ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE.getResourceName()),
+    			1);
+    	}
+
+    	// clean sessions are used, so (re)subscribe to everything
+    	for (Map.Entry<String, Integer> entry : this.subscriptions.entrySet()) {
     		try {
-    			this.mqttClient.subscribe(
-    				ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE.getResourceName(),
-    				1
-    				
-    			);
+    			this.mqttClient.subscribe(entry.getKey(), entry.getValue());
     		} catch (Exception e) {
-    			_Logger.warning("Subscription failed.");
+    			_Logger.warning("Subscription failed: " + entry.getKey());
     		}
     	}
 
+    	// retained state may have been lost (e.g. broker restart); republish
+    	// off the callback thread, since publishing may block on the in-flight window
+    	if (reconnect && this.publishRetained && this.lastValueCache != null) {
+    		Thread republisher = new Thread(this::republishRetainedSnapshots, "MqttSnapshotRepublisher");
+    		republisher.setDaemon(true);
+    		republisher.start();
+    	}
+
     	// REQUIRED CALLBACK
     	if (this.connListener != null) {
     		this.connListener.onConnect();
@@ -288,19 +671,141 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
     public void connectionLost(Throwable cause)
     {
         _Logger.log(Level.WARNING, "MQTT connection lost", cause);
+
+        signalDelivery();
     }
 
     @Override
     public void messageArrived(String topic, MqttMessage message)
         throws Exception
     {
-        _Logger.info("Message received: " + topic);
+        _Logger.fine("Message received: " + topic);
+
+        if (this.lastValueCache != null) {
+            this.lastValueCache.put(topic, message.getPayload(), message.getQos(), false);
+        }
+
+        byte[] payload = null;
+
+        try {
+            payload = this.compressor.decodePayload(message.getPayload());
+        } catch (IllegalArgumentException e) {
+            _Logger.warning("Dropping oversized compressed message on topic: " + topic + ". " + e.getMessage());
+            return;
+        }
+
+        if (payload == null) {
+            _Logger.warning("Dropping corrupt compressed message on topic: " + topic);
+            return;
+        }
+
+        // listeners registered for matching (wildcard) filters take precedence
+        List<ITopicMessageListener> listeners = this.topicListeners.match(topic);
+
+        if (!listeners.isEmpty()) {
+            for (ITopicMessageListener listener : listeners) {
+                listener.onMessage(topic, payload, message.getQos());
+            }
+
+            return;
+        }
+
+        // shared subscription deliveries carry the original topic name
+        ResourceNameEnum resource = ResourceNameEnum.getEnumFromValue(topic);
+
+        if (resource == null) {
+            _Logger.warning("Message received on unknown topic: " + topic);
+            return;
+        }
+
+        if (this.dataMsgListener != null) {
+            this.dataMsgListener.handleIncomingMessage(resource, payload);
+        }
     }
 
     @Override
     public void deliveryComplete(IMqttDeliveryToken token)
     {
         _Logger.fine("Delivery complete");
+
+        signalDelivery();
+    }
+
+    // -----------------------------------------------------------------
+    // ---------------- CONNECTION POOL ---------------------------------
+    // -----------------------------------------------------------------
+
+    /**
+     * Creates the designated (subscription) connection plus any additional
+     * publish-only connections. Each pooled connection has its own client ID
+     * and persistence store, and therefore its own socket and in-flight window.
+     * 
+     * @throws MqttException If any of the clients can't be created.
+     */
+    private void initClientPool() throws MqttException
+    {
+        this.pubClients = new MqttAsyncClient[this.connPoolSize];
+
+        this.mqttClient = new MqttAsyncClient(
+            this.brokerAddr,
+            this.clientID,
+            this.persistence);
+
+        this.mqttClient.setCallback(this);
+        this.pubClients[0] = this.mqttClient;
+
+        for (int i = 1; i < this.pubClients.length; i++) {
+            MqttAsyncClient client = new MqttAsyncClient(
+                this.brokerAddr,
+                this.clientID + "-p" + i,
+                new MemoryPersistence());
+
+            client.setCallback(new PooledConnectionCallback(client.getClientId(), this::signalDelivery));
+            this.pubClients[i] = client;
+        }
+    }
+
+    /**
+     * Callback for the publish-only pooled connections. These never subscribe,
+     * so only connection state changes and completed deliveries (which
+     * open the in-flight window) are of interest.
+     */
+    private static class PooledConnectionCallback implements MqttCallbackExtended
+    {
+        private String clientID = null;
+        private Runnable deliverySignal = null;
+
+        PooledConnectionCallback(String clientID, Runnable deliverySignal)
+        {
+            this.clientID = clientID;
+            this.deliverySignal = deliverySignal;
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect, String serverURI)
+        {
+            _Logger.fine("Pooled MQTT connection complete: " + this.clientID + " (reconnect = " + reconnect + ")");
+        }
+
+        @Override
+        public void connectionLost(Throwable cause)
+        {
+            _Logger.log(Level.WARNING, "Pooled MQTT connection lost: " + this.clientID, cause);
+
+            this.deliverySignal.run();
+        }
+
+        @Override
+        public void messageArrived(String topic, MqttMessage message)
+        {
+            // publish-only connection - nothing to do
+        }
+
+        @Override
+        public void deliveryComplete(IMqttDeliveryToken token)
+        {
+            this.deliverySignal.run();
+        }
     }
 
     // -----------------------------------------------------------------
@@ -325,6 +830,37 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
         this.brokerKeepAlive = configUtil.getInteger(
             configSection, ConfigConst.KEEP_ALIVE_KEY, ConfigConst.DEFAULT_KEEP_ALIVE);
 
+        this.connPoolSize = configUtil.getInteger(
+            configSection, ConfigConst.CONNECTION_POOL_SIZE_KEY, ConfigConst.DEFAULT_CONNECTION_POOL_SIZE);
+
+        if (this.connPoolSize < 1 || this.connPoolSize > ConfigConst.MAX_CONNECTION_POOL_SIZE) {
+            _Logger.warning("Invalid connection pool size: " + this.connPoolSize + ". Using 1.");
+            this.connPoolSize = ConfigConst.DEFAULT_CONNECTION_POOL_SIZE;
+        }
+
+        this.maxInflight = configUtil.getInteger(
+            configSection, ConfigConst.MAX_INFLIGHT_KEY, ConfigConst.DEFAULT_MAX_INFLIGHT);
+
+        this.sharedGroup = configUtil.getProperty(
+            configSection, ConfigConst.SHARED_SUBSCRIPTION_GROUP_KEY);
+
+        if (this.sharedGroup != null && this.sharedGroup.trim().isEmpty()) {
+            this.sharedGroup = null;
+        }
+
+        this.compressor = new PayloadCompressor(configSection);
+
+        parsePayloadFormats(configUtil.getProperty(configSection, ConfigConst.CBOR_RESOURCES_KEY));
+
+        int lastValueCacheMaxBytes = configUtil.getInteger(
+            configSection, ConfigConst.LAST_VALUE_CACHE_MAX_BYTES_KEY, ConfigConst.DEFAULT_LAST_VALUE_CACHE_MAX_BYTES);
+
+        if (lastValueCacheMaxBytes > 0) {
+            this.lastValueCache = new LastValueCache(lastValueCacheMaxBytes);
+        }
+
+        this.publishRetained = configUtil.getBoolean(configSection, ConfigConst.PUBLISH_RETAINED_KEY);
+
         this.clientID = MqttClient.generateClientId();
         this.persistence = new MemoryPersistence();
 
@@ -332,6 +868,7 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
         this.connOpts.setKeepAliveInterval(this.brokerKeepAlive);
         this.connOpts.setCleanSession(true);
         this.connOpts.setAutomaticReconnect(true);
+        this.connOpts.setMaxInflight(this.maxInflight);
 
         boolean enableEncryption =
             configUtil.getBoolean(configSection, ConfigConst.ENABLE_CRYPT_KEY);
@@ -357,6 +894,27 @@ public class MqttClientConnector implements IPubSubClient, MqttCallbackExtended
         }
     }
 
+    private void parsePayloadFormats(String value)
+    {
+        if (value == null || value.trim().isEmpty()) {
+            return;
+        }
+
+        for (String entry : value.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+
+            try {
+                this.payloadFormats.put(ResourceNameEnum.valueOf(entry.trim()), PayloadFormat.CBOR);
+            } catch (IllegalArgumentException e) {
+                _Logger.warning("Unknown resource in CBOR config: " + entry);
+            }
+        }
+
+        _Logger.info("CBOR payloads enabled: " + this.payloadFormats.keySet());
+    }
+
     private void initSecureConnectionParameters(
         ConfigUtil configUtil, String configSection)
     {
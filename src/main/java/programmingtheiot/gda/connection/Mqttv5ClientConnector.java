@@ -0,0 +1,729 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ *
+ * You may find it more helpful to your design to adjust the
+ * functionality, constants and interfaces (if there are any)
+ * provided within in order to meet the needs of your specific
+ * Programming the Internet of Things project.
+ */
+
+package programmingtheiot.gda.connection;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.eclipse.paho.mqttv5.client.IMqttToken;
+import org.eclipse.paho.mqttv5.client.MqttAsyncClient;
+import org.eclipse.paho.mqttv5.client.MqttCallback;
+import org.eclipse.paho.mqttv5.client.MqttClientException;
+import org.eclipse.paho.mqttv5.client.MqttConnectionOptions;
+import org.eclipse.paho.mqttv5.client.MqttDisconnectResponse;
+import org.eclipse.paho.mqttv5.client.persist.MemoryPersistence;
+import org.eclipse.paho.mqttv5.common.MqttException;
+import org.eclipse.paho.mqttv5.common.MqttMessage;
+import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
+import org.eclipse.paho.mqttv5.common.packet.UserProperty;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.common.SimpleCertManagementUtil;
+import programmingtheiot.data.PayloadCompressor;
+import programmingtheiot.data.PayloadFormat;
+
+/**
+ * MQTT 5 implementation of {@link IPubSubClient}.
+ *
+ * Compared to {@link MqttClientConnector} (MQTT 3.1.1), this connector:
+ * <ul>
+ * <li>negotiates topic aliases, so repeated PUBLISH packets to the same
+ *   topic carry a 2-byte alias instead of the full topic name (outbound
+ *   aliases are assigned by the client library, up to the broker's limit);</li>
+ * <li>sets a receive maximum, so the broker never has more unacknowledged
+ *   QoS 1/2 messages in flight to the GDA than configured;</li>
+ * <li>optionally sets a message expiry interval on every publish;</li>
+ * <li>attaches the gateway's metadata as user properties instead of
+ *   embedding it in the payload or topic;</li>
+ * <li>labels each publish with its content type (application/json or
+ *   application/cbor, per 'cborResources').</li>
+ * </ul>
+ *
+ * Selected by setting 'mqttProtocolVersion = 5' in the MQTT config section.
+ */
+public class Mqttv5ClientConnector implements IPubSubClient, MqttCallback
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(Mqttv5ClientConnector.class.getName());
+
+	public static final String CONTENT_TYPE_JSON = "application/json";
+	public static final String CONTENT_TYPE_CBOR = "application/cbor";
+	public static final String USER_PROP_LOCATION_ID = "locationID";
+	public static final String USER_PROP_DEVICE_TYPE = "deviceType";
+
+	private static final long MAX_WINDOW_WAIT_MILLIS = 100L;
+
+	// params
+
+	private String host = ConfigConst.DEFAULT_HOST;
+	private int port = ConfigConst.DEFAULT_MQTT_PORT;
+	private int brokerKeepAlive = ConfigConst.DEFAULT_KEEP_ALIVE;
+	private String clientID = null;
+	private String brokerAddr = null;
+
+	private int topicAliasMax = ConfigConst.DEFAULT_TOPIC_ALIAS_MAXIMUM;
+	private int receiveMax = ConfigConst.DEFAULT_RECEIVE_MAXIMUM;
+	private long msgExpirySecs = ConfigConst.DEFAULT_MESSAGE_EXPIRY_SECS;
+
+	private MqttAsyncClient mqttClient = null;
+	private MqttConnectionOptions connOpts = null;
+	private MemoryPersistence persistence = null;
+
+	// counts completed deliveries, so publishers can wait for the broker's
+	// receive maximum window to open
+	private final Object deliverySignal = new Object();
+	private long deliveryCount = 0L;
+
+	// immutable - shared by every outbound message
+	private List<UserProperty> userProps = null;
+
+	// shared subscription group (null if not configured), and the active
+	// subscriptions (topic filter -> QoS), (re)established on every connect
+	private String sharedGroup = null;
+	private Map<String, Integer> subscriptions = new ConcurrentHashMap<>();
+
+	// per-filter listeners (wildcards allowed), matched against each inbound topic
+	private TopicTrie<ITopicMessageListener> topicListeners = new TopicTrie<>();
+
+	private PayloadCompressor compressor = null;
+
+	// resources published as CBOR (all others are JSON)
+	private Map<ResourceNameEnum, PayloadFormat> payloadFormats = new EnumMap<>(ResourceNameEnum.class);
+
+	private IDataMessageListener dataMsgListener = null;
+	private IConnectionListener connListener = null;
+
+
+	// constructors
+
+	/**
+	 * Default.
+	 *
+	 */
+	public Mqttv5ClientConnector()
+	{
+		this(ConfigConst.MQTT_GATEWAY_SERVICE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 */
+	public Mqttv5ClientConnector(String configSectionName)
+	{
+		super();
+
+		if (configSectionName == null || configSectionName.trim().length() == 0) {
+			configSectionName = ConfigConst.MQTT_GATEWAY_SERVICE;
+		}
+
+		initClientParameters(configSectionName);
+
+		_Logger.info("MQTT 5 client created: " + this.brokerAddr);
+	}
+
+
+	// public methods
+
+	@Override
+	public boolean connectClient()
+	{
+		try {
+			if (this.mqttClient == null) {
+				this.mqttClient = new MqttAsyncClient(this.brokerAddr, this.clientID, this.persistence);
+				this.mqttClient.setCallback(this);
+			}
+
+			if (! this.mqttClient.isConnected()) {
+				this.mqttClient.connect(this.connOpts);
+				return true;
+			}
+		} catch (MqttException e) {
+			_Logger.log(Level.SEVERE, "MQTT 5 connect failed", e);
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean disconnectClient()
+	{
+		try {
+			if (this.mqttClient != null && this.mqttClient.isConnected()) {
+				this.mqttClient.disconnect();
+
+				if (this.connListener != null) {
+					this.connListener.onDisconnect();
+				}
+
+				return true;
+			}
+		} catch (MqttException e) {
+			_Logger.log(Level.SEVERE, "MQTT 5 disconnect failed", e);
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean isConnected()
+	{
+		return (this.mqttClient != null && this.mqttClient.isConnected());
+	}
+
+	@Override
+	public boolean publishMessage(ResourceNameEnum topicName, String msg, int qos)
+	{
+		if (topicName == null || msg == null) {
+			return false;
+		}
+
+		return publishMessage(topicName, msg.getBytes(StandardCharsets.UTF_8), qos);
+	}
+
+	@Override
+	public boolean publishMessage(ResourceNameEnum topicName, byte[] payload, int qos)
+	{
+		if (topicName == null || payload == null) {
+			return false;
+		}
+
+		return publishMessage(topicName.getResourceName(), this.compressor.encode(topicName, payload), qos);
+	}
+
+	/**
+	 * Returns the configured ('cborResources') format for the resource.
+	 */
+	@Override
+	public PayloadFormat getPayloadFormat(ResourceNameEnum resource)
+	{
+		PayloadFormat format = (resource != null ? this.payloadFormats.get(resource) : null);
+
+		return (format != null ? format : PayloadFormat.JSON);
+	}
+
+	@Override
+	public boolean subscribeToTopic(ResourceNameEnum topicName, int qos)
+	{
+		return subscribeToSharedTopic(topicName, this.sharedGroup, qos);
+	}
+
+	@Override
+	public boolean unsubscribeFromTopic(ResourceNameEnum topicName)
+	{
+		return unsubscribeFromSharedTopic(topicName, this.sharedGroup);
+	}
+
+	@Override
+	public boolean subscribeToTopic(String topicFilter, int qos, ITopicMessageListener listener)
+	{
+		if (topicFilter == null || listener == null) {
+			return false;
+		}
+
+		if (! this.topicListeners.add(topicFilter, listener)) {
+			_Logger.warning("Invalid topic filter or listener already registered: " + topicFilter);
+			return false;
+		}
+
+		return subscribeToTopic(topicFilter, qos);
+	}
+
+	@Override
+	public boolean unsubscribeFromTopic(String topicFilter, ITopicMessageListener listener)
+	{
+		if (topicFilter == null || listener == null) {
+			return false;
+		}
+
+		int remaining = this.topicListeners.remove(topicFilter, listener);
+
+		if (remaining < 0) {
+			return false;
+		}
+
+		// other listeners still use the subscription
+		if (remaining > 0) {
+			return true;
+		}
+
+		return unsubscribeFromTopic(topicFilter);
+	}
+
+	@Override
+	public boolean subscribeToSharedTopic(ResourceNameEnum topicName, String groupName, int qos)
+	{
+		if (topicName == null) {
+			return false;
+		}
+
+		return subscribeToTopic(
+			IPubSubClient.getSharedTopicFilter(groupName, topicName.getResourceName()), qos);
+	}
+
+	@Override
+	public boolean unsubscribeFromSharedTopic(ResourceNameEnum topicName, String groupName)
+	{
+		if (topicName == null) {
+			return false;
+		}
+
+		return unsubscribeFromTopic(
+			IPubSubClient.getSharedTopicFilter(groupName, topicName.getResourceName()));
+	}
+
+	@Override
+	public boolean setConnectionListener(IConnectionListener listener)
+	{
+		if (listener != null) {
+			this.connListener = listener;
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		if (listener != null) {
+			this.dataMsgListener = listener;
+			return true;
+		}
+
+		return false;
+	}
+
+	// callbacks
+
+	@Override
+	public void authPacketArrived(int reasonCode, MqttProperties properties)
+	{
+		_Logger.fine("MQTT 5 AUTH packet arrived. Reason code: " + reasonCode);
+	}
+
+	@Override
+	public void connectComplete(boolean reconnect, String serverURI)
+	{
+		_Logger.info("MQTT 5 connection successful (reconnect = " + reconnect + "): " + serverURI);
+
+		// clean start is used, so (re)subscribe to everything
+		for (Map.Entry<String, Integer> entry : this.subscriptions.entrySet()) {
+			try {
+				this.mqttClient.subscribe(entry.getKey(), entry.getValue());
+			} catch (MqttException e) {
+				_Logger.warning("MQTT 5 subscription failed: " + entry.getKey());
+			}
+		}
+
+		if (this.connListener != null) {
+			this.connListener.onConnect();
+		}
+	}
+
+	@Override
+	public void deliveryComplete(IMqttToken token)
+	{
+		_Logger.fine("MQTT 5 delivery complete");
+
+		signalDelivery();
+	}
+
+	@Override
+	public void disconnected(MqttDisconnectResponse disconnectResponse)
+	{
+		_Logger.warning("MQTT 5 disconnected: " + disconnectResponse);
+
+		signalDelivery();
+	}
+
+	@Override
+	public void mqttErrorOccurred(MqttException exception)
+	{
+		_Logger.log(Level.WARNING, "MQTT 5 error occurred", exception);
+	}
+
+	@Override
+	public void messageArrived(String topic, MqttMessage msg) throws Exception
+	{
+		_Logger.fine("MQTT 5 message received: " + topic);
+
+		byte[] payload = null;
+
+		try {
+			payload = this.compressor.decodePayload(msg.getPayload());
+		} catch (IllegalArgumentException e) {
+			_Logger.warning("Dropping oversized compressed MQTT 5 message on topic: " + topic + ". " + e.getMessage());
+			return;
+		}
+
+		if (payload == null) {
+			_Logger.warning("Dropping corrupt compressed MQTT 5 message on topic: " + topic);
+			return;
+		}
+
+		// listeners registered for matching (wildcard) filters take precedence
+		List<ITopicMessageListener> listeners = this.topicListeners.match(topic);
+
+		if (! listeners.isEmpty()) {
+			for (ITopicMessageListener listener : listeners) {
+				listener.onMessage(topic, payload, msg.getQos());
+			}
+
+			return;
+		}
+
+		// shared subscription deliveries carry the original topic name
+		ResourceNameEnum resource = ResourceNameEnum.getEnumFromValue(topic);
+
+		if (resource == null) {
+			_Logger.warning("MQTT 5 message received on unknown topic: " + topic);
+			return;
+		}
+
+		if (this.dataMsgListener != null) {
+			this.dataMsgListener.handleIncomingMessage(resource, payload);
+		}
+	}
+
+
+	// protected methods
+
+	protected boolean publishMessage(String topicName, byte[] payload, int qos)
+	{
+		if (topicName == null || payload == null || payload.length == 0 || ! isConnected()) {
+			return false;
+		}
+
+		if (qos < 0 || qos > 2) {
+			qos = ConfigConst.DEFAULT_QOS;
+		}
+
+		try {
+			MqttMessage msg = new MqttMessage(payload);
+			msg.setQos(qos);
+			msg.setProperties(createPublishProperties(topicName, payload));
+
+			publishWhenWindowOpen(topicName, msg);
+
+			return true;
+		} catch (Exception e) {
+			_Logger.log(Level.SEVERE, "MQTT 5 publish failed: " + topicName, e);
+		}
+
+		return false;
+	}
+
+	protected boolean subscribeToTopic(String topicName, int qos)
+	{
+		if (topicName == null) {
+			return false;
+		}
+
+		if (qos < 0 || qos > 2) {
+			qos = ConfigConst.DEFAULT_QOS;
+		}
+
+		this.subscriptions.put(topicName, qos);
+
+		if (! isConnected()) {
+			// subscribed on connectComplete()
+			_Logger.fine("Not yet connected. Deferring MQTT 5 subscription: " + topicName);
+			return true;
+		}
+
+		try {
+			this.mqttClient.subscribe(topicName, qos);
+			return true;
+		} catch (MqttException e) {
+			_Logger.log(Level.SEVERE, "MQTT 5 subscribe failed: " + topicName, e);
+		}
+
+		return false;
+	}
+
+	protected boolean unsubscribeFromTopic(String topicName)
+	{
+		if (topicName == null) {
+			return false;
+		}
+
+		this.subscriptions.remove(topicName);
+
+		if (! isConnected()) {
+			return true;
+		}
+
+		try {
+			this.mqttClient.unsubscribe(topicName);
+			return true;
+		} catch (MqttException e) {
+			_Logger.log(Level.SEVERE, "MQTT 5 unsubscribe failed: " + topicName, e);
+		}
+
+		return false;
+	}
+
+
+	// private methods
+
+	/**
+	 * Publishes, waiting for the broker's receive maximum window to open if
+	 * it is full. The wait blocks until any delivery completes (see
+	 * {@link #signalDelivery()}), then retries, until the keep alive
+	 * interval has passed. Each wait is capped at MAX_WINDOW_WAIT_MILLIS,
+	 * so a completion that isn't signalled only delays the retry.
+	 *
+	 * @param topicName The topic name.
+	 * @param msg The message.
+	 * @throws MqttException If the publish fails, or the window stays full.
+	 */
+	private void publishWhenWindowOpen(String topicName, MqttMessage msg) throws MqttException
+	{
+		long deadline = System.currentTimeMillis() + this.brokerKeepAlive * 1000L;
+
+		while (true) {
+			long seenCount;
+
+			synchronized (this.deliverySignal) {
+				seenCount = this.deliveryCount;
+			}
+
+			try {
+				this.mqttClient.publish(topicName, msg);
+				return;
+			} catch (MqttException e) {
+				if (e.getReasonCode() != MqttClientException.REASON_CODE_MAX_INFLIGHT ||
+					System.currentTimeMillis() > deadline) {
+					throw e;
+				}
+			}
+
+			synchronized (this.deliverySignal) {
+				long waitMillis = Math.min(MAX_WINDOW_WAIT_MILLIS, deadline - System.currentTimeMillis());
+
+				if (this.deliveryCount == seenCount && waitMillis > 0L) {
+					try {
+						this.deliverySignal.wait(waitMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+
+						throw new MqttException(MqttClientException.REASON_CODE_MAX_INFLIGHT, e);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wakes any publisher waiting for the receive maximum window to open.
+	 */
+	private void signalDelivery()
+	{
+		synchronized (this.deliverySignal) {
+			++this.deliveryCount;
+			this.deliverySignal.notifyAll();
+		}
+	}
+
+	/**
+	 * Creates the per-message PUBLISH properties. A new instance is needed
+	 * for each message, since the client library sets the topic alias on it;
+	 * the user property list itself is shared.
+	 *
+	 * The content type is detected from the payload, or for compressed
+	 * payloads taken from the resource's configured format. Only
+	 * uncompressed JSON is flagged as UTF-8.
+	 *
+	 * @param topicName The topic name.
+	 * @param payload The (possibly compressed) payload.
+	 * @return MqttProperties The PUBLISH properties.
+	 */
+	private MqttProperties createPublishProperties(String topicName, byte[] payload)
+	{
+		boolean isCompressed = PayloadCompressor.isCompressed(payload);
+		PayloadFormat format = (isCompressed ?
+			getPayloadFormat(ResourceNameEnum.getEnumFromValue(topicName)) : PayloadFormat.detect(payload));
+
+		MqttProperties props = new MqttProperties();
+		props.setContentType(format == PayloadFormat.CBOR ? CONTENT_TYPE_CBOR : CONTENT_TYPE_JSON);
+		props.setPayloadFormat(format == PayloadFormat.JSON && ! isCompressed);
+		props.setUserProperties(this.userProps);
+
+		if (this.msgExpirySecs > 0) {
+			props.setMessageExpiryInterval(this.msgExpirySecs);
+		}
+
+		return props;
+	}
+
+	/**
+	 * Called by the constructor to set the MQTT client parameters to be used for the connection.
+	 *
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 */
+	private void initClientParameters(String configSectionName)
+	{
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		this.host = configUtil.getProperty(configSectionName, ConfigConst.HOST_KEY, ConfigConst.DEFAULT_HOST);
+		this.port = configUtil.getInteger(configSectionName, ConfigConst.PORT_KEY, ConfigConst.DEFAULT_MQTT_PORT);
+		this.brokerKeepAlive =
+			configUtil.getInteger(configSectionName, ConfigConst.KEEP_ALIVE_KEY, ConfigConst.DEFAULT_KEEP_ALIVE);
+
+		this.topicAliasMax = configUtil.getInteger(
+			configSectionName, ConfigConst.TOPIC_ALIAS_MAXIMUM_KEY, ConfigConst.DEFAULT_TOPIC_ALIAS_MAXIMUM);
+		this.receiveMax = configUtil.getInteger(
+			configSectionName, ConfigConst.RECEIVE_MAXIMUM_KEY, ConfigConst.DEFAULT_RECEIVE_MAXIMUM);
+		this.msgExpirySecs = configUtil.getInteger(
+			configSectionName, ConfigConst.MESSAGE_EXPIRY_SECS_KEY, ConfigConst.DEFAULT_MESSAGE_EXPIRY_SECS);
+
+		this.sharedGroup = configUtil.getProperty(configSectionName, ConfigConst.SHARED_SUBSCRIPTION_GROUP_KEY);
+
+		if (this.sharedGroup != null && this.sharedGroup.trim().isEmpty()) {
+			this.sharedGroup = null;
+		}
+
+		this.compressor = new PayloadCompressor(configSectionName);
+
+		parsePayloadFormats(configUtil.getProperty(configSectionName, ConfigConst.CBOR_RESOURCES_KEY));
+
+		this.clientID = "paho5-" + UUID.randomUUID().toString().substring(0, 8);
+		this.persistence = new MemoryPersistence();
+		this.brokerAddr = ConfigConst.DEFAULT_MQTT_PROTOCOL + "://" + this.host + ":" + this.port;
+
+		this.connOpts = new MqttConnectionOptions();
+		this.connOpts.setKeepAliveInterval(this.brokerKeepAlive);
+		this.connOpts.setCleanStart(true);
+		this.connOpts.setAutomaticReconnect(true);
+
+		// receive maximum must be 1..65535; topic alias maximum 0 disables inbound aliases
+		if (this.receiveMax > 0) {
+			this.connOpts.setReceiveMaximum(Math.min(this.receiveMax, 65535));
+		}
+
+		this.connOpts.setTopicAliasMaximum(Math.max(0, Math.min(this.topicAliasMax, 65535)));
+
+		List<UserProperty> props = new ArrayList<>();
+		props.add(new UserProperty(USER_PROP_DEVICE_TYPE, ConfigConst.GATEWAY_DEVICE));
+		props.add(new UserProperty(
+			USER_PROP_LOCATION_ID,
+			configUtil.getProperty(ConfigConst.GATEWAY_DEVICE, ConfigConst.DEVICE_LOCATION_ID_KEY, ConfigConst.NOT_SET)));
+
+		this.userProps = Collections.unmodifiableList(props);
+
+		if (configUtil.getBoolean(configSectionName, ConfigConst.ENABLE_CRYPT_KEY)) {
+			initSecureConnectionParameters(configSectionName);
+		}
+
+		if (configUtil.getBoolean(configSectionName, ConfigConst.ENABLE_AUTH_KEY)) {
+			initCredentialConnectionParameters(configSectionName);
+		}
+	}
+
+	private void parsePayloadFormats(String value)
+	{
+		if (value == null || value.trim().isEmpty()) {
+			return;
+		}
+
+		for (String entry : value.split(",")) {
+			if (entry.trim().isEmpty()) {
+				continue;
+			}
+
+			try {
+				this.payloadFormats.put(ResourceNameEnum.valueOf(entry.trim()), PayloadFormat.CBOR);
+			} catch (IllegalArgumentException e) {
+				_Logger.warning("Unknown resource in CBOR config: " + entry);
+			}
+		}
+
+		_Logger.info("CBOR payloads enabled: " + this.payloadFormats.keySet());
+	}
+
+	/**
+	 * Called by {@link #initClientParameters(String)} to load credentials.
+	 *
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 */
+	private void initCredentialConnectionParameters(String configSectionName)
+	{
+		Properties credProps = ConfigUtil.getInstance().getCredentials(configSectionName);
+
+		if (credProps != null) {
+			String userName = credProps.getProperty(ConfigConst.USER_NAME_KEY);
+			String password = credProps.getProperty("userPassword");
+
+			if (userName != null && password != null) {
+				this.connOpts.setUserName(userName);
+				this.connOpts.setPassword(password.getBytes());
+			}
+		} else {
+			_Logger.warning("No credentials loaded for MQTT 5 client. Continuing without auth.");
+		}
+	}
+
+	/**
+	 * Called by {@link #initClientParameters(String)} to enable encryption.
+	 *
+	 * @param configSectionName The name of the configuration section to use for
+	 * the MQTT client configuration parameters.
+	 */
+	private void initSecureConnectionParameters(String configSectionName)
+	{
+		ConfigUtil configUtil = ConfigUtil.getInstance();
+
+		try {
+			String pemFileName = configUtil.getProperty(configSectionName, ConfigConst.CERT_FILE_KEY);
+
+			if (pemFileName != null && new File(pemFileName).exists()) {
+				SSLSocketFactory socketFactory =
+					SimpleCertManagementUtil.getInstance().loadCertificate(pemFileName);
+
+				if (socketFactory != null) {
+					int securePort = configUtil.getInteger(
+						configSectionName, ConfigConst.SECURE_PORT_KEY, ConfigConst.DEFAULT_MQTT_SECURE_PORT);
+
+					this.connOpts.setSocketFactory(socketFactory);
+					this.brokerAddr = "ssl://" + this.host + ":" + securePort;
+				}
+			} else {
+				_Logger.warning("MQTT 5 cert file not found: " + pemFileName + ". Using TCP.");
+			}
+		} catch (Exception e) {
+			_Logger.log(Level.WARNING, "MQTT 5 TLS configuration failed. Using TCP.", e);
+		}
+	}
+
+}
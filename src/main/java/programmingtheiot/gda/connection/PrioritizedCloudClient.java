@@ -0,0 +1,538 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+
+/**
+ * Schedules cloud uplink sends by traffic class, so alerts and actuator
+ * state are not delayed behind queued telemetry or backfill.
+ *
+ * Each {@link Priority} has its own bounded queue. A single worker sends
+ * to the wrapped client using weighted round robin: per round, each class
+ * may send up to its weight ('uplinkWeights'), higher classes first. To
+ * prevent starvation, a message that has waited longer than
+ * 'starvationMillis' is sent next regardless of weights (at most every
+ * other send).
+ *
+ * Sends are classified as:
+ * <ul>
+ * <li>ALERT - data with its error flag set;</li>
+ * <li>ACTUATOR - payloads for actuator command / response resources;</li>
+ * <li>TELEMETRY - everything else;</li>
+ * <li>BACKFILL - only when requested explicitly, e.g. for spooled data.</li>
+ * </ul>
+ *
+ * Sends return false if the class's queue is full. Per-class queue
+ * latency (time from send to hand-off to the wrapped client) is tracked.
+ */
+public class PrioritizedCloudClient implements ICloudClient
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(PrioritizedCloudClient.class.getName());
+
+	/**
+	 * Uplink traffic classes, highest priority first.
+	 */
+	public enum Priority
+	{
+		ALERT, ACTUATOR, TELEMETRY, BACKFILL;
+
+		public static Priority fromName(String name)
+		{
+			for (Priority priority : values()) {
+				if (priority.name().equalsIgnoreCase(name)) {
+					return priority;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static final int CLASS_COUNT = Priority.values().length;
+
+
+	// private var's
+
+	private final ICloudClient client;
+	private final int[] weights = new int[CLASS_COUNT];
+	private final int[] credits = new int[CLASS_COUNT];
+	private final int queueSize;
+	private final long starvationNanos;
+
+	private final List<ArrayDeque<QueuedSend>> queues = new ArrayList<>(CLASS_COUNT);
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = this.lock.newCondition();
+	private int queuedCount = 0;
+	private boolean wasPromoted = false;
+
+	private Thread worker = null;
+	private volatile boolean isRunning = false;
+
+	private final AtomicLongArray sentCounts = new AtomicLongArray(CLASS_COUNT);
+	private final AtomicLongArray failedCounts = new AtomicLongArray(CLASS_COUNT);
+	private final AtomicLongArray droppedCounts = new AtomicLongArray(CLASS_COUNT);
+	private final AtomicLongArray promotedCounts = new AtomicLongArray(CLASS_COUNT);
+	private final AtomicLongArray totalWaitNanos = new AtomicLongArray(CLASS_COUNT);
+	private final AtomicLongArray maxWaitNanos = new AtomicLongArray(CLASS_COUNT);
+
+
+	// constructors
+
+	/**
+	 * Constructor. Reads 'uplinkWeights', 'uplinkQueueSize' and
+	 * 'starvationMillis' from the given section.
+	 *
+	 * @param client The client to send through.
+	 * @param configSectionName The cloud config section name.
+	 */
+	public PrioritizedCloudClient(ICloudClient client, String configSectionName)
+	{
+		this(
+			client,
+			parseWeights(ConfigUtil.getInstance().getProperty(
+				configSectionName, ConfigConst.UPLINK_WEIGHTS_KEY, ConfigConst.DEFAULT_UPLINK_WEIGHTS)),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.UPLINK_QUEUE_SIZE_KEY, ConfigConst.DEFAULT_UPLINK_QUEUE_SIZE),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.STARVATION_MILLIS_KEY, ConfigConst.DEFAULT_STARVATION_MILLIS));
+	}
+
+	/**
+	 * Constructor for explicit configuration.
+	 *
+	 * @param client The client to send through.
+	 * @param weights The weight per class, in {@link Priority} order.
+	 * @param queueSize The queue capacity per class.
+	 * @param starvationMillis The longest a queued message waits before it
+	 * is sent regardless of weights.
+	 */
+	public PrioritizedCloudClient(ICloudClient client, int[] weights, int queueSize, long starvationMillis)
+	{
+		super();
+
+		this.client = client;
+		this.queueSize = Math.max(1, queueSize);
+		this.starvationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, starvationMillis));
+
+		for (int i = 0; i < CLASS_COUNT; i++) {
+			this.weights[i] = Math.max(1, (weights != null && i < weights.length ? weights[i] : 1));
+			this.queues.add(new ArrayDeque<>());
+		}
+
+		_Logger.info("Uplink scheduler weights " + Arrays.toString(this.weights) +
+			", queue size " + this.queueSize + ", starvation limit " + starvationMillis + " ms");
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if the given section enables the uplink scheduler.
+	 *
+	 * @param configSectionName The config section name.
+	 * @return boolean
+	 */
+	public static boolean isEnabled(String configSectionName)
+	{
+		return ConfigUtil.getInstance().getBoolean(configSectionName, ConfigConst.UPLINK_SCHEDULER_KEY);
+	}
+
+	@Override
+	public synchronized boolean connectClient()
+	{
+		if (! this.client.connectClient()) {
+			return false;
+		}
+
+		if (! this.isRunning) {
+			this.isRunning = true;
+			this.worker = new Thread(this::runScheduler, "PrioritizedCloudClient-Scheduler");
+			this.worker.setDaemon(true);
+			this.worker.start();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Sends what is still queued, then disconnects the wrapped client.
+	 *
+	 * @return boolean The wrapped client's disconnect result.
+	 */
+	@Override
+	public synchronized boolean disconnectClient()
+	{
+		if (this.isRunning) {
+			this.lock.lock();
+
+			try {
+				this.isRunning = false;
+				this.notEmpty.signalAll();
+			} finally {
+				this.lock.unlock();
+			}
+
+			try {
+				this.worker.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.worker = null;
+
+			for (Priority priority : Priority.values()) {
+				_Logger.info(getStatus(priority));
+			}
+		}
+
+		return this.client.disconnectClient();
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+	{
+		return sendEdgeDataToCloud(classify(resource, data != null && data.hasError()), resource, data);
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+	{
+		return sendEdgeDataToCloud(classify(resource, data != null && data.hasError()), resource, data);
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload)
+	{
+		return sendEdgeDataToCloud(classify(resource, false), resource, payload);
+	}
+
+	/**
+	 * Queues SensorData in the given class.
+	 *
+	 * @param priority The traffic class.
+	 * @param resource The resource.
+	 * @param data The data.
+	 * @return boolean True if queued.
+	 */
+	public boolean sendEdgeDataToCloud(Priority priority, ResourceNameEnum resource, SensorData data)
+	{
+		return (data != null && enqueue(priority, c -> c.sendEdgeDataToCloud(resource, data)));
+	}
+
+	/**
+	 * Queues SystemPerformanceData in the given class.
+	 *
+	 * @param priority The traffic class.
+	 * @param resource The resource.
+	 * @param data The data.
+	 * @return boolean True if queued.
+	 */
+	public boolean sendEdgeDataToCloud(Priority priority, ResourceNameEnum resource, SystemPerformanceData data)
+	{
+		return (data != null && enqueue(priority, c -> c.sendEdgeDataToCloud(resource, data)));
+	}
+
+	/**
+	 * Queues a raw payload in the given class.
+	 *
+	 * @param priority The traffic class.
+	 * @param resource The resource.
+	 * @param payload The payload.
+	 * @return boolean True if queued.
+	 */
+	public boolean sendEdgeDataToCloud(Priority priority, ResourceNameEnum resource, byte[] payload)
+	{
+		return (payload != null && enqueue(priority, c -> c.sendEdgeDataToCloud(resource, payload)));
+	}
+
+	@Override
+	public boolean subscribeToCloudEvents(ResourceNameEnum resource)
+	{
+		return this.client.subscribeToCloudEvents(resource);
+	}
+
+	@Override
+	public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+	{
+		return this.client.unsubscribeFromCloudEvents(resource);
+	}
+
+	@Override
+	public boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		return this.client.setDataMessageListener(listener);
+	}
+
+	public int getQueueDepth(Priority priority)
+	{
+		this.lock.lock();
+
+		try {
+			return this.queues.get(priority.ordinal()).size();
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the average time messages of the class spent queued.
+	 *
+	 * @param priority The traffic class.
+	 * @return double The average queue latency in milliseconds.
+	 */
+	public double getAvgQueueLatencyMillis(Priority priority)
+	{
+		long count = this.sentCounts.get(priority.ordinal()) + this.failedCounts.get(priority.ordinal());
+
+		return (count > 0 ? this.totalWaitNanos.get(priority.ordinal()) / 1.0e6 / count : 0.0);
+	}
+
+	/**
+	 * Returns the longest time a message of the class spent queued.
+	 *
+	 * @param priority The traffic class.
+	 * @return double The maximum queue latency in milliseconds.
+	 */
+	public double getMaxQueueLatencyMillis(Priority priority)
+	{
+		return this.maxWaitNanos.get(priority.ordinal()) / 1.0e6;
+	}
+
+	public long getSentCount(Priority priority)
+	{
+		return this.sentCounts.get(priority.ordinal());
+	}
+
+	public long getFailedCount(Priority priority)
+	{
+		return this.failedCounts.get(priority.ordinal());
+	}
+
+	public long getDroppedCount(Priority priority)
+	{
+		return this.droppedCounts.get(priority.ordinal());
+	}
+
+	/**
+	 * Returns the number of messages of the class sent ahead of their
+	 * weighted turn because they reached the starvation limit.
+	 *
+	 * @param priority The traffic class.
+	 * @return long
+	 */
+	public long getPromotedCount(Priority priority)
+	{
+		return this.promotedCounts.get(priority.ordinal());
+	}
+
+	/**
+	 * Returns a one-line summary of the class's queue and delivery metrics.
+	 *
+	 * @param priority The traffic class.
+	 * @return String
+	 */
+	public String getStatus(Priority priority)
+	{
+		return String.format(
+			"Uplink %s: queued=%d, sent=%d, failed=%d, dropped=%d, promoted=%d, avgWait=%.2f ms, maxWait=%.2f ms",
+			priority, getQueueDepth(priority), getSentCount(priority), getFailedCount(priority),
+			getDroppedCount(priority), getPromotedCount(priority),
+			getAvgQueueLatencyMillis(priority), getMaxQueueLatencyMillis(priority));
+	}
+
+
+	// private methods
+
+	private static Priority classify(ResourceNameEnum resource, boolean hasError)
+	{
+		if (hasError) {
+			return Priority.ALERT;
+		}
+
+		if (resource == ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE ||
+			resource == ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE) {
+			return Priority.ACTUATOR;
+		}
+
+		return Priority.TELEMETRY;
+	}
+
+	private boolean enqueue(Priority priority, Predicate<ICloudClient> send)
+	{
+		int index = (priority != null ? priority : Priority.TELEMETRY).ordinal();
+
+		this.lock.lock();
+
+		try {
+			if (this.queues.get(index).size() >= this.queueSize) {
+				this.droppedCounts.incrementAndGet(index);
+				return false;
+			}
+
+			this.queues.get(index).add(new QueuedSend(send));
+			++this.queuedCount;
+			this.notEmpty.signal();
+
+			return true;
+		} finally {
+			this.lock.unlock();
+		}
+	}
+
+	private void runScheduler()
+	{
+		while (true) {
+			int index;
+			QueuedSend next;
+
+			this.lock.lock();
+
+			try {
+				while (this.isRunning && this.queuedCount == 0) {
+					this.notEmpty.awaitUninterruptibly();
+				}
+
+				if (this.queuedCount == 0) {
+					// stopped and drained
+					return;
+				}
+
+				index = selectClass(System.nanoTime());
+				next = this.queues.get(index).poll();
+				--this.queuedCount;
+			} finally {
+				this.lock.unlock();
+			}
+
+			long waitNanos = System.nanoTime() - next.enqueueNanos;
+
+			this.totalWaitNanos.addAndGet(index, waitNanos);
+			this.maxWaitNanos.accumulateAndGet(index, waitNanos, Math::max);
+
+			try {
+				if (next.send.test(this.client)) {
+					this.sentCounts.incrementAndGet(index);
+				} else {
+					this.failedCounts.incrementAndGet(index);
+				}
+			} catch (Exception e) {
+				this.failedCounts.incrementAndGet(index);
+				_Logger.log(Level.WARNING, "Cloud uplink send failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Picks the class to send from next. Must hold the lock, with at least
+	 * one message queued.
+	 */
+	private int selectClass(long now)
+	{
+		// starvation protection - the longest waiting message past the limit;
+		// never twice in a row, so under sustained overload at least half
+		// the sends still follow the weights
+		if (! this.wasPromoted) {
+			int starved = -1;
+			long oldest = Long.MAX_VALUE;
+
+			for (int i = 0; i < CLASS_COUNT; i++) {
+				QueuedSend head = this.queues.get(i).peek();
+
+				if (head != null && now - head.enqueueNanos >= this.starvationNanos && head.enqueueNanos < oldest) {
+					starved = i;
+					oldest = head.enqueueNanos;
+				}
+			}
+
+			if (starved >= 0) {
+				this.wasPromoted = true;
+				this.promotedCounts.incrementAndGet(starved);
+				return starved;
+			}
+		}
+
+		this.wasPromoted = false;
+
+		// weighted round robin, highest class first within each round
+		while (true) {
+			for (int i = 0; i < CLASS_COUNT; i++) {
+				if (this.credits[i] > 0 && ! this.queues.get(i).isEmpty()) {
+					--this.credits[i];
+					return i;
+				}
+			}
+
+			// every class with queued messages has used its share - new round
+			System.arraycopy(this.weights, 0, this.credits, 0, CLASS_COUNT);
+		}
+	}
+
+	/**
+	 * Parses 'alert:8, actuator:4, telemetry:2, backfill:1'. Classes not
+	 * listed get weight 1.
+	 */
+	private static int[] parseWeights(String value)
+	{
+		int[] weights = new int[CLASS_COUNT];
+		Arrays.fill(weights, 1);
+
+		if (value == null) {
+			return weights;
+		}
+
+		for (String entry : value.split(",")) {
+			String[] parts = entry.split(":");
+
+			if (parts.length != 2) {
+				continue;
+			}
+
+			Priority priority = Priority.fromName(parts[0].trim());
+
+			try {
+				if (priority != null) {
+					weights[priority.ordinal()] = Integer.parseInt(parts[1].trim());
+				} else {
+					_Logger.warning("Unknown uplink class in weights: " + parts[0].trim());
+				}
+			} catch (NumberFormatException e) {
+				_Logger.warning("Invalid uplink weight: " + entry.trim());
+			}
+		}
+
+		return weights;
+	}
+
+
+	// inner classes
+
+	private static class QueuedSend
+	{
+		final Predicate<ICloudClient> send;
+		final long enqueueNanos = System.nanoTime();
+
+		QueuedSend(Predicate<ICloudClient> send)
+		{
+			this.send = send;
+		}
+	}
+}
@@ -1,9 +1,13 @@
 package programmingtheiot.gda.connection;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,12 +21,19 @@ import programmingtheiot.data.ActuatorData;
 import programmingtheiot.data.DataUtil;
 import programmingtheiot.data.SensorData;
 import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.data.TimeSeriesCodec;
 import programmingtheiot.gda.connection.IPersistenceClient;
 import programmingtheiot.gda.connection.IPersistenceListener;
 
 /**
  * Redis-based persistence adapter for storing and retrieving IoT data.
  * Supports ActuatorData, SensorData, and SystemPerformanceData.
+ * 
+ * With 'storageFormat = gorilla', SensorData readings are saved in
+ * TimeSeriesCodec blocks instead of one JSON value per reading. Each topic
+ * has one block per 'storageBlockSecs' time bucket; storing a reading
+ * re-encodes its bucket's block with the reading added, so single-reading
+ * stores still build up compressed series.
  */
 public class RedisPersistenceAdapter implements IPersistenceClient {
     
@@ -38,6 +49,8 @@ public class RedisPersistenceAdapter implements IPersistenceClient {
     private Jedis jedisClient;
     private boolean isConnected = false;
     private DataUtil dataUtil;
+    private boolean useTimeSeriesBlocks = false;
+    private long blockMillis = ConfigConst.DEFAULT_STORAGE_BLOCK_SECS * 1000L;
     
     /**
      * Constructor - initializes Redis client configuration from properties file.
@@ -59,6 +72,17 @@ public class RedisPersistenceAdapter implements IPersistenceClient {
         // Initialize DataUtil for JSON conversion
         this.dataUtil = DataUtil.getInstance();
         
+        this.useTimeSeriesBlocks = ConfigConst.STORAGE_FORMAT_GORILLA.equalsIgnoreCase(
+            configUtil.getProperty(
+                ConfigConst.DATA_GATEWAY_SERVICE,
+                ConfigConst.STORAGE_FORMAT_KEY,
+                ConfigConst.DEFAULT_STORAGE_FORMAT));
+        
+        this.blockMillis = Math.max(1, configUtil.getInteger(
+            ConfigConst.DATA_GATEWAY_SERVICE,
+            ConfigConst.STORAGE_BLOCK_SECS_KEY,
+            ConfigConst.DEFAULT_STORAGE_BLOCK_SECS)) * 1000L;
+        
         _Logger.info("Redis configuration loaded: " + this.host + ":" + this.port);
     }
     
@@ -70,7 +94,7 @@ public class RedisPersistenceAdapter implements IPersistenceClient {
         }
         
         try {
-            this.jedisClient = new Jedis(this.host, this.port);
+            this.jedisClient = createJedisClient();
             this.jedisClient.connect();
             
             // Test connection with ping
@@ -179,6 +203,22 @@ public class RedisPersistenceAdapter implements IPersistenceClient {
                 }
             }
             
+            // compressed blocks (storageFormat = gorilla)
+            Set<String> blockKeys = this.jedisClient.keys(generateTopicKey(topic) + ":sensorblock:*");
+            
+            for (String key : blockKeys) {
+                byte[] block = this.jedisClient.get(key.getBytes(StandardCharsets.UTF_8));
+                List<SensorData> blockData = TimeSeriesCodec.decodeSensorData(block);
+                
+                if (blockData != null) {
+                    for (SensorData data : blockData) {
+                        if (isWithinDateRange(data.getTimeStamp(), startDate, endDate)) {
+                            dataList.add(data);
+                        }
+                    }
+                }
+            }
+            
             _Logger.info("Retrieved " + dataList.size() + " SensorData records for topic: " + topic);
             
         } catch (Exception e) {
@@ -229,6 +269,10 @@ public class RedisPersistenceAdapter implements IPersistenceClient {
             return false;
         }
         
+        if (this.useTimeSeriesBlocks) {
+            return storeSensorDataBlock(topic, data);
+        }
+        
         try {
             for (SensorData sensorData : data) {
                 String key = generateDataKey(topic, "sensor", sensorData.getTimeStamp());
@@ -284,8 +328,73 @@ public class RedisPersistenceAdapter implements IPersistenceClient {
         _Logger.warning("registerDataStorageListener not implemented for Redis adapter.");
     }
     
+    // Protected methods
+    
+    /**
+     * Creates the Redis client used by connectClient().
+     * 
+     * @return Jedis The (not yet connected) client
+     */
+    protected Jedis createJedisClient() {
+        return new Jedis(this.host, this.port);
+    }
+    
     // Private helper methods
     
+    /**
+     * Adds the readings to the compressed time-series block of each time
+     * bucket they fall in. Each block is read, decoded, merged in timestamp
+     * order and re-encoded; synchronized, so concurrent stores don't lose
+     * each other's readings.
+     */
+    private synchronized boolean storeSensorDataBlock(String topic, SensorData... data) {
+        // bucket start -> new readings
+        Map<Long, List<SensorData>> buckets = new TreeMap<>();
+        
+        for (SensorData sensorData : data) {
+            long timeStamp = sensorData.getTimeStampMillis();
+            long bucketStart = timeStamp - Math.floorMod(timeStamp, this.blockMillis);
+            
+            buckets.computeIfAbsent(bucketStart, k -> new ArrayList<>()).add(sensorData);
+        }
+        
+        try {
+            for (Map.Entry<Long, List<SensorData>> bucket : buckets.entrySet()) {
+                byte[] key = generateDataKey(topic, "sensorblock", bucket.getKey()).getBytes(StandardCharsets.UTF_8);
+                List<SensorData> blockData = new ArrayList<>();
+                byte[] existing = this.jedisClient.get(key);
+                
+                if (existing != null) {
+                    List<SensorData> existingData = TimeSeriesCodec.decodeSensorData(existing);
+                    
+                    if (existingData != null) {
+                        blockData.addAll(existingData);
+                    } else {
+                        _Logger.warning("Replacing corrupt SensorData block: " + new String(key, StandardCharsets.UTF_8));
+                    }
+                }
+                
+                blockData.addAll(bucket.getValue());
+                
+                // regular intervals compress best (stable sort keeps series order)
+                blockData.sort(Comparator.comparingLong(SensorData::getTimeStampMillis));
+                
+                byte[] block = TimeSeriesCodec.encodeSensorData(blockData);
+                
+                this.jedisClient.set(key, block);
+                
+                _Logger.info("Stored " + bucket.getValue().size() + " SensorData records in block of " +
+                    blockData.size() + " (" + block.length + " bytes) for topic: " + topic);
+            }
+            
+            return true;
+            
+        } catch (Exception e) {
+            _Logger.log(Level.SEVERE, "Failed to store SensorData block to Redis.", e);
+            return false;
+        }
+    }
+    
     /**
      * Generates a Redis key prefix from a topic string.
      * Replaces forward slashes with colons for Redis key hierarchy.
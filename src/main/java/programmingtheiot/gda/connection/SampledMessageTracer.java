@@ -0,0 +1,101 @@
+package programmingtheiot.gda.connection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.coap.EmptyMessage;
+import org.eclipse.californium.core.coap.Message;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
+
+/**
+ * Logs one in every 'sampleRate' CoAP messages in full (1 logs every
+ * message, like Californium's MessageTracer). Messages that aren't
+ * sampled cost one counter increment; nothing is formatted.
+ */
+public class SampledMessageTracer implements MessageInterceptor
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(SampledMessageTracer.class.getName());
+
+
+	// private var's
+
+	private final int sampleRate;
+	private final AtomicLong messageCount = new AtomicLong();
+
+
+	// constructors
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sampleRate Log one message in this many (1 or more).
+	 */
+	public SampledMessageTracer(int sampleRate)
+	{
+		super();
+
+		this.sampleRate = Math.max(1, sampleRate);
+	}
+
+
+	// public methods
+
+	public int getSampleRate()
+	{
+		return this.sampleRate;
+	}
+
+	@Override
+	public void sendRequest(Request request)
+	{
+		trace("==> req", request);
+	}
+
+	@Override
+	public void sendResponse(Response response)
+	{
+		trace("==> res", response);
+	}
+
+	@Override
+	public void sendEmptyMessage(EmptyMessage message)
+	{
+		trace("==> emp", message);
+	}
+
+	@Override
+	public void receiveRequest(Request request)
+	{
+		trace("<== req", request);
+	}
+
+	@Override
+	public void receiveResponse(Response response)
+	{
+		trace("<== res", response);
+	}
+
+	@Override
+	public void receiveEmptyMessage(EmptyMessage message)
+	{
+		trace("<== emp", message);
+	}
+
+
+	// private methods
+
+	private void trace(String direction, Message message)
+	{
+		if (this.messageCount.incrementAndGet() % this.sampleRate == 0L) {
+			Object peer = (direction.startsWith("==>") ?
+				message.getDestinationContext() : message.getSourceContext());
+
+			_Logger.info(direction + " " + (peer != null ? peer.toString() : "?") + ": " + message);
+		}
+	}
+}
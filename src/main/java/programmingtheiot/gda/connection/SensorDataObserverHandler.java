@@ -1,5 +1,6 @@
 package programmingtheiot.gda.connection;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.californium.core.CoapHandler;
@@ -21,6 +22,7 @@ public class SensorDataObserverHandler implements CoapHandler
         Logger.getLogger(SensorDataObserverHandler.class.getName());
     
     private IDataMessageListener dataMsgListener;
+    private volatile CoapRequestDispatcher requestDispatcher = null;
     
     /**
      * Constructor
@@ -40,6 +42,17 @@ public class SensorDataObserverHandler implements CoapHandler
         this.dataMsgListener = listener;
     }
     
+    /**
+     * Set the dispatcher that decodes and routes notifications off the
+     * Californium threads (null to handle them on the callback thread)
+     * 
+     * @param dispatcher The CoapRequestDispatcher instance
+     */
+    public void setRequestDispatcher(CoapRequestDispatcher dispatcher)
+    {
+        this.requestDispatcher = dispatcher;
+    }
+    
     /**
      * Handle CoAP errors
      */
@@ -50,42 +63,58 @@ public class SensorDataObserverHandler implements CoapHandler
     }
     
     /**
-     * Handle incoming OBSERVE notifications with SensorData payload
+     * Handle incoming OBSERVE notifications with SensorData payload.
+     * 
+     * With a request dispatcher, decoding and routing run on its threads
+     * and this callback returns at once; if its queue is full, the
+     * notification is dropped (the next one carries the latest state).
      * 
      * @param response The CoAP response containing SensorData in JSON format
      */
     @Override
     public void onLoad(CoapResponse response)
     {
-        if (response != null) {
-            _Logger.info("Received CoAP OBSERVE notification - SensorData:");
-            _Logger.info("  Response Code: " + response.getCode());
-            
-            String payload = response.getResponseText();
-            _Logger.info("  Payload (JSON): " + payload);
+        if (response == null) {
+            _Logger.warning("Received null CoAP response for SensorData observation");
+            return;
+        }
+        
+        long startNanos = System.nanoTime();
+        byte[] payload = response.getPayload();
+        CoapRequestDispatcher dispatcher = this.requestDispatcher;
+        
+        if (dispatcher == null) {
+            handlePayload(payload);
+            return;
+        }
+        
+        if (!dispatcher.dispatch(() -> handlePayload(payload))) {
+            _Logger.fine("CoAP dispatch queue full. Dropping SensorData notification.");
+        }
+        
+        dispatcher.recordProtocolThreadTime(System.nanoTime() - startNanos);
+    }
+    
+    private void handlePayload(byte[] payload)
+    {
+        try {
+            SensorData sensorData = DataUtil.getInstance().jsonBytesToSensorData(payload);
             
-            // Parse the JSON payload to SensorData
-            try {
-                SensorData sensorData = DataUtil.getInstance().jsonToSensorData(payload);
+            if (sensorData != null) {
+                if (_Logger.isLoggable(Level.FINE)) {
+                    _Logger.fine("Received SensorData notification: " + sensorData.getName() + " - Value: " + sensorData.getValue());
+                }
                 
-                if (sensorData != null) {
-                    _Logger.info("  Parsed SensorData: " + sensorData.getName() + 
-                               " - Value: " + sensorData.getValue());
-                    
-                    // Forward to data message listener if available
-                    if (this.dataMsgListener != null) {
-                        // Use the appropriate ResourceNameEnum based on sensor type
-                        this.dataMsgListener.handleSensorMessage(
-                            ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData);
-                    }
-                } else {
-                    _Logger.warning("  Failed to parse SensorData from payload");
+                // Forward to data message listener if available
+                if (this.dataMsgListener != null) {
+                    this.dataMsgListener.handleSensorMessage(
+                        ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData);
                 }
-            } catch (Exception e) {
-                _Logger.warning("  Exception parsing SensorData: " + e.getMessage());
+            } else {
+                _Logger.warning("Failed to parse SensorData from payload");
             }
-        } else {
-            _Logger.warning("Received null CoAP response for SensorData observation");
+        } catch (Exception e) {
+            _Logger.warning("Exception parsing SensorData: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
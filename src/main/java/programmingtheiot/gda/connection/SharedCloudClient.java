@@ -0,0 +1,190 @@
+package programmingtheiot.gda.connection;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+
+/**
+ * A handle to a cloud client shared through a {@link CloudClientRegistry}.
+ *
+ * connectClient() takes a reference to the shared client (connecting it
+ * if this is the first, or if the connection was lost), and disconnectClient() releases the reference
+ * along with this handle's subscriptions and listener. The shared
+ * connection itself is closed by the registry once it has been idle for
+ * the eviction delay, or when the registry is shut down.
+ */
+public class SharedCloudClient implements ICloudClient
+{
+	// private var's
+
+	private final CloudClientRegistry registry;
+	private final String serviceName;
+	private final Set<ResourceNameEnum> subscriptions = new HashSet<>();
+
+	private volatile CloudClientRegistry.Entry entry = null;
+	private IDataMessageListener listener = null;
+
+
+	// constructors
+
+	SharedCloudClient(CloudClientRegistry registry, String serviceName)
+	{
+		super();
+
+		this.registry = registry;
+		this.serviceName = serviceName;
+	}
+
+
+	// public methods
+
+	@Override
+	public synchronized boolean connectClient()
+	{
+		if (this.entry != null) {
+			return this.registry.reconnect(this.entry);
+		}
+
+		this.entry = this.registry.retain(this.serviceName);
+
+		if (this.entry == null) {
+			return false;
+		}
+
+		if (this.listener != null) {
+			this.entry.dispatcher.addListener(this.listener);
+		}
+
+		return true;
+	}
+
+	@Override
+	public synchronized boolean disconnectClient()
+	{
+		if (this.entry == null) {
+			return true;
+		}
+
+		for (ResourceNameEnum resource : this.subscriptions) {
+			this.entry.unsubscribe(resource);
+		}
+
+		this.subscriptions.clear();
+
+		if (this.listener != null) {
+			this.entry.dispatcher.removeListener(this.listener);
+		}
+
+		this.registry.release(this.entry);
+		this.entry = null;
+
+		return true;
+	}
+
+	/**
+	 * Returns true if this handle holds a reference and the shared client
+	 * is connected.
+	 *
+	 * @return boolean
+	 */
+	public synchronized boolean isConnected()
+	{
+		if (this.entry == null) {
+			return false;
+		}
+
+		return CloudClientRegistry.isClientConnected(this.entry.client);
+	}
+
+	public String getServiceName()
+	{
+		return this.serviceName;
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+	{
+		ICloudClient client = getClient();
+
+		return (client != null && client.sendEdgeDataToCloud(resource, data));
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+	{
+		ICloudClient client = getClient();
+
+		return (client != null && client.sendEdgeDataToCloud(resource, data));
+	}
+
+	@Override
+	public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload)
+	{
+		ICloudClient client = getClient();
+
+		return (client != null && client.sendEdgeDataToCloud(resource, payload));
+	}
+
+	@Override
+	public synchronized boolean subscribeToCloudEvents(ResourceNameEnum resource)
+	{
+		if (this.entry == null || resource == null) {
+			return false;
+		}
+
+		if (this.subscriptions.contains(resource)) {
+			return true;
+		}
+
+		if (this.entry.subscribe(resource)) {
+			this.subscriptions.add(resource);
+			return true;
+		}
+
+		return false;
+	}
+
+	@Override
+	public synchronized boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+	{
+		if (this.entry == null || ! this.subscriptions.remove(resource)) {
+			return false;
+		}
+
+		return this.entry.unsubscribe(resource);
+	}
+
+	@Override
+	public synchronized boolean setDataMessageListener(IDataMessageListener listener)
+	{
+		if (listener == null) {
+			return false;
+		}
+
+		if (this.entry != null) {
+			if (this.listener != null) {
+				this.entry.dispatcher.removeListener(this.listener);
+			}
+
+			this.entry.dispatcher.addListener(listener);
+		}
+
+		this.listener = listener;
+
+		return true;
+	}
+
+
+	// private methods
+
+	private ICloudClient getClient()
+	{
+		CloudClientRegistry.Entry entry = this.entry;
+
+		return (entry != null ? entry.client : null);
+	}
+}
@@ -1,5 +1,6 @@
 package programmingtheiot.gda.connection;
 
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.californium.core.CoapHandler;
@@ -21,6 +22,7 @@ public class SystemPerformanceDataObserverHandler implements CoapHandler
         Logger.getLogger(SystemPerformanceDataObserverHandler.class.getName());
     
     private IDataMessageListener dataMsgListener;
+    private volatile CoapRequestDispatcher requestDispatcher = null;
     
     /**
      * Constructor
@@ -40,6 +42,17 @@ public class SystemPerformanceDataObserverHandler implements CoapHandler
         this.dataMsgListener = listener;
     }
     
+    /**
+     * Set the dispatcher that decodes and routes notifications off the
+     * Californium threads (null to handle them on the callback thread)
+     * 
+     * @param dispatcher The CoapRequestDispatcher instance
+     */
+    public void setRequestDispatcher(CoapRequestDispatcher dispatcher)
+    {
+        this.requestDispatcher = dispatcher;
+    }
+    
     /**
      * Handle CoAP errors
      */
@@ -50,44 +63,59 @@ public class SystemPerformanceDataObserverHandler implements CoapHandler
     }
     
     /**
-     * Handle incoming OBSERVE notifications with SystemPerformanceData payload
+     * Handle incoming OBSERVE notifications with SystemPerformanceData payload.
+     * 
+     * With a request dispatcher, decoding and routing run on its threads
+     * and this callback returns at once; if its queue is full, the
+     * notification is dropped (the next one carries the latest state).
      * 
      * @param response The CoAP response containing SystemPerformanceData in JSON format
      */
     @Override
     public void onLoad(CoapResponse response)
     {
-        if (response != null) {
-            _Logger.info("Received CoAP OBSERVE notification - SystemPerformanceData:");
-            _Logger.info("  Response Code: " + response.getCode());
-            
-            String payload = response.getResponseText();
-            _Logger.info("  Payload (JSON): " + payload);
+        if (response == null) {
+            _Logger.warning("Received null CoAP response for SystemPerformanceData observation");
+            return;
+        }
+        
+        long startNanos = System.nanoTime();
+        byte[] payload = response.getPayload();
+        CoapRequestDispatcher dispatcher = this.requestDispatcher;
+        
+        if (dispatcher == null) {
+            handlePayload(payload);
+            return;
+        }
+        
+        if (!dispatcher.dispatch(() -> handlePayload(payload))) {
+            _Logger.fine("CoAP dispatch queue full. Dropping SystemPerformanceData notification.");
+        }
+        
+        dispatcher.recordProtocolThreadTime(System.nanoTime() - startNanos);
+    }
+    
+    private void handlePayload(byte[] payload)
+    {
+        try {
+            SystemPerformanceData sysPerfData = DataUtil.getInstance().jsonBytesToSystemPerformanceData(payload);
             
-            // Parse the JSON payload to SystemPerformanceData
-            try {
-                SystemPerformanceData sysPerfData = 
-                    DataUtil.getInstance().jsonToSystemPerformanceData(payload);
+            if (sysPerfData != null) {
+                if (_Logger.isLoggable(Level.FINE)) {
+                    _Logger.fine("Received SystemPerformanceData notification: CPU=" +
+                sysPerfData.getCpuUtilization() + "%, Memory=" + sysPerfData.getMemoryUtilization() + "%");
+                }
                 
-                if (sysPerfData != null) {
-                    _Logger.info("  Parsed SystemPerformanceData: CPU=" + 
-                               sysPerfData.getCpuUtilization() + "%, Memory=" +
-                               sysPerfData.getMemoryUtilization() + "%");
-                    
-                    // Forward to data message listener if available
-                    if (this.dataMsgListener != null) {
-                        // CORRECTED LINE: Use ResourceNameEnum instead of String
-                        this.dataMsgListener.handleSystemPerformanceMessage(
-                            ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE, sysPerfData);
-                    }
-                } else {
-                    _Logger.warning("  Failed to parse SystemPerformanceData from payload");
+                // Forward to data message listener if available
+                if (this.dataMsgListener != null) {
+                    this.dataMsgListener.handleSystemPerformanceMessage(
+                        ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE, sysPerfData);
                 }
-            } catch (Exception e) {
-                _Logger.warning("  Exception parsing SystemPerformanceData: " + e.getMessage());
+            } else {
+                _Logger.warning("Failed to parse SystemPerformanceData from payload");
             }
-        } else {
-            _Logger.warning("Received null CoAP response for SystemPerformanceData observation");
+        } catch (Exception e) {
+            _Logger.warning("Exception parsing SystemPerformanceData: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,331 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps MQTT topic filters (including '+' and '#' wildcards) to handlers,
+ * and matches concrete topic names against them in time proportional to
+ * the topic depth rather than the number of subscriptions.
+ *
+ * Each trie level corresponds to one topic level. Matching walks the
+ * literal child, the '+' child and the '#' child of each node, so only
+ * the branches that can actually match are visited.
+ *
+ * The results of recent matches are cached (topic -> handler list); the
+ * cache is cleared whenever a filter is added or removed. Shared
+ * subscription filters ('$share/group/filter') are stored under 'filter',
+ * since messages are delivered with the original topic name. As per the
+ * MQTT spec, topics starting with '$' are not matched by filters starting
+ * with a wildcard.
+ *
+ * Thread-safe. Cache hits don't lock.
+ *
+ * @param <T> The handler type.
+ */
+public class TopicTrie<T>
+{
+	// static
+
+	public static final int DEFAULT_MAX_CACHE_SIZE = 1024;
+
+	private static final String SINGLE_LEVEL = "+";
+	private static final String MULTI_LEVEL = "#";
+
+	private static class Node<T>
+	{
+		Map<String, Node<T>> children = null;
+		List<T> handlers = null;
+
+		Node<T> getChild(String level)
+		{
+			return (this.children != null ? this.children.get(level) : null);
+		}
+
+		boolean isEmpty()
+		{
+			return (this.handlers == null || this.handlers.isEmpty()) &&
+				(this.children == null || this.children.isEmpty());
+		}
+	}
+
+
+	// private var's
+
+	private final Node<T> root = new Node<>();
+	private final int maxCacheSize;
+	private final Map<String, List<T>> matchCache = new ConcurrentHashMap<>();
+
+	private int filterCount = 0;
+
+
+	// constructors
+
+	/**
+	 * Default.
+	 */
+	public TopicTrie()
+	{
+		this(DEFAULT_MAX_CACHE_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxCacheSize The maximum number of topics to cache match results for.
+	 */
+	public TopicTrie(int maxCacheSize)
+	{
+		super();
+
+		this.maxCacheSize = Math.max(0, maxCacheSize);
+	}
+
+
+	// public methods
+
+	/**
+	 * Adds a handler for the topic filter.
+	 *
+	 * @param topicFilter The topic filter, which may contain wildcards.
+	 * @param handler The handler.
+	 * @return boolean True if added; false if the filter is invalid or the
+	 * handler is already registered for it.
+	 */
+	public synchronized boolean add(String topicFilter, T handler)
+	{
+		String[] levels = splitFilter(topicFilter);
+
+		if (levels == null || handler == null) {
+			return false;
+		}
+
+		Node<T> node = this.root;
+
+		for (String level : levels) {
+			if (node.children == null) {
+				node.children = new HashMap<>();
+			}
+
+			node = node.children.computeIfAbsent(level, k -> new Node<>());
+		}
+
+		if (node.handlers == null) {
+			node.handlers = new ArrayList<>(2);
+		}
+
+		if (node.handlers.contains(handler)) {
+			return false;
+		}
+
+		if (node.handlers.isEmpty()) {
+			++this.filterCount;
+		}
+
+		node.handlers.add(handler);
+		this.matchCache.clear();
+
+		return true;
+	}
+
+	/**
+	 * Removes a handler for the topic filter.
+	 *
+	 * @param topicFilter The topic filter.
+	 * @param handler The handler.
+	 * @return int The number of handlers still registered for the filter,
+	 * or -1 if the handler was not registered for it.
+	 */
+	public synchronized int remove(String topicFilter, T handler)
+	{
+		String[] levels = splitFilter(topicFilter);
+
+		if (levels == null) {
+			return -1;
+		}
+
+		List<Node<T>> path = new ArrayList<>(levels.length + 1);
+		Node<T> node = this.root;
+		path.add(node);
+
+		for (String level : levels) {
+			node = node.getChild(level);
+
+			if (node == null) {
+				return -1;
+			}
+
+			path.add(node);
+		}
+
+		if (node.handlers == null || ! node.handlers.remove(handler)) {
+			return -1;
+		}
+
+		int remaining = node.handlers.size();
+
+		if (remaining == 0) {
+			--this.filterCount;
+
+			// prune empty branches
+			for (int i = levels.length; i > 0 && path.get(i).isEmpty(); i--) {
+				path.get(i - 1).children.remove(levels[i - 1]);
+			}
+		}
+
+		this.matchCache.clear();
+
+		return remaining;
+	}
+
+	/**
+	 * Returns all handlers whose filter matches the topic name.
+	 *
+	 * @param topicName The topic name (no wildcards).
+	 * @return List The matching handlers (unmodifiable; empty if none).
+	 */
+	public List<T> match(String topicName)
+	{
+		if (topicName == null || topicName.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		List<T> handlers = this.matchCache.get(topicName);
+
+		if (handlers != null) {
+			return handlers;
+		}
+
+		synchronized (this) {
+			List<T> result = new ArrayList<>(2);
+			String[] levels = topicName.split("/", -1);
+
+			collectMatches(this.root, levels, 0, topicName.startsWith("$"), result);
+
+			handlers = (result.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(result));
+
+			// cached under the lock, so a concurrent add/remove can't leave a stale result
+			if (this.maxCacheSize > 0) {
+				if (this.matchCache.size() >= this.maxCacheSize) {
+					this.matchCache.clear();
+				}
+
+				this.matchCache.put(topicName, handlers);
+			}
+		}
+
+		return handlers;
+	}
+
+	/**
+	 * Returns the number of filters with at least one handler.
+	 *
+	 * @return int
+	 */
+	public synchronized int getFilterCount()
+	{
+		return this.filterCount;
+	}
+
+	public synchronized void clear()
+	{
+		this.root.children = null;
+		this.root.handlers = null;
+		this.filterCount = 0;
+		this.matchCache.clear();
+	}
+
+	/**
+	 * Strips the '$share/group/' prefix from a shared subscription filter.
+	 *
+	 * @param topicFilter The topic filter.
+	 * @return String The filter the delivered topic names are matched against.
+	 */
+	public static String stripSharePrefix(String topicFilter)
+	{
+		if (topicFilter != null && topicFilter.startsWith(IPubSubClient.SHARED_SUBSCRIPTION_PREFIX)) {
+			int groupEnd = topicFilter.indexOf('/', IPubSubClient.SHARED_SUBSCRIPTION_PREFIX.length());
+
+			if (groupEnd > 0) {
+				return topicFilter.substring(groupEnd + 1);
+			}
+		}
+
+		return topicFilter;
+	}
+
+
+	// private methods
+
+	private void collectMatches(Node<T> node, String[] levels, int depth, boolean isSysTopic, List<T> result)
+	{
+		// '#' also matches the parent level ('a/#' matches 'a')
+		Node<T> multi = node.getChild(MULTI_LEVEL);
+
+		if (multi != null && ! (depth == 0 && isSysTopic)) {
+			addAll(multi.handlers, result);
+		}
+
+		if (depth == levels.length) {
+			addAll(node.handlers, result);
+			return;
+		}
+
+		Node<T> literal = node.getChild(levels[depth]);
+
+		if (literal != null) {
+			collectMatches(literal, levels, depth + 1, isSysTopic, result);
+		}
+
+		Node<T> single = node.getChild(SINGLE_LEVEL);
+
+		if (single != null && ! (depth == 0 && isSysTopic)) {
+			collectMatches(single, levels, depth + 1, isSysTopic, result);
+		}
+	}
+
+	private void addAll(List<T> handlers, List<T> result)
+	{
+		if (handlers != null) {
+			for (T handler : handlers) {
+				if (! result.contains(handler)) {
+					result.add(handler);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits and validates a topic filter.
+	 *
+	 * @return String[] The filter levels, or null if the filter is invalid.
+	 */
+	private String[] splitFilter(String topicFilter)
+	{
+		topicFilter = stripSharePrefix(topicFilter);
+
+		if (topicFilter == null || topicFilter.isEmpty()) {
+			return null;
+		}
+
+		String[] levels = topicFilter.split("/", -1);
+
+		for (int i = 0; i < levels.length; i++) {
+			String level = levels[i];
+
+			if (level.equals(MULTI_LEVEL)) {
+				if (i != levels.length - 1) {
+					return null;
+				}
+			} else if (! level.equals(SINGLE_LEVEL) && (level.contains(MULTI_LEVEL) || level.contains(SINGLE_LEVEL))) {
+				return null;
+			}
+		}
+
+		return levels;
+	}
+}
@@ -0,0 +1,417 @@
+package programmingtheiot.gda.connection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeAndValuePayloadBatch;
+import programmingtheiot.data.TimeSeriesCodec;
+
+/**
+ * Collects SensorData readings per resource and hands them on as a single
+ * batch envelope once either the maximum batch size is reached or the
+ * oldest queued reading is older than the flush interval.
+ *
+ * Size-triggered flushes run on the thread that adds the final reading;
+ * time-triggered flushes run on a single background thread. Batches for
+ * a given resource are delivered in the order the readings were added.
+ *
+ * Thread-safe.
+ */
+public class UplinkBatcher
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkBatcher.class.getName());
+
+	/**
+	 * Batch envelope formats.
+	 */
+	public enum Format
+	{
+		JSON, COLUMNAR, GORILLA, TIMEVALUE, TIMEVALUE_BINARY;
+
+		public static Format fromName(String name)
+		{
+			for (Format format : values()) {
+				if (format.name().equalsIgnoreCase(name)) {
+					return format;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	/**
+	 * Receives encoded batches.
+	 */
+	public interface IBatchSink
+	{
+		/**
+		 * Publishes one encoded batch.
+		 *
+		 * @param resource The resource the readings were sent for.
+		 * @param payload The encoded batch envelope.
+		 * @param count The number of readings in the batch.
+		 * @return boolean True on success.
+		 */
+		boolean publishBatch(ResourceNameEnum resource, byte[] payload, int count);
+	}
+
+	private static class Buffer
+	{
+		// held while a batch is drained and published, to keep batches in order
+		final Object publishLock = new Object();
+
+		List<SensorData> items = new ArrayList<>();
+		long firstItemMillis = 0L;
+	}
+
+
+	// private var's
+
+	private final IBatchSink sink;
+	private final Format format;
+	private volatile long flushMillis;
+	private volatile int maxBatchSize;
+
+	private final Map<ResourceNameEnum, Buffer> buffers = new ConcurrentHashMap<>();
+
+	private ScheduledExecutorService scheduler = null;
+	private ScheduledFuture<?> flushTask = null;
+
+	private final AtomicLong batchCount = new AtomicLong();
+	private final AtomicLong itemCount = new AtomicLong();
+	private final AtomicLong failedBatchCount = new AtomicLong();
+
+
+	// constructors
+
+	/**
+	 * Constructor. Reads 'batchMaxSize', 'batchFlushMillis' and 'batchFormat'
+	 * from the given section.
+	 *
+	 * @param configSectionName The cloud connector's config section name.
+	 * @param sink The batch sink.
+	 */
+	public UplinkBatcher(String configSectionName, IBatchSink sink)
+	{
+		this(
+			sink,
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.BATCH_MAX_SIZE_KEY, ConfigConst.DEFAULT_BATCH_MAX_SIZE),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.BATCH_FLUSH_MILLIS_KEY, ConfigConst.DEFAULT_BATCH_FLUSH_MILLIS),
+			parseFormat(ConfigUtil.getInstance().getProperty(
+				configSectionName, ConfigConst.BATCH_FORMAT_KEY, ConfigConst.DEFAULT_BATCH_FORMAT)));
+	}
+
+	/**
+	 * Constructor for explicit configuration.
+	 *
+	 * @param sink The batch sink.
+	 * @param maxBatchSize The maximum number of readings per batch.
+	 * @param flushMillis The maximum time a reading is held before its batch is flushed.
+	 * @param format The envelope format.
+	 */
+	public UplinkBatcher(IBatchSink sink, int maxBatchSize, long flushMillis, Format format)
+	{
+		super();
+
+		this.sink = sink;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+		this.flushMillis = Math.max(1L, flushMillis);
+		this.format = (format != null ? format : Format.JSON);
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if the given section enables batching.
+	 *
+	 * @param configSectionName The config section name.
+	 * @return boolean
+	 */
+	public static boolean isEnabled(String configSectionName)
+	{
+		return ConfigUtil.getInstance().getInteger(
+			configSectionName, ConfigConst.BATCH_MAX_SIZE_KEY, ConfigConst.DEFAULT_BATCH_MAX_SIZE) > 1;
+	}
+
+	/**
+	 * Starts the background flush timer.
+	 */
+	public synchronized void start()
+	{
+		if (this.scheduler != null) {
+			return;
+		}
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "UplinkBatcher");
+			t.setDaemon(true);
+			return t;
+		});
+
+		// check a few times per interval, so readings aren't held much longer than flushMillis
+		long period = Math.max(1L, this.flushMillis / 4);
+
+		this.flushTask = this.scheduler.scheduleAtFixedRate(
+			this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background flush timer, after flushing all queued readings.
+	 */
+	public synchronized void stop()
+	{
+		if (this.scheduler == null) {
+			return;
+		}
+
+		this.flushTask.cancel(false);
+		this.scheduler.shutdown();
+
+		try {
+			this.scheduler.awaitTermination(this.flushMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		this.scheduler = null;
+		this.flushTask = null;
+
+		flushAll();
+	}
+
+	/**
+	 * Queues a reading for the resource, flushing its batch if full.
+	 *
+	 * @param resource The resource.
+	 * @param data The reading.
+	 * @return boolean False if the reading is null, or a triggered flush failed.
+	 */
+	public boolean add(ResourceNameEnum resource, SensorData data)
+	{
+		if (resource == null || data == null) {
+			return false;
+		}
+
+		Buffer buffer = this.buffers.computeIfAbsent(resource, k -> new Buffer());
+		boolean isFull = false;
+
+		synchronized (buffer) {
+			if (buffer.items.isEmpty()) {
+				buffer.firstItemMillis = System.currentTimeMillis();
+			}
+
+			buffer.items.add(data);
+			isFull = (buffer.items.size() >= this.maxBatchSize);
+		}
+
+		return (! isFull || flush(resource, buffer, 0L));
+	}
+
+	/**
+	 * Flushes all queued readings, regardless of age.
+	 *
+	 * @return int The number of batches flushed.
+	 */
+	public int flushAll()
+	{
+		int count = 0;
+
+		for (Map.Entry<ResourceNameEnum, Buffer> entry : this.buffers.entrySet()) {
+			synchronized (entry.getValue()) {
+				if (entry.getValue().items.isEmpty()) {
+					continue;
+				}
+			}
+
+			flush(entry.getKey(), entry.getValue(), Long.MAX_VALUE);
+			++count;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Encodes the readings using the configured envelope format.
+	 *
+	 * @param batch The readings.
+	 * @return byte[] The envelope.
+	 */
+	public byte[] encode(List<SensorData> batch)
+	{
+		switch (this.format) {
+			case COLUMNAR:
+				return DataUtil.getInstance().sensorDataListToColumnarJsonBytes(batch);
+
+			case GORILLA:
+				return TimeSeriesCodec.encodeSensorData(batch);
+
+			case TIMEVALUE:
+				return TimeAndValuePayloadBatch.toJsonBytes(TimeAndValuePayloadBatch.fromSensorData(batch));
+
+			case TIMEVALUE_BINARY:
+				return TimeAndValuePayloadBatch.toBinaryBytes(TimeAndValuePayloadBatch.fromSensorData(batch));
+
+			default:
+				return DataUtil.getInstance().sensorDataListToJsonBytes(batch);
+		}
+	}
+
+	public Format getFormat()
+	{
+		return this.format;
+	}
+
+	public long getFlushMillis()
+	{
+		return this.flushMillis;
+	}
+
+	public int getMaxBatchSize()
+	{
+		return this.maxBatchSize;
+	}
+
+	/**
+	 * Changes the flush interval. Takes effect on the next flush check;
+	 * checks keep the period set by start() (a quarter of the interval at
+	 * that time), so a shorter interval may be overrun by up to that period.
+	 *
+	 * @param flushMillis The new maximum time a reading is held.
+	 */
+	public void setFlushMillis(long flushMillis)
+	{
+		this.flushMillis = Math.max(1L, flushMillis);
+	}
+
+	/**
+	 * Changes the maximum batch size. Takes effect on the next reading added.
+	 *
+	 * @param maxBatchSize The new maximum number of readings per batch.
+	 */
+	public void setMaxBatchSize(int maxBatchSize)
+	{
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	public long getBatchCount()
+	{
+		return this.batchCount.get();
+	}
+
+	public long getItemCount()
+	{
+		return this.itemCount.get();
+	}
+
+	public long getFailedBatchCount()
+	{
+		return this.failedBatchCount.get();
+	}
+
+	/**
+	 * Returns the number of readings currently queued.
+	 *
+	 * @return int
+	 */
+	public int getQueuedCount()
+	{
+		int count = 0;
+
+		for (Buffer buffer : this.buffers.values()) {
+			synchronized (buffer) {
+				count += buffer.items.size();
+			}
+		}
+
+		return count;
+	}
+
+
+	// private methods
+
+	private static Format parseFormat(String name)
+	{
+		Format format = Format.fromName(name);
+
+		if (format == null) {
+			_Logger.warning("Unknown batch format: " + name + ". Using JSON.");
+			format = Format.JSON;
+		}
+
+		return format;
+	}
+
+	private void flushExpired()
+	{
+		long cutoff = System.currentTimeMillis() - this.flushMillis;
+
+		for (Map.Entry<ResourceNameEnum, Buffer> entry : this.buffers.entrySet()) {
+			flush(entry.getKey(), entry.getValue(), cutoff);
+		}
+	}
+
+	/**
+	 * Drains and publishes the buffer if it is full, or its oldest reading
+	 * was added at or before the cutoff.
+	 */
+	private boolean flush(ResourceNameEnum resource, Buffer buffer, long cutoffMillis)
+	{
+		synchronized (buffer.publishLock) {
+			List<SensorData> batch = null;
+
+			synchronized (buffer) {
+				if (buffer.items.isEmpty() ||
+					(buffer.firstItemMillis > cutoffMillis && buffer.items.size() < this.maxBatchSize)) {
+					return true;
+				}
+
+				batch = buffer.items;
+				buffer.items = new ArrayList<>(Math.min(batch.size(), this.maxBatchSize));
+			}
+
+			return publish(resource, batch);
+		}
+	}
+
+	private boolean publish(ResourceNameEnum resource, List<SensorData> batch)
+	{
+		try {
+			byte[] payload = encode(batch);
+
+			if (payload != null && this.sink.publishBatch(resource, payload, batch.size())) {
+				this.batchCount.incrementAndGet();
+				this.itemCount.addAndGet(batch.size());
+
+				return true;
+			}
+		} catch (Exception e) {
+			_Logger.log(Level.WARNING, "Failed to publish batch for " + resource, e);
+		}
+
+		this.failedBatchCount.incrementAndGet();
+		_Logger.warning("Dropped batch of " + batch.size() + " readings for " + resource);
+
+		return false;
+	}
+}
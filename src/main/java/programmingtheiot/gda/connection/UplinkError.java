@@ -0,0 +1,106 @@
+package programmingtheiot.gda.connection;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+
+/**
+ * Classification of cloud uplink publish failures, so callers can decide
+ * whether to retry, back off, or drop the data.
+ */
+public enum UplinkError
+{
+	/** The bounded outbound queue is full; retry once it drains. */
+	QUEUE_FULL(true),
+
+	/** Not connected (yet, or any more); retry after reconnect. */
+	NOT_CONNECTED(true),
+
+	/** The connection dropped while the message was in flight. */
+	CONNECTION_LOST(true),
+
+	/** No acknowledgement within the timeout. */
+	TIMEOUT(true),
+
+	/** Rejected by the broker (authentication or authorization). */
+	REJECTED(false),
+
+	/** The message itself is invalid (e.g. bad topic, too large). */
+	INVALID_MESSAGE(false),
+
+	/** Anything else. */
+	UNKNOWN(false);
+
+
+	// private var's
+
+	private final boolean isRetryable;
+
+
+	// constructors
+
+	private UplinkError(boolean isRetryable)
+	{
+		this.isRetryable = isRetryable;
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if the same message may succeed if sent again later.
+	 *
+	 * @return boolean
+	 */
+	public boolean isRetryable()
+	{
+		return this.isRetryable;
+	}
+
+	/**
+	 * Classifies a publish failure.
+	 *
+	 * @param cause The failure cause (may be null).
+	 * @return UplinkError The classification.
+	 */
+	public static UplinkError classify(Throwable cause)
+	{
+		if (cause instanceof MqttException) {
+			switch (((MqttException) cause).getReasonCode()) {
+				case MqttException.REASON_CODE_MAX_INFLIGHT:
+				case MqttException.REASON_CODE_DISCONNECTED_BUFFER_FULL:
+				case MqttException.REASON_CODE_NO_MESSAGE_IDS_AVAILABLE:
+					return QUEUE_FULL;
+
+				case MqttException.REASON_CODE_CLIENT_NOT_CONNECTED:
+				case MqttException.REASON_CODE_CLIENT_DISCONNECTING:
+				case MqttException.REASON_CODE_CLIENT_ALREADY_DISCONNECTED:
+				case MqttException.REASON_CODE_CLIENT_CLOSED:
+				case MqttException.REASON_CODE_CONNECT_IN_PROGRESS:
+				case MqttException.REASON_CODE_BROKER_UNAVAILABLE:
+				case MqttException.REASON_CODE_SERVER_CONNECT_ERROR:
+					return NOT_CONNECTED;
+
+				case MqttException.REASON_CODE_CONNECTION_LOST:
+					return CONNECTION_LOST;
+
+				case MqttException.REASON_CODE_CLIENT_TIMEOUT:
+				case MqttException.REASON_CODE_WRITE_TIMEOUT:
+					return TIMEOUT;
+
+				case MqttException.REASON_CODE_FAILED_AUTHENTICATION:
+				case MqttException.REASON_CODE_NOT_AUTHORIZED:
+					return REJECTED;
+
+				case MqttException.REASON_CODE_INVALID_MESSAGE:
+					return INVALID_MESSAGE;
+
+				default:
+					break;
+			}
+		} else if (cause instanceof IllegalArgumentException) {
+			// e.g. wildcards or an empty topic name
+			return INVALID_MESSAGE;
+		}
+
+		return UNKNOWN;
+	}
+}
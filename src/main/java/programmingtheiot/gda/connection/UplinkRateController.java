@@ -0,0 +1,332 @@
+package programmingtheiot.gda.connection;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+
+/**
+ * Adapts the cloud uplink publish rate to the link, using additive
+ * increase / multiplicative decrease (AIMD) on observed ack latency and
+ * failures.
+ *
+ * <ul>
+ * <li>Each ack within the target latency adds increaseStep / rate to the
+ *   rate, i.e. roughly +increaseStep msg/s per second of healthy acks.</li>
+ * <li>An ack slower than the target, or a timeout, connection loss or full
+ *   outbound queue, multiplies the rate by DECREASE_FACTOR. After a
+ *   decrease, further congestion signals are ignored for one latency
+ *   interval, so a single congestion event causes a single decrease.</li>
+ * </ul>
+ *
+ * Publishes are paced with a token bucket refilled at the current rate.
+ * As the rate falls, the suggested batch size rises in proportion, so the
+ * upstream batcher aggregates readings harder rather than dropping them
+ * (the cloud connector scales the batcher's flush interval by the same
+ * factor).
+ *
+ * Thread-safe.
+ */
+public class UplinkRateController implements IUplinkListener
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(UplinkRateController.class.getName());
+
+	public static final double DECREASE_FACTOR = 0.5;
+	public static final double LATENCY_SMOOTHING = 0.2;
+
+	// token bucket holds at most this many seconds' worth of publishes
+	private static final double BURST_SECONDS = 0.1;
+
+
+	// private var's
+
+	private final double minRate;
+	private final double maxRate;
+	private final double increaseStep;
+	private final long targetLatencyMillis;
+
+	private double rate;
+	private double tokens;
+	private long lastRefillNanos = System.nanoTime();
+	private long noDecreaseUntilNanos = 0L;
+	private double smoothedLatencyMillis = 0.0;
+
+	private long increaseCount = 0L;
+	private long decreaseCount = 0L;
+
+	private int baseBatchSize = 1;
+	private int lastBatchSizeHint = 1;
+	private IntConsumer batchSizeListener = null;
+
+
+	// constructors
+
+	/**
+	 * Constructor. Reads 'minPublishRate', 'maxPublishRate',
+	 * 'targetAckLatencyMillis' and 'publishRateIncreaseStep' from the
+	 * given section.
+	 *
+	 * @param configSectionName The cloud connector's config section name.
+	 */
+	public UplinkRateController(String configSectionName)
+	{
+		this(
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.MIN_PUBLISH_RATE_KEY, ConfigConst.DEFAULT_MIN_PUBLISH_RATE),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.MAX_PUBLISH_RATE_KEY, ConfigConst.DEFAULT_MAX_PUBLISH_RATE),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.PUBLISH_RATE_INCREASE_STEP_KEY, ConfigConst.DEFAULT_PUBLISH_RATE_INCREASE_STEP),
+			ConfigUtil.getInstance().getInteger(
+				configSectionName, ConfigConst.TARGET_ACK_LATENCY_MILLIS_KEY, ConfigConst.DEFAULT_TARGET_ACK_LATENCY_MILLIS));
+	}
+
+	/**
+	 * Constructor for explicit configuration. Starts at the maximum rate.
+	 *
+	 * @param minRate The minimum publish rate (msg/s).
+	 * @param maxRate The maximum publish rate (msg/s).
+	 * @param increaseStep The additive increase (msg/s per second of healthy acks).
+	 * @param targetLatencyMillis Acks slower than this signal congestion.
+	 */
+	public UplinkRateController(double minRate, double maxRate, double increaseStep, long targetLatencyMillis)
+	{
+		super();
+
+		this.minRate = Math.max(0.1, minRate);
+		this.maxRate = Math.max(this.minRate, maxRate);
+		this.increaseStep = Math.max(0.0, increaseStep);
+		this.targetLatencyMillis = Math.max(1L, targetLatencyMillis);
+
+		this.rate = this.maxRate;
+		this.tokens = getBucketCapacity();
+	}
+
+
+	// public methods
+
+	/**
+	 * Returns true if the given section enables adaptive rate control.
+	 *
+	 * @param configSectionName The config section name.
+	 * @return boolean
+	 */
+	public static boolean isEnabled(String configSectionName)
+	{
+		return ConfigUtil.getInstance().getBoolean(configSectionName, ConfigConst.ADAPTIVE_RATE_KEY);
+	}
+
+	/**
+	 * Takes a publish token if one is available.
+	 *
+	 * @return boolean True if a publish may be sent now.
+	 */
+	public synchronized boolean tryAcquire()
+	{
+		refill();
+
+		if (this.tokens >= 1.0) {
+			this.tokens -= 1.0;
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Takes a publish token, waiting up to timeoutMillis for one.
+	 *
+	 * @param timeoutMillis The maximum time to wait.
+	 * @return boolean True if a publish may be sent now.
+	 */
+	public boolean acquire(long timeoutMillis)
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		while (true) {
+			long waitMillis;
+
+			synchronized (this) {
+				refill();
+
+				if (this.tokens >= 1.0) {
+					this.tokens -= 1.0;
+					return true;
+				}
+
+				waitMillis = (long) Math.ceil((1.0 - this.tokens) * 1000.0 / this.rate);
+			}
+
+			long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+			if (remainingMillis <= 0) {
+				return false;
+			}
+
+			try {
+				Thread.sleep(Math.max(1L, Math.min(waitMillis, remainingMillis)));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Sets the batch size used at the maximum rate, and the listener that
+	 * receives the suggested batch size whenever it changes.
+	 *
+	 * @param baseBatchSize The batch size at the maximum rate.
+	 * @param listener The listener (e.g. UplinkBatcher::setMaxBatchSize).
+	 */
+	public synchronized void setBatchSizeListener(int baseBatchSize, IntConsumer listener)
+	{
+		this.baseBatchSize = Math.max(1, baseBatchSize);
+		this.batchSizeListener = listener;
+		this.lastBatchSizeHint = -1;
+
+		updateBatchSize();
+	}
+
+	public synchronized double getCurrentRate()
+	{
+		return this.rate;
+	}
+
+	public double getMinRate()
+	{
+		return this.minRate;
+	}
+
+	public double getMaxRate()
+	{
+		return this.maxRate;
+	}
+
+	public synchronized double getSmoothedLatencyMillis()
+	{
+		return this.smoothedLatencyMillis;
+	}
+
+	/**
+	 * Returns the batch size suggested for the current rate.
+	 *
+	 * @return int
+	 */
+	public synchronized int getBatchSizeHint()
+	{
+		return (int) Math.ceil(this.baseBatchSize * this.maxRate / this.rate);
+	}
+
+	public synchronized long getIncreaseCount()
+	{
+		return this.increaseCount;
+	}
+
+	public synchronized long getDecreaseCount()
+	{
+		return this.decreaseCount;
+	}
+
+
+	// IUplinkListener
+
+	@Override
+	public synchronized void onUplinkComplete(String topic, int payloadSize, long latencyMillis)
+	{
+		this.smoothedLatencyMillis = (this.smoothedLatencyMillis == 0.0 ?
+			latencyMillis :
+			this.smoothedLatencyMillis + LATENCY_SMOOTHING * (latencyMillis - this.smoothedLatencyMillis));
+
+		if (latencyMillis > this.targetLatencyMillis) {
+			decrease();
+		} else if (this.rate < this.maxRate) {
+			setRate(this.rate + this.increaseStep / this.rate);
+			++this.increaseCount;
+		}
+	}
+
+	@Override
+	public synchronized void onUplinkFailed(String topic, UplinkError error, Throwable cause)
+	{
+		switch (error) {
+			case QUEUE_FULL:
+			case TIMEOUT:
+			case CONNECTION_LOST:
+				decrease();
+				break;
+
+			default:
+				// not a sign of congestion
+				break;
+		}
+	}
+
+
+	// private methods
+
+	private double getBucketCapacity()
+	{
+		return Math.max(1.0, this.rate * BURST_SECONDS);
+	}
+
+	private void refill()
+	{
+		long now = System.nanoTime();
+
+		this.tokens = Math.min(
+			getBucketCapacity(), this.tokens + (now - this.lastRefillNanos) * this.rate / 1.0e9);
+		this.lastRefillNanos = now;
+	}
+
+	private void decrease()
+	{
+		long now = System.nanoTime();
+
+		if (now < this.noDecreaseUntilNanos) {
+			return;
+		}
+
+		refill();
+		setRate(this.rate * DECREASE_FACTOR);
+		++this.decreaseCount;
+
+		long holdMillis = Math.max(this.targetLatencyMillis, (long) this.smoothedLatencyMillis);
+		this.noDecreaseUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(holdMillis);
+
+		_Logger.fine(String.format("Uplink congestion: rate reduced to %.1f msg/s", this.rate));
+	}
+
+	private void setRate(double newRate)
+	{
+		this.rate = Math.max(this.minRate, Math.min(this.maxRate, newRate));
+		this.tokens = Math.min(this.tokens, getBucketCapacity());
+
+		updateBatchSize();
+	}
+
+	private void updateBatchSize()
+	{
+		if (this.batchSizeListener == null) {
+			return;
+		}
+
+		int hint = getBatchSizeHint();
+
+		if (hint != this.lastBatchSizeHint) {
+			this.lastBatchSizeHint = hint;
+
+			try {
+				this.batchSizeListener.accept(hint);
+			} catch (Exception e) {
+				_Logger.log(Level.WARNING, "Batch size listener failed", e);
+			}
+		}
+	}
+}
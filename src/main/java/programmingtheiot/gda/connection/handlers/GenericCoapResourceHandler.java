@@ -11,21 +11,64 @@
 
 package programmingtheiot.gda.connection.handlers;
 
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.eclipse.californium.core.CoapResource;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.network.Exchange;
 import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.eclipse.californium.elements.util.ClockUtil;
 
-import programmingtheiot.common.ConfigConst;
-import programmingtheiot.common.ConfigUtil;
 import programmingtheiot.common.IDataMessageListener;
 import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+import programmingtheiot.gda.connection.CoapMetricsInterceptor;
+import programmingtheiot.gda.connection.CoapRequestDispatcher;
 
 
 /**
- * Shell representation of class for student implementation.
+ * Leaf resource for one ResourceNameEnum. PUT and POST payloads are
+ * decoded by {@link #handleUpdate(byte[], PayloadFormat)} and routed to
+ * the IDataMessageListener; GET returns the last accepted payload.
  *
+ * This base class forwards the raw payload to
+ * IDataMessageListener.handleIncomingMessage(); subclasses decode typed
+ * payloads. Responses:
+ * <ul>
+ * <li>CHANGED (PUT) / CREATED (POST) - accepted by the listener;</li>
+ * <li>BAD_REQUEST - empty or undecodable payload;</li>
+ * <li>UNSUPPORTED_CONTENT_FORMAT - a CBOR payload for a resource without
+ *   a typed handler;</li>
+ * <li>SERVICE_UNAVAILABLE - no listener, or the listener rejected it.</li>
+ * </ul>
+ *
+ * With a CoapRequestDispatcher in ACK or SEPARATE mode, decoding and
+ * routing run on the dispatcher's threads instead of Californium's
+ * protocol threads. ACK mode answers as soon as the update is queued,
+ * so decode and listener failures are only counted. SEPARATE mode sends
+ * an empty ACK, then a separate response with the result. If the queue
+ * is full, the answer is SERVICE_UNAVAILABLE with a Max-Age of the retry
+ * delay.
+ *
+ * Every leaf is observable. A state change (an accepted update, or
+ * {@link #updateState(byte[])}) notifies observers at most once per
+ * observe interval: changes within the interval are coalesced into one
+ * notification carrying the latest state. The state is held as one
+ * serialized payload, which every observer's notification shares.
+ *
+ * Payloads are JSON, or CBOR when the request's Content-Format is
+ * application/cbor (60). GET returns the state in the format it was
+ * stored in, unless the request's Accept option asks for the other one;
+ * typed handlers (see {@link #getDataType()}) then re-encode it once per
+ * state change, and other handlers answer NOT_ACCEPTABLE.
  */
 public class GenericCoapResourceHandler extends CoapResource
 {
@@ -34,29 +77,65 @@ public class GenericCoapResourceHandler extends CoapResource
 	private static final Logger _Logger =
 		Logger.getLogger(GenericCoapResourceHandler.class.getName());
 	
+	/**
+	 * Outcome of decoding and routing an update.
+	 */
+	protected enum UpdateResult
+	{
+		ACCEPTED, INVALID, REJECTED, UNSUPPORTED
+	}
+	
 	// params
 	
+	private final ResourceNameEnum resource;
+	
+	private volatile IDataMessageListener dataMsgListener = null;
+	private volatile CoapRequestDispatcher requestDispatcher = null;
+	private volatile CoapMetricsInterceptor.ResourceMetrics metrics = null;
+	private volatile State state = null;
+	
+	private volatile ScheduledExecutorService notifyScheduler = null;
+	private volatile long notifyIntervalNanos = 0L;
+	private volatile Thread notifyingThread = null;
+	private final Object notifyLock = new Object();
+	private long lastNotifyNanos = 0L;
+	private boolean hasNotified = false;
+	private boolean isNotifyPending = false;
+	
+	private final AtomicLong stateChangeCount = new AtomicLong();
+	private final AtomicLong notificationCount = new AtomicLong();
+	
 	
 	// constructors
 	
 	/**
 	 * Constructor.
 	 * 
-	 * @param resource Basically, the path (or topic)
+	 * @param resource Basically, the path (or topic). The final segment
+	 * (the resource type) is used as this leaf's name.
 	 */
 	public GenericCoapResourceHandler(ResourceNameEnum resource)
 	{
-		this(resource.getResourceName());
+		super(resource.getResourceType());
+		
+		this.resource = resource;
+		
+		setObservable(true);
 	}
 	
 	/**
-	 * Constructor.
+	 * Constructor, for a resource that isn't a ResourceNameEnum. Updates
+	 * are forwarded with a null resource.
 	 * 
 	 * @param resourceName The name of the resource.
 	 */
 	public GenericCoapResourceHandler(String resourceName)
 	{
 		super(resourceName);
+		
+		this.resource = null;
+		
+		setObservable(true);
 	}
 	
 	
@@ -65,25 +144,400 @@ public class GenericCoapResourceHandler extends CoapResource
 	@Override
 	public void handleDELETE(CoapExchange context)
 	{
+		setLastPayload(null);
+		
+		context.respond(ResponseCode.DELETED);
 	}
 	
 	@Override
 	public void handleGET(CoapExchange context)
 	{
+		State state = this.state;
+		
+		if (state == null) {
+			context.respond(ResponseCode.NOT_FOUND);
+			return;
+		}
+		
+		int accept = context.getRequestOptions().getAccept();
+		
+		if (accept == MediaTypeRegistry.UNDEFINED || accept == state.format.getContentFormat()) {
+			context.respond(ResponseCode.CONTENT, state.payload, state.format.getContentFormat());
+			return;
+		}
+		
+		PayloadFormat format = PayloadFormat.fromContentFormat(accept);
+		byte[] payload = (format != null ? getRepresentation(state, format) : null);
+		
+		if (payload != null) {
+			context.respond(ResponseCode.CONTENT, payload, accept);
+		} else {
+			context.respond(ResponseCode.NOT_ACCEPTABLE);
+		}
 	}
 	
 	@Override
 	public void handlePOST(CoapExchange context)
 	{
+		respondToUpdate(context, ResponseCode.CREATED);
 	}
 	
 	@Override
 	public void handlePUT(CoapExchange context)
 	{
+		respondToUpdate(context, ResponseCode.CHANGED);
+	}
+	
+	public ResourceNameEnum getResource()
+	{
+		return this.resource;
 	}
 	
 	public void setDataMessageListener(IDataMessageListener listener)
 	{
+		this.dataMsgListener = listener;
+	}
+	
+	/**
+	 * Sets the dispatcher that decodes and routes updates off the protocol
+	 * threads (null to handle them inline).
+	 * 
+	 * @param dispatcher The dispatcher.
+	 */
+	public void setRequestDispatcher(CoapRequestDispatcher dispatcher)
+	{
+		this.requestDispatcher = dispatcher;
+	}
+	
+	/**
+	 * Sets the metrics that record this resource's requests (null for
+	 * none). Must be called once the resource is in the server's tree,
+	 * as they are looked up by its URI.
+	 * 
+	 * @param metrics The server's metrics.
+	 */
+	public void setMetrics(CoapMetricsInterceptor metrics)
+	{
+		this.metrics = (metrics != null ? metrics.getResourceMetrics(getURI()) : null);
+	}
+	
+	/**
+	 * Sets how observers are notified. With no scheduler, or an interval
+	 * of 0, observers are notified of every change on the updating thread.
+	 * 
+	 * @param scheduler The thread that sends coalesced notifications.
+	 * @param intervalMillis The minimum time between notifications.
+	 */
+	public void setObserveNotifier(ScheduledExecutorService scheduler, long intervalMillis)
+	{
+		this.notifyScheduler = scheduler;
+		this.notifyIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, intervalMillis));
+	}
+	
+	/**
+	 * Replaces the state returned by GET and sent to observers, e.g. with
+	 * gateway state the server publishes itself.
+	 * 
+	 * @param payload The serialized (JSON) state; null clears it.
+	 */
+	public void updateState(byte[] payload)
+	{
+		setLastPayload(payload);
+	}
+	
+	public long getStateChangeCount()
+	{
+		return this.stateChangeCount.get();
+	}
+	
+	public long getNotificationCount()
+	{
+		return this.notificationCount.get();
+	}
+	
+	/**
+	 * Handles the request on the protocol thread, recording the time spent
+	 * with the request dispatcher (if any), and the request and its latency
+	 * (from receipt until handled) in the metrics (if any). Notifications
+	 * sent from the notifier thread aren't recorded, nor in the metrics
+	 * are notifications at all.
+	 */
+	@Override
+	public void handleRequest(Exchange exchange)
+	{
+		long startNanos = System.nanoTime();
+		boolean isNotification = (exchange.getResponse() != null);
+		
+		super.handleRequest(exchange);
+		
+		CoapRequestDispatcher dispatcher = this.requestDispatcher;
+		
+		if (dispatcher != null && Thread.currentThread() != this.notifyingThread) {
+			dispatcher.recordProtocolThreadTime(System.nanoTime() - startNanos);
+		}
+		
+		CoapMetricsInterceptor.ResourceMetrics metrics = this.metrics;
+		
+		if (metrics != null && ! isNotification) {
+			long receivedNanos = exchange.getRequest().getNanoTimestamp();
+			
+			metrics.recordRequest(exchange.getRequest().getCode(),
+				(receivedNanos != 0L ? ClockUtil.nanoRealtime() - receivedNanos : System.nanoTime() - startNanos));
+		}
+	}
+	
+	
+	// protected methods
+	
+	protected IDataMessageListener getDataMessageListener()
+	{
+		return this.dataMsgListener;
 	}
 	
+	/**
+	 * Sets the JSON payload returned by GET (null for NOT_FOUND), and
+	 * notifies observers.
+	 */
+	protected void setLastPayload(byte[] payload)
+	{
+		setLastPayload(payload, PayloadFormat.JSON);
+	}
+	
+	/**
+	 * Sets the payload returned by GET (null for NOT_FOUND), and notifies
+	 * observers.
+	 */
+	protected void setLastPayload(byte[] payload, PayloadFormat format)
+	{
+		this.state = (payload != null ? new State(payload, format) : null);
+		this.stateChangeCount.incrementAndGet();
+		
+		if (getObserverCount() > 0) {
+			scheduleNotification();
+		}
+	}
+	
+	/**
+	 * Returns the data type this resource's payloads hold, for converting
+	 * between JSON and CBOR; null if they aren't typed.
+	 * 
+	 * @return Class
+	 */
+	protected Class<? extends BaseIotData> getDataType()
+	{
+		return null;
+	}
+	
+	/**
+	 * Decodes the payload and routes it to the listener.
+	 * 
+	 * @param payload The request payload (never null or empty).
+	 * @param format The payload format, from the request's Content-Format.
+	 * @return UpdateResult
+	 */
+	protected UpdateResult handleUpdate(byte[] payload, PayloadFormat format)
+	{
+		IDataMessageListener listener = this.dataMsgListener;
+		
+		if (listener == null) {
+			return UpdateResult.REJECTED;
+		}
+		
+		if (format != PayloadFormat.JSON) {
+			return UpdateResult.UNSUPPORTED;
+		}
+		
+		return (listener.handleIncomingMessage(this.resource, payload) ? UpdateResult.ACCEPTED : UpdateResult.REJECTED);
+	}
+	
+	/**
+	 * Returns the result for a listener call on a decoded payload.
+	 */
+	protected static UpdateResult toResult(Object data, boolean isHandled)
+	{
+		if (data == null) {
+			return UpdateResult.INVALID;
+		}
+		
+		return (isHandled ? UpdateResult.ACCEPTED : UpdateResult.REJECTED);
+	}
+	
+	
+	// private methods
+	
+	private void respondToUpdate(CoapExchange context, ResponseCode successCode)
+	{
+		byte[] payload = context.getRequestPayload();
+		
+		if (payload == null || payload.length == 0) {
+			context.respond(ResponseCode.BAD_REQUEST);
+			return;
+		}
+		
+		// anything but CBOR is decoded as JSON
+		PayloadFormat format =
+			(context.getRequestOptions().getContentFormat() == PayloadFormat.CBOR.getContentFormat() ?
+				PayloadFormat.CBOR : PayloadFormat.JSON);
+		
+		CoapRequestDispatcher dispatcher = this.requestDispatcher;
+		
+		if (dispatcher == null || dispatcher.getMode() == CoapRequestDispatcher.Mode.INLINE) {
+			context.respond(processUpdate(payload, format, successCode));
+			return;
+		}
+		
+		if (dispatcher.getMode() == CoapRequestDispatcher.Mode.SEPARATE) {
+			// empty ACK now, so the client doesn't retransmit while we work
+			context.accept();
+			
+			if (! dispatcher.dispatch(() -> context.respond(processUpdate(payload, format, successCode)))) {
+				respondBusy(context, dispatcher);
+			}
+		} else if (dispatcher.dispatch(() -> processUpdate(payload, format, successCode))) {
+			context.respond(successCode);
+		} else {
+			respondBusy(context, dispatcher);
+		}
+	}
+	
+	private ResponseCode processUpdate(byte[] payload, PayloadFormat format, ResponseCode successCode)
+	{
+		UpdateResult result = UpdateResult.INVALID;
+		
+		try {
+			result = handleUpdate(payload, format);
+		} catch (Exception e) {
+			// typically a JSON syntax error
+			_Logger.log(Level.FINE, "Failed to decode payload for " + getURI(), e);
+		}
+		
+		if (result == UpdateResult.ACCEPTED) {
+			setLastPayload(payload, format);
+			return successCode;
+		}
+		
+		CoapRequestDispatcher dispatcher = this.requestDispatcher;
+		
+		if (dispatcher != null) {
+			dispatcher.recordFailed();
+		}
+		
+		if (result == UpdateResult.INVALID) {
+			_Logger.fine("Invalid payload for " + getURI());
+			return ResponseCode.BAD_REQUEST;
+		}
+		
+		if (result == UpdateResult.UNSUPPORTED) {
+			return ResponseCode.UNSUPPORTED_CONTENT_FORMAT;
+		}
+		
+		return ResponseCode.SERVICE_UNAVAILABLE;
+	}
+	
+	/**
+	 * Returns the state in the given (non-stored) format, converting it on
+	 * first use; null if the resource isn't typed or the state can't be
+	 * decoded.
+	 */
+	private byte[] getRepresentation(State state, PayloadFormat format)
+	{
+		byte[] payload = state.altPayload;
+		
+		if (payload == null) {
+			Class<? extends BaseIotData> type = getDataType();
+			
+			if (type == null) {
+				return null;
+			}
+			
+			// racing GETs may both convert; either result is fine
+			payload = DataUtil.getInstance().transcode(state.payload, state.format, format, type);
+			state.altPayload = payload;
+		}
+		
+		return payload;
+	}
+	
+	/**
+	 * Notifies observers now if the interval has passed since the last
+	 * notification, otherwise once it has; changes in between only update
+	 * the state the pending notification will carry.
+	 */
+	private void scheduleNotification()
+	{
+		ScheduledExecutorService scheduler = this.notifyScheduler;
+		
+		if (scheduler == null || this.notifyIntervalNanos == 0L) {
+			this.notificationCount.incrementAndGet();
+			changed();
+			return;
+		}
+		
+		synchronized (this.notifyLock) {
+			if (this.isNotifyPending) {
+				return;
+			}
+			
+			long delayNanos = (this.hasNotified ?
+				this.lastNotifyNanos + this.notifyIntervalNanos - System.nanoTime() : 0L);
+			
+			try {
+				scheduler.schedule(this::sendNotification, Math.max(0L, delayNanos), TimeUnit.NANOSECONDS);
+				this.isNotifyPending = true;
+				return;
+			} catch (RejectedExecutionException e) {
+				// shutting down - notify directly
+			}
+		}
+		
+		this.notificationCount.incrementAndGet();
+		changed();
+	}
+	
+	private void sendNotification()
+	{
+		synchronized (this.notifyLock) {
+			this.isNotifyPending = false;
+			this.lastNotifyNanos = System.nanoTime();
+			this.hasNotified = true;
+		}
+		
+		this.notificationCount.incrementAndGet();
+		this.notifyingThread = Thread.currentThread();
+		
+		try {
+			changed();
+		} finally {
+			this.notifyingThread = null;
+		}
+	}
+	
+	private void respondBusy(CoapExchange context, CoapRequestDispatcher dispatcher)
+	{
+		_Logger.fine("CoAP dispatch queue full. Rejecting update for " + getURI());
+		
+		context.setMaxAge(dispatcher.getRetryAfterSecs());
+		context.respond(ResponseCode.SERVICE_UNAVAILABLE);
+	}
+	
+	
+	// inner classes
+	
+	/**
+	 * A state payload, and its (lazily converted) representation in the
+	 * other format.
+	 */
+	private static final class State
+	{
+		final byte[] payload;
+		final PayloadFormat format;
+		
+		volatile byte[] altPayload = null;
+		
+		State(byte[] payload, PayloadFormat format)
+		{
+			this.payload = payload;
+			this.format = (format != null ? format : PayloadFormat.JSON);
+		}
+	}
 }
@@ -0,0 +1,85 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * You may find it more helpful to your design to adjust the
+ * functionality, constants and interfaces (if there are any)
+ * provided within in order to meet the needs of your specific
+ * Programming the Internet of Things project.
+ */
+
+package programmingtheiot.gda.connection.handlers;
+
+import programmingtheiot.common.IActuatorDataListener;
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+
+/**
+ * Actuator command resource. Register it with
+ * IDataMessageListener.setActuatorDataListener(); each command it is
+ * given becomes the GET representation and is pushed to observers.
+ *
+ * PUT or POST of ActuatorData JSON or CBOR is routed to
+ * IDataMessageListener.handleActuatorCommandRequest().
+ *
+ */
+public class GetActuatorCommandResourceHandler extends GenericCoapResourceHandler
+	implements IActuatorDataListener
+{
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param resource The resource, e.g. ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE.
+	 */
+	public GetActuatorCommandResourceHandler(ResourceNameEnum resource)
+	{
+		super(resource);
+	}
+	
+	
+	// public methods
+	
+	@Override
+	public boolean onActuatorDataUpdate(ActuatorData data)
+	{
+		byte[] payload = DataUtil.getInstance().actuatorDataToJsonBytes(data);
+		
+		if (payload == null) {
+			return false;
+		}
+		
+		setLastPayload(payload);
+		
+		return true;
+	}
+	
+	
+	// protected methods
+	
+	@Override
+	protected Class<? extends BaseIotData> getDataType()
+	{
+		return ActuatorData.class;
+	}
+	
+	@Override
+	protected UpdateResult handleUpdate(byte[] payload, PayloadFormat format)
+	{
+		IDataMessageListener listener = getDataMessageListener();
+		
+		if (listener == null) {
+			return UpdateResult.REJECTED;
+		}
+		
+		ActuatorData data = DataUtil.getInstance().bytesToData(payload, format, ActuatorData.class);
+		
+		return toResult(data, data != null && listener.handleActuatorCommandRequest(getResource(), data));
+	}
+}
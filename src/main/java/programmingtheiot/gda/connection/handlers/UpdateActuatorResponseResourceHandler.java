@@ -0,0 +1,62 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * You may find it more helpful to your design to adjust the
+ * functionality, constants and interfaces (if there are any)
+ * provided within in order to meet the needs of your specific
+ * Programming the Internet of Things project.
+ */
+
+package programmingtheiot.gda.connection.handlers;
+
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+
+/**
+ * Accepts ActuatorData JSON or CBOR via PUT or POST and routes it to
+ * IDataMessageListener.handleActuatorCommandResponse().
+ *
+ */
+public class UpdateActuatorResponseResourceHandler extends GenericCoapResourceHandler
+{
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param resource The resource, e.g. ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE.
+	 */
+	public UpdateActuatorResponseResourceHandler(ResourceNameEnum resource)
+	{
+		super(resource);
+	}
+	
+	
+	// protected methods
+	
+	@Override
+	protected Class<? extends BaseIotData> getDataType()
+	{
+		return ActuatorData.class;
+	}
+	
+	@Override
+	protected UpdateResult handleUpdate(byte[] payload, PayloadFormat format)
+	{
+		IDataMessageListener listener = getDataMessageListener();
+		
+		if (listener == null) {
+			return UpdateResult.REJECTED;
+		}
+		
+		ActuatorData data = DataUtil.getInstance().bytesToData(payload, format, ActuatorData.class);
+		
+		return toResult(data, data != null && listener.handleActuatorCommandResponse(getResource(), data));
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * You may find it more helpful to your design to adjust the
+ * functionality, constants and interfaces (if there are any)
+ * provided within in order to meet the needs of your specific
+ * Programming the Internet of Things project.
+ */
+
+package programmingtheiot.gda.connection.handlers;
+
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+import programmingtheiot.data.SystemStateData;
+
+/**
+ * Accepts SystemStateData JSON or CBOR via PUT or POST and routes it to
+ * IDataMessageListener.handleSystemStateMessage().
+ * 
+ * SystemStateData bulk uploads are usually larger than one datagram, so
+ * they arrive as Block1 transfers; the handler sees the reassembled body
+ * (see CoapBlockwiseConfig) and decodes it straight from the bytes.
+ *
+ */
+public class UpdateSystemStateResourceHandler extends GenericCoapResourceHandler
+{
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param resource The resource, e.g. ResourceNameEnum.CDA_SYSTEM_STATE_MSG_RESOURCE.
+	 */
+	public UpdateSystemStateResourceHandler(ResourceNameEnum resource)
+	{
+		super(resource);
+	}
+	
+	
+	// protected methods
+	
+	@Override
+	protected Class<? extends BaseIotData> getDataType()
+	{
+		return SystemStateData.class;
+	}
+	
+	@Override
+	protected UpdateResult handleUpdate(byte[] payload, PayloadFormat format)
+	{
+		IDataMessageListener listener = getDataMessageListener();
+		
+		if (listener == null) {
+			return UpdateResult.REJECTED;
+		}
+		
+		SystemStateData data = DataUtil.getInstance().bytesToData(payload, format, SystemStateData.class);
+		
+		return toResult(data, data != null && listener.handleSystemStateMessage(getResource(), data));
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * This class is part of the Programming the Internet of Things
+ * project, and is available via the MIT License, which can be
+ * found in the LICENSE file at the top level of this repository.
+ * 
+ * You may find it more helpful to your design to adjust the
+ * functionality, constants and interfaces (if there are any)
+ * provided within in order to meet the needs of your specific
+ * Programming the Internet of Things project.
+ */
+
+package programmingtheiot.gda.connection.handlers;
+
+import java.util.List;
+
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+import programmingtheiot.data.SensorData;
+
+/**
+ * Accepts SensorData JSON or CBOR via PUT or POST and routes it to
+ * IDataMessageListener.handleSensorMessage(). An array of SensorData
+ * (a batch, usually sent block-wise) is routed one entry at a time.
+ *
+ */
+public class UpdateTelemetryResourceHandler extends GenericCoapResourceHandler
+{
+	// constructors
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param resource The resource, e.g. ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.
+	 */
+	public UpdateTelemetryResourceHandler(ResourceNameEnum resource)
+	{
+		super(resource);
+	}
+	
+	
+	// protected methods
+	
+	@Override
+	protected Class<? extends BaseIotData> getDataType()
+	{
+		return SensorData.class;
+	}
+	
+	@Override
+	protected UpdateResult handleUpdate(byte[] payload, PayloadFormat format)
+	{
+		IDataMessageListener listener = getDataMessageListener();
+		
+		if (listener == null) {
+			return UpdateResult.REJECTED;
+		}
+		
+		if (DataUtil.getInstance().isList(payload, format)) {
+			List<SensorData> dataList = DataUtil.getInstance().bytesToDataList(payload, format, SensorData.class);
+			
+			if (dataList == null) {
+				return UpdateResult.INVALID;
+			}
+			
+			boolean success = true;
+			
+			for (SensorData data : dataList) {
+				success &= (data != null && listener.handleSensorMessage(getResource(), data));
+			}
+			
+			return (success ? UpdateResult.ACCEPTED : UpdateResult.REJECTED);
+		}
+		
+		SensorData data = DataUtil.getInstance().bytesToData(payload, format, SensorData.class);
+		
+		return toResult(data, data != null && listener.handleSensorMessage(getResource(), data));
+	}
+}
@@ -0,0 +1,467 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeAndValuePayloadBatch;
+import programmingtheiot.gda.connection.CloudClientConnector;
+import programmingtheiot.gda.connection.IUplinkListener;
+import programmingtheiot.gda.connection.UplinkError;
+
+/**
+ * Cloud Client Performance Test for Gateway Device Application (GDA)
+ *
+ * This test class measures CloudClientConnector uplink throughput for
+ * SensorData at QoS 0, 1 and 2.
+ *
+ * The tests run against an EmbeddedMqttBroker started on an ephemeral
+ * port, so results don't depend on an external broker or network.
+ *
+ * Test configuration:
+ * - 10,000 SensorData messages per QoS level
+ * - Timing covers serialization and publish; for QoS 1 and 2 the
+ *   synchronous client also waits for each acknowledgement
+ * - The batched tests send the same readings at QoS 1 with uplink
+ *   batching enabled, in each envelope format
+ * - The sync / async comparison sends 250 readings at QoS 1 with the
+ *   broker delaying each acknowledgement, to simulate a WAN link
+ * - The adaptive rate test sends batched readings over the same slow
+ *   link and checks the rate controller backs off and batches harder
+ */
+public class CloudClientPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(CloudClientPerformanceTest.class.getName());
+
+	private static EmbeddedMqttBroker _Broker = null;
+
+	public static final int MAX_TEST_RUNS = 10000;
+	public static final int BATCH_SIZE = 100;
+	public static final long MAX_DRAIN_MILLIS = 10000L;
+	public static final int LATENCY_TEST_RUNS = 250;
+	public static final long LINK_LATENCY_MILLIS = 20L;
+
+
+	// Member variables
+
+	private CloudClientConnector cloudClient = null;
+
+
+	// Test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("CLOUD CLIENT PERFORMANCE TEST SUITE (GDA)");
+		_Logger.info("======================================================================");
+
+		_Broker = new EmbeddedMqttBroker();
+		_Broker.start();
+
+		_Logger.info("Using embedded MQTT broker on port " + _Broker.getPort());
+		_Logger.info("======================================================================");
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Broker != null) {
+			_Broker.stop();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+
+		_Logger.info("======================================================================");
+		_Logger.info("CLOUD CLIENT PERFORMANCE TEST SUITE COMPLETED");
+		_Logger.info("======================================================================");
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		_Broker.setAckDelayMillis(0L);
+
+		if (this.cloudClient != null) {
+			this.cloudClient.disconnectClient();
+		}
+	}
+
+
+	// Test methods
+
+	@Test
+	public void testSendSensorDataQoS0() throws Exception
+	{
+		execTestSend(MAX_TEST_RUNS, 0);
+	}
+
+	@Test
+	public void testSendSensorDataQoS1() throws Exception
+	{
+		execTestSend(MAX_TEST_RUNS, 1);
+	}
+
+	@Test
+	public void testSendSensorDataQoS2() throws Exception
+	{
+		execTestSend(MAX_TEST_RUNS, 2);
+	}
+
+	@Test
+	public void testSendSensorDataBatchedJson() throws Exception
+	{
+		execTestSendBatched(MAX_TEST_RUNS, BATCH_SIZE, ConfigConst.BATCH_FORMAT_JSON);
+	}
+
+	@Test
+	public void testSendSensorDataBatchedColumnar() throws Exception
+	{
+		execTestSendBatched(MAX_TEST_RUNS, BATCH_SIZE, ConfigConst.BATCH_FORMAT_COLUMNAR);
+	}
+
+	@Test
+	public void testSendSensorDataBatchedGorilla() throws Exception
+	{
+		execTestSendBatched(MAX_TEST_RUNS, BATCH_SIZE, ConfigConst.BATCH_FORMAT_GORILLA);
+	}
+
+	@Test
+	public void testSendSensorDataBatchedTimeValue() throws Exception
+	{
+		execTestSendBatched(MAX_TEST_RUNS, BATCH_SIZE, ConfigConst.BATCH_FORMAT_TIMEVALUE);
+	}
+
+	@Test
+	public void testSendSensorDataBatchedTimeValueBinary() throws Exception
+	{
+		execTestSendBatched(MAX_TEST_RUNS, BATCH_SIZE, ConfigConst.BATCH_FORMAT_TIMEVALUE_BINARY);
+	}
+
+	/**
+	 * Bulk upload of pre-built columnar series, bypassing the batcher.
+	 */
+	@Test
+	public void testBulkUploadTimeAndValueBatches() throws Exception
+	{
+		Map<String, String> cloudProps = new HashMap<>();
+		cloudProps.put(ConfigConst.DEFAULT_QOS_KEY, "1");
+		cloudProps.put(ConfigConst.BATCH_FORMAT_KEY, ConfigConst.BATCH_FORMAT_TIMEVALUE_BINARY);
+
+		_Broker.applyToConfig(Collections.singletonMap(ConfigConst.CLOUD_GATEWAY_SERVICE, cloudProps));
+
+		this.cloudClient = new CloudClientConnector();
+		assertTrue(this.cloudClient.connectClient());
+
+		TimeAndValuePayloadBatch batch = new TimeAndValuePayloadBatch("TempSensor", 1, "gatewaydevice001", BATCH_SIZE);
+		List<TimeAndValuePayloadBatch> batchList = Collections.singletonList(batch);
+
+		long timeStamp = System.currentTimeMillis();
+		long startCount = _Broker.getReceivedCount();
+		long startMillis = System.currentTimeMillis();
+		int expectedBatches = 0;
+
+		for (int sequenceNo = 0; sequenceNo < MAX_TEST_RUNS; ) {
+			batch.clear();
+
+			for (int i = 0; i < BATCH_SIZE && sequenceNo < MAX_TEST_RUNS; i++, sequenceNo++) {
+				batch.add(timeStamp + sequenceNo * 1000L, 22.5f + (sequenceNo % 10) * 0.1f);
+			}
+
+			assertTrue(this.cloudClient.sendTimeAndValueBatchesToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, batchList));
+			++expectedBatches;
+		}
+
+		assertTrue(this.cloudClient.disconnectClient());
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+
+		assertEquals(expectedBatches, _Broker.getReceivedCount() - startCount);
+
+		_Logger.info("Bulk upload [" + MAX_TEST_RUNS + " points, " + expectedBatches + " payloads]: " + elapsedMillis + " ms");
+		_Logger.info(String.format("Points per second: %.2f", ((double) MAX_TEST_RUNS / elapsedMillis) * 1000.0));
+	}
+
+
+	/**
+	 * Compares sync and async publish throughput over a link where every
+	 * acknowledgement takes LINK_LATENCY_MILLIS. Sync mode is bound by one
+	 * round-trip per message; async mode keeps many messages in flight.
+	 */
+	@Test
+	public void testSyncVsAsyncWithLinkLatency() throws Exception
+	{
+		_Broker.setAckDelayMillis(LINK_LATENCY_MILLIS);
+
+		long syncMillis = execTestSendWithMode(LATENCY_TEST_RUNS, false);
+		long asyncMillis = execTestSendWithMode(LATENCY_TEST_RUNS, true);
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - " + LINK_LATENCY_MILLIS + " ms link latency, QoS 1 [" + LATENCY_TEST_RUNS + "]");
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("Sync:  " + syncMillis + " ms");
+		_Logger.info("Async: " + asyncMillis + " ms");
+		_Logger.info(String.format("Speedup: %.1fx", (double) syncMillis / asyncMillis));
+		_Logger.info("======================================================================");
+
+		assertTrue(asyncMillis * 5 < syncMillis);
+	}
+
+
+	/**
+	 * Sends batched readings over a link slower than the target ack
+	 * latency. The rate controller should cut the publish rate and grow
+	 * the batch size, without losing readings.
+	 */
+	@Test
+	public void testAdaptiveRateUnderCongestion() throws Exception
+	{
+		_Broker.setAckDelayMillis(LINK_LATENCY_MILLIS * 2);
+
+		Map<String, String> cloudProps = new HashMap<>();
+		cloudProps.put(ConfigConst.DEFAULT_QOS_KEY, "1");
+		cloudProps.put(ConfigConst.ASYNC_PUBLISH_KEY, "True");
+		cloudProps.put(ConfigConst.BATCH_MAX_SIZE_KEY, "10");
+		cloudProps.put(ConfigConst.BATCH_FLUSH_MILLIS_KEY, "100");
+		cloudProps.put(ConfigConst.ADAPTIVE_RATE_KEY, "True");
+		cloudProps.put(ConfigConst.MIN_PUBLISH_RATE_KEY, "5");
+		cloudProps.put(ConfigConst.MAX_PUBLISH_RATE_KEY, "200");
+		cloudProps.put(ConfigConst.TARGET_ACK_LATENCY_MILLIS_KEY, String.valueOf(LINK_LATENCY_MILLIS));
+
+		_Broker.applyToConfig(Collections.singletonMap(ConfigConst.CLOUD_GATEWAY_SERVICE, cloudProps));
+
+		this.cloudClient = new CloudClientConnector();
+		assertNotNull(this.cloudClient.getRateController());
+		assertTrue(this.cloudClient.connectClient());
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		int maxTestRuns = 2000;
+		long startMillis = System.currentTimeMillis();
+
+		for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+			assertTrue(this.cloudClient.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData));
+			Thread.sleep(0L, 500000);
+		}
+
+		double rate = this.cloudClient.getCurrentPublishRate();
+		int batchSize = this.cloudClient.getUplinkBatcher().getMaxBatchSize();
+
+		assertTrue(this.cloudClient.disconnectClient());
+
+		long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - adaptive rate, " + (LINK_LATENCY_MILLIS * 2) + " ms link latency");
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("Readings [" + maxTestRuns + "]: " + elapsedMillis + " ms, batches: " +
+			this.cloudClient.getUplinkBatcher().getBatchCount());
+		_Logger.info(String.format("Publish rate: %.1f msg/s (max 200), batch size: %d (base 10)", rate, batchSize));
+		_Logger.info("Rate decreases: " + this.cloudClient.getRateController().getDecreaseCount());
+		_Logger.info("======================================================================");
+
+		assertTrue(rate < 200.0);
+		assertTrue(batchSize > 10);
+		assertEquals(maxTestRuns, this.cloudClient.getUplinkBatcher().getItemCount());
+		assertEquals(0, this.cloudClient.getFailedPublishCount());
+	}
+
+
+	// Private helper methods
+
+	/**
+	 * Sends maxTestRuns SensorData messages at the given QoS, waits for
+	 * the broker to receive them all, and logs the resulting throughput.
+	 *
+	 * @param maxTestRuns Number of messages to send.
+	 * @param qos The QoS level, set via the cloud config section.
+	 */
+	private void execTestSend(int maxTestRuns, int qos) throws Exception
+	{
+		_Logger.info("\n======================================================================");
+		_Logger.info("TEST: Cloud uplink QoS " + qos);
+		_Logger.info("======================================================================");
+
+		_Broker.applyToConfig(Collections.singletonMap(
+			ConfigConst.CLOUD_GATEWAY_SERVICE,
+			Collections.singletonMap(ConfigConst.DEFAULT_QOS_KEY, String.valueOf(qos))));
+
+		this.cloudClient = new CloudClientConnector();
+		assertTrue(this.cloudClient.connectClient());
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		int payloadSize = DataUtil.getInstance().sensorDataToJsonBytes(sensorData).length;
+		long startCount = _Broker.getReceivedCount();
+		long startMillis = System.currentTimeMillis();
+
+		for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+			assertTrue(this.cloudClient.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData));
+		}
+
+		long sendMillis = System.currentTimeMillis() - startMillis;
+		long deadline = System.currentTimeMillis() + MAX_DRAIN_MILLIS;
+
+		while (_Broker.getReceivedCount() - startCount < maxTestRuns && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5L);
+		}
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+		long received = _Broker.getReceivedCount() - startCount;
+
+		assertEquals(maxTestRuns, received);
+
+		double messagesPerSecond = ((double) maxTestRuns / elapsedMillis) * 1000.0;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - QoS " + qos);
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("Send SensorData - QoS " + qos + " [" + maxTestRuns + "]: " + sendMillis + " ms (received: " + elapsedMillis + " ms)");
+		_Logger.info("Payload size: " + payloadSize + " bytes");
+		_Logger.info(String.format("Messages per second: %.2f msg/s", messagesPerSecond));
+		_Logger.info(String.format("Total throughput: %.2f KB/s", (payloadSize * messagesPerSecond) / 1024.0));
+		_Logger.info("======================================================================");
+	}
+
+	/**
+	 * Sends maxTestRuns SensorData messages at QoS 1 with batching enabled,
+	 * waits for the broker to receive all batches, and logs the resulting
+	 * throughput and the number of broker round-trips saved.
+	 *
+	 * @param maxTestRuns Number of readings to send.
+	 * @param batchSize Readings per batch.
+	 * @param format The batch envelope format.
+	 */
+	private void execTestSendBatched(int maxTestRuns, int batchSize, String format) throws Exception
+	{
+		_Logger.info("\n======================================================================");
+		_Logger.info("TEST: Cloud uplink QoS 1, batches of " + batchSize + " (" + format + ")");
+		_Logger.info("======================================================================");
+
+		Map<String, String> cloudProps = new HashMap<>();
+		cloudProps.put(ConfigConst.DEFAULT_QOS_KEY, "1");
+		cloudProps.put(ConfigConst.BATCH_MAX_SIZE_KEY, String.valueOf(batchSize));
+		cloudProps.put(ConfigConst.BATCH_FLUSH_MILLIS_KEY, "1000");
+		cloudProps.put(ConfigConst.BATCH_FORMAT_KEY, format);
+
+		_Broker.applyToConfig(Collections.singletonMap(ConfigConst.CLOUD_GATEWAY_SERVICE, cloudProps));
+
+		this.cloudClient = new CloudClientConnector();
+		assertNotNull(this.cloudClient.getUplinkBatcher());
+		assertTrue(this.cloudClient.connectClient());
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		int expectedBatches = (maxTestRuns + batchSize - 1) / batchSize;
+		long startCount = _Broker.getReceivedCount();
+		long startMillis = System.currentTimeMillis();
+
+		for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+			assertTrue(this.cloudClient.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData));
+		}
+
+		// flushes any partial batch
+		assertTrue(this.cloudClient.disconnectClient());
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+		long received = _Broker.getReceivedCount() - startCount;
+
+		assertEquals(expectedBatches, received);
+		assertEquals(maxTestRuns, this.cloudClient.getUplinkBatcher().getItemCount());
+
+		double readingsPerSecond = ((double) maxTestRuns / elapsedMillis) * 1000.0;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - QoS 1, batch size " + batchSize + ", format " + format);
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("Send SensorData [" + maxTestRuns + "]: " + elapsedMillis + " ms, broker publishes: " + received);
+		_Logger.info(String.format("Readings per second: %.2f", readingsPerSecond));
+		_Logger.info("======================================================================");
+	}
+
+	/**
+	 * Sends maxTestRuns readings at QoS 1 in sync or async publish mode and
+	 * returns the time until all are acknowledged.
+	 *
+	 * @param maxTestRuns Number of readings to send.
+	 * @param isAsync True for async publish mode.
+	 * @return long The elapsed time in milliseconds.
+	 */
+	private long execTestSendWithMode(int maxTestRuns, boolean isAsync) throws Exception
+	{
+		Map<String, String> cloudProps = new HashMap<>();
+		cloudProps.put(ConfigConst.DEFAULT_QOS_KEY, "1");
+		cloudProps.put(ConfigConst.ASYNC_PUBLISH_KEY, String.valueOf(isAsync));
+
+		_Broker.applyToConfig(Collections.singletonMap(ConfigConst.CLOUD_GATEWAY_SERVICE, cloudProps));
+
+		CloudClientConnector client = new CloudClientConnector();
+		AtomicLong acked = new AtomicLong();
+		AtomicLong failed = new AtomicLong();
+
+		client.setUplinkListener(new IUplinkListener() {
+			@Override
+			public void onUplinkComplete(String topic, int payloadSize, long latencyMillis)
+			{
+				acked.incrementAndGet();
+			}
+
+			@Override
+			public void onUplinkFailed(String topic, UplinkError error, Throwable cause)
+			{
+				failed.incrementAndGet();
+			}
+		});
+
+		assertEquals(isAsync, client.isAsyncPublish());
+		assertTrue(client.connectClient());
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		long startMillis = System.currentTimeMillis();
+
+		try {
+			for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+				assertTrue(client.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData));
+			}
+
+			assertTrue(client.awaitPendingPublishes(MAX_DRAIN_MILLIS));
+		} finally {
+			client.disconnectClient();
+		}
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+
+		assertEquals(maxTestRuns, acked.get());
+		assertEquals(0, failed.get());
+
+		_Logger.info((isAsync ? "Async" : "Sync") + " publish [" + maxTestRuns + "]: " + elapsedMillis + " ms");
+
+		return elapsedMillis;
+	}
+}
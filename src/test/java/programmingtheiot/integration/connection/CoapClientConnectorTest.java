@@ -0,0 +1,401 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DefaultDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SystemStateData;
+import programmingtheiot.gda.connection.CoapClientConnector;
+import programmingtheiot.gda.connection.CoapServerGateway;
+
+/**
+ * Integration tests for CoapClientConnector, against a CoapServerGateway
+ * on an unused local port.
+ *
+ * Monitor 'coap' traffic with Wireshark or tcpdump to see the CON / NON
+ * exchanges.
+ */
+public class CoapClientConnectorTest
+{
+    // ------------------------------------------------------------------------
+    // Constants
+    // ------------------------------------------------------------------------
+
+    private static final int DEFAULT_TIMEOUT = 5; // seconds
+
+    private static final String NO_SERVER_SECTION = "Coap.NoServer";
+
+    // ------------------------------------------------------------------------
+    // Variables
+    // ------------------------------------------------------------------------
+
+    private static CoapServerGateway _Server = null;
+    private static CountingDataMessageListener _ServerListener = null;
+
+    private CoapClientConnector coapClient;
+    private CountingDataMessageListener clientListener;
+
+    // ------------------------------------------------------------------------
+    // Setup and teardown
+    // ------------------------------------------------------------------------
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        int port = getUnusedPort();
+        int noServerPort = getUnusedPort();
+
+        Map<String, String> coapProps = new HashMap<>();
+        coapProps.put(ConfigConst.PORT_KEY, String.valueOf(port));
+
+        Map<String, String> noServerProps = new HashMap<>();
+        noServerProps.put(ConfigConst.HOST_KEY, ConfigConst.DEFAULT_COAP_HOST);
+        noServerProps.put(ConfigConst.PORT_KEY, String.valueOf(noServerPort));
+        noServerProps.put(ConfigConst.MAX_OUTSTANDING_REQUESTS_KEY, "2");
+
+        Map<String, Map<String, String>> overrides = new HashMap<>();
+        overrides.put(ConfigConst.COAP_GATEWAY_SERVICE, coapProps);
+        overrides.put(NO_SERVER_SECTION, noServerProps);
+
+        EmbeddedMqttBroker.overrideConfig(overrides);
+
+        _ServerListener = new CountingDataMessageListener();
+        _Server = new CoapServerGateway(_ServerListener);
+
+        assertTrue(_Server.startServer());
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        if (_Server != null) {
+            _Server.stopServer();
+        }
+
+        EmbeddedMqttBroker.restoreConfig();
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.clientListener = new CountingDataMessageListener();
+        this.coapClient = new CoapClientConnector();
+        this.coapClient.setDataMessageListener(this.clientListener);
+
+        assertTrue(this.coapClient.startClient());
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.coapClient.stopClient();
+        this.coapClient = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // PUT Test cases
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testPutRequestCon()
+    {
+        int before = _ServerListener.messageCount.get();
+
+        assertTrue("CON PUT request should succeed",
+            this.coapClient.sendPutRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, createPayload(2), DEFAULT_TIMEOUT));
+        assertEquals(before + 1, _ServerListener.messageCount.get());
+    }
+
+    @Test
+    public void testPutRequestNon()
+    {
+        assertTrue("NON PUT request should succeed",
+            this.coapClient.sendPutRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, false, createPayload(2), DEFAULT_TIMEOUT));
+    }
+
+    @Test
+    public void testPutRequestAsync() throws Exception
+    {
+        int requestCount = 100;
+        int before = _ServerListener.messageCount.get();
+
+        for (int i = 0; i < requestCount; i++) {
+            assertTrue("Async PUT request should be sent successfully",
+                this.coapClient.sendPutRequestAsync(
+                    ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, createPayload(i), DEFAULT_TIMEOUT));
+        }
+
+        assertTrue(awaitOutstanding(this.coapClient, DEFAULT_TIMEOUT));
+        assertEquals(requestCount, this.coapClient.getResponseCount());
+        assertEquals(before + requestCount, _ServerListener.messageCount.get());
+    }
+
+    // ------------------------------------------------------------------------
+    // POST Test cases
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testPostRequestCon()
+    {
+        assertTrue("CON POST request should succeed",
+            this.coapClient.sendPostRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, createPayload(2), DEFAULT_TIMEOUT));
+    }
+
+    @Test
+    public void testPostRequestNon()
+    {
+        assertTrue("NON POST request should succeed",
+            this.coapClient.sendPostRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, false, createPayload(2), DEFAULT_TIMEOUT));
+    }
+
+    // ------------------------------------------------------------------------
+    // GET Test cases
+    // ------------------------------------------------------------------------
+
+    /**
+     * The GET response payload (the last PUT) is passed to the client's
+     * IDataMessageListener.
+     */
+    @Test
+    public void testGetRequestCon()
+    {
+        assertTrue(this.coapClient.sendPutRequest(
+            ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE, null, true, createPayload(7), DEFAULT_TIMEOUT));
+
+        assertTrue("CON GET request should succeed",
+            this.coapClient.sendGetRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE, null, true, DEFAULT_TIMEOUT));
+
+        assertEquals(1, this.clientListener.messageCount.get());
+        assertEquals(ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE, this.clientListener.lastResource);
+        assertEquals(7, DataUtil.getInstance().jsonToSystemStateData(this.clientListener.lastMessage).getCommand());
+    }
+
+    @Test
+    public void testEndpointPath()
+    {
+        this.coapClient.setEndpointPath(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE);
+
+        assertTrue(this.coapClient.sendPutRequest(null, null, true, createPayload(1), DEFAULT_TIMEOUT));
+
+        this.coapClient.clearEndpointPath();
+
+        assertFalse(this.coapClient.sendPutRequest(null, null, true, createPayload(1), DEFAULT_TIMEOUT));
+
+        // not hosted
+        assertFalse(this.coapClient.sendGetRequest(
+            ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE, null, true, DEFAULT_TIMEOUT));
+        assertEquals(1, this.coapClient.getFailedCount());
+    }
+
+    // ------------------------------------------------------------------------
+    // DELETE Test cases
+    // ------------------------------------------------------------------------
+
+    /**
+     * Test DELETE request with CON (confirmable) messaging.
+     * This will require an ACK from the server.
+     * Expected response code: 2.02 DELETED
+     */
+    @Test
+    public void testDeleteRequestCon()
+    {
+        assertTrue("CON DELETE request should succeed",
+            this.coapClient.sendDeleteRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, DEFAULT_TIMEOUT));
+    }
+
+    /**
+     * Test DELETE request with NON (non-confirmable) messaging.
+     * This does NOT require an ACK from the server.
+     * Expected response code: 2.02 DELETED
+     */
+    @Test
+    public void testDeleteRequestNon()
+    {
+        assertTrue("NON DELETE request should succeed",
+            this.coapClient.sendDeleteRequest(
+                ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, false, DEFAULT_TIMEOUT));
+    }
+
+    // ------------------------------------------------------------------------
+    // Discovery and observe Test cases
+    // ------------------------------------------------------------------------
+
+    @Test
+    public void testDiscoveryRequest()
+    {
+        assertTrue(this.coapClient.sendDiscoveryRequest(DEFAULT_TIMEOUT));
+    }
+
+    @Test
+    public void testObserver() throws Exception
+    {
+        ResourceNameEnum resource = ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE;
+
+        _Server.updateResourceState(resource, createPayload(-1).getBytes());
+
+        assertTrue(this.coapClient.startObserver(resource, null, 0));
+        assertTrue(awaitMessages(this.clientListener, 1));
+
+        _Server.updateResourceState(resource, createPayload(5).getBytes());
+
+        assertTrue(awaitMessages(this.clientListener, 2));
+        assertEquals(5, DataUtil.getInstance().jsonToSystemStateData(this.clientListener.lastMessage).getCommand());
+
+        assertTrue(this.coapClient.stopObserver(resource, null, DEFAULT_TIMEOUT));
+        assertFalse(this.coapClient.stopObserver(resource, null, DEFAULT_TIMEOUT));
+    }
+
+    // ------------------------------------------------------------------------
+    // Timeout Test cases
+    // ------------------------------------------------------------------------
+
+    /**
+     * Requests to a port with no server are canceled after their own
+     * timeout, and async requests beyond 'maxOutstandingRequests' are
+     * refused.
+     */
+    @Test
+    public void testRequestTimeout() throws Exception
+    {
+        CoapClientConnector client = new CoapClientConnector(NO_SERVER_SECTION);
+
+        try {
+            long startMillis = System.currentTimeMillis();
+
+            assertFalse(client.sendGetRequest(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, 1));
+
+            long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+            assertTrue(elapsedMillis >= 1000L && elapsedMillis < 3000L);
+            assertEquals(1, client.getTimeoutCount());
+
+            assertTrue(client.sendGetRequestAsync(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, 1));
+            assertTrue(client.sendGetRequestAsync(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, false, 1));
+            assertFalse(client.sendGetRequestAsync(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, 1));
+            assertEquals(1, client.getRefusedCount());
+
+            assertTrue(awaitOutstanding(client, 3));
+            assertEquals(3, client.getTimeoutCount());
+        } finally {
+            client.stopClient();
+        }
+    }
+
+    /**
+     * Async requests racing with stopClient() must neither throw nor leak
+     * outstanding requests.
+     */
+    @Test
+    public void testStopDuringAsyncRequests() throws Exception
+    {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        long endMillis = System.currentTimeMillis() + 1000L;
+
+        Thread sender = new Thread(() -> {
+            try {
+                while (System.currentTimeMillis() < endMillis) {
+                    this.coapClient.sendGetRequestAsync(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE, null, true, 1);
+                }
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+
+        sender.start();
+
+        while (sender.isAlive()) {
+            this.coapClient.stopClient();
+            Thread.sleep(1L);
+        }
+
+        sender.join();
+        this.coapClient.stopClient();
+
+        assertNull(error.get());
+        assertEquals(0, this.coapClient.getOutstandingRequestCount());
+    }
+
+    // ------------------------------------------------------------------------
+    // Helper methods
+    // ------------------------------------------------------------------------
+
+    private static int getUnusedPort() throws Exception
+    {
+        try (DatagramSocket socket = new DatagramSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static boolean awaitOutstanding(CoapClientConnector client, int timeoutSecs) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSecs);
+
+        while (client.getOutstandingRequestCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        return (client.getOutstandingRequestCount() == 0);
+    }
+
+    private static boolean awaitMessages(CountingDataMessageListener listener, int count) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DEFAULT_TIMEOUT);
+
+        while (listener.messageCount.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        return (listener.messageCount.get() >= count);
+    }
+
+    private String createPayload(int command)
+    {
+        SystemStateData ssd = new SystemStateData();
+        ssd.setCommand(command);
+
+        return DataUtil.getInstance().systemStateDataToJson(ssd);
+    }
+
+    // ------------------------------------------------------------------------
+    // Inner classes
+    // ------------------------------------------------------------------------
+
+    private static class CountingDataMessageListener extends DefaultDataMessageListener
+    {
+        final AtomicInteger messageCount = new AtomicInteger();
+
+        volatile ResourceNameEnum lastResource = null;
+        volatile String lastMessage = null;
+
+        @Override
+        public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
+        {
+            this.lastResource = resourceName;
+            this.lastMessage = msg;
+            this.messageCount.incrementAndGet();
+
+            return true;
+        }
+    }
+}
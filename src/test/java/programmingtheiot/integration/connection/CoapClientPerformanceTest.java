@@ -0,0 +1,286 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DefaultDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.connection.CoapClientConnector;
+import programmingtheiot.gda.connection.CoapServerGateway;
+
+/**
+ * CoAP Client Performance Test for Gateway Device Application (GDA)
+ *
+ * This test class measures the CoAP POST request rate of
+ * CoapClientConnector against a local CoapServerGateway, with blocking
+ * requests (CON and NON) and with async requests at NSTART 1 and 32.
+ *
+ * CRITICAL WARNING: Only run these tests against a LOCAL CoAP server.
+ * DO NOT run against public Internet servers!
+ *
+ * Test configuration:
+ * - 10,000 POST requests per test
+ * - Uses realistic SensorData payloads converted to JSON
+ * - Measures total elapsed time
+ *
+ * @author Emma
+ */
+public class CoapClientPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapClientPerformanceTest.class.getName());
+
+	// Default timeout for CoAP requests (seconds)
+	private static final int DEFAULT_TIMEOUT = 5;
+
+	// NOTE: We'll use only 10,000 requests for CoAP
+	public static final int MAX_TEST_RUNS = 10000;
+
+	public static final int HIGH_NSTART = 32;
+
+	private static final String HIGH_NSTART_SECTION = "Coap.HighNstart";
+
+	private static CoapServerGateway _Server = null;
+	private static CountingDataMessageListener _Listener = null;
+
+
+	// Member variables
+
+	private CoapClientConnector coapClient = null;
+
+
+	// Test setup methods
+
+	/**
+	 * Class-level setup - executed once before all tests. Starts the
+	 * server on an unused local port.
+	 *
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("COAP CLIENT PERFORMANCE TEST SUITE (GDA)");
+		_Logger.info("======================================================================");
+
+		int port;
+
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		Map<String, String> coapProps = new HashMap<>();
+		coapProps.put(ConfigConst.PORT_KEY, String.valueOf(port));
+
+		Map<String, String> highNstartProps = new HashMap<>();
+		highNstartProps.put(ConfigConst.HOST_KEY, ConfigConst.DEFAULT_COAP_HOST);
+		highNstartProps.put(ConfigConst.PORT_KEY, String.valueOf(port));
+		highNstartProps.put(ConfigConst.NSTART_KEY, String.valueOf(HIGH_NSTART));
+
+		Map<String, Map<String, String>> overrides = new HashMap<>();
+		overrides.put(ConfigConst.COAP_GATEWAY_SERVICE, coapProps);
+		overrides.put(HIGH_NSTART_SECTION, highNstartProps);
+
+		EmbeddedMqttBroker.overrideConfig(overrides);
+
+		_Listener = new CountingDataMessageListener();
+		_Server = new CoapServerGateway(_Listener);
+
+		assertTrue(_Server.startServer());
+	}
+
+	/**
+	 * Class-level teardown - executed once after all tests
+	 *
+	 * @throws Exception
+	 */
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Server != null) {
+			_Server.stopServer();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+
+		_Logger.info("======================================================================");
+		_Logger.info("COAP CLIENT PERFORMANCE TEST SUITE COMPLETED");
+		_Logger.info("======================================================================");
+	}
+
+	/**
+	 * Test-level teardown - executed after each test
+	 *
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		// Clean up
+		if (this.coapClient != null) {
+			this.coapClient.stopClient();
+			this.coapClient = null;
+		}
+	}
+
+
+	// Test methods
+
+	/**
+	 * Test POST performance with CON (confirmed) messages
+	 *
+	 * CON messages require acknowledgment from the server.
+	 * This provides reliability but adds latency due to the round-trip.
+	 */
+	@Test
+	public void testPostRequestCon()
+	{
+		this.coapClient = new CoapClientConnector();
+
+		execTestPost("CON", MAX_TEST_RUNS, true, false);
+	}
+
+	/**
+	 * Test POST performance with NON (non-confirmed) messages
+	 *
+	 * NON messages do not require acknowledgment from the server.
+	 * This is faster but provides no delivery guarantee.
+	 */
+	@Test
+	public void testPostRequestNon()
+	{
+		this.coapClient = new CoapClientConnector();
+
+		execTestPost("NON", MAX_TEST_RUNS, false, false);
+	}
+
+	/**
+	 * Test async POST performance with CON messages and NSTART 1: one
+	 * exchange in flight, the rest queued in the client.
+	 */
+	@Test
+	public void testPostRequestAsyncCon()
+	{
+		this.coapClient = new CoapClientConnector();
+
+		execTestPost("async CON, NSTART 1", MAX_TEST_RUNS, true, true);
+	}
+
+	/**
+	 * Test async POST performance with CON messages and a high NSTART.
+	 */
+	@Test
+	public void testPostRequestAsyncConHighNstart()
+	{
+		this.coapClient = new CoapClientConnector(HIGH_NSTART_SECTION);
+
+		execTestPost("async CON, NSTART " + HIGH_NSTART, MAX_TEST_RUNS, true, true);
+	}
+
+
+	// Private helper methods
+
+	/**
+	 * Execute POST performance test
+	 *
+	 * This method:
+	 * 1. Creates a realistic SensorData payload
+	 * 2. Sends the specified number of POST requests
+	 * 3. Measures total elapsed time, until the last response
+	 * 4. Logs performance results
+	 *
+	 * @param label The test label
+	 * @param maxTestRuns Number of POST requests to send
+	 * @param enableCON True for CON messages, False for NON messages
+	 * @param isAsync True to send without waiting for each response
+	 */
+	private void execTestPost(String label, int maxTestRuns, boolean enableCON, boolean isAsync)
+	{
+		// Create test payload - realistic sensor data
+		SensorData sd = new SensorData();
+		sd.setName("TempSensor");
+		sd.setValue(22.5f);
+
+		String payload = DataUtil.getInstance().sensorDataToJson(sd);
+
+		assertTrue(this.coapClient.startClient());
+
+		// warm up
+		assertTrue(this.coapClient.sendPostRequest(
+			ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, null, enableCON, payload, DEFAULT_TIMEOUT));
+
+		int before = _Listener.sensorCount.get();
+
+		// Start timing
+		long startMillis = System.currentTimeMillis();
+
+		// Send POST requests
+		for (int seqNo = 0; seqNo < maxTestRuns; seqNo++) {
+			if (isAsync) {
+				while (! this.coapClient.sendPostRequestAsync(
+					ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, null, enableCON, payload, DEFAULT_TIMEOUT)) {
+					// outstanding limit reached
+					Thread.yield();
+				}
+			} else {
+				this.coapClient.sendPostRequest(
+					ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, null, enableCON, payload, DEFAULT_TIMEOUT);
+			}
+		}
+
+		while (this.coapClient.getOutstandingRequestCount() > 0) {
+			Thread.yield();
+		}
+
+		// End timing
+		long endMillis = System.currentTimeMillis();
+		long elapsedMillis = Math.max(1L, endMillis - startMillis);
+
+		assertEquals(0, this.coapClient.getTimeoutCount());
+		assertEquals(before + maxTestRuns, _Listener.sensorCount.get());
+
+		// Calculate and log performance metrics
+		double avgMillisPerMsg = (double) elapsedMillis / maxTestRuns;
+		double messagesPerSecond = ((double) maxTestRuns / elapsedMillis) * 1000.0;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - POST with " + label + ": " + this.coapClient);
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("POST message - " + label + " [" + maxTestRuns + "]: " + elapsedMillis + " ms");
+		_Logger.info(String.format("Average time per message: %.4f ms", avgMillisPerMsg));
+		_Logger.info(String.format("Messages per second: %.2f msg/s", messagesPerSecond));
+		_Logger.info("======================================================================");
+	}
+
+
+	// Inner classes
+
+	private static class CountingDataMessageListener extends DefaultDataMessageListener
+	{
+		final AtomicInteger sensorCount = new AtomicInteger();
+
+		@Override
+		public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+		{
+			this.sensorCount.incrementAndGet();
+
+			return true;
+		}
+	}
+}
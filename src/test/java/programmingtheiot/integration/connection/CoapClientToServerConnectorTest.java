@@ -89,6 +89,7 @@ public class CoapClientToServerConnectorTest
 	@After
 	public void tearDown() throws Exception
 	{
+		this.coapClient.stopClient();
 	}
 	
 	// test methods
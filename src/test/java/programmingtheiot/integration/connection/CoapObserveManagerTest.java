@@ -0,0 +1,395 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.eclipse.californium.core.network.CoapEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.gda.connection.CoapObserveManager;
+import programmingtheiot.gda.connection.CoapObserveManager.ObserveStatus;
+import programmingtheiot.gda.connection.CoapObserveManager.State;
+
+/**
+ * This test case class contains integration tests for CoapObserveManager,
+ * with many observe relations to several local CoAP servers (standing in
+ * for CDAs) whose resources send a short Max-Age.
+ *
+ */
+public class CoapObserveManagerTest
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapObserveManagerTest.class.getName());
+
+	public static final int SERVER_COUNT = 3;
+	public static final int RESOURCES_PER_SERVER = 400;
+	public static final int MAX_AGE_SECS = 2;
+	public static final int REGISTRATIONS_PER_SEC = 2000;
+	public static final int PACED_REGISTRATIONS_PER_SEC = 100;
+
+	private static final String TEST_SECTION = "Coap.ObserveTest";
+	private static final String PACED_SECTION = "Coap.ObserveTestPaced";
+
+
+	// member var's
+
+	private final List<CoapServer> servers = new ArrayList<>();
+	private final List<InetSocketAddress> serverAddrs = new ArrayList<>();
+	private final Map<String, ObservableResource> resources = new HashMap<>();
+	private Endpoint endpoint = null;
+	private CoapObserveManager manager = null;
+
+
+	// test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		Map<String, String> testProps = new HashMap<>();
+		testProps.put(ConfigConst.OBSERVE_REGISTRATIONS_PER_SEC_KEY, String.valueOf(REGISTRATIONS_PER_SEC));
+		testProps.put(ConfigConst.METRICS_REPORT_SECS_KEY, "1");
+
+		Map<String, String> pacedProps = new HashMap<>();
+		pacedProps.put(ConfigConst.OBSERVE_REGISTRATIONS_PER_SEC_KEY, String.valueOf(PACED_REGISTRATIONS_PER_SEC));
+
+		Map<String, Map<String, String>> overrides = new HashMap<>();
+		overrides.put(TEST_SECTION, testProps);
+		overrides.put(PACED_SECTION, pacedProps);
+
+		EmbeddedMqttBroker.overrideConfig(overrides);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+	@Before
+	public void setUp() throws Exception
+	{
+		for (int i = 0; i < SERVER_COUNT; i++) {
+			int port;
+
+			try (DatagramSocket socket = new DatagramSocket(0)) {
+				port = socket.getLocalPort();
+			}
+
+			InetSocketAddress addr = new InetSocketAddress("localhost", port);
+
+			this.serverAddrs.add(addr);
+			this.servers.add(startServer(addr));
+		}
+
+		this.endpoint = CoapEndpoint.builder().build();
+		this.endpoint.start();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.manager != null) {
+			this.manager.stop();
+		}
+
+		for (CoapServer server : this.servers) {
+			server.destroy();
+		}
+
+		this.endpoint.destroy();
+	}
+
+
+	// test methods
+
+	/**
+	 * Tests that many relations become active, and that quiet ones are
+	 * re-registered (replacing, not adding to, the server's relation)
+	 * before their Max-Age expires.
+	 */
+	@Test
+	public void testManyRelationsReregistered()
+	{
+		this.manager = new CoapObserveManager(this.endpoint, TEST_SECTION);
+
+		int relationCount = SERVER_COUNT * RESOURCES_PER_SERVER;
+		List<CountingHandler> handlers = observeAll(this.manager);
+
+		assertTrue(waitFor(() -> this.manager.getStatus().getStateCount(State.ACTIVE) == relationCount, 10000L));
+		assertTrue(handlers.stream().allMatch(h -> "0".equals(h.lastPayload)));
+
+		// quiet resources: each relation re-registers within its Max-Age
+		assertTrue(waitFor(() -> this.manager.getStatus().getReregistrationCount() >= relationCount, 10000L));
+		assertTrue(waitFor(() -> this.manager.getStatus().getStateCount(State.ACTIVE) == relationCount, 5000L));
+
+		ObserveStatus status = this.manager.getStatus();
+
+		_Logger.info("Observe status: " + status);
+
+		assertEquals(relationCount, status.getRelationCount());
+		assertEquals(relationCount, status.getRegistrationCount());
+		assertEquals(0L, status.getFailedCount());
+		assertTrue(status.getExpiredCount() >= relationCount);
+
+		for (ObservableResource resource : this.resources.values()) {
+			assertEquals(1, resource.getObserverCount());
+		}
+
+		// a change reaches each relation: notified, or (if the burst of
+		// notifications overflows the socket) on re-registration
+		for (ObservableResource resource : this.resources.values()) {
+			resource.changed();
+		}
+
+		assertTrue(waitFor(() -> handlers.stream().allMatch(h -> "1".equals(h.lastPayload)), 2000L * MAX_AGE_SECS));
+		assertTrue(handlers.stream().anyMatch(h -> h.notifyCount.get() > 0));
+	}
+
+	/**
+	 * Tests that registrations are sent no faster than the configured
+	 * rate.
+	 */
+	@Test
+	public void testRegistrationsPaced()
+	{
+		this.manager = new CoapObserveManager(this.endpoint, PACED_SECTION);
+
+		long startMillis = System.currentTimeMillis();
+
+		observeAll(this.manager);
+
+		assertTrue(waitFor(() -> this.manager.getStatus().getRegistrationCount() >= PACED_REGISTRATIONS_PER_SEC, 5000L));
+
+		long elapsedMillis = System.currentTimeMillis() - startMillis;
+		ObserveStatus status = this.manager.getStatus();
+
+		_Logger.info("Observe status after " + elapsedMillis + " ms: " + status);
+
+		assertTrue(elapsedMillis >= 800L);
+		assertTrue(status.getQueueDepth() > 0);
+		assertTrue(status.getStateCount(State.PENDING) > 0);
+	}
+
+	/**
+	 * Tests that a relation is registered again after its server restarts
+	 * and loses it, once its notifications are no longer fresh.
+	 */
+	@Test
+	public void testRelationRecoveredAfterServerRestart() throws Exception
+	{
+		this.manager = new CoapObserveManager(this.endpoint, TEST_SECTION);
+
+		InetSocketAddress addr = this.serverAddrs.get(0);
+		String path = createPath(0);
+		CountingHandler handler = new CountingHandler();
+
+		assertTrue(this.manager.startObserver(addr, path, 0, handler));
+		assertFalse(this.manager.startObserver(addr, path, 0, handler));
+		assertTrue(waitFor(() -> this.manager.getRelationState(addr, path) == State.ACTIVE, 5000L));
+
+		this.servers.get(0).destroy();
+		this.servers.set(0, startServer(addr));
+
+		ObservableResource resource = this.resources.get(addr + "/" + path);
+
+		assertTrue(waitFor(() -> resource.getObserverCount() == 1, 5000L));
+
+		resource.changed();
+
+		assertTrue(waitFor(() -> handler.notifyCount.get() == 1, 5000L));
+		assertEquals(State.ACTIVE, this.manager.getRelationState(addr, path));
+	}
+
+	/**
+	 * Tests that failed registrations are retried, and that the relation
+	 * becomes active once the resource exists.
+	 */
+	@Test
+	public void testFailedRegistrationRetried()
+	{
+		this.manager = new CoapObserveManager(this.endpoint, TEST_SECTION);
+
+		InetSocketAddress addr = this.serverAddrs.get(0);
+		String path = "late";
+		CountingHandler handler = new CountingHandler();
+
+		assertTrue(this.manager.startObserver(addr, path, 0, handler));
+		assertTrue(waitFor(() -> handler.errorCount.get() > 0, 5000L));
+		assertEquals(State.RETRYING, this.manager.getRelationState(addr, path));
+
+		this.servers.get(0).add(new ObservableResource(path));
+
+		assertTrue(waitFor(() -> this.manager.getRelationState(addr, path) == State.ACTIVE, 10000L));
+		assertTrue(this.manager.getStatus().getFailedCount() > 0);
+	}
+
+	/**
+	 * Tests that stopping a relation, or its TTL passing, cancels it on
+	 * the server.
+	 */
+	@Test
+	public void testStopObserverAndTtl()
+	{
+		this.manager = new CoapObserveManager(this.endpoint, TEST_SECTION);
+
+		InetSocketAddress addr = this.serverAddrs.get(1);
+		ObservableResource stopped = this.resources.get(addr + "/" + createPath(0));
+		ObservableResource expired = this.resources.get(addr + "/" + createPath(1));
+
+		assertTrue(this.manager.startObserver(addr, createPath(0), 0, new CountingHandler()));
+		assertTrue(this.manager.startObserver(addr, createPath(1), 1, new CountingHandler()));
+		assertTrue(waitFor(() -> stopped.getObserverCount() == 1 && expired.getObserverCount() == 1, 5000L));
+
+		assertTrue(this.manager.stopObserver(addr, createPath(0)));
+		assertFalse(this.manager.stopObserver(addr, createPath(0)));
+		assertFalse(this.manager.isObserving(addr, createPath(0)));
+
+		assertTrue(waitFor(() -> stopped.getObserverCount() == 0, 5000L));
+		assertTrue(waitFor(() -> ! this.manager.isObserving(addr, createPath(1)), 5000L));
+		assertTrue(waitFor(() -> expired.getObserverCount() == 0, 5000L));
+	}
+
+
+	// private methods
+
+	private CoapServer startServer(InetSocketAddress addr)
+	{
+		CoapServer server = new CoapServer();
+
+		server.addEndpoint(CoapEndpoint.builder().setInetSocketAddress(addr).build());
+
+		for (int i = 0; i < RESOURCES_PER_SERVER; i++) {
+			ObservableResource resource = new ObservableResource(createPath(i));
+
+			server.add(resource);
+			this.resources.put(addr + "/" + resource.getName(), resource);
+		}
+
+		server.start();
+
+		return server;
+	}
+
+	private List<CountingHandler> observeAll(CoapObserveManager manager)
+	{
+		List<CountingHandler> handlers = new ArrayList<>();
+
+		for (InetSocketAddress addr : this.serverAddrs) {
+			for (int i = 0; i < RESOURCES_PER_SERVER; i++) {
+				CountingHandler handler = new CountingHandler();
+
+				assertTrue(manager.startObserver(addr, createPath(i), 0, handler));
+				handlers.add(handler);
+			}
+		}
+
+		return handlers;
+	}
+
+	private static String createPath(int index)
+	{
+		return "r" + index;
+	}
+
+	private static boolean waitFor(BooleanSupplier condition, long timeoutMillis)
+	{
+		long endMillis = System.currentTimeMillis() + timeoutMillis;
+
+		while (! condition.getAsBoolean()) {
+			if (System.currentTimeMillis() > endMillis) {
+				return false;
+			}
+
+			try {
+				Thread.sleep(50L);
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+
+	// inner classes
+
+	/**
+	 * An observable resource whose responses have a short Max-Age.
+	 */
+	private static class ObservableResource extends CoapResource
+	{
+		private final AtomicInteger version = new AtomicInteger();
+
+		ObservableResource(String name)
+		{
+			super(name);
+
+			setObservable(true);
+		}
+
+		@Override
+		public void handleGET(CoapExchange exchange)
+		{
+			exchange.setMaxAge(MAX_AGE_SECS);
+			exchange.respond(
+				ResponseCode.CONTENT, String.valueOf(this.version.get()), MediaTypeRegistry.TEXT_PLAIN);
+		}
+
+		@Override
+		public void changed()
+		{
+			this.version.incrementAndGet();
+
+			super.changed();
+		}
+	}
+
+	private static class CountingHandler implements CoapHandler
+	{
+		final AtomicInteger notifyCount = new AtomicInteger();
+		final AtomicInteger errorCount = new AtomicInteger();
+		volatile String lastPayload = null;
+
+		@Override
+		public void onLoad(CoapResponse response)
+		{
+			this.lastPayload = response.getResponseText();
+
+			// notifications, not (piggy-backed) registration responses
+			if (response.advanced().getType() != Type.ACK) {
+				this.notifyCount.incrementAndGet();
+			}
+		}
+
+		@Override
+		public void onError()
+		{
+			this.errorCount.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DefaultDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.data.SystemStateData;
+import programmingtheiot.gda.connection.CoapBlockwiseConfig;
+import programmingtheiot.gda.connection.CoapServerGateway;
+
+/**
+ * This test case class contains integration tests for block-wise
+ * (Block1 / Block2) transfers between a CoAP client and
+ * CoapServerGateway, using a server on an unused local port.
+ *
+ */
+public class CoapServerBlockwiseTest
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapServerBlockwiseTest.class.getName());
+
+	public static final int BLOCK_SIZE = 512;
+	public static final int MAX_BODY_SIZE = 128 * 1024;
+	public static final int SENSOR_DATA_COUNT = 300;
+	public static final int SYS_PERF_DATA_COUNT = 50;
+
+	private static CoapServerGateway _Server = null;
+	private static CountingDataMessageListener _Listener = null;
+	private static String _BaseUrl = null;
+
+
+	// member var's
+
+	private CoapClient client = null;
+
+
+	// test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		int port;
+
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		Map<String, String> coapProps = new HashMap<>();
+		coapProps.put(ConfigConst.PORT_KEY, String.valueOf(port));
+		coapProps.put(ConfigConst.BLOCK_SIZE_KEY, String.valueOf(BLOCK_SIZE));
+		coapProps.put(ConfigConst.MAX_BODY_SIZE_KEY, String.valueOf(MAX_BODY_SIZE));
+
+		EmbeddedMqttBroker.overrideConfig(Collections.singletonMap(ConfigConst.COAP_GATEWAY_SERVICE, coapProps));
+
+		_Listener = new CountingDataMessageListener();
+		_Server = new CoapServerGateway(_Listener);
+		_BaseUrl = ConfigConst.DEFAULT_COAP_PROTOCOL + "://localhost:" + port + "/";
+
+		assertTrue(_Server.startServer());
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Server != null) {
+			_Server.stopServer();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.client = new CoapClient();
+		this.client.setEndpoint(CoapBlockwiseConfig.createClientEndpoint(ConfigConst.COAP_GATEWAY_SERVICE));
+		this.client.setTimeout(10000L);
+
+		_Listener.reset();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		this.client.shutdown();
+	}
+
+
+	// test methods
+
+	@Test
+	public void testSystemStateDataUploadedBlockwise() throws Exception
+	{
+		SystemStateData state = new SystemStateData();
+
+		for (int i = 0; i < SENSOR_DATA_COUNT; i++) {
+			state.addSensorData(createSensorData(i));
+		}
+
+		for (int i = 0; i < SYS_PERF_DATA_COUNT; i++) {
+			SystemPerformanceData data = new SystemPerformanceData();
+			data.setCpuUtilization(i);
+			state.addSystemPerformanceData(data);
+		}
+
+		byte[] payload = DataUtil.getInstance().systemStateDataToJsonBytes(state);
+
+		assertTrue(payload.length > BLOCK_SIZE * 10);
+
+		this.client.setURI(_BaseUrl + ResourceNameEnum.CDA_SYSTEM_STATE_MSG_RESOURCE.getResourceName());
+
+		long startMillis = System.currentTimeMillis();
+		CoapResponse response = this.client.put(payload, MediaTypeRegistry.APPLICATION_JSON);
+		long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+		assertEquals(ResponseCode.CHANGED, response.getCode());
+		assertEquals(SENSOR_DATA_COUNT, _Listener.sensorCount.get());
+		assertEquals(SYS_PERF_DATA_COUNT, _Listener.sysPerfCount.get());
+
+		// and back, as a Block2 transfer
+		response = this.client.get();
+
+		assertEquals(ResponseCode.CONTENT, response.getCode());
+		assertArrayEquals(payload, response.getPayload());
+
+		_Logger.info("Block-wise SystemStateData upload [" + payload.length + " bytes, " +
+			((payload.length + BLOCK_SIZE - 1) / BLOCK_SIZE) + " blocks]: " + elapsedMillis + " ms");
+	}
+
+	@Test
+	public void testSensorDataBatchUploadedBlockwise() throws Exception
+	{
+		List<SensorData> dataList = new ArrayList<>();
+
+		for (int i = 0; i < SENSOR_DATA_COUNT; i++) {
+			dataList.add(createSensorData(i));
+		}
+
+		byte[] payload = DataUtil.getInstance().sensorDataListToJsonBytes(dataList);
+
+		this.client.setURI(_BaseUrl + ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.getResourceName());
+
+		CoapResponse response = this.client.put(payload, MediaTypeRegistry.APPLICATION_JSON);
+
+		assertEquals(ResponseCode.CHANGED, response.getCode());
+		assertEquals(SENSOR_DATA_COUNT, _Listener.sensorCount.get());
+	}
+
+	@Test
+	public void testOversizedUploadRefused() throws Exception
+	{
+		byte[] payload = new byte[MAX_BODY_SIZE + BLOCK_SIZE];
+		payload[0] = '[';
+
+		this.client.setURI(_BaseUrl + ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.getResourceName());
+
+		CoapResponse response = this.client.put(payload, MediaTypeRegistry.APPLICATION_JSON);
+
+		assertEquals(ResponseCode.REQUEST_ENTITY_TOO_LARGE, response.getCode());
+		assertEquals(0, _Listener.sensorCount.get());
+	}
+
+	@Test
+	public void testBlockSizeRounding()
+	{
+		assertEquals(1024, CoapBlockwiseConfig.toBlockSize(1500));
+		assertEquals(512, CoapBlockwiseConfig.toBlockSize(1000));
+		assertEquals(16, CoapBlockwiseConfig.toBlockSize(0));
+	}
+
+
+	// private methods
+
+	private SensorData createSensorData(int i)
+	{
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+		data.setValue(20.0f + (i % 10));
+
+		return data;
+	}
+
+
+	// inner classes
+
+	private static class CountingDataMessageListener extends DefaultDataMessageListener
+	{
+		final AtomicInteger sensorCount = new AtomicInteger();
+		final AtomicInteger sysPerfCount = new AtomicInteger();
+
+		void reset()
+		{
+			this.sensorCount.set(0);
+			this.sysPerfCount.set(0);
+		}
+
+		@Override
+		public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+		{
+			this.sensorCount.incrementAndGet();
+
+			return true;
+		}
+
+		@Override
+		public boolean handleSystemPerformanceMessage(ResourceNameEnum resourceName, SystemPerformanceData data)
+		{
+			this.sysPerfCount.incrementAndGet();
+
+			return true;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.junit.After;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DefaultDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.connection.CoapRequestDispatcher;
+import programmingtheiot.gda.connection.CoapServerGateway;
+
+/**
+ * This test case class contains integration tests for the CoAP server
+ * dispatch modes, using a listener that takes LISTENER_DELAY_MILLIS per
+ * message to stand in for real downstream work.
+ *
+ */
+public class CoapServerDispatchModeTest
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapServerDispatchModeTest.class.getName());
+
+	public static final int MAX_TEST_RUNS = 300;
+	public static final long LISTENER_DELAY_MILLIS = 2L;
+
+
+	// member var's
+
+	private CoapServerGateway server = null;
+	private SlowDataMessageListener listener = null;
+	private String url = null;
+
+
+	// test setup methods
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.server != null) {
+			this.server.stopServer();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+
+	// test methods
+
+	/**
+	 * Sequential CON PUTs: inline mode answers after the listener returns;
+	 * ack mode answers once the update is queued.
+	 */
+	@Test
+	public void testAckModeFreesProtocolThreads() throws Exception
+	{
+		long inlineMillis = execTestSend(ConfigConst.DISPATCH_MODE_INLINE, MAX_TEST_RUNS);
+		double inlineOccupancy = this.server.getRequestDispatcher().sampleProtocolThreadOccupancy();
+		double inlineMicros = this.server.getRequestDispatcher().getAvgProtocolThreadMicros();
+
+		tearDown();
+
+		long ackMillis = execTestSend(ConfigConst.DISPATCH_MODE_ACK, MAX_TEST_RUNS);
+		double ackOccupancy = this.server.getRequestDispatcher().sampleProtocolThreadOccupancy();
+		double ackMicros = this.server.getRequestDispatcher().getAvgProtocolThreadMicros();
+
+		// queued updates (and the warm-up) still reach the listener
+		this.server.getRequestDispatcher().stop(10000L);
+
+		assertEquals(MAX_TEST_RUNS + 1, this.listener.sensorCount.get());
+
+		_Logger.info(String.format(
+			"Inline: %d ms, %.1f us/request on protocol threads, occupancy %.3f", inlineMillis, inlineMicros, inlineOccupancy));
+		_Logger.info(String.format(
+			"Ack:    %d ms, %.1f us/request on protocol threads, occupancy %.3f", ackMillis, ackMicros, ackOccupancy));
+
+		assertTrue(ackMicros * 4 < inlineMicros);
+		assertTrue(ackMillis < inlineMillis);
+	}
+
+	@Test
+	public void testSeparateModeReturnsResult() throws Exception
+	{
+		startServer(ConfigConst.DISPATCH_MODE_SEPARATE, 100);
+
+		CoapClient client = createClient();
+
+		assertEquals(ResponseCode.CHANGED, client.put(createPayload(), MediaTypeRegistry.APPLICATION_JSON).getCode());
+		assertEquals(ResponseCode.BAD_REQUEST, client.put("not json", MediaTypeRegistry.TEXT_PLAIN).getCode());
+
+		assertEquals(1, this.listener.sensorCount.get());
+		assertEquals(1, this.server.getRequestDispatcher().getFailedCount());
+
+		client.shutdown();
+	}
+
+	@Test
+	public void testFullQueueAnswersServiceUnavailable() throws Exception
+	{
+		startServer(ConfigConst.DISPATCH_MODE_ACK, 5);
+		this.listener.delayMillis = 50L;
+
+		CoapClient client = createClient();
+		CountDownLatch done = new CountDownLatch(50);
+		AtomicInteger busyCount = new AtomicInteger();
+		AtomicLong maxAge = new AtomicLong(-1L);
+
+		for (int i = 0; i < 50; i++) {
+			client.put(new CoapHandler() {
+				@Override
+				public void onLoad(CoapResponse response)
+				{
+					if (response.getCode() == ResponseCode.SERVICE_UNAVAILABLE) {
+						busyCount.incrementAndGet();
+						maxAge.set(response.getOptions().getMaxAge());
+					}
+
+					done.countDown();
+				}
+
+				@Override
+				public void onError()
+				{
+					done.countDown();
+				}
+			}, createPayload(), MediaTypeRegistry.APPLICATION_JSON);
+		}
+
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		assertTrue(busyCount.get() > 0);
+		assertEquals(busyCount.get(), this.server.getRequestDispatcher().getRejectedCount());
+		assertEquals(ConfigConst.DEFAULT_RETRY_AFTER_SECS, maxAge.get());
+
+		client.shutdown();
+	}
+
+
+	// private methods
+
+	private long execTestSend(String mode, int maxTestRuns) throws Exception
+	{
+		startServer(mode, maxTestRuns * 2);
+
+		CoapClient client = createClient();
+		byte[] payload = createPayload();
+
+		// warm up
+		client.put(payload, MediaTypeRegistry.APPLICATION_JSON);
+		this.server.getRequestDispatcher().sampleProtocolThreadOccupancy();
+
+		long startMillis = System.currentTimeMillis();
+
+		for (int i = 0; i < maxTestRuns; i++) {
+			assertEquals(ResponseCode.CHANGED, client.put(payload, MediaTypeRegistry.APPLICATION_JSON).getCode());
+		}
+
+		long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+		client.shutdown();
+
+		return elapsedMillis;
+	}
+
+	private void startServer(String mode, int queueSize) throws Exception
+	{
+		int port;
+
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		Map<String, String> coapProps = new HashMap<>();
+		coapProps.put(ConfigConst.PORT_KEY, String.valueOf(port));
+		coapProps.put(ConfigConst.DISPATCH_MODE_KEY, mode);
+		coapProps.put(ConfigConst.DISPATCH_QUEUE_SIZE_KEY, String.valueOf(queueSize));
+
+		Map<String, Map<String, String>> overrides = new HashMap<>();
+		overrides.put(ConfigConst.COAP_GATEWAY_SERVICE, coapProps);
+
+		EmbeddedMqttBroker.overrideConfig(overrides);
+
+		this.listener = new SlowDataMessageListener();
+		this.server = new CoapServerGateway(this.listener, ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE);
+		this.url = ConfigConst.DEFAULT_COAP_PROTOCOL + "://localhost:" + port + "/" +
+			ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.getResourceName();
+
+		assertEquals(CoapRequestDispatcher.Mode.fromName(mode), this.server.getRequestDispatcher().getMode());
+		assertTrue(this.server.startServer());
+	}
+
+	private CoapClient createClient()
+	{
+		CoapClient client = new CoapClient(this.url);
+		client.setTimeout(10000L);
+
+		return client;
+	}
+
+	private byte[] createPayload()
+	{
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+
+		return DataUtil.getInstance().sensorDataToJsonBytes(data);
+	}
+
+
+	// inner classes
+
+	private static class SlowDataMessageListener extends DefaultDataMessageListener
+	{
+		final AtomicInteger sensorCount = new AtomicInteger();
+
+		volatile long delayMillis = LISTENER_DELAY_MILLIS;
+
+		@Override
+		public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+		{
+			try {
+				Thread.sleep(this.delayMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.sensorCount.incrementAndGet();
+
+			return true;
+		}
+	}
+}
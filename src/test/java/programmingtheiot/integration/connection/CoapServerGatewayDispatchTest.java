@@ -0,0 +1,464 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.DatagramSocket;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapHandler;
+import org.eclipse.californium.core.CoapObserveRelation;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.MediaTypeRegistry;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.DefaultDataMessageListener;
+import programmingtheiot.common.IActuatorDataListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.connection.CoapMetricsInterceptor;
+import programmingtheiot.gda.connection.CoapMetricsInterceptor.ResourceMetrics;
+import programmingtheiot.gda.connection.CoapServerGateway;
+import programmingtheiot.gda.connection.handlers.GenericCoapResourceHandler;
+import programmingtheiot.gda.connection.handlers.GetActuatorCommandResourceHandler;
+
+/**
+ * This test case class contains integration tests for the resource
+ * tree and request dispatch of CoapServerGateway, using a server on an
+ * unused local port.
+ *
+ */
+public class CoapServerGatewayDispatchTest
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CoapServerGatewayDispatchTest.class.getName());
+
+	public static final int MAX_TEST_RUNS = 2000;
+	public static final int OBSERVER_COUNT = 20;
+	public static final int STATE_CHANGE_COUNT = 100;
+	public static final int OBSERVE_INTERVAL_MILLIS = 100;
+
+	private static CoapServerGateway _Server = null;
+	private static CountingDataMessageListener _Listener = null;
+	private static String _BaseUrl = null;
+
+
+	// test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		int port;
+
+		try (DatagramSocket socket = new DatagramSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		Map<String, String> coapProps = new HashMap<>();
+		coapProps.put(ConfigConst.PORT_KEY, String.valueOf(port));
+		coapProps.put(ConfigConst.OBSERVE_INTERVAL_MILLIS_KEY, String.valueOf(OBSERVE_INTERVAL_MILLIS));
+
+		EmbeddedMqttBroker.overrideConfig(Collections.singletonMap(ConfigConst.COAP_GATEWAY_SERVICE, coapProps));
+
+		_Listener = new CountingDataMessageListener();
+		_Server = new CoapServerGateway(_Listener);
+		_BaseUrl = ConfigConst.DEFAULT_COAP_PROTOCOL + "://localhost:" + port + "/";
+
+		assertTrue(_Server.startServer());
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Server != null) {
+			_Server.stopServer();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+
+	// test methods
+
+	@Test
+	public void testSensorDataRoutedToListener() throws Exception
+	{
+		CoapClient client = createClient(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE);
+		int before = _Listener.sensorCount.get();
+
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+		data.setValue(22.5f);
+
+		CoapResponse response = client.put(
+			DataUtil.getInstance().sensorDataToJsonBytes(data), MediaTypeRegistry.APPLICATION_JSON);
+
+		assertEquals(ResponseCode.CHANGED, response.getCode());
+		assertEquals(before + 1, _Listener.sensorCount.get());
+		assertEquals("TempSensor", _Listener.lastSensorName);
+
+		SensorData latest = DataUtil.getInstance().jsonBytesToSensorData(client.get().getPayload());
+
+		assertEquals(22.5f, latest.getValue(), 0.0f);
+
+		client.shutdown();
+	}
+
+	@Test
+	public void testCborContentFormatNegotiated() throws Exception
+	{
+		CoapClient client = createClient(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE);
+		int before = _Listener.sensorCount.get();
+
+		SensorData data = new SensorData();
+		data.setName("CborSensor");
+		data.setValue(21.5f);
+
+		CoapResponse response = client.put(
+			DataUtil.getInstance().sensorDataToCborBytes(data), MediaTypeRegistry.APPLICATION_CBOR);
+
+		assertEquals(ResponseCode.CHANGED, response.getCode());
+		assertEquals(before + 1, _Listener.sensorCount.get());
+		assertEquals("CborSensor", _Listener.lastSensorName);
+
+		// stored as CBOR; JSON on request
+		CoapResponse cborResponse = client.get();
+
+		assertEquals(MediaTypeRegistry.APPLICATION_CBOR, cborResponse.getOptions().getContentFormat());
+		assertEquals(21.5f, DataUtil.getInstance().cborBytesToSensorData(cborResponse.getPayload()).getValue(), 0.0f);
+
+		CoapResponse jsonResponse = client.get(MediaTypeRegistry.APPLICATION_JSON);
+
+		assertEquals(MediaTypeRegistry.APPLICATION_JSON, jsonResponse.getOptions().getContentFormat());
+		assertEquals("CborSensor", DataUtil.getInstance().jsonBytesToSensorData(jsonResponse.getPayload()).getName());
+
+		assertEquals(ResponseCode.NOT_ACCEPTABLE, client.get(MediaTypeRegistry.APPLICATION_XML).getCode());
+
+		// untyped resources only take JSON
+		client.setURI(_BaseUrl + ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE.getResourceName());
+
+		assertEquals(ResponseCode.UNSUPPORTED_CONTENT_FORMAT,
+			client.put(DataUtil.getInstance().sensorDataToCborBytes(data), MediaTypeRegistry.APPLICATION_CBOR).getCode());
+
+		client.shutdown();
+	}
+
+	@Test
+	public void testInvalidRequestsRejected() throws Exception
+	{
+		CoapClient client = createClient(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE);
+
+		assertEquals(ResponseCode.BAD_REQUEST, client.put("not json", MediaTypeRegistry.TEXT_PLAIN).getCode());
+
+		client.setURI(_BaseUrl + ConfigConst.PRODUCT_NAME + "/" + ConfigConst.CONSTRAINED_DEVICE + "/NoSuchMsg");
+
+		assertEquals(ResponseCode.NOT_FOUND, client.get().getCode());
+
+		// not hosted by default
+		client.setURI(_BaseUrl + ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE.getResourceName());
+
+		assertEquals(ResponseCode.NOT_FOUND, client.get().getCode());
+
+		client.shutdown();
+	}
+
+	@Test
+	public void testRequestMetricsRecorded() throws Exception
+	{
+		CoapClient client = createClient(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE);
+		CoapMetricsInterceptor metrics = _Server.getMetrics();
+		ResourceMetrics sensorMetrics =
+			metrics.getResourceMetrics("/" + ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.getResourceName());
+
+		// earlier tests' requests may still be being recorded
+		assertTrue(awaitSettled(sensorMetrics::getRequestCount, () -> metrics.getSentCodeCount(ResponseCode.CHANGED)));
+
+		long putsBefore = sensorMetrics.getRequestCount(Code.PUT);
+		long getsBefore = sensorMetrics.getRequestCount(Code.GET);
+		long changedBefore = metrics.getSentCodeCount(ResponseCode.CHANGED);
+		long notFoundBefore = metrics.getSentCodeCount(ResponseCode.NOT_FOUND);
+
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+
+		byte[] payload = DataUtil.getInstance().sensorDataToJsonBytes(data);
+
+		for (int i = 0; i < 10; i++) {
+			assertEquals(ResponseCode.CHANGED, client.put(payload, MediaTypeRegistry.APPLICATION_JSON).getCode());
+		}
+
+		assertEquals(ResponseCode.CONTENT, client.get().getCode());
+
+		client.setURI(_BaseUrl + ConfigConst.PRODUCT_NAME + "/" + ConfigConst.CONSTRAINED_DEVICE + "/NoSuchMsg");
+
+		assertEquals(ResponseCode.NOT_FOUND, client.get().getCode());
+
+		// recorded once the response has been sent, which may be after it's received
+		assertTrue(awaitCount(() -> sensorMetrics.getRequestCount(Code.GET), getsBefore + 1));
+		assertTrue(awaitCount(() -> metrics.getSentCodeCount(ResponseCode.NOT_FOUND), notFoundBefore + 1));
+		assertTrue(awaitCount(() -> metrics.getSentCodeCount(ResponseCode.CHANGED), changedBefore + 10));
+		assertTrue(awaitCount(() -> sensorMetrics.getRequestCount(Code.PUT), putsBefore + 10));
+		assertTrue(sensorMetrics.getLatency().getCount() >= 11);
+		assertTrue(sensorMetrics.getLatency().getMaxMillis() > 0.0);
+
+		_Logger.info("Metrics: " + metrics);
+		_Logger.info("Metrics: " + sensorMetrics);
+
+		client.shutdown();
+	}
+
+	@Test
+	public void testActuatorCommandPushedToObservers() throws Exception
+	{
+		CoapClient client = createClient(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE);
+		CountDownLatch notified = new CountDownLatch(1);
+		AtomicInteger lastCommand = new AtomicInteger(-1);
+
+		GetActuatorCommandResourceHandler handler = (GetActuatorCommandResourceHandler)
+			_Server.getResourceHandler(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE);
+
+		assertSame(handler, _Listener.actuatorDataListener);
+
+		// an empty resource answers NOT_FOUND, which ends the observation
+		ActuatorData command = new ActuatorData();
+		command.setName("HvacActuator");
+		command.setCommand(ConfigConst.OFF_COMMAND);
+
+		assertTrue(handler.onActuatorDataUpdate(command));
+
+		CoapObserveRelation relation = client.observeAndWait(new CoapHandler() {
+			@Override
+			public void onLoad(CoapResponse response)
+			{
+				if (response.getCode() == ResponseCode.CONTENT) {
+					int cmd = DataUtil.getInstance().jsonBytesToActuatorData(response.getPayload()).getCommand();
+
+					if (cmd == ConfigConst.ON_COMMAND) {
+						lastCommand.set(cmd);
+						notified.countDown();
+					}
+				}
+			}
+
+			@Override
+			public void onError()
+			{
+			}
+		});
+
+		assertFalse(relation.isCanceled());
+
+		command.setCommand(ConfigConst.ON_COMMAND);
+
+		assertTrue(handler.onActuatorDataUpdate(command));
+		assertTrue(notified.await(5, TimeUnit.SECONDS));
+		assertEquals(ConfigConst.ON_COMMAND, lastCommand.get());
+
+		relation.proactiveCancel();
+		client.shutdown();
+	}
+
+	@Test
+	public void testObserveNotificationsCoalesced() throws Exception
+	{
+		ResourceNameEnum resource = ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE;
+		String lastState = "{\"state\":" + (STATE_CHANGE_COUNT - 1) + "}";
+
+		CoapClient[] clients = new CoapClient[OBSERVER_COUNT];
+		CoapObserveRelation[] relations = new CoapObserveRelation[OBSERVER_COUNT];
+		AtomicInteger[] notifyCounts = new AtomicInteger[OBSERVER_COUNT];
+		CountDownLatch registered = new CountDownLatch(OBSERVER_COUNT);
+		CountDownLatch lastStateSeen = new CountDownLatch(OBSERVER_COUNT);
+
+		_Server.updateResourceState(resource, "{\"state\":-1}".getBytes());
+
+		for (int i = 0; i < OBSERVER_COUNT; i++) {
+			AtomicInteger notifyCount = new AtomicInteger();
+			AtomicReference<String> lastPayload = new AtomicReference<>();
+
+			notifyCounts[i] = notifyCount;
+			clients[i] = createClient(resource);
+			relations[i] = clients[i].observe(new CoapHandler() {
+				@Override
+				public void onLoad(CoapResponse response)
+				{
+					// first response is the registration
+					if (notifyCount.getAndIncrement() == 0) {
+						registered.countDown();
+					}
+
+					if (lastState.equals(response.getResponseText()) && lastPayload.getAndSet(lastState) == null) {
+						lastStateSeen.countDown();
+					}
+				}
+
+				@Override
+				public void onError()
+				{
+				}
+			});
+		}
+
+		assertTrue(registered.await(5, TimeUnit.SECONDS));
+
+		GenericCoapResourceHandler handler = _Server.getResourceHandler(resource);
+		long changesBefore = handler.getStateChangeCount();
+		long notificationsBefore = handler.getNotificationCount();
+		long startMillis = System.currentTimeMillis();
+
+		for (int i = 0; i < STATE_CHANGE_COUNT; i++) {
+			assertTrue(_Server.updateResourceState(resource, ("{\"state\":" + i + "}").getBytes()));
+		}
+
+		long updateMillis = System.currentTimeMillis() - startMillis;
+
+		assertTrue(lastStateSeen.await(5, TimeUnit.SECONDS));
+
+		long notifications = handler.getNotificationCount() - notificationsBefore;
+
+		assertEquals(STATE_CHANGE_COUNT, handler.getStateChangeCount() - changesBefore);
+
+		// one notification per elapsed interval, plus the trailing one
+		assertTrue(notifications <= updateMillis / OBSERVE_INTERVAL_MILLIS + 2);
+
+		for (int i = 0; i < OBSERVER_COUNT; i++) {
+			assertTrue(notifyCounts[i].get() - 1 <= notifications);
+
+			relations[i].proactiveCancel();
+			clients[i].shutdown();
+		}
+
+		_Logger.info("Observe: " + STATE_CHANGE_COUNT + " state changes, " + OBSERVER_COUNT +
+			" observers, " + notifications + " notifications per observer.");
+	}
+
+	@Test
+	public void testSensorDataThroughput() throws Exception
+	{
+		CoapClient client = createClient(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE);
+
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+
+		byte[] payload = DataUtil.getInstance().sensorDataToJsonBytes(data);
+		int before = _Listener.sensorCount.get();
+
+		// warm up
+		client.put(payload, MediaTypeRegistry.APPLICATION_JSON);
+
+		long startMillis = System.currentTimeMillis();
+
+		for (int i = 0; i < MAX_TEST_RUNS; i++) {
+			assertEquals(ResponseCode.CHANGED, client.put(payload, MediaTypeRegistry.APPLICATION_JSON).getCode());
+		}
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+
+		assertEquals(before + MAX_TEST_RUNS + 1, _Listener.sensorCount.get());
+
+		_Logger.info("CoAP PUT SensorData [" + MAX_TEST_RUNS + "]: " + elapsedMillis + " ms");
+		_Logger.info(String.format("Requests per second: %.2f", ((double) MAX_TEST_RUNS / elapsedMillis) * 1000.0));
+
+		client.shutdown();
+	}
+
+
+	// private methods
+
+	private boolean awaitCount(LongSupplier count, long expected) throws InterruptedException
+	{
+		long endMillis = System.currentTimeMillis() + 5000L;
+
+		while (count.getAsLong() < expected && System.currentTimeMillis() < endMillis) {
+			Thread.sleep(10L);
+		}
+
+		return (count.getAsLong() == expected);
+	}
+
+	/**
+	 * Waits until none of the counts has changed for 200 ms.
+	 */
+	private boolean awaitSettled(LongSupplier... counts) throws InterruptedException
+	{
+		long endMillis = System.currentTimeMillis() + 5000L;
+		long[] last = new long[counts.length];
+		long settledMillis = System.currentTimeMillis();
+
+		while (System.currentTimeMillis() < endMillis) {
+			boolean isChanged = false;
+
+			for (int i = 0; i < counts.length; i++) {
+				long value = counts[i].getAsLong();
+
+				if (value != last[i]) {
+					last[i] = value;
+					isChanged = true;
+				}
+			}
+
+			if (isChanged) {
+				settledMillis = System.currentTimeMillis();
+			} else if (System.currentTimeMillis() - settledMillis >= 200L) {
+				return true;
+			}
+
+			Thread.sleep(10L);
+		}
+
+		return false;
+	}
+
+	private CoapClient createClient(ResourceNameEnum resource)
+	{
+		CoapClient client = new CoapClient(_BaseUrl + resource.getResourceName());
+		client.setTimeout(5000L);
+
+		return client;
+	}
+
+
+	// inner classes
+
+	private static class CountingDataMessageListener extends DefaultDataMessageListener
+	{
+		final AtomicInteger sensorCount = new AtomicInteger();
+
+		volatile String lastSensorName = null;
+		volatile IActuatorDataListener actuatorDataListener = null;
+
+		@Override
+		public boolean handleSensorMessage(ResourceNameEnum resourceName, SensorData data)
+		{
+			this.lastSensorName = data.getName();
+			this.sensorCount.incrementAndGet();
+
+			return true;
+		}
+
+		@Override
+		public boolean setActuatorDataListener(String name, IActuatorDataListener listener)
+		{
+			this.actuatorDataListener = listener;
+
+			return true;
+		}
+	}
+}
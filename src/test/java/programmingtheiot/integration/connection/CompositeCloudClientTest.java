@@ -0,0 +1,185 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.connection.CloudClientFactory;
+import programmingtheiot.gda.connection.CompositeCloudClient;
+import programmingtheiot.gda.connection.ICloudClient;
+
+/**
+ * This test case class contains integration tests for
+ * CompositeCloudClient, using an EmbeddedMqttBroker as the healthy
+ * target and an unused local port as a target that is down.
+ *
+ */
+public class CompositeCloudClientTest
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(CompositeCloudClientTest.class.getName());
+
+	private static EmbeddedMqttBroker _Broker = null;
+
+	public static final int MAX_TEST_RUNS = 1000;
+	public static final int DOWN_TARGET_QUEUE_SIZE = 100;
+	public static final long MAX_DRAIN_MILLIS = 10000L;
+
+
+	// member var's
+
+	private CompositeCloudClient cloudClient = null;
+
+
+	// test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Broker = new EmbeddedMqttBroker();
+		_Broker.start();
+
+		int downPort;
+
+		try (ServerSocket socket = new ServerSocket(0)) {
+			downPort = socket.getLocalPort();
+		}
+
+		Map<String, String> cloudProps = new HashMap<>();
+		cloudProps.put(ConfigConst.CLOUD_SERVICE_NAMES_KEY, "Primary, Offline");
+		cloudProps.put(ConfigConst.METRICS_REPORT_SECS_KEY, "0");
+
+		Map<String, Map<String, String>> overrides = new HashMap<>();
+		overrides.put(ConfigConst.CLOUD_GATEWAY_SERVICE, cloudProps);
+		overrides.put("Cloud.GatewayService.Primary", createTargetProps(_Broker.getPort(), MAX_TEST_RUNS));
+		overrides.put("Cloud.GatewayService.Offline", createTargetProps(downPort, DOWN_TARGET_QUEUE_SIZE));
+
+		_Broker.applyToConfig(overrides);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		// don't leave shared clients pointing at this broker
+		CloudClientFactory.getInstance().getCloudClientRegistry().evictIdleClients();
+
+		if (_Broker != null) {
+			_Broker.stop();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.cloudClient != null) {
+			this.cloudClient.disconnectClient();
+		}
+	}
+
+
+	// test methods
+
+	@Test
+	public void testFactoryCreatesCompositeClient()
+	{
+		ICloudClient client = CloudClientFactory.getInstance().createCloudClient();
+
+		assertTrue(client instanceof CompositeCloudClient);
+		assertEquals(2, ((CompositeCloudClient) client).getTargetStatus().size());
+	}
+
+	/**
+	 * Sends to a healthy and a down target. The down target's queue fills
+	 * and drops; the healthy target delivers everything.
+	 */
+	@Test
+	public void testDownTargetDoesNotBlockHealthyTarget() throws Exception
+	{
+		this.cloudClient = (CompositeCloudClient) CloudClientFactory.getInstance().createCloudClient();
+
+		assertTrue(this.cloudClient.connectClient());
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		long receivedBefore = _Broker.getReceivedCount();
+		long startMillis = System.currentTimeMillis();
+
+		for (int i = 0; i < MAX_TEST_RUNS; i++) {
+			assertTrue(this.cloudClient.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, sensorData));
+		}
+
+		long enqueueMillis = System.currentTimeMillis() - startMillis;
+		long deadline = System.currentTimeMillis() + MAX_DRAIN_MILLIS;
+
+		while (getStatus("Primary").getSentCount() < MAX_TEST_RUNS && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10L);
+		}
+
+		long drainMillis = System.currentTimeMillis() - startMillis;
+
+		CompositeCloudClient.TargetStatus primary = getStatus("Primary");
+		CompositeCloudClient.TargetStatus offline = getStatus("Offline");
+
+		_Logger.info("Enqueued " + MAX_TEST_RUNS + " in " + enqueueMillis + " ms, delivered in " + drainMillis + " ms");
+		_Logger.info(primary.toString());
+		_Logger.info(offline.toString());
+
+		assertEquals(MAX_TEST_RUNS, primary.getSentCount());
+		assertEquals(0, primary.getDroppedCount());
+		assertEquals(CompositeCloudClient.Health.HEALTHY, primary.getHealth());
+		assertEquals(MAX_TEST_RUNS, _Broker.getReceivedCount() - receivedBefore);
+
+		assertEquals(CompositeCloudClient.Health.DOWN, offline.getHealth());
+		assertEquals(0, offline.getSentCount());
+		assertEquals(MAX_TEST_RUNS - DOWN_TARGET_QUEUE_SIZE, offline.getDroppedCount());
+	}
+
+
+	// private methods
+
+	private static Map<String, String> createTargetProps(int port, int queueSize)
+	{
+		Map<String, String> props = new LinkedHashMap<>();
+		props.put(ConfigConst.HOST_KEY, "localhost");
+		props.put(ConfigConst.PORT_KEY, String.valueOf(port));
+		props.put(ConfigConst.ENABLE_CRYPT_KEY, "False");
+		props.put(ConfigConst.ENABLE_AUTH_KEY, "False");
+		props.put(ConfigConst.DEFAULT_QOS_KEY, "1");
+		props.put(ConfigConst.TARGET_QUEUE_SIZE_KEY, String.valueOf(queueSize));
+		props.put(ConfigConst.RETRY_BACKOFF_MILLIS_KEY, "100");
+
+		return props;
+	}
+
+	private CompositeCloudClient.TargetStatus getStatus(String name)
+	{
+		List<CompositeCloudClient.TargetStatus> statusList = this.cloudClient.getTargetStatus();
+
+		for (CompositeCloudClient.TargetStatus status : statusList) {
+			if (status.getName().equals(name)) {
+				return status;
+			}
+		}
+
+		return null;
+	}
+}
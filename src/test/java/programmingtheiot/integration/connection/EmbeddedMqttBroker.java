@@ -0,0 +1,843 @@
+package programmingtheiot.integration.connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ConfigUtil;
+import programmingtheiot.gda.connection.IPubSubClient;
+import programmingtheiot.gda.connection.TopicTrie;
+
+/**
+ * Minimal in-process MQTT 3.1.1 broker for tests and benchmarks.
+ *
+ * Supports:
+ * <ul>
+ * <li>QoS 0, 1 and 2 in both directions;</li>
+ * <li>retained messages (delivered on subscribe; empty payload clears);</li>
+ * <li>'+' and '#' wildcards;</li>
+ * <li>shared subscriptions ('$share/group/filter', round-robin);</li>
+ * <li>an optional acknowledgement delay, to simulate link latency.</li>
+ * </ul>
+ *
+ * Not supported: persistent sessions (every session is clean), wills,
+ * authentication, TLS, and redelivery - the broker assumes a reliable
+ * local connection. Each client connection is served by its own thread.
+ *
+ * Typical use:
+ * <pre>
+ *   broker = new EmbeddedMqttBroker();
+ *   broker.start();
+ *   broker.applyToConfig();   // point the GDA MQTT and cloud sections at it
+ *   ...
+ *   broker.stop();
+ *   EmbeddedMqttBroker.restoreConfig();
+ * </pre>
+ */
+public class EmbeddedMqttBroker
+{
+	// static
+
+	private static final Logger _Logger =
+		Logger.getLogger(EmbeddedMqttBroker.class.getName());
+
+	private static final int CONNECT     = 1;
+	private static final int CONNACK     = 2;
+	private static final int PUBLISH     = 3;
+	private static final int PUBACK      = 4;
+	private static final int PUBREC      = 5;
+	private static final int PUBREL      = 6;
+	private static final int PUBCOMP     = 7;
+	private static final int SUBSCRIBE   = 8;
+	private static final int SUBACK      = 9;
+	private static final int UNSUBSCRIBE = 10;
+	private static final int UNSUBACK    = 11;
+	private static final int PINGREQ     = 12;
+	private static final int PINGRESP    = 13;
+	private static final int DISCONNECT  = 14;
+
+	private static final int CONNACK_ACCEPTED = 0;
+	private static final int CONNACK_BAD_PROTOCOL = 1;
+
+
+	// private var's
+
+	private final int requestedPort;
+	private ServerSocket serverSocket = null;
+	private Thread acceptThread = null;
+	private ScheduledExecutorService ackScheduler = null;
+	private volatile boolean isRunning = false;
+	private volatile long ackDelayMillis = 0L;
+
+	private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+	private final Map<String, RetainedMessage> retained = new ConcurrentHashMap<>();
+
+	private final TopicTrie<Subscription> subscriptions = new TopicTrie<>();
+	private final TopicTrie<SharedGroup> sharedSubscriptions = new TopicTrie<>();
+	private final Map<String, SharedGroup> sharedGroups = new ConcurrentHashMap<>();
+
+	private final AtomicLong receivedCount = new AtomicLong();
+	private final AtomicLong deliveredCount = new AtomicLong();
+
+
+	// constructors
+
+	/**
+	 * Creates a broker on an ephemeral port.
+	 */
+	public EmbeddedMqttBroker()
+	{
+		this(0);
+	}
+
+	/**
+	 * Creates a broker on the given port (0 = ephemeral).
+	 *
+	 * @param port The port to listen on.
+	 */
+	public EmbeddedMqttBroker(int port)
+	{
+		super();
+
+		this.requestedPort = port;
+	}
+
+
+	// public methods
+
+	public synchronized void start() throws IOException
+	{
+		if (this.isRunning) {
+			return;
+		}
+
+		this.serverSocket = new ServerSocket(this.requestedPort, 128, InetAddress.getLoopbackAddress());
+		this.ackScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "EmbeddedMqttBroker-Acks");
+			t.setDaemon(true);
+			return t;
+		});
+
+		this.isRunning = true;
+
+		this.acceptThread = new Thread(this::acceptConnections, "EmbeddedMqttBroker-Accept");
+		this.acceptThread.setDaemon(true);
+		this.acceptThread.start();
+
+		_Logger.info("Embedded MQTT broker listening on port " + getPort());
+	}
+
+	public synchronized void stop()
+	{
+		if (! this.isRunning) {
+			return;
+		}
+
+		this.isRunning = false;
+
+		try {
+			this.serverSocket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+
+		for (Session session : new ArrayList<>(this.sessions.values())) {
+			session.close();
+		}
+
+		this.ackScheduler.shutdownNow();
+		this.sessions.clear();
+		this.retained.clear();
+		this.subscriptions.clear();
+		this.sharedSubscriptions.clear();
+		this.sharedGroups.clear();
+
+		_Logger.info("Embedded MQTT broker stopped. Received: " + this.receivedCount + ", delivered: " + this.deliveredCount);
+	}
+
+	public int getPort()
+	{
+		return (this.serverSocket != null ? this.serverSocket.getLocalPort() : this.requestedPort);
+	}
+
+	public boolean isRunning()
+	{
+		return this.isRunning;
+	}
+
+	/**
+	 * Delays PUBACK and PUBREC for messages received from clients, to
+	 * simulate a higher latency link. Acks remain in order.
+	 *
+	 * @param ackDelayMillis The delay in milliseconds (0 = none).
+	 */
+	public void setAckDelayMillis(long ackDelayMillis)
+	{
+		this.ackDelayMillis = Math.max(0L, ackDelayMillis);
+	}
+
+	public int getConnectedClientCount()
+	{
+		return this.sessions.size();
+	}
+
+	public long getReceivedCount()
+	{
+		return this.receivedCount.get();
+	}
+
+	public long getDeliveredCount()
+	{
+		return this.deliveredCount.get();
+	}
+
+	public int getRetainedCount()
+	{
+		return this.retained.size();
+	}
+
+	/**
+	 * Points the GDA MQTT and cloud config sections at this broker (plain
+	 * TCP, no auth) by writing a modified copy of the default config file
+	 * and reloading {@link ConfigUtil}.
+	 *
+	 * @throws IOException If the config copy can't be written.
+	 */
+	public void applyToConfig() throws IOException
+	{
+		applyToConfig(Collections.emptyMap());
+	}
+
+	/**
+	 * As {@link #applyToConfig()}, with additional overrides.
+	 *
+	 * @param extraOverrides Section name -> (key -> value) overrides.
+	 * @throws IOException If the config copy can't be written.
+	 */
+	public void applyToConfig(Map<String, Map<String, String>> extraOverrides) throws IOException
+	{
+		Map<String, String> brokerProps = new LinkedHashMap<>();
+		brokerProps.put(ConfigConst.HOST_KEY, "localhost");
+		brokerProps.put(ConfigConst.PORT_KEY, String.valueOf(getPort()));
+		brokerProps.put(ConfigConst.ENABLE_CRYPT_KEY, "False");
+		brokerProps.put(ConfigConst.ENABLE_AUTH_KEY, "False");
+
+		Map<String, Map<String, String>> overrides = new HashMap<>();
+		overrides.put(ConfigConst.MQTT_GATEWAY_SERVICE, new LinkedHashMap<>(brokerProps));
+		overrides.put(ConfigConst.CLOUD_GATEWAY_SERVICE, new LinkedHashMap<>(brokerProps));
+
+		for (Map.Entry<String, Map<String, String>> entry : extraOverrides.entrySet()) {
+			overrides.computeIfAbsent(entry.getKey(), k -> new LinkedHashMap<>()).putAll(entry.getValue());
+		}
+
+		overrideConfig(overrides);
+	}
+
+	/**
+	 * Writes a copy of the default config file with the given overrides
+	 * applied, and makes it the active config.
+	 *
+	 * @param overrides Section name -> (key -> value) overrides.
+	 * @throws IOException If the config copy can't be written.
+	 */
+	public static void overrideConfig(Map<String, Map<String, String>> overrides) throws IOException
+	{
+		List<String> lines = Files.readAllLines(new File(ConfigConst.DEFAULT_CONFIG_FILE_NAME).toPath());
+		List<String> output = new ArrayList<>(lines.size() + 16);
+
+		Map<String, String> pending = null;
+		Set<String> seenSections = new java.util.HashSet<>();
+
+		for (String line : lines) {
+			String trimmed = line.trim();
+
+			if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+				appendPending(pending, output);
+
+				String section = trimmed.substring(1, trimmed.length() - 1);
+				seenSections.add(section);
+				pending = (overrides.containsKey(section) ? new LinkedHashMap<>(overrides.get(section)) : null);
+				output.add(line);
+				continue;
+			}
+
+			int eq = trimmed.indexOf('=');
+
+			if (pending != null && eq > 0 && ! trimmed.startsWith("#")) {
+				String key = trimmed.substring(0, eq).trim();
+
+				if (pending.containsKey(key)) {
+					output.add(key + " = " + pending.remove(key));
+					continue;
+				}
+			}
+
+			output.add(line);
+		}
+
+		appendPending(pending, output);
+
+		for (Map.Entry<String, Map<String, String>> entry : overrides.entrySet()) {
+			if (! seenSections.contains(entry.getKey())) {
+				output.add("[" + entry.getKey() + "]");
+				appendPending(entry.getValue(), output);
+			}
+		}
+
+		File cfgFile = File.createTempFile("PiotConfig", ".props");
+		cfgFile.deleteOnExit();
+		Files.write(cfgFile.toPath(), output, StandardCharsets.UTF_8);
+
+		System.setProperty(ConfigConst.CONFIG_FILE_KEY, cfgFile.getAbsolutePath());
+		ConfigUtil.getInstance().reloadConfig();
+	}
+
+	/**
+	 * Restores the default config file.
+	 */
+	public static void restoreConfig()
+	{
+		System.clearProperty(ConfigConst.CONFIG_FILE_KEY);
+		ConfigUtil.getInstance().reloadConfig();
+	}
+
+
+	// private methods
+
+	private static void appendPending(Map<String, String> pending, List<String> output)
+	{
+		if (pending != null) {
+			for (Map.Entry<String, String> entry : pending.entrySet()) {
+				output.add(entry.getKey() + " = " + entry.getValue());
+			}
+
+			pending.clear();
+		}
+	}
+
+	private void acceptConnections()
+	{
+		while (this.isRunning) {
+			try {
+				Socket socket = this.serverSocket.accept();
+				socket.setTcpNoDelay(true);
+
+				Session session = new Session(socket);
+				Thread t = new Thread(session::run, "EmbeddedMqttBroker-Client-" + socket.getPort());
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				if (this.isRunning) {
+					_Logger.log(Level.WARNING, "Accept failed", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Routes a message received from a client to all matching subscribers.
+	 */
+	private void route(String topic, byte[] payload, int qos)
+	{
+		// one delivery per session, at the highest matching subscription QoS
+		Map<Session, Integer> targets = new LinkedHashMap<>();
+
+		for (Subscription sub : this.subscriptions.match(topic)) {
+			targets.merge(sub.session, sub.qos, Math::max);
+		}
+
+		for (SharedGroup group : this.sharedSubscriptions.match(topic)) {
+			Subscription sub = group.next();
+
+			if (sub != null) {
+				targets.merge(sub.session, sub.qos, Math::max);
+			}
+		}
+
+		for (Map.Entry<Session, Integer> target : targets.entrySet()) {
+			target.getKey().sendPublish(topic, payload, Math.min(qos, target.getValue()), false);
+		}
+	}
+
+	private void handlePublish(String topic, byte[] payload, int qos, boolean retain)
+	{
+		this.receivedCount.incrementAndGet();
+
+		if (retain) {
+			if (payload.length == 0) {
+				this.retained.remove(topic);
+			} else {
+				this.retained.put(topic, new RetainedMessage(topic, payload, qos));
+			}
+		}
+
+		route(topic, payload, qos);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		int len = in.readUnsignedShort();
+		byte[] bytes = new byte[len];
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value)
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.write(bytes.length >> 8);
+		out.write(bytes.length & 0xFF);
+		out.write(bytes, 0, bytes.length);
+	}
+
+
+	// inner classes
+
+	private static class RetainedMessage
+	{
+		final String topic;
+		final byte[] payload;
+		final int qos;
+
+		RetainedMessage(String topic, byte[] payload, int qos)
+		{
+			this.topic = topic;
+			this.payload = payload;
+			this.qos = qos;
+		}
+	}
+
+	private static class Subscription
+	{
+		final Session session;
+		final String filter;
+		final int qos;
+
+		Subscription(Session session, String filter, int qos)
+		{
+			this.session = session;
+			this.filter = filter;
+			this.qos = qos;
+		}
+	}
+
+	private static class SharedGroup
+	{
+		final List<Subscription> members = new CopyOnWriteArrayList<>();
+		final AtomicInteger nextIndex = new AtomicInteger();
+
+		Subscription next()
+		{
+			int size = this.members.size();
+
+			if (size == 0) {
+				return null;
+			}
+
+			try {
+				return this.members.get((this.nextIndex.getAndIncrement() & 0x7fffffff) % size);
+			} catch (IndexOutOfBoundsException e) {
+				// member removed concurrently
+				return (this.members.isEmpty() ? null : this.members.get(0));
+			}
+		}
+	}
+
+	/**
+	 * One client connection.
+	 */
+	private class Session
+	{
+		private final Socket socket;
+		private DataInputStream in = null;
+		private OutputStream out = null;
+		private String clientID = null;
+
+		private final Map<String, Subscription> subs = new ConcurrentHashMap<>();
+		private final Set<Integer> inboundQos2 = ConcurrentHashMap.newKeySet();
+		private int nextPacketID = 0;
+		private volatile boolean isClosed = false;
+
+		Session(Socket socket)
+		{
+			this.socket = socket;
+		}
+
+		void run()
+		{
+			try {
+				this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream(), 16384));
+				this.out = new BufferedOutputStream(this.socket.getOutputStream(), 16384);
+
+				if (! readConnect()) {
+					return;
+				}
+
+				while (! this.isClosed) {
+					int header = this.in.read();
+
+					if (header < 0) {
+						break;
+					}
+
+					int length = readRemainingLength();
+					byte[] body = new byte[length];
+					this.in.readFully(body);
+
+					if (! handlePacket(header >> 4, header & 0x0F, body)) {
+						break;
+					}
+				}
+			} catch (EOFException e) {
+				// client went away
+			} catch (IOException e) {
+				if (! this.isClosed && EmbeddedMqttBroker.this.isRunning) {
+					_Logger.fine("Client connection error: " + this.clientID + " - " + e.getMessage());
+				}
+			} finally {
+				close();
+			}
+		}
+
+		private boolean readConnect() throws IOException
+		{
+			int header = this.in.read();
+
+			if (header < 0 || (header >> 4) != CONNECT) {
+				return false;
+			}
+
+			byte[] body = new byte[readRemainingLength()];
+			this.in.readFully(body);
+
+			DataInputStream vin = new DataInputStream(new java.io.ByteArrayInputStream(body));
+			String protocolName = readString(vin);
+			int protocolLevel = vin.readUnsignedByte();
+			vin.readUnsignedByte();   // connect flags - will/auth are ignored
+			vin.readUnsignedShort();  // keep alive - not enforced
+
+			boolean isSupported =
+				("MQTT".equals(protocolName) && protocolLevel == 4) ||
+				("MQIsdp".equals(protocolName) && protocolLevel == 3);
+
+			if (! isSupported) {
+				writePacket(CONNACK << 4, new byte[] { 0, CONNACK_BAD_PROTOCOL });
+				return false;
+			}
+
+			String id = readString(vin);
+			this.clientID = (id.isEmpty() ? "anon-" + this.socket.getPort() : id);
+
+			// session takeover
+			Session prevSession = EmbeddedMqttBroker.this.sessions.put(this.clientID, this);
+
+			if (prevSession != null) {
+				prevSession.close();
+			}
+
+			writePacket(CONNACK << 4, new byte[] { 0, CONNACK_ACCEPTED });
+
+			return true;
+		}
+
+		private int readRemainingLength() throws IOException
+		{
+			int value = 0;
+			int multiplier = 1;
+			int encodedByte;
+
+			do {
+				encodedByte = this.in.readUnsignedByte();
+				value += (encodedByte & 0x7F) * multiplier;
+				multiplier *= 128;
+			} while ((encodedByte & 0x80) != 0);
+
+			return value;
+		}
+
+		private boolean handlePacket(int type, int flags, byte[] body) throws IOException
+		{
+			switch (type) {
+				case PUBLISH:
+					handleClientPublish(flags, body);
+					return true;
+
+				case PUBACK:
+				case PUBCOMP:
+					// outbound QoS 1 / 2 delivery complete - nothing is kept for redelivery
+					return true;
+
+				case PUBREC:
+					writePacket((PUBREL << 4) | 0x02, new byte[] { body[0], body[1] });
+					return true;
+
+				case PUBREL:
+					this.inboundQos2.remove(((body[0] & 0xFF) << 8) | (body[1] & 0xFF));
+					writePacket(PUBCOMP << 4, new byte[] { body[0], body[1] });
+					return true;
+
+				case SUBSCRIBE:
+					handleSubscribe(body);
+					return true;
+
+				case UNSUBSCRIBE:
+					handleUnsubscribe(body);
+					return true;
+
+				case PINGREQ:
+					writePacket(PINGRESP << 4, new byte[0]);
+					return true;
+
+				case DISCONNECT:
+					return false;
+
+				default:
+					_Logger.warning("Unexpected packet type " + type + " from " + this.clientID);
+					return false;
+			}
+		}
+
+		private void handleClientPublish(int flags, byte[] body) throws IOException
+		{
+			int qos = (flags >> 1) & 0x03;
+			boolean retain = (flags & 0x01) != 0;
+
+			int topicLen = ((body[0] & 0xFF) << 8) | (body[1] & 0xFF);
+			String topic = new String(body, 2, topicLen, StandardCharsets.UTF_8);
+			int pos = 2 + topicLen;
+			int packetID = 0;
+
+			if (qos > 0) {
+				packetID = ((body[pos] & 0xFF) << 8) | (body[pos + 1] & 0xFF);
+				pos += 2;
+			}
+
+			byte[] payload = new byte[body.length - pos];
+			System.arraycopy(body, pos, payload, 0, payload.length);
+
+			// QoS 2: deliver on first receipt, ignore duplicates until PUBREL
+			if (qos < 2 || this.inboundQos2.add(packetID)) {
+				handlePublish(topic, payload, qos, retain);
+			}
+
+			if (qos == 1) {
+				sendAck(PUBACK << 4, packetID);
+			} else if (qos == 2) {
+				sendAck(PUBREC << 4, packetID);
+			}
+		}
+
+		private void sendAck(int header, int packetID) throws IOException
+		{
+			byte[] ackBody = new byte[] { (byte) (packetID >> 8), (byte) packetID };
+			long delay = EmbeddedMqttBroker.this.ackDelayMillis;
+
+			if (delay <= 0) {
+				writePacket(header, ackBody);
+				return;
+			}
+
+			EmbeddedMqttBroker.this.ackScheduler.schedule(() -> {
+				try {
+					writePacket(header, ackBody);
+				} catch (IOException e) {
+					close();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		private void handleSubscribe(byte[] body) throws IOException
+		{
+			DataInputStream vin = new DataInputStream(new java.io.ByteArrayInputStream(body));
+			int packetID = vin.readUnsignedShort();
+
+			ByteArrayOutputStream ack = new ByteArrayOutputStream();
+			ack.write(packetID >> 8);
+			ack.write(packetID & 0xFF);
+
+			List<Subscription> newSubs = new ArrayList<>();
+
+			while (vin.available() > 0) {
+				String filter = readString(vin);
+				int qos = Math.min(vin.readUnsignedByte() & 0x03, 2);
+
+				Subscription sub = new Subscription(this, filter, qos);
+				removeSubscription(filter);
+
+				boolean isValid;
+
+				if (filter.startsWith(IPubSubClient.SHARED_SUBSCRIPTION_PREFIX)) {
+					String plainFilter = TopicTrie.stripSharePrefix(filter);
+					SharedGroup group = EmbeddedMqttBroker.this.sharedGroups.computeIfAbsent(filter, k -> new SharedGroup());
+					isValid = ! plainFilter.equals(filter);
+
+					if (isValid) {
+						group.members.add(sub);
+						EmbeddedMqttBroker.this.sharedSubscriptions.add(filter, group);
+					}
+				} else {
+					isValid = EmbeddedMqttBroker.this.subscriptions.add(filter, sub);
+
+					if (isValid) {
+						newSubs.add(sub);
+					}
+				}
+
+				if (isValid) {
+					this.subs.put(filter, sub);
+				}
+
+				ack.write(isValid ? qos : 0x80);
+			}
+
+			writePacket(SUBACK << 4, ack.toByteArray());
+
+			// retained messages for new (non-shared) subscriptions
+			for (Subscription sub : newSubs) {
+				TopicTrie<Subscription> single = new TopicTrie<>(0);
+				single.add(sub.filter, sub);
+
+				for (RetainedMessage msg : EmbeddedMqttBroker.this.retained.values()) {
+					if (! single.match(msg.topic).isEmpty()) {
+						sendPublish(msg.topic, msg.payload, Math.min(msg.qos, sub.qos), true);
+					}
+				}
+			}
+		}
+
+		private void handleUnsubscribe(byte[] body) throws IOException
+		{
+			DataInputStream vin = new DataInputStream(new java.io.ByteArrayInputStream(body));
+			int packetID = vin.readUnsignedShort();
+
+			while (vin.available() > 0) {
+				removeSubscription(readString(vin));
+			}
+
+			writePacket(UNSUBACK << 4, new byte[] { (byte) (packetID >> 8), (byte) packetID });
+		}
+
+		private void removeSubscription(String filter)
+		{
+			Subscription sub = this.subs.remove(filter);
+
+			if (sub == null) {
+				return;
+			}
+
+			if (filter.startsWith(IPubSubClient.SHARED_SUBSCRIPTION_PREFIX)) {
+				SharedGroup group = EmbeddedMqttBroker.this.sharedGroups.get(filter);
+
+				if (group != null) {
+					group.members.remove(sub);
+
+					if (group.members.isEmpty()) {
+						EmbeddedMqttBroker.this.sharedSubscriptions.remove(filter, group);
+						EmbeddedMqttBroker.this.sharedGroups.remove(filter);
+					}
+				}
+			} else {
+				EmbeddedMqttBroker.this.subscriptions.remove(filter, sub);
+			}
+		}
+
+		void sendPublish(String topic, byte[] payload, int qos, boolean retain)
+		{
+			ByteArrayOutputStream body = new ByteArrayOutputStream(topic.length() + payload.length + 8);
+			writeString(body, topic);
+
+			synchronized (this) {
+				if (qos > 0) {
+					this.nextPacketID = (this.nextPacketID % 0xFFFF) + 1;
+					body.write(this.nextPacketID >> 8);
+					body.write(this.nextPacketID & 0xFF);
+				}
+
+				body.write(payload, 0, payload.length);
+
+				try {
+					writePacket((PUBLISH << 4) | (qos << 1) | (retain ? 1 : 0), body.toByteArray());
+					EmbeddedMqttBroker.this.deliveredCount.incrementAndGet();
+				} catch (IOException e) {
+					close();
+				}
+			}
+		}
+
+		synchronized void writePacket(int header, byte[] body) throws IOException
+		{
+			if (this.isClosed) {
+				throw new IOException("Session closed");
+			}
+
+			this.out.write(header);
+
+			int length = body.length;
+
+			do {
+				int encodedByte = length % 128;
+				length /= 128;
+
+				if (length > 0) {
+					encodedByte |= 0x80;
+				}
+
+				this.out.write(encodedByte);
+			} while (length > 0);
+
+			this.out.write(body);
+			this.out.flush();
+		}
+
+		void close()
+		{
+			if (this.isClosed) {
+				return;
+			}
+
+			this.isClosed = true;
+
+			for (String filter : new ArrayList<>(this.subs.keySet())) {
+				removeSubscription(filter);
+			}
+
+			if (this.clientID != null) {
+				EmbeddedMqttBroker.this.sessions.remove(this.clientID, this);
+			}
+
+			try {
+				this.socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+}
@@ -5,7 +5,9 @@ import static org.junit.Assert.*;
 import java.util.logging.Logger;
 
 import org.junit.After;
+import org.junit.AfterClass;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import programmingtheiot.common.ConfigConst;
@@ -24,6 +26,9 @@ import programmingtheiot.data.ActuatorData;
  * 
  * IMPORTANT NOTE: This test expects MqttClientConnector to be
  * configured using the ASYNCHRONOUS MqttAsyncClient (as of Lab Module 10).
+ * 
+ * The tests run against an EmbeddedMqttBroker started on an ephemeral
+ * port, so no external broker is needed.
  */
 public class MqttClientConnectorTest
 {
@@ -32,6 +37,8 @@ public class MqttClientConnectorTest
     private static final Logger _Logger =
         Logger.getLogger(MqttClientConnectorTest.class.getName());
     
+    private static EmbeddedMqttBroker _Broker = null;
+    
     
     // member var's
     
@@ -41,6 +48,34 @@ public class MqttClientConnectorTest
     
     // test setup methods
     
+    /**
+     * Starts the embedded broker and points the MQTT config at it.
+     * 
+     * @throws java.lang.Exception
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception
+    {
+        _Broker = new EmbeddedMqttBroker();
+        _Broker.start();
+        _Broker.applyToConfig();
+        
+        _Logger.info("Using embedded MQTT broker on port " + _Broker.getPort());
+    }
+    
+    /**
+     * @throws java.lang.Exception
+     */
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception
+    {
+        if (_Broker != null) {
+            _Broker.stop();
+        }
+        
+        EmbeddedMqttBroker.restoreConfig();
+    }
+    
     /**
      * @throws java.lang.Exception
      */
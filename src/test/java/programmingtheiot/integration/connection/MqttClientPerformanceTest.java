@@ -21,8 +21,8 @@ import programmingtheiot.data.DataUtil;
  * This test class measures MQTT publish performance across different QoS levels
  * (0, 1, and 2) with and without TLS encryption enabled.
  * 
- * CRITICAL WARNING: Only run these tests against a LOCAL MQTT broker.
- * DO NOT run against public Internet servers!
+ * The tests run against an EmbeddedMqttBroker started on an ephemeral
+ * port, so results don't depend on an external broker or network.
  * 
  * IMPORTANT NOTE: This test expects MqttClientConnector to be configured
  * using the SYNCHRONOUS MqttClient (not MqttAsyncClient).
@@ -40,6 +40,8 @@ public class MqttClientPerformanceTest
 	
 	private static final Logger _Logger =
 		Logger.getLogger(MqttClientPerformanceTest.class.getName());
+
+	private static EmbeddedMqttBroker _Broker = null;
 	
 	// NOTE: We'll use only 10,000 requests for MQTT
 	public static final int MAX_TEST_RUNS = 10000;
@@ -63,7 +65,12 @@ public class MqttClientPerformanceTest
 		_Logger.info("======================================================================");
 		_Logger.info("MQTT CLIENT PERFORMANCE TEST SUITE (GDA)");
 		_Logger.info("======================================================================");
-		_Logger.warning("⚠️  ENSURE YOU ARE TESTING AGAINST A LOCAL BROKER ONLY! ⚠️");
+
+		_Broker = new EmbeddedMqttBroker();
+		_Broker.start();
+		_Broker.applyToConfig();
+
+		_Logger.info("Using embedded MQTT broker on port " + _Broker.getPort());
 		_Logger.info("======================================================================");
 	}
 	
@@ -75,6 +82,12 @@ public class MqttClientPerformanceTest
 	@AfterClass
 	public static void tearDownAfterClass() throws Exception
 	{
+		if (_Broker != null) {
+			_Broker.stop();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+
 		_Logger.info("======================================================================");
 		_Logger.info("MQTT CLIENT PERFORMANCE TEST SUITE COMPLETED");
 		_Logger.info("======================================================================");
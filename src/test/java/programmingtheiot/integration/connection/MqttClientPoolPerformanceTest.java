@@ -0,0 +1,204 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.logging.Logger;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.connection.MqttClientConnector;
+
+/**
+ * MQTT Client Connection Pool Performance Test for Gateway Device Application (GDA)
+ *
+ * This test class measures MQTT publish throughput as the number of pooled
+ * broker connections used by MqttClientConnector increases. Publishes are
+ * sharded across the pool by topic, so the test publishes round-robin across
+ * all CDA topics to spread load over every connection.
+ *
+ * The tests run against an EmbeddedMqttBroker started on an ephemeral
+ * port, so results don't depend on an external broker or network.
+ *
+ * Test configuration:
+ * - 20,000 publish messages per pool size, QoS 1
+ * - Uses realistic SensorData payloads converted to JSON
+ * - Timing includes waiting for all PUBACKs, so the result is end-to-end throughput
+ */
+public class MqttClientPoolPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(MqttClientPoolPerformanceTest.class.getName());
+
+	private static EmbeddedMqttBroker _Broker = null;
+
+	public static final int MAX_TEST_RUNS = 20000;
+	public static final int TEST_QOS = 1;
+	public static final long MAX_DRAIN_MILLIS = 60000L;
+
+	private static final ResourceNameEnum[] TEST_TOPICS = {
+		ResourceNameEnum.CDA_UPDATE_NOTIFICATIONS_RESOURCE,
+		ResourceNameEnum.CDA_MEDIA_RESOURCE,
+		ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE,
+		ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE,
+		ResourceNameEnum.CDA_MGMT_STATUS_MSG_RESOURCE,
+		ResourceNameEnum.CDA_MGMT_STATUS_CMD_RESOURCE,
+		ResourceNameEnum.CDA_RESOURCE_REGISTRATION_RESOURCE,
+		ResourceNameEnum.CDA_SYSTEM_PERF_MSG_RESOURCE
+	};
+
+
+	// Member variables
+
+	private MqttClientConnector mqttClient = null;
+
+
+	// Test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("MQTT CLIENT CONNECTION POOL PERFORMANCE TEST SUITE (GDA)");
+		_Logger.info("======================================================================");
+
+		_Broker = new EmbeddedMqttBroker();
+		_Broker.start();
+		_Broker.applyToConfig();
+
+		_Logger.info("Using embedded MQTT broker on port " + _Broker.getPort());
+		_Logger.info("======================================================================");
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Broker != null) {
+			_Broker.stop();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+
+		_Logger.info("======================================================================");
+		_Logger.info("MQTT CLIENT CONNECTION POOL PERFORMANCE TEST SUITE COMPLETED");
+		_Logger.info("======================================================================");
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.mqttClient != null) {
+			try {
+				this.mqttClient.disconnectClient();
+			} catch (Exception e) {
+				// Ignore disconnect errors in teardown
+			}
+		}
+	}
+
+
+	// Test methods
+
+	/**
+	 * Baseline: a single broker connection.
+	 */
+	@Test
+	public void testPublishPoolSize1()
+	{
+		execTestPublish(1, MAX_TEST_RUNS);
+	}
+
+	/**
+	 * Two pooled broker connections.
+	 */
+	@Test
+	public void testPublishPoolSize2()
+	{
+		execTestPublish(2, MAX_TEST_RUNS);
+	}
+
+	/**
+	 * Four pooled broker connections.
+	 */
+	@Test
+	public void testPublishPoolSize4()
+	{
+		execTestPublish(4, MAX_TEST_RUNS);
+	}
+
+
+	// Private helper methods
+
+	/**
+	 * Publishes maxTestRuns messages over a pool of poolSize connections,
+	 * waits for all acknowledgements, and logs the resulting throughput.
+	 *
+	 * @param poolSize The number of pooled connections.
+	 * @param maxTestRuns Number of messages to publish.
+	 */
+	private void execTestPublish(int poolSize, int maxTestRuns)
+	{
+		_Logger.info("\n======================================================================");
+		_Logger.info("TEST: Connection pool size " + poolSize);
+		_Logger.info("======================================================================");
+
+		this.mqttClient = new MqttClientConnector(null, poolSize);
+
+		assertEquals(poolSize, this.mqttClient.getConnectionPoolSize());
+		assertTrue(this.mqttClient.connectClient());
+
+		// Allow all pooled connections to complete
+		try {
+			Thread.sleep(1000);
+		} catch (InterruptedException e) {
+			_Logger.warning("Sleep interrupted during connection stabilization");
+		}
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		String payload = DataUtil.getInstance().sensorDataToJson(sensorData);
+
+		int failures = 0;
+
+		long startMillis = System.currentTimeMillis();
+
+		for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+			ResourceNameEnum topic = TEST_TOPICS[sequenceNo % TEST_TOPICS.length];
+
+			if (! this.mqttClient.publishMessage(topic, payload, TEST_QOS)) {
+				++failures;
+			}
+		}
+
+		// wait for all outstanding acknowledgements
+		long drainDeadline = System.currentTimeMillis() + MAX_DRAIN_MILLIS;
+
+		while (this.mqttClient.getPendingDeliveryCount() > 0 && System.currentTimeMillis() < drainDeadline) {
+			Thread.yield();
+		}
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+
+		assertEquals(0, this.mqttClient.getPendingDeliveryCount());
+		assertEquals(0, failures);
+		assertTrue(this.mqttClient.disconnectClient());
+
+		double messagesPerSecond = ((double) maxTestRuns / elapsedMillis) * 1000.0;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - Pool size " + poolSize + ", QoS " + TEST_QOS);
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("Publish message [" + maxTestRuns + "]: " + elapsedMillis + " ms");
+		_Logger.info(String.format("Messages per second: %.2f msg/s", messagesPerSecond));
+		_Logger.info("======================================================================");
+	}
+}
@@ -0,0 +1,136 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.gda.connection.MqttClientConnector;
+
+/**
+ * This test case class contains integration tests for the retained
+ * publishes and last value cache of MqttClientConnector, using an
+ * EmbeddedMqttBroker on an ephemeral port.
+ *
+ */
+public class MqttRetainedSnapshotTest
+{
+	// static
+
+	public static final int TEST_QOS = 1;
+	public static final long MAX_WAIT_MILLIS = 5000L;
+
+	private static EmbeddedMqttBroker _Broker = null;
+
+
+	// member var's
+
+	private MqttClientConnector mqttClient = null;
+
+
+	// test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Broker = new EmbeddedMqttBroker();
+		_Broker.start();
+		_Broker.applyToConfig(Collections.singletonMap(ConfigConst.MQTT_GATEWAY_SERVICE,
+			Collections.singletonMap(ConfigConst.PUBLISH_RETAINED_KEY, "True")));
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Broker != null) {
+			_Broker.stop();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		if (this.mqttClient != null) {
+			this.mqttClient.disconnectClient();
+		}
+	}
+
+
+	// test methods
+
+	@Test
+	public void testCommandsNeverRetained() throws Exception
+	{
+		this.mqttClient = new MqttClientConnector();
+
+		assertTrue(this.mqttClient.connectClient());
+		assertTrue(awaitConnected());
+
+		int before = _Broker.getRetainedCount();
+
+		assertTrue(this.mqttClient.publishMessage(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, "{\"command\":1}", TEST_QOS));
+		assertTrue(this.mqttClient.publishMessage(ResourceNameEnum.CDA_MGMT_STATUS_CMD_RESOURCE, "{\"command\":2}", TEST_QOS));
+		assertTrue(this.mqttClient.publishMessage(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, "{\"value\":1.0}", TEST_QOS));
+
+		assertTrue(awaitDrained());
+		assertEquals(before + 1, _Broker.getRetainedCount());
+
+		// only the sensor snapshot is republished, not the commands
+		assertEquals(1, this.mqttClient.republishRetainedSnapshots());
+	}
+
+	@Test
+	public void testLatestIsCopy() throws Exception
+	{
+		this.mqttClient = new MqttClientConnector();
+
+		assertTrue(this.mqttClient.connectClient());
+		assertTrue(awaitConnected());
+
+		byte[] payload = "{\"cpuUtil\":5.0}".getBytes(StandardCharsets.UTF_8);
+
+		assertTrue(this.mqttClient.publishMessage(ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE, payload.clone(), TEST_QOS));
+
+		byte[] latest = this.mqttClient.getLatest(ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE);
+
+		assertArrayEquals(payload, latest);
+
+		latest[0] = 'X';
+
+		assertArrayEquals(payload, this.mqttClient.getLatest(ResourceNameEnum.GDA_SYSTEM_PERF_MSG_RESOURCE));
+	}
+
+
+	// private methods
+
+	private boolean awaitConnected() throws InterruptedException
+	{
+		long endMillis = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+
+		while (! this.mqttClient.isConnected() && System.currentTimeMillis() < endMillis) {
+			Thread.sleep(10L);
+		}
+
+		return this.mqttClient.isConnected();
+	}
+
+	private boolean awaitDrained() throws InterruptedException
+	{
+		long endMillis = System.currentTimeMillis() + MAX_WAIT_MILLIS;
+
+		while (this.mqttClient.getPendingDeliveryCount() > 0 && System.currentTimeMillis() < endMillis) {
+			Thread.sleep(10L);
+		}
+
+		return (this.mqttClient.getPendingDeliveryCount() == 0);
+	}
+}
@@ -0,0 +1,247 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.DefaultDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.gda.connection.MqttClientConnector;
+
+/**
+ * MQTT Shared Subscription Load Test for Gateway Device Application (GDA)
+ *
+ * This test class simulates several GDA instances consuming CDA telemetry
+ * through a single shared subscription group ('$share/<group>/...'). Each
+ * instance is a separate MqttClientConnector (separate broker connection and
+ * client ID) with a listener that simulates a fixed per-message processing
+ * cost. Since the broker delivers each message to only one group member,
+ * total drain time should fall close to linearly as instances are added.
+ *
+ * The tests run against an EmbeddedMqttBroker started on an ephemeral
+ * port, so results don't depend on an external broker or network.
+ *
+ * Test configuration:
+ * - 2,000 SensorData messages per run, QoS 1
+ * - 2 ms simulated processing time per message
+ * - 1, 2 and 4 consumer instances
+ */
+public class MqttSharedSubscriptionPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(MqttSharedSubscriptionPerformanceTest.class.getName());
+
+	private static EmbeddedMqttBroker _Broker = null;
+
+	public static final int MAX_TEST_RUNS = 2000;
+	public static final int TEST_QOS = 1;
+	public static final long PROCESSING_MILLIS = 2L;
+	public static final long MAX_DRAIN_MILLIS = 60000L;
+	public static final String SHARE_GROUP = "gdaLoadTest";
+
+	private static final ResourceNameEnum TEST_TOPIC = ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE;
+
+
+	// Test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("MQTT SHARED SUBSCRIPTION LOAD TEST SUITE (GDA)");
+		_Logger.info("======================================================================");
+
+		_Broker = new EmbeddedMqttBroker();
+		_Broker.start();
+		_Broker.applyToConfig();
+
+		_Logger.info("Using embedded MQTT broker on port " + _Broker.getPort());
+		_Logger.info("======================================================================");
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() throws Exception
+	{
+		if (_Broker != null) {
+			_Broker.stop();
+		}
+
+		EmbeddedMqttBroker.restoreConfig();
+
+		_Logger.info("======================================================================");
+		_Logger.info("MQTT SHARED SUBSCRIPTION LOAD TEST SUITE COMPLETED");
+		_Logger.info("======================================================================");
+	}
+
+
+	// Test methods
+
+	/**
+	 * Runs the load with 1, 2 and 4 instances and reports the speedup
+	 * relative to a single instance.
+	 */
+	@Test
+	public void testSharedSubscriptionScaling()
+	{
+		long baseMillis = execTestConsume(1, MAX_TEST_RUNS);
+		long twoMillis = execTestConsume(2, MAX_TEST_RUNS);
+		long fourMillis = execTestConsume(4, MAX_TEST_RUNS);
+
+		double speedup2 = (double) baseMillis / twoMillis;
+		double speedup4 = (double) baseMillis / fourMillis;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("SCALING SUMMARY");
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info(String.format("1 instance : %d ms", baseMillis));
+		_Logger.info(String.format("2 instances: %d ms (speedup %.2fx, efficiency %.0f%%)", twoMillis, speedup2, speedup2 * 50.0));
+		_Logger.info(String.format("4 instances: %d ms (speedup %.2fx, efficiency %.0f%%)", fourMillis, speedup4, speedup4 * 25.0));
+		_Logger.info("======================================================================");
+
+		// processing dominates, so adding instances must help substantially
+		assertTrue(speedup4 > 2.0);
+	}
+
+
+	// Private helper methods
+
+	/**
+	 * Starts instanceCount shared subscribers, publishes maxTestRuns messages,
+	 * and waits until every message has been processed by some instance.
+	 *
+	 * @param instanceCount The number of consuming GDA instances.
+	 * @param maxTestRuns Number of messages to publish.
+	 * @return long Elapsed time from first publish to last message processed.
+	 */
+	private long execTestConsume(int instanceCount, int maxTestRuns)
+	{
+		_Logger.info("\n======================================================================");
+		_Logger.info("TEST: Shared subscription with " + instanceCount + " instance(s)");
+		_Logger.info("======================================================================");
+
+		CountDownLatch latch = new CountDownLatch(maxTestRuns);
+		AtomicInteger total = new AtomicInteger();
+
+		MqttClientConnector[] consumers = new MqttClientConnector[instanceCount];
+		CountingListener[] listeners = new CountingListener[instanceCount];
+
+		for (int i = 0; i < instanceCount; i++) {
+			listeners[i] = new CountingListener(latch, total);
+			consumers[i] = new MqttClientConnector();
+			consumers[i].setDataMessageListener(listeners[i]);
+
+			assertTrue(consumers[i].subscribeToSharedTopic(TEST_TOPIC, SHARE_GROUP, TEST_QOS));
+			assertTrue(consumers[i].connectClient());
+		}
+
+		MqttClientConnector publisher = new MqttClientConnector();
+		assertTrue(publisher.connectClient());
+
+		// Allow all connections and subscriptions to complete
+		sleep(2000);
+
+		SensorData sensorData = new SensorData();
+		sensorData.setName("TempSensor");
+		sensorData.setValue(22.5f);
+
+		String payload = DataUtil.getInstance().sensorDataToJson(sensorData);
+
+		long startMillis = System.currentTimeMillis();
+
+		for (int sequenceNo = 0; sequenceNo < maxTestRuns; sequenceNo++) {
+			assertTrue(publisher.publishMessage(TEST_TOPIC, payload, TEST_QOS));
+		}
+
+		boolean drained = false;
+
+		try {
+			drained = latch.await(MAX_DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			_Logger.warning("Interrupted while waiting for messages");
+		}
+
+		long elapsedMillis = Math.max(1L, System.currentTimeMillis() - startMillis);
+
+		publisher.disconnectClient();
+
+		for (MqttClientConnector consumer : consumers) {
+			consumer.unsubscribeFromSharedTopic(TEST_TOPIC, SHARE_GROUP);
+			consumer.disconnectClient();
+		}
+
+		assertTrue(drained);
+
+		// each message goes to exactly one group member (QoS 1 may redeliver)
+		assertTrue(total.get() >= maxTestRuns);
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - " + instanceCount + " instance(s), QoS " + TEST_QOS);
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("Consume messages [" + maxTestRuns + "]: " + elapsedMillis + " ms");
+
+		for (int i = 0; i < instanceCount; i++) {
+			_Logger.info("  Instance " + i + " processed: " + listeners[i].count.get());
+		}
+
+		_Logger.info(String.format("Messages per second: %.2f msg/s", ((double) maxTestRuns / elapsedMillis) * 1000.0));
+		_Logger.info("======================================================================");
+
+		return elapsedMillis;
+	}
+
+	private void sleep(long millis)
+	{
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Counts messages for one instance and simulates a fixed processing cost.
+	 */
+	private static class CountingListener extends DefaultDataMessageListener
+	{
+		private final CountDownLatch latch;
+		private final AtomicInteger total;
+		private final AtomicInteger count = new AtomicInteger();
+
+		CountingListener(CountDownLatch latch, AtomicInteger total)
+		{
+			this.latch = latch;
+			this.total = total;
+		}
+
+		@Override
+		public boolean handleIncomingMessage(ResourceNameEnum resourceName, String msg)
+		{
+			if (resourceName != TEST_TOPIC) {
+				return false;
+			}
+
+			try {
+				Thread.sleep(PROCESSING_MILLIS);
+			} catch (InterruptedException e) {
+				// ignore
+			}
+
+			this.count.incrementAndGet();
+			this.total.incrementAndGet();
+			this.latch.countDown();
+
+			return true;
+		}
+	}
+}
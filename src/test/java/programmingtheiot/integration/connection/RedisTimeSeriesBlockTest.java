@@ -0,0 +1,226 @@
+package programmingtheiot.integration.connection;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import redis.clients.jedis.Jedis;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeSeriesCodec;
+import programmingtheiot.gda.connection.RedisPersistenceAdapter;
+
+/**
+ * This test case class contains integration tests for the time-series
+ * block storage ('storageFormat = gorilla') of RedisPersistenceAdapter,
+ * using an in-memory stand-in for the Redis client.
+ *
+ */
+public class RedisTimeSeriesBlockTest
+{
+	// static
+
+	private static final String TEST_TOPIC = ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.getResourceName();
+
+	// start of a 60 second bucket
+	private static final long BASE_MILLIS = 1700000040000L;
+
+
+	// member var's
+
+	private InMemoryJedis jedis = null;
+	private RedisPersistenceAdapter adapter = null;
+
+
+	// test setup methods
+
+	@Before
+	public void setUp() throws Exception
+	{
+		Map<String, String> dataProps = new HashMap<>();
+		dataProps.put(ConfigConst.STORAGE_FORMAT_KEY, ConfigConst.STORAGE_FORMAT_GORILLA);
+		dataProps.put(ConfigConst.STORAGE_BLOCK_SECS_KEY, "60");
+
+		Map<String, Map<String, String>> overrides = new HashMap<>();
+		overrides.put(ConfigConst.DATA_GATEWAY_SERVICE, dataProps);
+
+		EmbeddedMqttBroker.overrideConfig(overrides);
+
+		this.jedis = new InMemoryJedis();
+		this.adapter = new RedisPersistenceAdapter() {
+			@Override
+			protected Jedis createJedisClient()
+			{
+				return jedis;
+			}
+		};
+
+		assertTrue(this.adapter.connectClient());
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		EmbeddedMqttBroker.restoreConfig();
+	}
+
+
+	// test methods
+
+	@Test
+	public void testSingleReadingStoresShareBlock()
+	{
+		// one reading per call, as DeviceDataManager stores them
+		for (int i = 0; i < 30; i++) {
+			assertTrue(this.adapter.storeData(TEST_TOPIC, 0, createSensorData(BASE_MILLIS + i * 1000L, 20.0f + (i % 3))));
+		}
+
+		// next bucket
+		assertTrue(this.adapter.storeData(TEST_TOPIC, 0, createSensorData(BASE_MILLIS + 60000L, 25.0f)));
+
+		Set<String> blockKeys = this.jedis.keys("gda:data:*");
+
+		assertEquals(2, blockKeys.size());
+
+		byte[] firstBlock = this.jedis.get(blockKeys.iterator().next().getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(30, TimeSeriesCodec.decodeSensorData(firstBlock).size());
+
+		// a regular series costs a few bits per reading, well under one
+		// single-reading block per reading
+		byte[] singleBlock = TimeSeriesCodec.encodeSensorData(
+			Collections.singletonList(createSensorData(BASE_MILLIS, 20.0f)));
+
+		assertTrue(firstBlock.length < singleBlock.length * 3);
+
+		SensorData[] readBack = this.adapter.getSensorData(TEST_TOPIC, null, null);
+
+		assertEquals(31, readBack.length);
+
+		long total = 0L;
+
+		for (SensorData data : readBack) {
+			assertEquals("TempSensor", data.getName());
+			total += data.getTimeStampMillis() - BASE_MILLIS;
+		}
+
+		// 0 + 1000 + ... + 29000, plus 60000
+		assertEquals(435000L + 60000L, total);
+	}
+
+	@Test
+	public void testOutOfOrderStoreMergedInOrder()
+	{
+		assertTrue(this.adapter.storeData(TEST_TOPIC, 0, createSensorData(BASE_MILLIS + 2000L, 3.0f)));
+		assertTrue(this.adapter.storeData(TEST_TOPIC, 0,
+			createSensorData(BASE_MILLIS, 1.0f), createSensorData(BASE_MILLIS + 1000L, 2.0f)));
+
+		SensorData[] readBack = this.adapter.getSensorData(TEST_TOPIC, null, null);
+
+		assertEquals(3, readBack.length);
+
+		for (int i = 0; i < readBack.length; i++) {
+			assertEquals(BASE_MILLIS + i * 1000L, readBack[i].getTimeStampMillis());
+			assertEquals(i + 1.0f, readBack[i].getValue(), 0.0f);
+		}
+	}
+
+
+	// private methods
+
+	private SensorData createSensorData(long timeStampMillis, float value)
+	{
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+		data.setValue(value);
+		data.setTimeStampMillis(timeStampMillis);
+
+		return data;
+	}
+
+
+	// inner classes
+
+	/**
+	 * Keeps values in memory; supports the calls the adapter makes, with
+	 * key patterns ending in '*'.
+	 */
+	private static class InMemoryJedis extends Jedis
+	{
+		private final Map<String, byte[]> values = new HashMap<>();
+
+		@Override
+		public void connect()
+		{
+			// nothing to connect to
+		}
+
+		@Override
+		public void close()
+		{
+			// nothing to close
+		}
+
+		@Override
+		public String ping()
+		{
+			return "PONG";
+		}
+
+		@Override
+		public String set(byte[] key, byte[] value)
+		{
+			this.values.put(new String(key, StandardCharsets.UTF_8), value);
+
+			return "OK";
+		}
+
+		@Override
+		public byte[] get(byte[] key)
+		{
+			return this.values.get(new String(key, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public String set(String key, String value)
+		{
+			this.values.put(key, value.getBytes(StandardCharsets.UTF_8));
+
+			return "OK";
+		}
+
+		@Override
+		public String get(String key)
+		{
+			byte[] value = this.values.get(key);
+
+			return (value != null ? new String(value, StandardCharsets.UTF_8) : null);
+		}
+
+		@Override
+		public Set<String> keys(String pattern)
+		{
+			String prefix = pattern.substring(0, pattern.length() - 1);
+			Set<String> keys = new TreeSet<>();
+
+			for (String key : this.values.keySet()) {
+				if (key.startsWith(prefix)) {
+					keys.add(key);
+				}
+			}
+
+			return keys;
+		}
+	}
+}
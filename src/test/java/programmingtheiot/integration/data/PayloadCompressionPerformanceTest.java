@@ -0,0 +1,118 @@
+package programmingtheiot.integration.data;
+
+import static org.junit.Assert.*;
+
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadCompressor;
+import programmingtheiot.data.PayloadCompressor.Codec;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+
+/**
+ * Payload Compression Benchmark for Gateway Device Application (GDA)
+ *
+ * Measures the CPU cost of each compression codec against the bytes
+ * saved for typical SensorData and SystemPerformanceData JSON payloads.
+ * No broker is needed; this isolates the codec cost that is added to
+ * each MQTT publish and receive.
+ *
+ * Test configuration:
+ * - 50,000 encode + decode operations per codec and payload type
+ * - 5,000 warm-up iterations (JIT) before timing
+ */
+public class PayloadCompressionPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(PayloadCompressionPerformanceTest.class.getName());
+
+	public static final int MAX_TEST_RUNS = 50000;
+	public static final int WARMUP_RUNS = 5000;
+
+
+	// Test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("PAYLOAD COMPRESSION BENCHMARK (GDA)");
+		_Logger.info("======================================================================");
+	}
+
+
+	// Test methods
+
+	@Test
+	public void testSensorDataCompression()
+	{
+		SensorData data = new SensorData();
+		data.setName(ConfigConst.TEMP_SENSOR_NAME);
+		data.setTypeID(ConfigConst.TEMP_SENSOR_TYPE);
+		data.setValue(22.53f);
+
+		execTestCodecs("SensorData", DataUtil.getInstance().sensorDataToJsonBytes(data));
+	}
+
+	@Test
+	public void testSystemPerformanceDataCompression()
+	{
+		SystemPerformanceData data = new SystemPerformanceData();
+		data.setCpuUtilization(12.5f);
+		data.setDiskUtilization(63.1f);
+		data.setMemoryUtilization(47.25f);
+
+		execTestCodecs("SystemPerformanceData", DataUtil.getInstance().systemPerformanceDataToJsonBytes(data));
+	}
+
+
+	// Private helper methods
+
+	private void execTestCodecs(String label, byte[] payload)
+	{
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - " + label + " (" + payload.length + " bytes uncompressed)");
+		_Logger.info("----------------------------------------------------------------------");
+
+		for (Codec codec : Codec.values()) {
+			byte[] encoded = null;
+
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				encoded = PayloadCompressor.encode(codec, payload);
+				PayloadCompressor.decode(encoded);
+			}
+
+			long encodeNanos = 0L;
+			long decodeNanos = 0L;
+
+			for (int i = 0; i < MAX_TEST_RUNS; i++) {
+				long start = System.nanoTime();
+				encoded = PayloadCompressor.encode(codec, payload);
+				long mid = System.nanoTime();
+				byte[] decoded = PayloadCompressor.decode(encoded);
+				long end = System.nanoTime();
+
+				encodeNanos += (mid - start);
+				decodeNanos += (end - mid);
+
+				assertEquals(payload.length, decoded.length);
+			}
+
+			double saved = 100.0 * (payload.length - encoded.length) / payload.length;
+
+			_Logger.info(String.format(
+				"%-5s: %4d bytes (%5.1f%% saved), encode %6.2f us/msg, decode %6.2f us/msg",
+				codec, encoded.length, saved,
+				encodeNanos / 1000.0 / MAX_TEST_RUNS, decodeNanos / 1000.0 / MAX_TEST_RUNS));
+		}
+
+		_Logger.info("======================================================================");
+	}
+}
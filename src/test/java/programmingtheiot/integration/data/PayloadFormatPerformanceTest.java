@@ -0,0 +1,162 @@
+package programmingtheiot.integration.data;
+
+import static org.junit.Assert.*;
+
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.BaseIotData;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.data.SystemStateData;
+
+/**
+ * Payload Format Benchmark for Gateway Device Application (GDA)
+ *
+ * Compares the size and the encode / decode cost of CBOR against Gson
+ * JSON for each data type, including a SystemStateData batch. No broker
+ * or server is needed; this isolates the serialization cost that is
+ * added to each CoAP request and MQTT publish.
+ *
+ * Test configuration:
+ * - 20,000 encode + decode operations per format and payload type
+ *   (1,000 for the 100 entry batch)
+ * - 2,000 warm-up iterations (JIT) before timing
+ */
+public class PayloadFormatPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(PayloadFormatPerformanceTest.class.getName());
+
+	public static final int MAX_TEST_RUNS = 20000;
+	public static final int MAX_BATCH_TEST_RUNS = 1000;
+	public static final int WARMUP_RUNS = 2000;
+	public static final int BATCH_SIZE = 100;
+
+
+	// Test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("PAYLOAD FORMAT BENCHMARK (GDA): JSON vs CBOR");
+		_Logger.info("======================================================================");
+	}
+
+
+	// Test methods
+
+	@Test
+	public void testSensorDataFormats()
+	{
+		execTestFormats("SensorData", createSensorData(22.53f), SensorData.class, MAX_TEST_RUNS);
+	}
+
+	@Test
+	public void testActuatorDataFormats()
+	{
+		ActuatorData data = new ActuatorData();
+		data.setName(ConfigConst.HUMIDIFIER_ACTUATOR_NAME);
+		data.setTypeID(ConfigConst.HUMIDIFIER_ACTUATOR_TYPE);
+		data.setCommand(ConfigConst.ON_COMMAND);
+		data.setValue(45.0f);
+
+		execTestFormats("ActuatorData", data, ActuatorData.class, MAX_TEST_RUNS);
+	}
+
+	@Test
+	public void testSystemPerformanceDataFormats()
+	{
+		execTestFormats("SystemPerformanceData", createSystemPerformanceData(), SystemPerformanceData.class, MAX_TEST_RUNS);
+	}
+
+	@Test
+	public void testSystemStateDataFormats()
+	{
+		SystemStateData data = new SystemStateData();
+
+		for (int i = 0; i < BATCH_SIZE - 1; i++) {
+			data.addSensorData(createSensorData(20.0f + i * 0.01f));
+		}
+
+		data.addSystemPerformanceData(createSystemPerformanceData());
+
+		execTestFormats("SystemStateData[" + BATCH_SIZE + "]", data, SystemStateData.class, MAX_BATCH_TEST_RUNS);
+	}
+
+
+	// Private helper methods
+
+	private SensorData createSensorData(float value)
+	{
+		SensorData data = new SensorData();
+		data.setName(ConfigConst.TEMP_SENSOR_NAME);
+		data.setTypeID(ConfigConst.TEMP_SENSOR_TYPE);
+		data.setValue(value);
+
+		return data;
+	}
+
+	private SystemPerformanceData createSystemPerformanceData()
+	{
+		SystemPerformanceData data = new SystemPerformanceData();
+		data.setCpuUtilization(12.5f);
+		data.setDiskUtilization(63.1f);
+		data.setMemoryUtilization(47.25f);
+
+		return data;
+	}
+
+	private <T extends BaseIotData> void execTestFormats(String label, T data, Class<T> type, int runs)
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		int jsonLength = dataUtil.dataToBytes(data, PayloadFormat.JSON).length;
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - " + label + " (" + jsonLength + " bytes as JSON)");
+		_Logger.info("----------------------------------------------------------------------");
+
+		for (PayloadFormat format : PayloadFormat.values()) {
+			byte[] encoded = null;
+
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				encoded = dataUtil.dataToBytes(data, format);
+				dataUtil.bytesToData(encoded, format, type);
+			}
+
+			long encodeNanos = 0L;
+			long decodeNanos = 0L;
+
+			for (int i = 0; i < runs; i++) {
+				long start = System.nanoTime();
+				encoded = dataUtil.dataToBytes(data, format);
+				long mid = System.nanoTime();
+				T decoded = dataUtil.bytesToData(encoded, format, type);
+				long end = System.nanoTime();
+
+				encodeNanos += (mid - start);
+				decodeNanos += (end - mid);
+
+				assertNotNull(decoded);
+			}
+
+			double saved = 100.0 * (jsonLength - encoded.length) / jsonLength;
+
+			_Logger.info(String.format(
+				"%-4s: %6d bytes (%5.1f%% saved), encode %8.2f us/msg, decode %8.2f us/msg",
+				format, encoded.length, saved,
+				encodeNanos / 1000.0 / runs, decodeNanos / 1000.0 / runs));
+		}
+
+		_Logger.info("======================================================================");
+	}
+}
@@ -0,0 +1,153 @@
+package programmingtheiot.integration.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntToDoubleFunction;
+import java.util.logging.Logger;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import programmingtheiot.common.ConfigConst;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadCompressor;
+import programmingtheiot.data.PayloadCompressor.Codec;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeAndValuePayloadData;
+import programmingtheiot.data.TimeSeriesCodec;
+
+/**
+ * Time-Series Compression Benchmark for Gateway Device Application (GDA)
+ *
+ * Compares the encoded size and CPU cost of TimeSeriesCodec blocks with
+ * the JSON and columnar JSON batch envelopes (with and without deflate)
+ * for typical sensor signals. No broker is needed.
+ *
+ * Test configuration:
+ * - 1,000 readings per series at a 1 s interval (+/- 2 ms jitter in the
+ *   jittered case)
+ * - 1,000 timed encodes per format (and decodes to time and value points
+ *   for Gorilla), after 200 warm-up runs
+ */
+public class TimeSeriesCompressionPerformanceTest
+{
+	// Static variables
+
+	private static final Logger _Logger =
+		Logger.getLogger(TimeSeriesCompressionPerformanceTest.class.getName());
+
+	public static final int SERIES_LENGTH = 1000;
+	public static final int MAX_TEST_RUNS = 1000;
+	public static final int WARMUP_RUNS = 200;
+	public static final long START_MILLIS = 1700000000000L;
+
+
+	// Test setup methods
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception
+	{
+		_Logger.info("======================================================================");
+		_Logger.info("TIME-SERIES COMPRESSION BENCHMARK (GDA)");
+		_Logger.info("======================================================================");
+	}
+
+
+	// Test methods
+
+	@Test
+	public void testSteadySignal()
+	{
+		// a thermostat-like reading that changes in 0.5 degree steps
+		execTestFormats("Steady", false, i -> 21.5 + ((i / 120) % 4) * 0.5);
+	}
+
+	@Test
+	public void testNoisySignal()
+	{
+		Random random = new Random(42L);
+
+		// a temperature drifting slowly, with sensor noise in every reading
+		execTestFormats("Noisy", false, i -> 20.0 + i / 500.0 + random.nextGaussian() * 0.05);
+	}
+
+	@Test
+	public void testJitteredTimestamps()
+	{
+		execTestFormats("Jittered", true, i -> 21.5 + ((i / 120) % 4) * 0.5);
+	}
+
+
+	// Private helper methods
+
+	private void execTestFormats(String label, boolean isJittered, IntToDoubleFunction signal)
+	{
+		Random random = new Random(7L);
+		List<SensorData> series = new ArrayList<>(SERIES_LENGTH);
+
+		for (int i = 0; i < SERIES_LENGTH; i++) {
+			SensorData data = new SensorData();
+			data.setName(ConfigConst.TEMP_SENSOR_NAME);
+			data.setTypeID(ConfigConst.TEMP_SENSOR_TYPE);
+			data.setValue((float) signal.applyAsDouble(i));
+			data.setTimeStampMillis(START_MILLIS + i * 1000L + (isJittered ? random.nextInt(5) - 2 : 0));
+			series.add(data);
+		}
+
+		byte[] json = DataUtil.getInstance().sensorDataListToJsonBytes(series);
+		byte[] columnar = DataUtil.getInstance().sensorDataListToColumnarJsonBytes(series);
+		byte[] gorilla = TimeSeriesCodec.encodeSensorData(series);
+
+		_Logger.info("----------------------------------------------------------------------");
+		_Logger.info("RESULTS - " + label + " signal, " + SERIES_LENGTH + " readings (JSON " + json.length + " bytes)");
+		_Logger.info("----------------------------------------------------------------------");
+
+		logSize("JSON", json.length, json.length);
+		logSize("JSON + deflate", PayloadCompressor.encode(Codec.FAST, json).length, json.length);
+		logSize("Columnar", columnar.length, json.length);
+		logSize("Columnar + deflate", PayloadCompressor.encode(Codec.FAST, columnar).length, json.length);
+		logSize("Gorilla", gorilla.length, json.length);
+
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			TimeSeriesCodec.decodeTimeAndValueData(TimeSeriesCodec.encodeSensorData(series));
+			PayloadCompressor.encode(Codec.FAST, DataUtil.getInstance().sensorDataListToColumnarJsonBytes(series));
+		}
+
+		long encodeNanos = 0L;
+		long decodeNanos = 0L;
+		long deflateNanos = 0L;
+
+		for (int i = 0; i < MAX_TEST_RUNS; i++) {
+			long start = System.nanoTime();
+			byte[] encoded = TimeSeriesCodec.encodeSensorData(series);
+			long mid = System.nanoTime();
+			List<TimeAndValuePayloadData> decoded = TimeSeriesCodec.decodeTimeAndValueData(encoded);
+			long end = System.nanoTime();
+			PayloadCompressor.encode(Codec.FAST, DataUtil.getInstance().sensorDataListToColumnarJsonBytes(series));
+			long last = System.nanoTime();
+
+			encodeNanos += (mid - start);
+			decodeNanos += (end - mid);
+			deflateNanos += (last - end);
+
+			assertEquals(SERIES_LENGTH, decoded.size());
+		}
+
+		_Logger.info(String.format(
+			"Gorilla encode %.1f us/batch, decode %.1f us/batch; columnar + deflate encode %.1f us/batch",
+			encodeNanos / 1000.0 / MAX_TEST_RUNS, decodeNanos / 1000.0 / MAX_TEST_RUNS,
+			deflateNanos / 1000.0 / MAX_TEST_RUNS));
+		_Logger.info("======================================================================");
+
+		assertTrue(gorilla.length < columnar.length);
+	}
+
+	private void logSize(String format, int size, int jsonSize)
+	{
+		_Logger.info(String.format("%-20s %7d bytes (%6.1fx, %5.2f bytes/reading)",
+			format + ":", size, (double) jsonSize / size, (double) size / SERIES_LENGTH));
+	}
+}
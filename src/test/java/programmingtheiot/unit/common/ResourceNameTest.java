@@ -82,4 +82,18 @@ public class ResourceNameTest
 		assertTrue(resourceA == resourceB);
 	}
 	
+	@Test
+	public void testStateOrTelemetryExcludesCommands()
+	{
+		assertTrue(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE.isStateOrTelemetry());
+		assertTrue(ResourceNameEnum.CDA_SYSTEM_STATE_MSG_RESOURCE.isStateOrTelemetry());
+		assertTrue(ResourceNameEnum.GDA_MGMT_STATUS_MSG_RESOURCE.isStateOrTelemetry());
+		assertTrue(ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE.isStateOrTelemetry());
+		
+		assertFalse(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE.isStateOrTelemetry());
+		assertFalse(ResourceNameEnum.CDA_MGMT_STATUS_CMD_RESOURCE.isStateOrTelemetry());
+		assertFalse(ResourceNameEnum.GDA_MGMT_STATUS_CMD_RESOURCE.isStateOrTelemetry());
+		assertFalse(ResourceNameEnum.CLOUD_ACTUATOR_CMD_RESOURCE.isStateOrTelemetry());
+	}
+	
 }
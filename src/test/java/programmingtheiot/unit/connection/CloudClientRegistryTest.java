@@ -0,0 +1,237 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.connection.CloudClientRegistry;
+import programmingtheiot.gda.connection.ICloudClient;
+import programmingtheiot.gda.connection.SharedCloudClient;
+
+/**
+ * This test case class contains basic unit tests for
+ * CloudClientRegistry and SharedCloudClient.
+ *
+ */
+public class CloudClientRegistryTest
+{
+	// test methods
+
+	@Test
+	public void testHandlesShareOneLazilyConnectedClient()
+	{
+		AtomicInteger createCount = new AtomicInteger();
+		CountingCloudClient client = new CountingCloudClient();
+		CloudClientRegistry registry = new CloudClientRegistry(name -> {
+			createCount.incrementAndGet();
+			return client;
+		}, 60000L);
+
+		SharedCloudClient handle1 = registry.acquire("Primary");
+		SharedCloudClient handle2 = registry.acquire("Primary");
+
+		assertEquals(0, client.connectCount.get());
+
+		assertTrue(handle1.connectClient());
+		assertTrue(handle2.connectClient());
+		assertTrue(handle2.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, new SensorData()));
+
+		assertEquals(1, createCount.get());
+		assertEquals(1, client.connectCount.get());
+		assertEquals(1, client.sendCount.get());
+		assertEquals(2, registry.getRefCount("Primary"));
+
+		assertTrue(handle1.disconnectClient());
+
+		assertEquals(1, registry.getRefCount("Primary"));
+		assertEquals(0, client.disconnectCount.get());
+	}
+
+	@Test
+	public void testIdleClientEvictedAfterLastRelease() throws InterruptedException
+	{
+		CountingCloudClient client = new CountingCloudClient();
+		CloudClientRegistry registry = new CloudClientRegistry(name -> client, 50L);
+
+		SharedCloudClient handle = registry.acquire("Primary");
+
+		assertTrue(handle.connectClient());
+		assertTrue(handle.disconnectClient());
+		assertEquals(1, registry.getClientCount());
+
+		Thread.sleep(200L);
+
+		assertEquals(0, registry.getClientCount());
+		assertEquals(1, client.disconnectCount.get());
+		assertFalse(handle.sendEdgeDataToCloud(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, new SensorData()));
+	}
+
+	@Test
+	public void testReconnectBeforeEvictionKeepsClient() throws InterruptedException
+	{
+		CountingCloudClient client = new CountingCloudClient();
+		CloudClientRegistry registry = new CloudClientRegistry(name -> client, 100L);
+
+		SharedCloudClient handle = registry.acquire("Primary");
+
+		assertTrue(handle.connectClient());
+		assertTrue(handle.disconnectClient());
+		assertTrue(registry.acquire("Primary").connectClient());
+
+		Thread.sleep(200L);
+
+		assertEquals(1, registry.getClientCount());
+		assertEquals(1, client.connectCount.get());
+		assertEquals(0, client.disconnectCount.get());
+	}
+
+	@Test
+	public void testShutdownDisconnectsWithoutDelay()
+	{
+		CountingCloudClient client = new CountingCloudClient();
+		CloudClientRegistry registry = new CloudClientRegistry(name -> client, 60000L);
+
+		SharedCloudClient idleHandle = registry.acquire("Primary");
+		SharedCloudClient busyHandle = registry.acquire("Secondary");
+
+		assertTrue(idleHandle.connectClient());
+		assertTrue(idleHandle.disconnectClient());
+		assertTrue(busyHandle.connectClient());
+		assertEquals(2, registry.getClientCount());
+
+		registry.shutdown();
+
+		assertEquals(0, registry.getClientCount());
+		assertEquals(2, client.disconnectCount.get());
+
+		// the shut down client isn't reconnected; a new handle gets a new one
+		assertFalse(busyHandle.connectClient());
+		assertTrue(busyHandle.disconnectClient());
+		assertTrue(registry.acquire("Primary").connectClient());
+		assertEquals(1, registry.getClientCount());
+	}
+
+	@Test
+	public void testSubscriptionsAreRefCounted()
+	{
+		CountingCloudClient client = new CountingCloudClient();
+		CloudClientRegistry registry = new CloudClientRegistry(name -> client, 60000L);
+
+		SharedCloudClient handle1 = registry.acquire("Primary");
+		SharedCloudClient handle2 = registry.acquire("Primary");
+
+		handle1.connectClient();
+		handle2.connectClient();
+
+		assertTrue(handle1.subscribeToCloudEvents(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE));
+		assertTrue(handle2.subscribeToCloudEvents(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE));
+
+		assertEquals(1, client.subscribeCount.get());
+
+		// handle2 still needs the subscription
+		handle1.disconnectClient();
+
+		assertEquals(0, client.unsubscribeCount.get());
+
+		assertTrue(handle2.unsubscribeFromCloudEvents(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE));
+
+		assertEquals(1, client.unsubscribeCount.get());
+	}
+
+	@Test
+	public void testFailedConnectTakesNoReference()
+	{
+		CountingCloudClient client = new CountingCloudClient();
+		client.isReachable = false;
+
+		CloudClientRegistry registry = new CloudClientRegistry(name -> client, 60000L);
+		SharedCloudClient handle = registry.acquire("Offline");
+
+		assertFalse(handle.connectClient());
+		assertEquals(0, registry.getRefCount("Offline"));
+
+		client.isReachable = true;
+
+		assertTrue(handle.connectClient());
+		assertEquals(1, registry.getRefCount("Offline"));
+	}
+
+
+	// inner classes
+
+	private static class CountingCloudClient implements ICloudClient
+	{
+		final AtomicInteger connectCount = new AtomicInteger();
+		final AtomicInteger disconnectCount = new AtomicInteger();
+		final AtomicInteger sendCount = new AtomicInteger();
+		final AtomicInteger subscribeCount = new AtomicInteger();
+		final AtomicInteger unsubscribeCount = new AtomicInteger();
+
+		volatile boolean isReachable = true;
+
+		@Override
+		public boolean connectClient()
+		{
+			if (! this.isReachable) {
+				return false;
+			}
+
+			this.connectCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean disconnectClient()
+		{
+			this.disconnectCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+		{
+			this.sendCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+		{
+			this.sendCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload)
+		{
+			this.sendCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean subscribeToCloudEvents(ResourceNameEnum resource)
+		{
+			this.subscribeCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+		{
+			this.unsubscribeCount.incrementAndGet();
+			return true;
+		}
+
+		@Override
+		public boolean setDataMessageListener(IDataMessageListener listener)
+		{
+			return true;
+		}
+	}
+}
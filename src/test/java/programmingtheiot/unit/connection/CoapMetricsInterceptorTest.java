@@ -0,0 +1,137 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.CoAP.Code;
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.CoapMetricsInterceptor;
+import programmingtheiot.gda.connection.CoapMetricsInterceptor.LatencyHistogram;
+import programmingtheiot.gda.connection.CoapMetricsInterceptor.ResourceMetrics;
+
+/**
+ * This test case class contains basic unit tests for
+ * CoapMetricsInterceptor.
+ *
+ */
+public class CoapMetricsInterceptorTest
+{
+	// test methods
+
+	@Test
+	public void testResponsesCounted()
+	{
+		CoapMetricsInterceptor metrics = new CoapMetricsInterceptor();
+
+		metrics.sendResponse(new Response(ResponseCode.CONTENT));
+		metrics.sendResponse(new Response(ResponseCode.CONTENT));
+		metrics.sendResponse(new Response(ResponseCode.NOT_FOUND));
+
+		Response retransmission = new Response(ResponseCode.CONTENT);
+		retransmission.setDuplicate(true);
+		metrics.sendResponse(retransmission);
+
+		Response failed = new Response(ResponseCode.CHANGED);
+		failed.setSendError(new Exception("unreachable"));
+		metrics.sendResponse(failed);
+
+		assertEquals(2, metrics.getSentCodeCount(ResponseCode.CONTENT));
+		assertEquals(1, metrics.getSentCodeCount(ResponseCode.NOT_FOUND));
+		assertEquals(0, metrics.getSentCodeCount(ResponseCode.CHANGED));
+		assertEquals(1, metrics.getRetransmissions());
+		assertEquals(1, metrics.getSendErrors());
+	}
+
+	@Test
+	public void testDuplicatesCounted()
+	{
+		CoapMetricsInterceptor metrics = new CoapMetricsInterceptor();
+
+		Request request = Request.newGet();
+		metrics.receiveRequest(request);
+
+		Request duplicate = Request.newGet();
+		duplicate.setDuplicate(true);
+		metrics.receiveRequest(duplicate);
+		metrics.receiveRequest(duplicate);
+
+		Response response = new Response(ResponseCode.CHANGED);
+		metrics.receiveResponse(response);
+
+		Response duplicateResponse = new Response(ResponseCode.CHANGED);
+		duplicateResponse.setDuplicate(true);
+		metrics.receiveResponse(duplicateResponse);
+
+		assertEquals(1, metrics.getRequestsReceived());
+		assertEquals(2, metrics.getDuplicateRequests());
+		assertEquals(1, metrics.getReceivedCodeCount(ResponseCode.CHANGED));
+		assertEquals(1, metrics.getDuplicateResponses());
+	}
+
+	@Test
+	public void testResourceMetrics()
+	{
+		CoapMetricsInterceptor metrics = new CoapMetricsInterceptor();
+		ResourceMetrics sensor = metrics.getResourceMetrics("/PIOT/ConstrainedDevice/SensorMsg");
+
+		assertSame(sensor, metrics.getResourceMetrics("/PIOT/ConstrainedDevice/SensorMsg"));
+
+		sensor.recordRequest(Code.PUT, TimeUnit.MILLISECONDS.toNanos(1));
+		sensor.recordRequest(Code.PUT, TimeUnit.MILLISECONDS.toNanos(1));
+		sensor.recordRequest(Code.GET, TimeUnit.MILLISECONDS.toNanos(1));
+		metrics.getResourceMetrics("/PIOT/ConstrainedDevice/ActuatorCmd");
+
+		assertEquals(3, sensor.getRequestCount());
+		assertEquals(2, sensor.getRequestCount(Code.PUT));
+		assertEquals(1, sensor.getRequestCount(Code.GET));
+		assertEquals(0, sensor.getRequestCount(Code.POST));
+		assertEquals(2, metrics.getAllResourceMetrics().size());
+		assertEquals("/PIOT/ConstrainedDevice/ActuatorCmd", metrics.getAllResourceMetrics().get(0).getUri());
+	}
+
+	@Test
+	public void testHistogramBuckets()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		histogram.record(500L);                              // < 1 us
+		histogram.record(TimeUnit.MICROSECONDS.toNanos(1));  // [1, 2) us
+		histogram.record(TimeUnit.MICROSECONDS.toNanos(3));  // [2, 4) us
+		histogram.record(TimeUnit.HOURS.toNanos(1));         // last
+		histogram.record(-1L);                               // as 0
+
+		assertEquals(5, histogram.getCount());
+		assertEquals(2, histogram.getBucketCount(0));
+		assertEquals(1, histogram.getBucketCount(1));
+		assertEquals(1, histogram.getBucketCount(2));
+		assertEquals(1, histogram.getBucketCount(LatencyHistogram.BUCKET_COUNT - 1));
+		assertEquals(TimeUnit.HOURS.toMillis(1), histogram.getMaxMillis(), 0.001);
+	}
+
+	@Test
+	public void testHistogramPercentiles()
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		assertEquals(0.0, histogram.getPercentileMillis(50.0), 0.0);
+
+		// 90 values of 0.1 ms, in [64, 128) us, and 10 of 5 ms, in [4096, 8192) us
+		for (int i = 0; i < 90; i++) {
+			histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+		}
+
+		for (int i = 0; i < 10; i++) {
+			histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+		}
+
+		assertEquals(0.128, histogram.getPercentileMillis(50.0), 0.0);
+		assertEquals(0.128, histogram.getPercentileMillis(90.0), 0.0);
+		assertEquals(8.192, histogram.getPercentileMillis(99.0), 0.0);
+		assertEquals(0.59, histogram.getMeanMillis(), 0.001);
+	}
+}
@@ -0,0 +1,121 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.CoapRequestDispatcher;
+import programmingtheiot.gda.connection.CoapRequestDispatcher.Mode;
+
+/**
+ * This test case class contains basic unit tests for
+ * CoapRequestDispatcher.
+ *
+ */
+public class CoapRequestDispatcherTest
+{
+	// test methods
+
+	@Test
+	public void testInlineModeRunsOnCallingThread()
+	{
+		CoapRequestDispatcher dispatcher = new CoapRequestDispatcher(Mode.INLINE, 1, 1, 1);
+		Thread caller = Thread.currentThread();
+		AtomicInteger runCount = new AtomicInteger();
+
+		assertTrue(dispatcher.dispatch(() -> {
+			assertSame(caller, Thread.currentThread());
+			runCount.incrementAndGet();
+		}));
+
+		assertEquals(1, runCount.get());
+		assertEquals(0, dispatcher.getDispatchedCount());
+	}
+
+	@Test
+	public void testFullQueueRejects() throws InterruptedException
+	{
+		CoapRequestDispatcher dispatcher = new CoapRequestDispatcher(Mode.ACK, 1, 2, 3);
+		CountDownLatch running = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger runCount = new AtomicInteger();
+
+		// stopped - rejects
+		assertFalse(dispatcher.dispatch(runCount::incrementAndGet));
+
+		dispatcher.start();
+
+		assertTrue(dispatcher.dispatch(() -> {
+			running.countDown();
+			await(release);
+			runCount.incrementAndGet();
+		}));
+		assertTrue(running.await(5, TimeUnit.SECONDS));
+
+		assertTrue(dispatcher.dispatch(runCount::incrementAndGet));
+		assertTrue(dispatcher.dispatch(runCount::incrementAndGet));
+		assertFalse(dispatcher.dispatch(runCount::incrementAndGet));
+
+		assertEquals(2, dispatcher.getQueueDepth());
+		assertEquals(2, dispatcher.getRejectedCount());
+		assertEquals(3, dispatcher.getRetryAfterSecs());
+
+		release.countDown();
+		dispatcher.stop(5000L);
+
+		assertEquals(3, runCount.get());
+		assertEquals(3, dispatcher.getDispatchedCount());
+	}
+
+	@Test
+	public void testFailedTaskCounted() throws InterruptedException
+	{
+		CoapRequestDispatcher dispatcher = new CoapRequestDispatcher(Mode.SEPARATE, 1, 10, 1);
+		dispatcher.start();
+
+		assertTrue(dispatcher.dispatch(() -> {
+			throw new IllegalStateException("Test");
+		}));
+
+		dispatcher.stop(5000L);
+
+		assertEquals(1, dispatcher.getFailedCount());
+	}
+
+	@Test
+	public void testProtocolThreadOccupancy() throws InterruptedException
+	{
+		CoapRequestDispatcher dispatcher = new CoapRequestDispatcher(Mode.INLINE, 1, 1, 1);
+		dispatcher.setProtocolThreadCount(2);
+		dispatcher.sampleProtocolThreadOccupancy();
+
+		Thread.sleep(100L);
+
+		// 50 ms busy over ~100 ms on 2 threads
+		dispatcher.recordProtocolThreadTime(TimeUnit.MILLISECONDS.toNanos(50L));
+
+		double occupancy = dispatcher.sampleProtocolThreadOccupancy();
+
+		assertTrue(String.valueOf(occupancy), occupancy > 0.1 && occupancy <= 0.25);
+		assertEquals(50000.0, dispatcher.getAvgProtocolThreadMicros(), 0.001);
+
+		// nothing recorded since
+		assertEquals(0.0, dispatcher.sampleProtocolThreadOccupancy(), 0.0);
+	}
+
+
+	// private methods
+
+	private static void await(CountDownLatch latch)
+	{
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
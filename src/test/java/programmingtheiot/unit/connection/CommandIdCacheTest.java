@@ -0,0 +1,59 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.CommandIdCache;
+
+/**
+ * This test case class contains basic unit tests for
+ * CommandIdCache.
+ *
+ */
+public class CommandIdCacheTest
+{
+	// test methods
+
+	@Test
+	public void testDuplicateIdRejected()
+	{
+		CommandIdCache cache = new CommandIdCache(100, 60000L);
+
+		assertTrue(cache.markSeen("cmd-1"));
+		assertTrue(cache.markSeen("cmd-2"));
+		assertFalse(cache.markSeen("cmd-1"));
+
+		assertEquals(1, cache.getDuplicateCount());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testIdExpiresAfterTtl() throws InterruptedException
+	{
+		CommandIdCache cache = new CommandIdCache(100, 50L);
+
+		assertTrue(cache.markSeen("cmd-1"));
+
+		Thread.sleep(100L);
+
+		assertEquals(0, cache.size());
+		assertTrue(cache.markSeen("cmd-1"));
+	}
+
+	@Test
+	public void testOldestIdEvictedWhenFull()
+	{
+		CommandIdCache cache = new CommandIdCache(3, 60000L);
+
+		for (int i = 1; i <= 4; i++) {
+			assertTrue(cache.markSeen("cmd-" + i));
+		}
+
+		assertEquals(3, cache.size());
+
+		// cmd-1 was evicted, the others are still remembered
+		assertTrue(cache.markSeen("cmd-1"));
+		assertFalse(cache.markSeen("cmd-4"));
+	}
+}
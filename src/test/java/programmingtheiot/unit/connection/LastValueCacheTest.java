@@ -0,0 +1,80 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.LastValueCache;
+
+/**
+ * This test case class contains basic unit tests for
+ * LastValueCache.
+ *
+ */
+public class LastValueCacheTest
+{
+	// test methods
+	
+	@Test
+	public void testLatestValueReplacesPrevious()
+	{
+		LastValueCache cache = new LastValueCache(4096);
+		
+		assertTrue(cache.put("a", new byte[] { 1 }, 1, true));
+		assertTrue(cache.put("a", new byte[] { 2, 3 }, 0, true));
+		
+		assertEquals(1, cache.size());
+		assertArrayEquals(new byte[] { 2, 3 }, cache.get("a").getPayload());
+		assertEquals(0, cache.get("a").getQos());
+		assertNull(cache.get("b"));
+	}
+	
+	@Test
+	public void testMemoryCapEvictsLeastRecentlyUsed()
+	{
+		LastValueCache cache = new LastValueCache(1024);
+		
+		cache.put("a", new byte[300], 1, true);
+		cache.put("b", new byte[300], 1, true);
+		
+		// touch 'a' so 'b' is the least recently used
+		assertNotNull(cache.get("a"));
+		
+		cache.put("c", new byte[300], 1, true);
+		
+		assertTrue(cache.getSizeInBytes() <= cache.getMaxBytes());
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+	
+	@Test
+	public void testOversizedPayloadIsNotCached()
+	{
+		LastValueCache cache = new LastValueCache(256);
+		
+		cache.put("a", new byte[10], 1, true);
+		
+		assertFalse(cache.put("a", new byte[1024], 1, true));
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.getSizeInBytes());
+	}
+	
+	@Test
+	public void testOutboundEntries()
+	{
+		LastValueCache cache = new LastValueCache(4096);
+		
+		cache.put("out", new byte[] { 1 }, 1, true);
+		cache.put("in", new byte[] { 2 }, 1, false);
+		
+		List<LastValueCache.Entry> entries = cache.getEntries(true);
+		
+		assertEquals(1, entries.size());
+		assertEquals("out", entries.get(0).getTopic());
+		assertEquals(2, cache.getEntries(false).size());
+	}
+}
@@ -0,0 +1,241 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import programmingtheiot.common.IDataMessageListener;
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.gda.connection.ICloudClient;
+import programmingtheiot.gda.connection.PrioritizedCloudClient;
+import programmingtheiot.gda.connection.PrioritizedCloudClient.Priority;
+
+/**
+ * This test case class contains basic unit tests for
+ * PrioritizedCloudClient.
+ *
+ */
+public class PrioritizedCloudClientTest
+{
+	// static
+
+	public static final ResourceNameEnum TEST_RESOURCE = ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE;
+	public static final int[] DEFAULT_WEIGHTS = { 8, 4, 2, 1 };
+
+
+	// test methods
+
+	@Test
+	public void testAlertsSentBeforeQueuedBackfill() throws InterruptedException
+	{
+		RecordingCloudClient client = new RecordingCloudClient(0L);
+		PrioritizedCloudClient scheduler = new PrioritizedCloudClient(client, DEFAULT_WEIGHTS, 1000, 60000L);
+
+		assertTrue(scheduler.connectClient());
+
+		// the first backfill send blocks the worker while the rest queue up
+		for (int i = 0; i < 50; i++) {
+			assertTrue(scheduler.sendEdgeDataToCloud(Priority.BACKFILL, TEST_RESOURCE, createSensorData("backfill", false)));
+		}
+
+		assertTrue(client.awaitBlocked());
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("telemetry", false)));
+		}
+
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("alert", true)));
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("alert", true)));
+
+		client.release();
+		scheduler.disconnectClient();
+
+		assertEquals(57, client.sent.size());
+		assertEquals("backfill", client.sent.get(0));
+		assertEquals("alert", client.sent.get(1));
+		assertEquals("alert", client.sent.get(2));
+		assertEquals("telemetry", client.sent.get(3));
+
+		assertEquals(2, scheduler.getSentCount(Priority.ALERT));
+		assertEquals(50, scheduler.getSentCount(Priority.BACKFILL));
+		assertTrue(scheduler.getAvgQueueLatencyMillis(Priority.ALERT) < scheduler.getAvgQueueLatencyMillis(Priority.BACKFILL));
+	}
+
+	@Test
+	public void testStarvedClassIsPromoted() throws InterruptedException
+	{
+		RecordingCloudClient client = new RecordingCloudClient(1L);
+		PrioritizedCloudClient scheduler = new PrioritizedCloudClient(client, new int[] { 1000, 1, 1, 1 }, 1000, 20L);
+
+		assertTrue(scheduler.connectClient());
+
+		client.release();
+
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("alert", true)));
+		assertTrue(scheduler.sendEdgeDataToCloud(Priority.BACKFILL, TEST_RESOURCE, createSensorData("backfill", false)));
+
+		for (int i = 0; i < 300; i++) {
+			scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("alert", true));
+		}
+
+		scheduler.disconnectClient();
+
+		// by weight alone backfill would wait for ~300 alerts (~300 ms)
+		assertTrue(client.sent.indexOf("backfill") < 150);
+		assertEquals(1, scheduler.getPromotedCount(Priority.BACKFILL));
+	}
+
+	@Test
+	public void testFullQueueDropsOnlyThatClass() throws InterruptedException
+	{
+		RecordingCloudClient client = new RecordingCloudClient(0L);
+		PrioritizedCloudClient scheduler = new PrioritizedCloudClient(client, DEFAULT_WEIGHTS, 2, 60000L);
+
+		assertTrue(scheduler.connectClient());
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("telemetry", false)));
+		assertTrue(client.awaitBlocked());
+
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("telemetry", false)));
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("telemetry", false)));
+		assertFalse(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("telemetry", false)));
+		assertTrue(scheduler.sendEdgeDataToCloud(TEST_RESOURCE, createSensorData("alert", true)));
+
+		assertEquals(1, scheduler.getDroppedCount(Priority.TELEMETRY));
+		assertEquals(2, scheduler.getQueueDepth(Priority.TELEMETRY));
+
+		client.release();
+		scheduler.disconnectClient();
+
+		assertEquals(4, client.sent.size());
+	}
+
+	@Test
+	public void testActuatorPayloadsClassified()
+	{
+		RecordingCloudClient client = new RecordingCloudClient(0L);
+		PrioritizedCloudClient scheduler = new PrioritizedCloudClient(client, DEFAULT_WEIGHTS, 10, 60000L);
+
+		client.release();
+		scheduler.connectClient();
+		scheduler.sendEdgeDataToCloud(ResourceNameEnum.CDA_ACTUATOR_RESPONSE_RESOURCE, new byte[] { '{', '}' });
+		scheduler.disconnectClient();
+
+		assertEquals(1, scheduler.getSentCount(Priority.ACTUATOR));
+	}
+
+
+	// private methods
+
+	private SensorData createSensorData(String name, boolean hasError)
+	{
+		SensorData data = new SensorData();
+		data.setName(name);
+		data.setHasError(hasError);
+
+		return data;
+	}
+
+
+	// inner classes
+
+	/**
+	 * Records the names of the readings it sends. The first send blocks
+	 * until release() is called.
+	 */
+	private static class RecordingCloudClient implements ICloudClient
+	{
+		final List<String> sent = new CopyOnWriteArrayList<>();
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch released = new CountDownLatch(1);
+		final long sendMillis;
+
+		RecordingCloudClient(long sendMillis)
+		{
+			this.sendMillis = sendMillis;
+		}
+
+		boolean awaitBlocked() throws InterruptedException
+		{
+			return this.blocked.await(5, TimeUnit.SECONDS);
+		}
+
+		void release()
+		{
+			this.released.countDown();
+		}
+
+		@Override
+		public boolean connectClient()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean disconnectClient()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SensorData data)
+		{
+			return record(data.getName());
+		}
+
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, SystemPerformanceData data)
+		{
+			return record(data.getName());
+		}
+
+		@Override
+		public boolean sendEdgeDataToCloud(ResourceNameEnum resource, byte[] payload)
+		{
+			return record(resource.name());
+		}
+
+		@Override
+		public boolean subscribeToCloudEvents(ResourceNameEnum resource)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean unsubscribeFromCloudEvents(ResourceNameEnum resource)
+		{
+			return true;
+		}
+
+		@Override
+		public boolean setDataMessageListener(IDataMessageListener listener)
+		{
+			return true;
+		}
+
+		private boolean record(String name)
+		{
+			this.blocked.countDown();
+
+			try {
+				this.released.await();
+
+				if (this.sendMillis > 0L) {
+					Thread.sleep(this.sendMillis);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			this.sent.add(name);
+
+			return true;
+		}
+	}
+}
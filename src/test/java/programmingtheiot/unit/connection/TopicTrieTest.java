@@ -0,0 +1,120 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.TopicTrie;
+
+/**
+ * This test case class contains basic unit tests for
+ * TopicTrie.
+ *
+ */
+public class TopicTrieTest
+{
+	// member var's
+	
+	private TopicTrie<String> trie = null;
+	
+	
+	// test setup methods
+	
+	@Before
+	public void setUp() throws Exception
+	{
+		this.trie = new TopicTrie<>();
+		
+		this.trie.add("PIOT/ConstrainedDevice/SensorMsg", "exact");
+		this.trie.add("PIOT/+/SensorMsg", "single");
+		this.trie.add("PIOT/#", "multi");
+		this.trie.add("#", "all");
+		this.trie.add("$share/gda/PIOT/GatewayDevice/+", "shared");
+	}
+	
+	
+	// test methods
+	
+	@Test
+	public void testExactAndWildcardMatches()
+	{
+		assertMatches("PIOT/ConstrainedDevice/SensorMsg", "exact", "single", "multi", "all");
+		assertMatches("PIOT/GatewayDevice/SensorMsg", "single", "multi", "all", "shared");
+		assertMatches("PIOT/ConstrainedDevice/ActuatorCmd", "multi", "all");
+		assertMatches("Other/Topic", "all");
+	}
+	
+	@Test
+	public void testMultiLevelMatchesParent()
+	{
+		// 'PIOT/#' also matches 'PIOT'
+		assertMatches("PIOT", "multi", "all");
+	}
+	
+	@Test
+	public void testSingleLevelDoesNotSpanLevels()
+	{
+		assertMatches("PIOT/A/B/SensorMsg", "multi", "all");
+	}
+	
+	@Test
+	public void testSysTopicsNotMatchedByLeadingWildcard()
+	{
+		this.trie.add("$SYS/#", "sys");
+		
+		assertMatches("$SYS/broker/uptime", "sys");
+	}
+	
+	@Test
+	public void testRemoveAndCacheInvalidation()
+	{
+		String topic = "PIOT/ConstrainedDevice/SensorMsg";
+		
+		// populate the cache
+		assertEquals(4, this.trie.match(topic).size());
+		
+		assertEquals(0, this.trie.remove("PIOT/+/SensorMsg", "single"));
+		assertEquals(-1, this.trie.remove("PIOT/+/SensorMsg", "single"));
+		
+		assertMatches(topic, "exact", "multi", "all");
+		
+		this.trie.add("PIOT/+/SensorMsg", "single2");
+		
+		assertMatches(topic, "exact", "single2", "multi", "all");
+		assertEquals(5, this.trie.getFilterCount());
+	}
+	
+	@Test
+	public void testMultipleHandlersPerFilter()
+	{
+		assertTrue(this.trie.add("PIOT/+/SensorMsg", "single2"));
+		assertFalse(this.trie.add("PIOT/+/SensorMsg", "single2"));
+		
+		assertEquals(1, this.trie.remove("PIOT/+/SensorMsg", "single"));
+		assertMatches("PIOT/X/SensorMsg", "single2", "multi", "all");
+	}
+	
+	@Test
+	public void testInvalidFilters()
+	{
+		assertFalse(this.trie.add("PIOT/#/SensorMsg", "bad"));
+		assertFalse(this.trie.add("PIOT/Sensor+", "bad"));
+		assertFalse(this.trie.add("", "bad"));
+	}
+	
+	
+	// private methods
+	
+	private void assertMatches(String topic, String ... expected)
+	{
+		List<String> handlers = this.trie.match(topic);
+		
+		assertEquals(new HashSet<>(Arrays.asList(expected)), new HashSet<>(handlers));
+		assertEquals(expected.length, handlers.size());
+	}
+}
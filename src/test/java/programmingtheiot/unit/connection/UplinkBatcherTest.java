@@ -0,0 +1,207 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeAndValuePayloadBatch;
+import programmingtheiot.gda.connection.UplinkBatcher;
+
+/**
+ * This test case class contains basic unit tests for
+ * UplinkBatcher.
+ *
+ */
+public class UplinkBatcherTest
+{
+	// static
+
+	private static final ResourceNameEnum TEST_RESOURCE = ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE;
+
+	private static class RecordingSink implements UplinkBatcher.IBatchSink
+	{
+		List<byte[]> payloads = new ArrayList<>();
+		List<Integer> counts = new ArrayList<>();
+
+		@Override
+		public synchronized boolean publishBatch(ResourceNameEnum resource, byte[] payload, int count)
+		{
+			this.payloads.add(payload);
+			this.counts.add(count);
+
+			return true;
+		}
+	}
+
+
+	// test methods
+
+	@Test
+	public void testFlushOnMaxBatchSize()
+	{
+		RecordingSink sink = new RecordingSink();
+		UplinkBatcher batcher = new UplinkBatcher(sink, 3, 60000L, UplinkBatcher.Format.JSON);
+
+		for (int i = 0; i < 7; i++) {
+			assertTrue(batcher.add(TEST_RESOURCE, createSensorData("TempSensor", i)));
+		}
+
+		assertEquals(2, sink.payloads.size());
+		assertEquals(1, batcher.getQueuedCount());
+
+		List<SensorData> decoded = DataUtil.getInstance().jsonBytesToSensorDataList(sink.payloads.get(1));
+
+		assertEquals(3, decoded.size());
+		assertEquals(3.0f, decoded.get(0).getValue(), 0.0f);
+		assertEquals(5.0f, decoded.get(2).getValue(), 0.0f);
+
+		assertEquals(1, batcher.flushAll());
+		assertEquals(0, batcher.getQueuedCount());
+		assertEquals(7, batcher.getItemCount());
+		assertEquals(3, batcher.getBatchCount());
+	}
+
+	@Test
+	public void testFlushOnInterval() throws InterruptedException
+	{
+		RecordingSink sink = new RecordingSink();
+		UplinkBatcher batcher = new UplinkBatcher(sink, 100, 50L, UplinkBatcher.Format.JSON);
+
+		batcher.start();
+
+		try {
+			batcher.add(TEST_RESOURCE, createSensorData("TempSensor", 1));
+			batcher.add(TEST_RESOURCE, createSensorData("TempSensor", 2));
+
+			long deadline = System.currentTimeMillis() + 2000L;
+
+			while (batcher.getBatchCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10L);
+			}
+
+			assertEquals(1, batcher.getBatchCount());
+			assertEquals(Integer.valueOf(2), sink.counts.get(0));
+		} finally {
+			batcher.stop();
+		}
+	}
+
+	@Test
+	public void testFlushIntervalChange() throws InterruptedException
+	{
+		RecordingSink sink = new RecordingSink();
+		UplinkBatcher batcher = new UplinkBatcher(sink, 100, 50L, UplinkBatcher.Format.JSON);
+
+		batcher.start();
+
+		try {
+			// held longer while the interval is raised
+			batcher.setFlushMillis(60000L);
+			batcher.add(TEST_RESOURCE, createSensorData("TempSensor", 1));
+
+			Thread.sleep(250L);
+
+			assertEquals(0, batcher.getBatchCount());
+			assertEquals(60000L, batcher.getFlushMillis());
+
+			batcher.setFlushMillis(50L);
+
+			long deadline = System.currentTimeMillis() + 2000L;
+
+			while (batcher.getBatchCount() == 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10L);
+			}
+
+			assertEquals(1, batcher.getBatchCount());
+		} finally {
+			batcher.stop();
+		}
+	}
+
+	@Test
+	public void testColumnarFormatGroupsSeries()
+	{
+		RecordingSink sink = new RecordingSink();
+		UplinkBatcher batcher = new UplinkBatcher(sink, 4, 60000L, UplinkBatcher.Format.COLUMNAR);
+
+		batcher.add(TEST_RESOURCE, createSensorData("CpuUtil", 10));
+		batcher.add(TEST_RESOURCE, createSensorData("MemUtil", 20));
+		batcher.add(TEST_RESOURCE, createSensorData("CpuUtil", 11));
+		batcher.add(TEST_RESOURCE, createSensorData("MemUtil", 21));
+
+		assertEquals(1, sink.payloads.size());
+
+		JsonObject envelope = JsonParser.parseString(
+			new String(sink.payloads.get(0), StandardCharsets.UTF_8)).getAsJsonObject();
+
+		assertEquals(4, envelope.get("count").getAsInt());
+
+		JsonArray series = envelope.getAsJsonArray("series");
+
+		assertEquals(2, series.size());
+
+		JsonObject cpu = series.get(0).getAsJsonObject();
+
+		assertEquals("CpuUtil", cpu.get("name").getAsString());
+		assertEquals(2, cpu.getAsJsonArray("timeStamps").size());
+		assertEquals(11.0f, cpu.getAsJsonArray("values").get(1).getAsFloat(), 0.0f);
+	}
+
+	@Test
+	public void testTimeValueBinaryFormatRoundTrips()
+	{
+		RecordingSink sink = new RecordingSink();
+		UplinkBatcher batcher = new UplinkBatcher(sink, 3, 60000L, UplinkBatcher.Format.TIMEVALUE_BINARY);
+
+		batcher.add(TEST_RESOURCE, createSensorData("CpuUtil", 10));
+		batcher.add(TEST_RESOURCE, createSensorData("MemUtil", 20));
+		batcher.add(TEST_RESOURCE, createSensorData("CpuUtil", 11));
+
+		assertEquals(1, sink.payloads.size());
+
+		List<TimeAndValuePayloadBatch> batchList = TimeAndValuePayloadBatch.fromBinaryBytes(sink.payloads.get(0));
+
+		assertEquals(2, batchList.size());
+		assertEquals(2, batchList.get(0).size());
+		assertEquals(11.0f, batchList.get(0).getValue(1), 0.0f);
+		assertEquals("MemUtil", batchList.get(1).getName());
+	}
+
+	@Test
+	public void testColumnarFormatIsSmallerThanJson()
+	{
+		List<SensorData> batch = new ArrayList<>();
+
+		for (int i = 0; i < 50; i++) {
+			batch.add(createSensorData("TempSensor", i));
+		}
+
+		int jsonSize = DataUtil.getInstance().sensorDataListToJsonBytes(batch).length;
+		int columnarSize = DataUtil.getInstance().sensorDataListToColumnarJsonBytes(batch).length;
+
+		assertTrue(columnarSize * 3 < jsonSize);
+	}
+
+
+	// private methods
+
+	private SensorData createSensorData(String name, float value)
+	{
+		SensorData data = new SensorData();
+		data.setName(name);
+		data.setValue(value);
+
+		return data;
+	}
+}
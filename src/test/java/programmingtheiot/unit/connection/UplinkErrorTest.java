@@ -0,0 +1,54 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.UplinkError;
+
+/**
+ * This test case class contains basic unit tests for
+ * UplinkError.
+ *
+ */
+public class UplinkErrorTest
+{
+	// test methods
+
+	@Test
+	public void testClassifyMqttExceptions()
+	{
+		assertEquals(UplinkError.QUEUE_FULL, classify(MqttException.REASON_CODE_MAX_INFLIGHT));
+		assertEquals(UplinkError.NOT_CONNECTED, classify(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED));
+		assertEquals(UplinkError.CONNECTION_LOST, classify(MqttException.REASON_CODE_CONNECTION_LOST));
+		assertEquals(UplinkError.TIMEOUT, classify(MqttException.REASON_CODE_CLIENT_TIMEOUT));
+		assertEquals(UplinkError.REJECTED, classify(MqttException.REASON_CODE_NOT_AUTHORIZED));
+		assertEquals(UplinkError.UNKNOWN, classify(MqttException.REASON_CODE_UNEXPECTED_ERROR));
+	}
+
+	@Test
+	public void testClassifyOtherCauses()
+	{
+		assertEquals(UplinkError.INVALID_MESSAGE, UplinkError.classify(new IllegalArgumentException("bad topic")));
+		assertEquals(UplinkError.UNKNOWN, UplinkError.classify(new RuntimeException()));
+		assertEquals(UplinkError.UNKNOWN, UplinkError.classify(null));
+	}
+
+	@Test
+	public void testRetryable()
+	{
+		assertTrue(UplinkError.QUEUE_FULL.isRetryable());
+		assertTrue(UplinkError.CONNECTION_LOST.isRetryable());
+		assertFalse(UplinkError.REJECTED.isRetryable());
+		assertFalse(UplinkError.INVALID_MESSAGE.isRetryable());
+	}
+
+
+	// private methods
+
+	private UplinkError classify(int reasonCode)
+	{
+		return UplinkError.classify(new MqttException(reasonCode));
+	}
+}
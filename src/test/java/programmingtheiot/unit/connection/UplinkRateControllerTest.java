@@ -0,0 +1,117 @@
+package programmingtheiot.unit.connection;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import programmingtheiot.gda.connection.UplinkError;
+import programmingtheiot.gda.connection.UplinkRateController;
+
+/**
+ * This test case class contains basic unit tests for
+ * UplinkRateController.
+ *
+ */
+public class UplinkRateControllerTest
+{
+	// test methods
+
+	@Test
+	public void testSlowAckHalvesRateOncePerInterval()
+	{
+		UplinkRateController controller = new UplinkRateController(1.0, 100.0, 10.0, 1000L);
+
+		assertEquals(100.0, controller.getCurrentRate(), 0.001);
+
+		controller.onUplinkComplete("t", 100, 1500L);
+
+		assertEquals(50.0, controller.getCurrentRate(), 0.001);
+
+		// same congestion event - ignored until the hold interval passes
+		controller.onUplinkComplete("t", 100, 1500L);
+		controller.onUplinkFailed("t", UplinkError.TIMEOUT, null);
+
+		assertEquals(50.0, controller.getCurrentRate(), 0.001);
+		assertEquals(1, controller.getDecreaseCount());
+	}
+
+	@Test
+	public void testRepeatedCongestionBottomsOutAtMinRate() throws InterruptedException
+	{
+		UplinkRateController controller = new UplinkRateController(10.0, 100.0, 10.0, 1L);
+
+		for (int i = 0; i < 6; i++) {
+			controller.onUplinkFailed("t", UplinkError.CONNECTION_LOST, null);
+			Thread.sleep(5L);
+		}
+
+		assertEquals(10.0, controller.getCurrentRate(), 0.001);
+	}
+
+	@Test
+	public void testHealthyAcksIncreaseRateAdditively() throws InterruptedException
+	{
+		UplinkRateController controller = new UplinkRateController(1.0, 100.0, 10.0, 50L);
+
+		controller.onUplinkFailed("t", UplinkError.QUEUE_FULL, null);
+
+		double reducedRate = controller.getCurrentRate();
+
+		assertEquals(50.0, reducedRate, 0.001);
+
+		// ~rate acks per second of healthy traffic should add ~increaseStep
+		for (int i = 0; i < 50; i++) {
+			controller.onUplinkComplete("t", 100, 5L);
+		}
+
+		assertTrue(controller.getCurrentRate() > reducedRate + 9.0);
+		assertTrue(controller.getCurrentRate() < reducedRate + 11.0);
+	}
+
+	@Test
+	public void testNonCongestionFailuresIgnored()
+	{
+		UplinkRateController controller = new UplinkRateController(1.0, 100.0, 10.0, 1000L);
+
+		controller.onUplinkFailed("t", UplinkError.REJECTED, null);
+		controller.onUplinkFailed("t", UplinkError.INVALID_MESSAGE, null);
+
+		assertEquals(100.0, controller.getCurrentRate(), 0.001);
+	}
+
+	@Test
+	public void testBatchSizeGrowsAsRateFalls()
+	{
+		UplinkRateController controller = new UplinkRateController(1.0, 100.0, 10.0, 1000L);
+		AtomicInteger batchSize = new AtomicInteger();
+
+		controller.setBatchSizeListener(10, batchSize::set);
+
+		assertEquals(10, batchSize.get());
+
+		controller.onUplinkFailed("t", UplinkError.TIMEOUT, null);
+
+		assertEquals(20, batchSize.get());
+		assertEquals(20, controller.getBatchSizeHint());
+	}
+
+	@Test
+	public void testTokenBucketLimitsBurst()
+	{
+		UplinkRateController controller = new UplinkRateController(1.0, 100.0, 10.0, 1000L);
+
+		// bucket holds 0.1 s worth at 100 msg/s
+		int allowed = 0;
+
+		for (int i = 0; i < 100; i++) {
+			if (controller.tryAcquire()) {
+				++allowed;
+			}
+		}
+
+		assertTrue(allowed >= 10 && allowed <= 12);
+		assertTrue(controller.acquire(1000L));
+	}
+}
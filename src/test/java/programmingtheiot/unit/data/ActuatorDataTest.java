@@ -92,6 +92,20 @@ public class ActuatorDataTest
 		assertTrue(ad.getValue() == DEFAULT_VAL);
 	}
 	
+	@Test
+	public void testCommandIdCopiedOnUpdate()
+	{
+		ActuatorData ad = new ActuatorData();
+		ActuatorData ad2 = createTestData();
+		ad2.setCommandID("cmd-1");
+		
+		assertEquals(ad.getCommandID(), "");
+		
+		ad.updateData(ad2);
+		
+		assertEquals(ad.getCommandID(), "cmd-1");
+	}
+	
 	
 	// private
 	
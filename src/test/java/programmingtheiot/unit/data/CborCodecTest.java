@@ -0,0 +1,231 @@
+package programmingtheiot.unit.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import programmingtheiot.data.ActuatorData;
+import programmingtheiot.data.CborCodec;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadFormat;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+import programmingtheiot.data.SystemStateData;
+
+/**
+ * This test case class contains basic unit tests for
+ * CborCodec and the DataUtil CBOR conversions.
+ *
+ */
+public class CborCodecTest
+{
+	// static
+
+	public static final long TIMESTAMP_MILLIS = 1700000000123L;
+
+
+	// test methods
+
+	@Test
+	public void testSensorDataRoundTrip()
+	{
+		float[] values = { 22.5f, 0.0f, -0.0f, 22.53f, -40.125f, 65504.0f, 1.0e-7f, 3.4e38f,
+			Float.NaN, Float.POSITIVE_INFINITY, Float.MIN_VALUE };
+
+		for (float value : values) {
+			SensorData data = createSensorData(value);
+			byte[] payload = DataUtil.getInstance().sensorDataToCborBytes(data);
+
+			assertTrue(CborCodec.isEncoded(payload));
+
+			SensorData decoded = DataUtil.getInstance().cborBytesToSensorData(payload);
+
+			assertEquals(data.getName(), decoded.getName());
+			assertEquals(data.getTypeID(), decoded.getTypeID());
+			assertEquals(data.getLocationID(), decoded.getLocationID());
+			assertEquals(TIMESTAMP_MILLIS, decoded.getTimeStampMillis());
+			assertEquals(data.getStatusCode(), decoded.getStatusCode());
+			assertEquals(Float.floatToIntBits(value), Float.floatToIntBits(decoded.getValue()));
+		}
+	}
+
+	@Test
+	public void testShortestFloatEncoding()
+	{
+		// 22.5 fits a half precision float, 22.53 needs single precision
+		int halfSize = DataUtil.getInstance().sensorDataToCborBytes(createSensorData(22.5f)).length;
+		int singleSize = DataUtil.getInstance().sensorDataToCborBytes(createSensorData(22.53f)).length;
+
+		assertEquals(2, singleSize - halfSize);
+	}
+
+	@Test
+	public void testActuatorAndSystemPerformanceDataRoundTrip()
+	{
+		ActuatorData ad = new ActuatorData();
+		ad.setName("HvacActuator");
+		ad.setCommand(1);
+		ad.setValue(21.75f);
+		ad.setStateData("Température OK");
+		ad.setCommandID("cmd-0042");
+		ad.setAsResponse();
+		ad.setStatusData(-3, true);
+		ad.setTimeStampMillis(TIMESTAMP_MILLIS);
+
+		ActuatorData adDecoded = DataUtil.getInstance().cborBytesToActuatorData(
+			DataUtil.getInstance().actuatorDataToCborBytes(ad));
+
+		assertEquals(ad.getCommand(), adDecoded.getCommand());
+		assertEquals(ad.getValue(), adDecoded.getValue(), 0.0f);
+		assertEquals(ad.getStateData(), adDecoded.getStateData());
+		assertEquals(ad.getCommandID(), adDecoded.getCommandID());
+		assertTrue(adDecoded.isResponseFlagEnabled());
+		assertEquals(-3, adDecoded.getStatusCode());
+		assertTrue(adDecoded.hasError());
+		assertEquals(TIMESTAMP_MILLIS, adDecoded.getTimeStampMillis());
+
+		SystemPerformanceData spd = new SystemPerformanceData();
+		spd.setCpuUtilization(12.5f);
+		spd.setDiskUtilization(63.1f);
+		spd.setMemoryUtilization(47.25f);
+
+		SystemPerformanceData spdDecoded = DataUtil.getInstance().cborBytesToSystemPerformanceData(
+			DataUtil.getInstance().systemPerformanceDataToCborBytes(spd));
+
+		assertEquals(spd.getCpuUtilization(), spdDecoded.getCpuUtilization(), 0.0f);
+		assertEquals(spd.getDiskUtilization(), spdDecoded.getDiskUtilization(), 0.0f);
+		assertEquals(spd.getMemoryUtilization(), spdDecoded.getMemoryUtilization(), 0.0f);
+	}
+
+	@Test
+	public void testSystemStateDataRoundTrip()
+	{
+		SystemStateData ssd = new SystemStateData();
+		ssd.setCommand(2);
+		ssd.setStateData(7);
+
+		for (int i = 0; i < 100; i++) {
+			ssd.addSensorData(createSensorData(i * 0.5f));
+		}
+
+		SystemPerformanceData spd = new SystemPerformanceData();
+		spd.setCpuUtilization(99.0f);
+		ssd.addSystemPerformanceData(spd);
+
+		byte[] cbor = DataUtil.getInstance().systemStateDataToCborBytes(ssd);
+		byte[] json = DataUtil.getInstance().systemStateDataToJsonBytes(ssd);
+
+		assertTrue(cbor.length < json.length);
+
+		SystemStateData decoded = DataUtil.getInstance().cborBytesToSystemStateData(cbor);
+
+		assertEquals(2, decoded.getCommand());
+		assertEquals(7, decoded.getStateData());
+		assertEquals(100, decoded.getSensorDataList().size());
+		assertEquals(49.5f, decoded.getSensorDataList().get(99).getValue(), 0.0f);
+		assertEquals(99.0f, decoded.getSystemPerformanceDataList().get(0).getCpuUtilization(), 0.0f);
+	}
+
+	@Test
+	public void testListAndTranscode()
+	{
+		List<SensorData> dataList = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++) {
+			dataList.add(createSensorData(20.0f + i));
+		}
+
+		DataUtil dataUtil = DataUtil.getInstance();
+		byte[] cbor = dataUtil.dataListToBytes(dataList, PayloadFormat.CBOR);
+
+		assertTrue(dataUtil.isList(cbor, PayloadFormat.CBOR));
+		assertEquals(10, dataUtil.bytesToDataList(cbor, PayloadFormat.CBOR, SensorData.class).size());
+
+		byte[] json = dataUtil.transcode(cbor, PayloadFormat.CBOR, PayloadFormat.JSON, SensorData.class);
+		List<SensorData> fromJson = dataUtil.jsonBytesToSensorDataList(json);
+
+		assertEquals(10, fromJson.size());
+		assertEquals(29.0f, fromJson.get(9).getValue(), 0.0f);
+		assertEquals(TIMESTAMP_MILLIS, fromJson.get(9).getTimeStampMillis());
+
+		byte[] single = dataUtil.transcode(
+			dataUtil.sensorDataToJsonBytes(dataList.get(0)), PayloadFormat.JSON, PayloadFormat.CBOR, SensorData.class);
+
+		assertEquals(20.0f, dataUtil.cborBytesToSensorData(single).getValue(), 0.0f);
+	}
+
+	@Test
+	public void testFormatDetection()
+	{
+		SensorData data = createSensorData(1.0f);
+
+		assertEquals(PayloadFormat.CBOR, PayloadFormat.detect(DataUtil.getInstance().sensorDataToCborBytes(data)));
+		assertEquals(PayloadFormat.JSON, PayloadFormat.detect(DataUtil.getInstance().sensorDataToJsonBytes(data)));
+		assertEquals(PayloadFormat.CBOR, PayloadFormat.fromContentFormat(60));
+		assertNull(PayloadFormat.fromContentFormat(0));
+	}
+
+	@Test
+	public void testUnknownKeysSkippedAndInvalidPayloads()
+	{
+		// {"name":"X","extra":[1,{"a":h'00'}],"value":1.5} (indefinite length map)
+		byte[] payload = {
+			(byte) 0xBF,
+			0x64, 'n', 'a', 'm', 'e', 0x61, 'X',
+			0x65, 'e', 'x', 't', 'r', 'a', (byte) 0x82, 0x01, (byte) 0xA1, 0x61, 'a', 0x41, 0x00,
+			0x65, 'v', 'a', 'l', 'u', 'e', (byte) 0xF9, 0x3E, 0x00,
+			(byte) 0xFF };
+
+		SensorData decoded = CborCodec.decode(payload, SensorData.class);
+
+		assertEquals("X", decoded.getName());
+		assertEquals(1.5f, decoded.getValue(), 0.0f);
+
+		byte[] valid = DataUtil.getInstance().sensorDataToCborBytes(createSensorData(1.0f));
+		byte[] truncated = java.util.Arrays.copyOf(valid, valid.length - 1);
+
+		assertNull(CborCodec.decode(truncated, SensorData.class));
+		assertNull(CborCodec.decode(new byte[] { (byte) 0xA1, 0x01 }, SensorData.class));
+		assertNull(CborCodec.decode("{}".getBytes(), SensorData.class));
+	}
+
+	@Test
+	public void testDeeplyNestedPayloadRejected()
+	{
+		// {"extra":[[[...[0]...]]]} with 200000 nested arrays
+		int depth = 200000;
+		byte[] payload = new byte[depth + 8];
+
+		payload[0] = (byte) 0xA1;
+		payload[1] = 0x65;
+		System.arraycopy("extra".getBytes(), 0, payload, 2, 5);
+		java.util.Arrays.fill(payload, 7, 7 + depth, (byte) 0x81);
+		payload[7 + depth] = 0x00;
+
+		assertNull(CborCodec.decode(payload, SensorData.class));
+
+		// nesting within the limit is still skipped
+		byte[] shallow = java.util.Arrays.copyOf(payload, 7 + 20 + 1);
+
+		shallow[7 + 20] = 0x00;
+
+		assertNotNull(CborCodec.decode(shallow, SensorData.class));
+	}
+
+
+	// private methods
+
+	private SensorData createSensorData(float value)
+	{
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+		data.setTypeID(1);
+		data.setValue(value);
+		data.setTimeStampMillis(TIMESTAMP_MILLIS);
+
+		return data;
+	}
+}
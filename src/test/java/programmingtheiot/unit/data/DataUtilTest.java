@@ -10,6 +10,8 @@ package programmingtheiot.unit.data;
 
 import static org.junit.Assert.*;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Logger;
 
 import org.junit.Test;
@@ -142,4 +144,91 @@ public class DataUtilTest
 		assertTrue(data.getCommand() == data2.getCommand());
 	}
 	
+	@Test
+	public void testSensorDataToJsonBytesAndBack()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		SensorData data = new SensorData();
+		data.setName(DEFAULT_NAME + " \u00b0C");
+		data.setStatusCode(DEFAULT_STATUS);
+		data.setValue(DEFAULT_VAL);
+		
+		byte[] jsonBytes = dataUtil.sensorDataToJsonBytes(data);
+		
+		assertNotNull(jsonBytes);
+		
+		// must be identical to the String path, encoded as UTF-8
+		assertArrayEquals(dataUtil.sensorDataToJson(data).getBytes(StandardCharsets.UTF_8), jsonBytes);
+		
+		SensorData data2 = dataUtil.jsonBytesToSensorData(jsonBytes);
+		
+		assertEquals(data.getName(), data2.getName());
+		assertTrue(data.getStatusCode() == data2.getStatusCode());
+		assertTrue(data.getValue() == data2.getValue());
+	}
+	
+	@Test
+	public void testActuatorDataFromJsonByteBuffer()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		ActuatorData data = new ActuatorData();
+		data.setName(DEFAULT_NAME);
+		data.setCommand(DEFAULT_CMD);
+		data.setValue(DEFAULT_VAL);
+		
+		byte[] jsonBytes = dataUtil.actuatorDataToJsonBytes(data);
+		
+		// payload embedded in a larger buffer (heap and direct)
+		ByteBuffer heapBuf = ByteBuffer.allocate(jsonBytes.length + 8);
+		heapBuf.position(4);
+		heapBuf.put(jsonBytes);
+		heapBuf.flip().position(4);
+		
+		ByteBuffer directBuf = ByteBuffer.allocateDirect(jsonBytes.length);
+		directBuf.put(jsonBytes).flip();
+		
+		for (ByteBuffer buf : new ByteBuffer[] { heapBuf.slice(), directBuf }) {
+			ActuatorData data2 = dataUtil.jsonBytesToActuatorData(buf);
+			
+			assertEquals(data.getName(), data2.getName());
+			assertTrue(data.getCommand() == data2.getCommand());
+			assertTrue(data.getValue() == data2.getValue());
+		}
+	}
+	
+	@Test
+	public void testEmptyJsonBytes()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		
+		assertNull(dataUtil.jsonBytesToSensorData((byte[]) null));
+		assertNull(dataUtil.jsonBytesToSensorData(new byte[0]));
+		assertNull(dataUtil.sensorDataToJsonBytes(null));
+	}
+	
+	@Test
+	public void testByteBufferToByteArray()
+	{
+		DataUtil dataUtil = DataUtil.getInstance();
+		byte[] bytes = "{\"value\":1}".getBytes(StandardCharsets.UTF_8);
+		
+		// whole backing array - no copy
+		assertSame(bytes, dataUtil.toByteArray(ByteBuffer.wrap(bytes)));
+		
+		// slice of a larger array, and a direct buffer - copied, position unchanged
+		ByteBuffer sliceBuf = ByteBuffer.wrap(bytes, 1, 5);
+		
+		assertArrayEquals(new byte[] { bytes[1], bytes[2], bytes[3], bytes[4], bytes[5] }, dataUtil.toByteArray(sliceBuf));
+		assertEquals(1, sliceBuf.position());
+		
+		ByteBuffer directBuf = ByteBuffer.allocateDirect(bytes.length);
+		directBuf.put(bytes).flip();
+		
+		assertArrayEquals(bytes, dataUtil.toByteArray(directBuf));
+		assertEquals(0, directBuf.position());
+		assertNull(dataUtil.toByteArray(null));
+	}
+	
 }
@@ -0,0 +1,137 @@
+package programmingtheiot.unit.data;
+
+import static org.junit.Assert.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import programmingtheiot.common.ResourceNameEnum;
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.PayloadCompressor;
+import programmingtheiot.data.PayloadCompressor.Codec;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.SystemPerformanceData;
+
+/**
+ * This test case class contains basic unit tests for
+ * PayloadCompressor.
+ *
+ */
+public class PayloadCompressorTest
+{
+	// test methods
+	
+	@Test
+	public void testRoundTripAllCodecs()
+	{
+		byte[] payload = createSensorPayload();
+		
+		for (Codec codec : Codec.values()) {
+			byte[] encoded = PayloadCompressor.encode(codec, payload);
+			
+			assertEquals(codec != Codec.NONE, PayloadCompressor.isCompressed(encoded));
+			assertArrayEquals(payload, PayloadCompressor.decode(encoded));
+		}
+	}
+	
+	@Test
+	public void testDictionaryCompressesSmallPayloads()
+	{
+		SystemPerformanceData data = new SystemPerformanceData();
+		data.setCpuUtilization(12.5f);
+		data.setMemoryUtilization(47.25f);
+		
+		byte[] payload = DataUtil.getInstance().systemPerformanceDataToJsonBytes(data);
+		
+		byte[] fast = PayloadCompressor.encode(Codec.FAST, payload);
+		byte[] dict = PayloadCompressor.encode(Codec.DICT, payload);
+		
+		assertTrue(dict.length < fast.length);
+		assertTrue(dict.length < payload.length / 2);
+	}
+	
+	@Test
+	public void testPerResourceConfiguration()
+	{
+		Map<ResourceNameEnum, Codec> codecMap = new EnumMap<>(ResourceNameEnum.class);
+		codecMap.put(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, Codec.DICT);
+		
+		PayloadCompressor compressor = new PayloadCompressor(codecMap, 16);
+		byte[] payload = createSensorPayload();
+		
+		assertTrue(PayloadCompressor.isCompressed(
+			compressor.encode(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, payload)));
+		
+		// not enabled for this resource
+		assertSame(payload, compressor.encode(ResourceNameEnum.CDA_ACTUATOR_CMD_RESOURCE, payload));
+		
+		// below minimum size
+		byte[] small = "{\"value\":1.0}".getBytes();
+		assertSame(small, compressor.encode(ResourceNameEnum.CDA_SENSOR_MSG_RESOURCE, small));
+	}
+	
+	@Test
+	public void testUncompressedAndCorruptPayloads()
+	{
+		byte[] payload = createSensorPayload();
+		
+		// plain JSON passes through
+		assertSame(payload, PayloadCompressor.decode(payload));
+		
+		byte[] encoded = PayloadCompressor.encode(Codec.DICT, payload);
+		byte[] truncated = new byte[encoded.length / 2];
+		System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+		
+		assertNull(PayloadCompressor.decode(truncated));
+	}
+	
+	@Test
+	public void testDecompressionBombRejected()
+	{
+		// 16 MB of zeros deflates to a few KB
+		byte[] bomb = PayloadCompressor.encode(Codec.DICT, new byte[16 * 1024 * 1024]);
+		
+		assertTrue(bomb.length < 64 * 1024);
+		
+		try {
+			PayloadCompressor.decode(bomb);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected - default max message size
+		}
+		
+		try {
+			PayloadCompressor.decode(bomb, 1024 * 1024);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		
+		// a payload of exactly the max size is accepted
+		byte[] payload = createSensorPayload();
+		byte[] encoded = PayloadCompressor.encode(Codec.DICT, payload);
+		
+		assertArrayEquals(payload, PayloadCompressor.decode(encoded, payload.length));
+		
+		try {
+			PayloadCompressor.decode(encoded, payload.length - 1);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	
+	// private methods
+	
+	private byte[] createSensorPayload()
+	{
+		SensorData data = new SensorData();
+		data.setName("TempSensor");
+		data.setValue(22.5f);
+		
+		return DataUtil.getInstance().sensorDataToJsonBytes(data);
+	}
+}
@@ -0,0 +1,170 @@
+package programmingtheiot.unit.data;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeAndValuePayloadBatch;
+
+/**
+ * This test case class contains basic unit tests for
+ * TimeAndValuePayloadBatch.
+ *
+ */
+public class TimeAndValuePayloadBatchTest
+{
+	// static
+
+	public static final long START_MILLIS = 1700000000000L;
+
+	public static final float[] TEST_VALUES = {
+		0.0f, -0.0f, 22.5f, -3.25f, 0.1f, 0.000001f, 1.0f / 3.0f, 123456.78f, -9876543.0f,
+		Float.MIN_VALUE, Float.MAX_VALUE, -Float.MAX_VALUE, 1.0e-10f, 3.4e15f };
+
+
+	// test methods
+
+	@Test
+	public void testAddGrowsArrays()
+	{
+		TimeAndValuePayloadBatch batch = new TimeAndValuePayloadBatch("TempSensor", 1, "gatewaydevice001", 1);
+
+		for (int i = 0; i < 100; i++) {
+			batch.add(START_MILLIS + i, i * 0.5f);
+		}
+
+		assertEquals(100, batch.size());
+		assertEquals(START_MILLIS + 99, batch.getTimeStampMillis(99));
+		assertEquals(49.5f, batch.getValue(99), 0.0f);
+		assertEquals(49.5f, batch.get(99).getValue(), 0.0f);
+
+		batch.clear();
+
+		assertEquals(0, batch.size());
+	}
+
+	@Test
+	public void testJsonRoundTripIsExact()
+	{
+		TimeAndValuePayloadBatch batch = createBatch("TempSensor \"A\"\\é", TEST_VALUES);
+		byte[] jsonData = TimeAndValuePayloadBatch.toJsonBytes(Arrays.asList(batch, createBatch("Empty", new float[0])));
+
+		assertNotNull(jsonData);
+
+		List<TimeAndValuePayloadBatch> decoded = DataUtil.getInstance().jsonBytesToTimeAndValuePayloadBatchList(jsonData);
+
+		assertEquals(2, decoded.size());
+		assertBatchEquals(batch, decoded.get(0));
+		assertEquals(0, decoded.get(1).size());
+	}
+
+	@Test
+	public void testJsonValuesAreShortDecimals()
+	{
+		TimeAndValuePayloadBatch batch = createBatch("TempSensor", new float[] { 22.5f, 0.1f, -3.0f, 0.05f });
+		String json = new String(TimeAndValuePayloadBatch.toJsonBytes(Arrays.asList(batch)), StandardCharsets.UTF_8);
+
+		assertTrue(json, json.contains("\"values\":[22.5,0.1,-3,0.05]"));
+		assertTrue(json, json.contains("\"timeStamps\":[" + START_MILLIS + "," + (START_MILLIS + 1001) + ","));
+	}
+
+	@Test
+	public void testJsonRejectsNaN()
+	{
+		TimeAndValuePayloadBatch batch = createBatch("TempSensor", new float[] { 1.0f, Float.NaN });
+
+		assertNull(TimeAndValuePayloadBatch.toJsonBytes(Arrays.asList(batch)));
+	}
+
+	@Test
+	public void testBinaryRoundTripIsExact()
+	{
+		TimeAndValuePayloadBatch batch = createBatch("TempSensor", TEST_VALUES);
+		batch.add(START_MILLIS - 5000L, Float.NaN);
+		batch.add(Long.MAX_VALUE, Float.NEGATIVE_INFINITY);
+
+		byte[] payload = TimeAndValuePayloadBatch.toBinaryBytes(Arrays.asList(batch));
+
+		assertTrue(TimeAndValuePayloadBatch.isBinaryEncoded(payload));
+
+		List<TimeAndValuePayloadBatch> decoded = TimeAndValuePayloadBatch.fromBinaryBytes(payload);
+
+		assertEquals(1, decoded.size());
+		assertBatchEquals(batch, decoded.get(0));
+
+		assertNull(TimeAndValuePayloadBatch.fromBinaryBytes(Arrays.copyOf(payload, payload.length - 3)));
+	}
+
+	@Test
+	public void testFromSensorDataGroupsSeries()
+	{
+		List<SensorData> dataList = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++) {
+			dataList.add(createSensorData("CpuUtil", i));
+			dataList.add(createSensorData("MemUtil", i * 2));
+		}
+
+		List<TimeAndValuePayloadBatch> batchList = TimeAndValuePayloadBatch.fromSensorData(dataList);
+
+		assertEquals(2, batchList.size());
+		assertEquals("CpuUtil", batchList.get(0).getName());
+		assertEquals(10, batchList.get(1).size());
+		assertEquals(18.0f, batchList.get(1).getValue(9), 0.0f);
+
+		// no per-point objects: far smaller than a SensorData array
+		int jsonSize = DataUtil.getInstance().sensorDataListToJsonBytes(dataList).length;
+		int binarySize = TimeAndValuePayloadBatch.toBinaryBytes(batchList).length;
+
+		assertTrue(binarySize * 5 < jsonSize);
+	}
+
+
+	// private methods
+
+	private TimeAndValuePayloadBatch createBatch(String name, float[] values)
+	{
+		TimeAndValuePayloadBatch batch = new TimeAndValuePayloadBatch(name, 1, "gatewaydevice001", values.length);
+
+		for (int i = 0; i < values.length; i++) {
+			batch.add(START_MILLIS + i * 1000L + (i % 3), values[i]);
+		}
+
+		return batch;
+	}
+
+	private SensorData createSensorData(String name, float value)
+	{
+		SensorData data = new SensorData();
+		data.setName(name);
+		data.setValue(value);
+
+		return data;
+	}
+
+	private void assertBatchEquals(TimeAndValuePayloadBatch expected, TimeAndValuePayloadBatch actual)
+	{
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getTypeID(), actual.getTypeID());
+		assertEquals(expected.getLocationID(), actual.getLocationID());
+		assertEquals(expected.size(), actual.size());
+
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getTimeStampMillis(i), actual.getTimeStampMillis(i));
+
+			// -0.0 is written as 0 in JSON
+			if (expected.getValue(i) == 0.0f) {
+				assertEquals(0.0f, actual.getValue(i), 0.0f);
+			} else {
+				assertEquals(Float.floatToRawIntBits(expected.getValue(i)), Float.floatToRawIntBits(actual.getValue(i)));
+			}
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package programmingtheiot.unit.data;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import programmingtheiot.data.DataUtil;
+import programmingtheiot.data.SensorData;
+import programmingtheiot.data.TimeAndValuePayloadData;
+import programmingtheiot.data.TimeSeriesCodec;
+
+/**
+ * This test case class contains basic unit tests for
+ * TimeSeriesCodec.
+ *
+ */
+public class TimeSeriesCodecTest
+{
+	// static
+
+	public static final long START_MILLIS = 1700000000000L;
+
+
+	// test methods
+
+	@Test
+	public void testSensorDataRoundTrip()
+	{
+		List<SensorData> dataList = new ArrayList<>();
+
+		for (int i = 0; i < 20; i++) {
+			dataList.add(createSensorData("TempSensor", 1, START_MILLIS + i * 1000L, 20.0f + (i % 3) * 0.25f));
+			dataList.add(createSensorData("HumiditySensor", 2, START_MILLIS + i * 1000L + 7, 40.0f - i * 0.1f));
+		}
+
+		byte[] payload = TimeSeriesCodec.encodeSensorData(dataList);
+
+		assertTrue(TimeSeriesCodec.isEncoded(payload));
+
+		List<SensorData> decoded = TimeSeriesCodec.decodeSensorData(payload);
+
+		assertEquals(dataList.size(), decoded.size());
+
+		// grouped by series, in first-seen order
+		for (int i = 0; i < 20; i++) {
+			assertSensorDataEquals(dataList.get(i * 2), decoded.get(i));
+			assertSensorDataEquals(dataList.get(i * 2 + 1), decoded.get(20 + i));
+		}
+	}
+
+	@Test
+	public void testIrregularTimestampsAndSpecialValues()
+	{
+		long[] timeStamps = {
+			START_MILLIS, START_MILLIS + 1000, START_MILLIS + 1001, START_MILLIS + 1300,
+			START_MILLIS + 5000, START_MILLIS + 5000, START_MILLIS + 86400000L, START_MILLIS - 5L };
+		float[] values = {
+			0.0f, -0.0f, Float.NaN, Float.POSITIVE_INFINITY, Float.MIN_VALUE, -123456.78f, Float.MAX_VALUE, 1.0f };
+
+		byte[] payload = TimeSeriesCodec.encodeSeries(timeStamps, values, timeStamps.length);
+		List<TimeAndValuePayloadData> decoded = TimeSeriesCodec.decodeTimeAndValueData(payload);
+
+		assertEquals(timeStamps.length, decoded.size());
+
+		for (int i = 0; i < timeStamps.length; i++) {
+			assertEquals(timeStamps[i], decoded.get(i).getTimeStampMillis());
+			assertEquals(Float.floatToRawIntBits(values[i]), Float.floatToRawIntBits(decoded.get(i).getValue()));
+		}
+	}
+
+	@Test
+	public void testTimeAndValueRoundTrip()
+	{
+		List<TimeAndValuePayloadData> dataList = new ArrayList<>();
+
+		for (int i = 0; i < 100; i++) {
+			TimeAndValuePayloadData data = new TimeAndValuePayloadData();
+			data.setTimeStampMillis(START_MILLIS + i * 500L);
+			data.setValue((float) Math.sin(i / 10.0));
+			dataList.add(data);
+		}
+
+		List<TimeAndValuePayloadData> decoded =
+			TimeSeriesCodec.decodeTimeAndValueData(TimeSeriesCodec.encodeTimeAndValueData(dataList));
+
+		assertEquals(dataList.size(), decoded.size());
+
+		for (int i = 0; i < dataList.size(); i++) {
+			assertEquals(dataList.get(i).getTimeStampMillis(), decoded.get(i).getTimeStampMillis());
+			assertEquals(dataList.get(i).getValue(), decoded.get(i).getValue(), 0.0f);
+		}
+	}
+
+	@Test
+	public void testEmptyAndInvalidPayloads()
+	{
+		byte[] payload = TimeSeriesCodec.encodeSensorData(Collections.emptyList());
+
+		assertTrue(TimeSeriesCodec.decodeSensorData(payload).isEmpty());
+
+		assertNull(TimeSeriesCodec.decodeSensorData(new byte[] { '{', '}' }));
+		assertNull(TimeSeriesCodec.decodeSensorData(new byte[] { TimeSeriesCodec.HEADER, TimeSeriesCodec.VERSION, 0 }));
+	}
+
+	@Test
+	public void testRegularSeriesCompression()
+	{
+		List<SensorData> dataList = new ArrayList<>();
+
+		for (int i = 0; i < 1000; i++) {
+			dataList.add(createSensorData("TempSensor", 1, START_MILLIS + i * 1000L, 21.5f + (i / 100) * 0.5f));
+		}
+
+		int columnarSize = DataUtil.getInstance().sensorDataListToColumnarJsonBytes(dataList).length;
+		int encodedSize = TimeSeriesCodec.encodeSensorData(dataList).length;
+
+		// ~2 bits per point for a fixed interval and slowly changing value
+		assertTrue(encodedSize < 400);
+		assertTrue(encodedSize * 20 < columnarSize);
+	}
+
+
+	// private methods
+
+	private SensorData createSensorData(String name, int typeID, long timeStampMillis, float value)
+	{
+		SensorData data = new SensorData();
+		data.setName(name);
+		data.setTypeID(typeID);
+		data.setValue(value);
+		data.setTimeStampMillis(timeStampMillis);
+
+		return data;
+	}
+
+	private void assertSensorDataEquals(SensorData expected, SensorData actual)
+	{
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getTypeID(), actual.getTypeID());
+		assertEquals(expected.getLocationID(), actual.getLocationID());
+		assertEquals(expected.getTimeStampMillis(), actual.getTimeStampMillis());
+		assertEquals(expected.getValue(), actual.getValue(), 0.0f);
+	}
+}